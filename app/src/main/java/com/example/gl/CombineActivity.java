@@ -86,12 +86,12 @@ public class CombineActivity extends AppCompatActivity {
         glSurfaceView.setEGLContextClientVersion(3);
         glRenderer = new GLRenderer(this);
         glSurfaceView.setRenderer(glRenderer);
-        glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        // 按需渲染（RENDERMODE_WHEN_DIRTY），输入和相机变化时由渲染器请求重绘
+        glRenderer.getRenderScheduler().attach(glSurfaceView);
 
         // 设置触摸监听
         glSurfaceView.setOnTouchListener((v, event) -> {
             glRenderer.onTouchEvent(event);
-            glSurfaceView.requestRender(); // 请求重绘
             return true;
         });
     }
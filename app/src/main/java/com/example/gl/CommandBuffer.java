@@ -0,0 +1,304 @@
+package com.example.gl;
+
+// 一帧的绘制命令，以紧凑的int/float数据包记录，在GL线程回放
+// 录制不调用GL（只引用GL对象id和ShaderProgram的反射结果），可以在工作线程进行；回放必须在GL线程
+// 回放经过GLStateCache和ShaderProgram的值缓存，重复的状态和uniform仍会被跳过
+// 也可以录制计算调度、内存屏障和间接绘制（GPU剔除），绘制数量在回放时由GPU决定
+// 数组只在容量不足时扩容，容量稳定后录制不再分配内存
+public class CommandBuffer {
+    // 操作码及其后的参数
+    private static final int OP_CLEAR = 1;          // mask
+    private static final int OP_USE_PROGRAM = 2;    // 程序表下标
+    private static final int OP_UNIFORM_INT = 3;    // uniform下标, 值
+    private static final int OP_UNIFORM_FLOATS = 4; // uniform下标, float偏移, 分量数
+    private static final int OP_BIND_TEXTURE = 5;   // 纹理单元, 纹理id
+    private static final int OP_BIND_VAO = 6;       // VAO id
+    private static final int OP_DRAW_ARRAYS = 7;    // mode, first, count
+    private static final int OP_DRAW_ELEMENTS = 8;  // mode, count, type, 字节偏移
+    private static final int OP_LINE_WIDTH = 9;     // float偏移
+    private static final int OP_PATCH_VERTICES = 10; // 顶点数
+    private static final int OP_BIND_BUFFER_BASE = 11; // target, 绑定点, 缓冲id
+    private static final int OP_DISPATCH_COMPUTE = 12; // 工作组数x, y, z
+    private static final int OP_MEMORY_BARRIER = 13;   // barrier位
+    private static final int OP_BIND_DRAW_INDIRECT = 14; // 缓冲id
+    private static final int OP_DRAW_ELEMENTS_INDIRECT = 15; // mode, type, 字节偏移
+
+    private int[] ints = new int[256];
+    private int intCount = 0;
+    private float[] floats = new float[256];
+    private int floatCount = 0;
+    private ShaderProgram[] programs = new ShaderProgram[4];
+    private int programCount = 0;
+
+    // 录制时的当前程序，用于把uniform名解析为下标
+    private ShaderProgram recordingProgram;
+
+    public void reset() {
+        intCount = 0;
+        floatCount = 0;
+        for (int i = 0; i < programCount; i++) {
+            programs[i] = null;
+        }
+        programCount = 0;
+        recordingProgram = null;
+    }
+
+    public boolean isEmpty() {
+        return intCount == 0;
+    }
+
+    // ---- 录制 ----
+
+    public void clear(int mask) {
+        putInts(OP_CLEAR, mask);
+    }
+
+    public void useProgram(ShaderProgram program) {
+        int slot = -1;
+        for (int i = 0; i < programCount; i++) {
+            if (programs[i] == program) {
+                slot = i;
+                break;
+            }
+        }
+        if (slot == -1) {
+            if (programCount == programs.length) {
+                ShaderProgram[] grown = new ShaderProgram[programs.length * 2];
+                System.arraycopy(programs, 0, grown, 0, programCount);
+                programs = grown;
+            }
+            slot = programCount++;
+            programs[slot] = program;
+        }
+        recordingProgram = program;
+        putInts(OP_USE_PROGRAM, slot);
+    }
+
+    // 以下uniform命令作用于最近一次useProgram()的程序，程序中不存在的uniform被忽略
+    public void setInt(String name, int value) {
+        int index = uniformIndex(name);
+        if (index == -1) return;
+        putInts(OP_UNIFORM_INT, index, value);
+    }
+
+    public void setFloat(String name, float value) {
+        int offset = reserveFloats(name, 1);
+        if (offset == -1) return;
+        floats[offset] = value;
+    }
+
+    public void setVec2(String name, float x, float y) {
+        int offset = reserveFloats(name, 2);
+        if (offset == -1) return;
+        floats[offset] = x;
+        floats[offset + 1] = y;
+    }
+
+    public void setVec3(String name, float x, float y, float z) {
+        int offset = reserveFloats(name, 3);
+        if (offset == -1) return;
+        floats[offset] = x;
+        floats[offset + 1] = y;
+        floats[offset + 2] = z;
+    }
+
+    public void setVec3(String name, float[] value) {
+        setVec3(name, value[0], value[1], value[2]);
+    }
+
+    public void setMat4(String name, float[] matrix) {
+        int offset = reserveFloats(name, 16);
+        if (offset == -1) return;
+        System.arraycopy(matrix, 0, floats, offset, 16);
+    }
+
+    public void bindTexture2D(int unit, int texture) {
+        putInts(OP_BIND_TEXTURE, unit, texture);
+    }
+
+    public void bindVertexArray(int vao) {
+        putInts(OP_BIND_VAO, vao);
+    }
+
+    public void drawArrays(int mode, int first, int count) {
+        ensureInts(4);
+        ints[intCount++] = OP_DRAW_ARRAYS;
+        ints[intCount++] = mode;
+        ints[intCount++] = first;
+        ints[intCount++] = count;
+    }
+
+    public void drawElements(int mode, int count, int type, int offset) {
+        ensureInts(5);
+        ints[intCount++] = OP_DRAW_ELEMENTS;
+        ints[intCount++] = mode;
+        ints[intCount++] = count;
+        ints[intCount++] = type;
+        ints[intCount++] = offset;
+    }
+
+    public void lineWidth(float width) {
+        ensureFloats(1);
+        putInts(OP_LINE_WIDTH, floatCount);
+        floats[floatCount++] = width;
+    }
+
+    public void patchVertices(int count) {
+        putInts(OP_PATCH_VERTICES, count);
+    }
+
+    public void bindBufferBase(int target, int index, int buffer) {
+        ensureInts(4);
+        ints[intCount++] = OP_BIND_BUFFER_BASE;
+        ints[intCount++] = target;
+        ints[intCount++] = index;
+        ints[intCount++] = buffer;
+    }
+
+    public void dispatchCompute(int groupsX, int groupsY, int groupsZ) {
+        ensureInts(4);
+        ints[intCount++] = OP_DISPATCH_COMPUTE;
+        ints[intCount++] = groupsX;
+        ints[intCount++] = groupsY;
+        ints[intCount++] = groupsZ;
+    }
+
+    public void memoryBarrier(int barriers) {
+        putInts(OP_MEMORY_BARRIER, barriers);
+    }
+
+    public void bindDrawIndirectBuffer(int buffer) {
+        putInts(OP_BIND_DRAW_INDIRECT, buffer);
+    }
+
+    // 绘制命令从GL_DRAW_INDIRECT_BUFFER的offset字节处读取（回放时由GPU决定绘制数量）
+    public void drawElementsIndirect(int mode, int type, int offset) {
+        ensureInts(4);
+        ints[intCount++] = OP_DRAW_ELEMENTS_INDIRECT;
+        ints[intCount++] = mode;
+        ints[intCount++] = type;
+        ints[intCount++] = offset;
+    }
+
+    private int uniformIndex(String name) {
+        return recordingProgram != null ? recordingProgram.getUniformIndex(name) : -1;
+    }
+
+    // 写入uniform命令头并预留count个float，返回float偏移；uniform不存在时返回-1
+    private int reserveFloats(String name, int count) {
+        int index = uniformIndex(name);
+        if (index == -1) return -1;
+        ensureInts(4);
+        ensureFloats(count);
+        int offset = floatCount;
+        ints[intCount++] = OP_UNIFORM_FLOATS;
+        ints[intCount++] = index;
+        ints[intCount++] = offset;
+        ints[intCount++] = count;
+        floatCount += count;
+        return offset;
+    }
+
+    private void putInts(int op, int a) {
+        ensureInts(2);
+        ints[intCount++] = op;
+        ints[intCount++] = a;
+    }
+
+    private void putInts(int op, int a, int b) {
+        ensureInts(3);
+        ints[intCount++] = op;
+        ints[intCount++] = a;
+        ints[intCount++] = b;
+    }
+
+    private void ensureInts(int count) {
+        if (intCount + count > ints.length) {
+            int[] grown = new int[Math.max(ints.length * 2, intCount + count)];
+            System.arraycopy(ints, 0, grown, 0, intCount);
+            ints = grown;
+        }
+    }
+
+    private void ensureFloats(int count) {
+        if (floatCount + count > floats.length) {
+            float[] grown = new float[Math.max(floats.length * 2, floatCount + count)];
+            System.arraycopy(floats, 0, grown, 0, floatCount);
+            floats = grown;
+        }
+    }
+
+    // ---- 回放（GL线程） ----
+
+    public void execute() {
+        ShaderProgram program = null;
+        int i = 0;
+        while (i < intCount) {
+            switch (ints[i]) {
+                case OP_CLEAR:
+                    InstrumentedGL.glClear(ints[i + 1]);
+                    i += 2;
+                    break;
+                case OP_USE_PROGRAM:
+                    program = programs[ints[i + 1]];
+                    program.use();
+                    i += 2;
+                    break;
+                case OP_UNIFORM_INT:
+                    program.setIntAt(ints[i + 1], ints[i + 2]);
+                    i += 3;
+                    break;
+                case OP_UNIFORM_FLOATS:
+                    program.setFloatsAt(ints[i + 1], floats, ints[i + 2], ints[i + 3]);
+                    i += 4;
+                    break;
+                case OP_BIND_TEXTURE:
+                    GLStateCache.bindTexture2D(ints[i + 1], ints[i + 2]);
+                    i += 3;
+                    break;
+                case OP_BIND_VAO:
+                    GLStateCache.bindVertexArray(ints[i + 1]);
+                    i += 2;
+                    break;
+                case OP_DRAW_ARRAYS:
+                    InstrumentedGL.glDrawArrays(ints[i + 1], ints[i + 2], ints[i + 3]);
+                    i += 4;
+                    break;
+                case OP_DRAW_ELEMENTS:
+                    InstrumentedGL.glDrawElements(ints[i + 1], ints[i + 2], ints[i + 3], ints[i + 4]);
+                    i += 5;
+                    break;
+                case OP_LINE_WIDTH:
+                    GLStateCache.lineWidth(floats[ints[i + 1]]);
+                    i += 2;
+                    break;
+                case OP_PATCH_VERTICES:
+                    GLStateCache.patchVertices(ints[i + 1]);
+                    i += 2;
+                    break;
+                case OP_BIND_BUFFER_BASE:
+                    InstrumentedGL.glBindBufferBase(ints[i + 1], ints[i + 2], ints[i + 3]);
+                    i += 4;
+                    break;
+                case OP_DISPATCH_COMPUTE:
+                    InstrumentedGL.glDispatchCompute(ints[i + 1], ints[i + 2], ints[i + 3]);
+                    i += 4;
+                    break;
+                case OP_MEMORY_BARRIER:
+                    InstrumentedGL.glMemoryBarrier(ints[i + 1]);
+                    i += 2;
+                    break;
+                case OP_BIND_DRAW_INDIRECT:
+                    GLStateCache.bindDrawIndirectBuffer(ints[i + 1]);
+                    i += 2;
+                    break;
+                case OP_DRAW_ELEMENTS_INDIRECT:
+                    InstrumentedGL.glDrawElementsIndirect(ints[i + 1], ints[i + 2], ints[i + 3]);
+                    i += 4;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown command " + ints[i] + " at " + i);
+            }
+        }
+    }
+}
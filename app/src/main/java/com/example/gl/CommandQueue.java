@@ -0,0 +1,39 @@
+package com.example.gl;
+
+// 双缓冲的命令缓冲：工作线程录制后台缓冲的同时，GL线程回放前台缓冲
+// 工作线程：beginRecording() -> 录制 -> endRecording()
+// GL线程：acquire()换入最新完成的录制；还没有新的录制时返回上一次的缓冲（重放上一帧）
+// GL线程只在acquire()时接触后台缓冲，两个缓冲循环使用，不分配内存
+public class CommandQueue {
+    private final CommandBuffer[] buffers = {new CommandBuffer(), new CommandBuffer()};
+    private int front = 0;
+    private boolean ready = false; // 后台缓冲中有完整的录制
+
+    // 工作线程：清空后台缓冲并开始录制（覆盖尚未被取走的录制）
+    public synchronized CommandBuffer beginRecording() {
+        ready = false;
+        CommandBuffer back = buffers[1 - front];
+        back.reset();
+        return back;
+    }
+
+    public synchronized void endRecording() {
+        ready = true;
+    }
+
+    // GL线程
+    public synchronized CommandBuffer acquire() {
+        if (ready) {
+            front = 1 - front;
+            ready = false;
+        }
+        return buffers[front];
+    }
+
+    // 丢弃所有录制（EGL上下文重建后其中的GL对象id已失效），调用前必须确认没有正在进行的录制
+    public synchronized void clear() {
+        ready = false;
+        buffers[0].reset();
+        buffers[1].reset();
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.gl;
+
+import android.opengl.GLES30;
+import android.util.Log;
+
+// 帧时间统计：每帧按阶段记录CPU耗时（System.nanoTime），支持GL_EXT_disjoint_timer_query时按pass记录GPU耗时
+// 结果写入滚动直方图，报告p50/p95/p99和最慢一帧
+// 用法（GL线程）：beginFrame() -> 每个阶段结束时mark(phase) -> beginGpuPass()/endGpuPass()包住GPU工作 -> endFrame()
+// GPU查询的结果在若干帧之后才可读，每帧开始时收集已完成的查询；GPU落后太多时当前帧不计时，不会阻塞
+public class FrameProfiler {
+    private static final String TAG = "FrameProfiler";
+
+    // CPU阶段（输入、相机和录制可能在准备帧的工作线程中执行，通过addPhaseTime()计入）
+    public static final int PHASE_INPUT = 0;    // 触摸/移动输入和雕刻笔刷
+    public static final int PHASE_CAMERA = 1;   // 相机、矩阵和视锥查询
+    public static final int PHASE_UPLOAD = 2;   // 顶点和纹理局部上传
+    public static final int PHASE_RECORD = 3;   // 录制绘制命令
+    public static final int PHASE_DRAW = 4;     // 回放命令（程序切换、uniform、绑定和绘制调用）
+    public static final int PHASE_WAIT = 5;     // GL线程等待工作线程完成录制
+    private static final String[] PHASE_NAMES = {"输入", "相机", "上传", "录制", "回放", "等待录制"};
+
+    // GPU pass
+    public static final int PASS_UPLOAD = 0;
+    public static final int PASS_SCENE = 1;
+    private static final String[] PASS_NAMES = {"上传", "场景"};
+
+    // GL_EXT_disjoint_timer_query
+    private static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    private static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+
+    private static final int WINDOW_SIZE = 300;  // 60fps下约5秒
+    private static final int QUERY_FRAMES = 4;   // 同时等待结果的帧数
+
+    private final RollingHistogram frameHistogram = new RollingHistogram(WINDOW_SIZE);
+    private final RollingHistogram[] phaseHistograms = new RollingHistogram[PHASE_NAMES.length];
+    private final RollingHistogram[] passHistograms = new RollingHistogram[PASS_NAMES.length];
+
+    // 以下字段只在GL线程访问
+    private final long[] phaseNanos = new long[PHASE_NAMES.length];
+    private long frameStart;
+    private long lastMark;
+
+    private volatile boolean gpuTimingSupported;
+    private final int[] queryIds = new int[QUERY_FRAMES * PASS_NAMES.length];
+    private final boolean[] queryIssued = new boolean[QUERY_FRAMES * PASS_NAMES.length];
+    private final boolean[] framePending = new boolean[QUERY_FRAMES];
+    private int writeSlot = 0;    // 下一帧使用的查询组
+    private int currentSlot = -1; // 本帧使用的查询组，-1表示本帧不做GPU计时
+    private int activePass = -1;
+    private final int[] queryResult = new int[1];
+
+    public FrameProfiler() {
+        for (int i = 0; i < phaseHistograms.length; i++) {
+            phaseHistograms[i] = new RollingHistogram(WINDOW_SIZE);
+        }
+        for (int i = 0; i < passHistograms.length; i++) {
+            passHistograms[i] = new RollingHistogram(WINDOW_SIZE);
+        }
+    }
+
+    // 在onSurfaceCreated中调用（新的EGL上下文中重新创建查询对象）
+    public void initGpuTiming() {
+        gpuTimingSupported = GLSupportChecker.supportsTimerQuery();
+        for (int i = 0; i < QUERY_FRAMES; i++) {
+            framePending[i] = false;
+        }
+        currentSlot = -1;
+        activePass = -1;
+        if (gpuTimingSupported) {
+            GLES30.glGenQueries(queryIds.length, queryIds, 0);
+        }
+        Log.i(TAG, "GPU timer queries: " + (gpuTimingSupported ? "enabled" : "not supported"));
+    }
+
+    public void beginFrame() {
+        frameStart = System.nanoTime();
+        lastMark = frameStart;
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = 0;
+        }
+
+        currentSlot = -1;
+        if (gpuTimingSupported) {
+            collectGpuResults();
+            if (!framePending[writeSlot]) {
+                currentSlot = writeSlot;
+                int base = currentSlot * PASS_NAMES.length;
+                for (int pass = 0; pass < PASS_NAMES.length; pass++) {
+                    queryIssued[base + pass] = false;
+                }
+            }
+        }
+    }
+
+    // 把上一次标记到现在的时间计入phase
+    public void mark(int phase) {
+        long now = System.nanoTime();
+        phaseNanos[phase] += now - lastMark;
+        lastMark = now;
+    }
+
+    // 计入单独测得的阶段耗时（例如在工作线程中执行的阶段）
+    public void addPhaseTime(int phase, long nanos) {
+        phaseNanos[phase] += nanos;
+    }
+
+    // 跳过上一次标记到现在的时间（这段时间已通过addPhaseTime()计入）
+    public void skip() {
+        lastMark = System.nanoTime();
+    }
+
+    // 同一时间只能有一个GL_TIME_ELAPSED_EXT查询处于活动状态，pass不能嵌套
+    public void beginGpuPass(int pass) {
+        if (currentSlot < 0 || activePass != -1) return;
+        int index = currentSlot * PASS_NAMES.length + pass;
+        GLES30.glBeginQuery(GL_TIME_ELAPSED_EXT, queryIds[index]);
+        queryIssued[index] = true;
+        activePass = pass;
+    }
+
+    public void endGpuPass() {
+        if (activePass == -1) return;
+        GLES30.glEndQuery(GL_TIME_ELAPSED_EXT);
+        activePass = -1;
+    }
+
+    public void endFrame() {
+        long now = System.nanoTime();
+        frameHistogram.record((now - frameStart) * 1e-6f);
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseHistograms[i].record(phaseNanos[i] * 1e-6f);
+        }
+
+        if (currentSlot >= 0) {
+            endGpuPass();
+            framePending[currentSlot] = true;
+            writeSlot = (writeSlot + 1) % QUERY_FRAMES;
+        }
+    }
+
+    // 按提交顺序读取已完成的查询；期间发生过GPU计时不连续（频率变化、上下文切换等）时丢弃所有在途结果
+    private void collectGpuResults() {
+        GLES30.glGetIntegerv(GL_GPU_DISJOINT_EXT, queryResult, 0);
+        boolean disjoint = queryResult[0] != 0;
+
+        for (int k = 0; k < QUERY_FRAMES; k++) {
+            int slot = (writeSlot + k) % QUERY_FRAMES; // writeSlot是最早提交的一组
+            if (!framePending[slot]) continue;
+            if (disjoint) {
+                framePending[slot] = false;
+                continue;
+            }
+
+            int base = slot * PASS_NAMES.length;
+            if (!isAvailable(base)) break; // 后提交的查询也不会先完成
+
+            for (int pass = 0; pass < PASS_NAMES.length; pass++) {
+                if (!queryIssued[base + pass]) continue;
+                GLES30.glGetQueryObjectuiv(queryIds[base + pass], GLES30.GL_QUERY_RESULT, queryResult, 0);
+                // 32位无符号纳秒，单个pass不会超过4秒
+                passHistograms[pass].record((queryResult[0] & 0xFFFFFFFFL) * 1e-6f);
+            }
+            framePending[slot] = false;
+        }
+    }
+
+    private boolean isAvailable(int base) {
+        for (int pass = 0; pass < PASS_NAMES.length; pass++) {
+            if (!queryIssued[base + pass]) continue;
+            GLES30.glGetQueryObjectuiv(queryIds[base + pass], GLES30.GL_QUERY_RESULT_AVAILABLE, queryResult, 0);
+            if (queryResult[0] == 0) return false;
+        }
+        return true;
+    }
+
+    // 多行报告：p50/p95/p99/最慢（毫秒），可在任意线程调用
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+        report.append("帧时间(ms) p50/p95/p99/最慢\n");
+        appendLine(report, "CPU总计", frameHistogram);
+        for (int i = 0; i < PHASE_NAMES.length; i++) {
+            appendLine(report, "  " + PHASE_NAMES[i], phaseHistograms[i]);
+        }
+        if (gpuTimingSupported) {
+            for (int i = 0; i < PASS_NAMES.length; i++) {
+                appendLine(report, "GPU " + PASS_NAMES[i], passHistograms[i]);
+            }
+        } else {
+            report.append("GPU计时: 不支持\n");
+        }
+        return report.toString();
+    }
+
+    private static void appendLine(StringBuilder report, String name, RollingHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            report.append(name).append(": -\n");
+            return;
+        }
+        report.append(String.format("%s: %.2f/%.2f/%.2f/%.2f\n", name,
+                histogram.getPercentile(0.50f), histogram.getPercentile(0.95f),
+                histogram.getPercentile(0.99f), histogram.getMax()));
+    }
+
+    // 单行摘要，用于日志
+    public String getSummary() {
+        return String.format("CPU p50 %.2fms p99 %.2fms max %.2fms",
+                frameHistogram.getPercentile(0.50f), frameHistogram.getPercentile(0.99f),
+                frameHistogram.getMax());
+    }
+
+    public void release() {
+        endGpuPass();
+        if (gpuTimingSupported) {
+            GLES30.glDeleteQueries(queryIds.length, queryIds, 0);
+        }
+        for (int i = 0; i < QUERY_FRAMES; i++) {
+            framePending[i] = false;
+        }
+    }
+}
@@ -12,28 +12,17 @@ import javax.microedition.khronos.opengles.GL10;
 
 public class GLRenderer implements GLSurfaceView.Renderer {
     private Context context;
-    private int program;
-    private int wireframeProgram;
-    private int positionHandle;
-    private int colorHandle;
-    private int normalHandle;
-    private int mvpMatrixHandle;
-    private int modelMatrixHandle;
-    private int lightPositionHandle;
-    private int cameraPositionHandle;
-    private int typeHandle;
-    private int minHeightHandle;
-    private int maxHeightHandle;
+    private ShaderProgram program;
+    private ShaderProgram wireframeProgram;
 
     // 纹理相关变量
-    private int texCoordHandle;
-    private int wallTextureHandle;
-    private int roofTextureHandle;
-    private int useTextureHandle;
     private int wallTextureId;
     private int roofTextureId;
 
     private TerrainData.MeshData meshData;
+    private GpuMesh gpuMesh;
+    private int solidVao;
+    private int wireframeVao;
 
     private float[] modelMatrix = new float[16];
     private float[] viewMatrix = new float[16];
@@ -78,9 +67,13 @@ public class GLRenderer implements GLSurfaceView.Renderer {
 
     private RenderMode currentMode = RenderMode.SOLID;
 
+    // 按需渲染：状态变化时请求重绘，只有动画进行中才连续绘制
+    private final RenderScheduler renderScheduler = new RenderScheduler();
+
     public GLRenderer(Context context) {
         this.context = context;
         meshData = TerrainData.generateTerrainMesh();
+        gpuMesh = new GpuMesh(meshData);
         startTime = System.currentTimeMillis();
 
         // 初始化位置在地形中心上方
@@ -89,6 +82,10 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         fpvPosition[2] = 0.0f;
     }
 
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
+    }
+
     // 获取地形高度（用于碰撞检测）
     private float getTerrainHeight(float worldX, float worldZ) {
         // 简化版本：返回基础高度
@@ -101,6 +98,7 @@ public class GLRenderer implements GLSurfaceView.Renderer {
     public void toggleViewMode() {
         isFirstPersonView = !isFirstPersonView;
         isAutoRotating = !isFirstPersonView; // 第一人称时停止自动旋转
+        renderScheduler.requestRender();
     }
 
     public String getCurrentViewMode() {
@@ -117,6 +115,7 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         } else {
             currentMode = RenderMode.SOLID;
         }
+        renderScheduler.requestRender();
     }
 
     public String getCurrentModeName() {
@@ -136,6 +135,7 @@ public class GLRenderer implements GLSurfaceView.Renderer {
             // 第一人称的视角控制
             handleFirstPersonTouch(event);
         }
+        renderScheduler.requestRender();
     }
 
     private void handleGodViewTouch(MotionEvent event) {
@@ -203,6 +203,7 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         this.moveRight = right;
         this.moveUp = up;
         this.moveDown = down;
+        renderScheduler.requestRender();
     }
 
     // 更新第一人称位置
@@ -272,20 +273,30 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         // 加载着色器
         String vertexShader = ShaderUtils.loadShader(context, R.raw.vertex_shader);
         String fragmentShader = ShaderUtils.loadShader(context, R.raw.fragment_shader);
-        program = ShaderUtils.createProgram(vertexShader, fragmentShader);
+        program = ShaderProgram.create(vertexShader, fragmentShader);
 
         String wireframeVertexShader = ShaderUtils.loadShader(context, R.raw.wireframe_vertex_shader);
         String wireframeFragmentShader = ShaderUtils.loadShader(context, R.raw.wireframe_fragment_shader);
-        wireframeProgram = ShaderUtils.createProgram(wireframeVertexShader, wireframeFragmentShader);
+        wireframeProgram = ShaderProgram.create(wireframeVertexShader, wireframeFragmentShader);
 
-        if (program == 0 || wireframeProgram == 0) {
+        if (program == null || wireframeProgram == null) {
             throw new RuntimeException("Failed to create shader program");
         }
 
         // 加载纹理
         loadTextures();
 
-        setupSolidShaderAttributes();
+        checkSolidShaderVariables();
+
+        // 上传网格到GPU（新的EGL上下文中需要重新上传），属性位置来自着色器程序的反射结果
+        gpuMesh.upload();
+        solidVao = gpuMesh.createVertexArray(program.getAttribLocation("aPosition"),
+                program.getAttribLocation("aColor"), program.getAttribLocation("aNormal"),
+                program.getAttribLocation("aTexCoord"), program.getAttribLocation("aType"));
+        wireframeVao = gpuMesh.createWireframeVertexArray(wireframeProgram.getAttribLocation("aPosition"));
+
+        // 初始化阶段直接修改过GL状态，缓存的状态作废
+        GLStateCache.reset();
     }
 
     // 加载纹理
@@ -303,29 +314,12 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         }
     }
 
-    private void setupSolidShaderAttributes() {
-        positionHandle = GLES30.glGetAttribLocation(program, "aPosition");
-        colorHandle = GLES30.glGetAttribLocation(program, "aColor");
-        normalHandle = GLES30.glGetAttribLocation(program, "aNormal");
-        mvpMatrixHandle = GLES30.glGetUniformLocation(program, "uMVPMatrix");
-        modelMatrixHandle = GLES30.glGetUniformLocation(program, "uModelMatrix");
-        lightPositionHandle = GLES30.glGetUniformLocation(program, "uLightPosition");
-        cameraPositionHandle = GLES30.glGetUniformLocation(program, "uCameraPosition");
-        typeHandle = GLES30.glGetAttribLocation(program, "aType");
-        minHeightHandle = GLES30.glGetUniformLocation(program, "minHeight");
-        maxHeightHandle = GLES30.glGetUniformLocation(program, "maxHeight");
-
-        // 纹理相关属性
-        texCoordHandle = GLES30.glGetAttribLocation(program, "aTexCoord");
-        wallTextureHandle = GLES30.glGetUniformLocation(program, "uWallTexture");
-        roofTextureHandle = GLES30.glGetUniformLocation(program, "uRoofTexture");
-        useTextureHandle = GLES30.glGetUniformLocation(program, "uUseTexture");
-
-        // 检查是否获取成功
-        if (texCoordHandle == -1) Log.w("GLRenderer", "aTexCoord attribute not found");
-        if (wallTextureHandle == -1) Log.w("GLRenderer", "uWallTexture uniform not found");
-        if (roofTextureHandle == -1) Log.w("GLRenderer", "uRoofTexture uniform not found");
-        if (useTextureHandle == -1) Log.w("GLRenderer", "uUseTexture uniform not found");
+    private void checkSolidShaderVariables() {
+        // 检查纹理相关变量是否存在
+        if (program.getAttribLocation("aTexCoord") == -1) Log.w("GLRenderer", "aTexCoord attribute not found");
+        if (!program.hasUniform("uWallTexture")) Log.w("GLRenderer", "uWallTexture uniform not found");
+        if (!program.hasUniform("uRoofTexture")) Log.w("GLRenderer", "uRoofTexture uniform not found");
+        if (!program.hasUniform("uUseTexture")) Log.w("GLRenderer", "uUseTexture uniform not found");
     }
 
     @Override
@@ -392,16 +386,13 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         );
     }
 
-    private long lastFrameTime = System.currentTimeMillis();
-
     @Override
     public void onDrawFrame(GL10 gl) {
-        GLES30.glClear(GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT);
+        InstrumentedGL.beginFrame();
+        InstrumentedGL.glClear(GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT);
 
-        // 计算帧时间
-        long currentTime = System.currentTimeMillis();
-        float deltaTime = (currentTime - lastFrameTime) * 0.001f;
-        lastFrameTime = currentTime;
+        // 计算帧时间（静止一段时间后的第一帧为0）
+        float deltaTime = renderScheduler.beginFrame();
 
         // 更新时间动画
         waterAnimation += deltaTime;
@@ -431,96 +422,66 @@ public class GLRenderer implements GLSurfaceView.Renderer {
         }
 
         ShaderUtils.checkGLError("onDrawFrame");
+        InstrumentedGL.endFrame();
+
+        // 自动旋转或按住移动键时继续绘制下一帧
+        renderScheduler.endFrame(isAnimating());
+    }
+
+    private boolean isAnimating() {
+        if (isFirstPersonView) {
+            return moveForward || moveBackward || moveLeft || moveRight || moveUp || moveDown;
+        }
+        return isAutoRotating;
     }
 
     private void renderSolid() {
-        GLES30.glUseProgram(program);
+        program.use();
 
-        // 设置uniforms
-        GLES30.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES30.glUniformMatrix4fv(modelMatrixHandle, 1, false, modelMatrix, 0);
-        GLES30.glUniform3f(lightPositionHandle, lightPosition[0], lightPosition[1], lightPosition[2]);
-        GLES30.glUniform3f(cameraPositionHandle, cameraPosition[0], cameraPosition[1], cameraPosition[2]);
-        GLES30.glUniform1f(minHeightHandle, meshData.minHeight);
-        GLES30.glUniform1f(maxHeightHandle, meshData.maxHeight);
+        // 设置uniforms（值未变化的uniform不会重复提交）
+        program.setMat4("uMVPMatrix", mvpMatrix);
+        program.setMat4("uModelMatrix", modelMatrix);
+        program.setVec3("uLightPosition", lightPosition);
+        program.setVec3("uCameraPosition", cameraPosition);
+        program.setFloat("minHeight", meshData.minHeight);
+        program.setFloat("maxHeight", meshData.maxHeight);
 
         // 传递时间动画uniform（如果需要）
-        // int timeHandle = GLES30.glGetUniformLocation(program, "uTime");
-        // GLES30.glUniform1f(timeHandle, waterAnimation);
+        // program.setFloat("uTime", waterAnimation);
 
         // 启用纹理
-        if (useTextureHandle != -1) {
-            GLES30.glUniform1i(useTextureHandle, 1);
-        }
+        program.setInt("uUseTexture", 1);
 
         // 绑定墙体纹理到纹理单元0
-        if (wallTextureHandle != -1 && wallTextureId != 0) {
-            GLES30.glActiveTexture(GLES30.GL_TEXTURE0);
-            GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, wallTextureId);
-            GLES30.glUniform1i(wallTextureHandle, 0);
+        if (wallTextureId != 0 && program.hasUniform("uWallTexture")) {
+            GLStateCache.bindTexture2D(0, wallTextureId);
+            program.setInt("uWallTexture", 0);
         }
 
         // 绑定屋顶纹理到纹理单元1
-        if (roofTextureHandle != -1 && roofTextureId != 0) {
-            GLES30.glActiveTexture(GLES30.GL_TEXTURE1);
-            GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, roofTextureId);
-            GLES30.glUniform1i(roofTextureHandle, 1);
+        if (roofTextureId != 0 && program.hasUniform("uRoofTexture")) {
+            GLStateCache.bindTexture2D(1, roofTextureId);
+            program.setInt("uRoofTexture", 1);
         }
 
-        // 传递顶点数据
-        GLES30.glEnableVertexAttribArray(positionHandle);
-        GLES30.glVertexAttribPointer(positionHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.vertices);
-
-        GLES30.glEnableVertexAttribArray(colorHandle);
-        GLES30.glVertexAttribPointer(colorHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.colors);
-
-        GLES30.glEnableVertexAttribArray(normalHandle);
-        GLES30.glVertexAttribPointer(normalHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.normals);
-
-        // 传递纹理坐标
-        if (texCoordHandle != -1 && meshData.texCoords != null) {
-            GLES30.glEnableVertexAttribArray(texCoordHandle);
-            GLES30.glVertexAttribPointer(texCoordHandle, 2, GLES30.GL_FLOAT, false, 8, meshData.texCoords);
-        }
-
-        GLES30.glEnableVertexAttribArray(typeHandle);
-        GLES30.glVertexAttribIPointer(typeHandle, 1, GLES30.GL_INT, 4, meshData.types);
-
-        GLES30.glDrawArrays(GLES30.GL_TRIANGLES, 0, meshData.vertexCount);
-
-        // 禁用顶点数组
-        GLES30.glDisableVertexAttribArray(positionHandle);
-        GLES30.glDisableVertexAttribArray(colorHandle);
-        GLES30.glDisableVertexAttribArray(normalHandle);
-        if (texCoordHandle != -1) {
-            GLES30.glDisableVertexAttribArray(texCoordHandle);
-        }
-        GLES30.glDisableVertexAttribArray(typeHandle);
+        // 顶点属性已记录在VAO中
+        GLStateCache.bindVertexArray(solidVao);
+        InstrumentedGL.glDrawArrays(GLES30.GL_TRIANGLES, 0, meshData.vertexCount);
     }
 
     private void renderWireframe() {
-        GLES30.glUseProgram(wireframeProgram);
-
-        int wireframeMvpMatrixHandle = GLES30.glGetUniformLocation(wireframeProgram, "uMVPMatrix");
-        int wireframeColorHandle = GLES30.glGetUniformLocation(wireframeProgram, "uColor");
-        int wireframePositionHandle = GLES30.glGetAttribLocation(wireframeProgram, "aPosition");
+        wireframeProgram.use();
+        wireframeProgram.setMat4("uMVPMatrix", mvpMatrix);
 
-        GLES30.glUniformMatrix4fv(wireframeMvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES30.glUniform3f(wireframeColorHandle, 0.0f, 1.0f, 0.0f);
+        GLStateCache.bindVertexArray(wireframeVao);
 
-        GLES30.glEnableVertexAttribArray(wireframePositionHandle);
-        GLES30.glVertexAttribPointer(wireframePositionHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.vertices);
+        wireframeProgram.setVec3("uColor", 1.0f, 0.0f, 0.0f);
+        gpuMesh.drawWireframePoints();
 
-        GLES30.glUniform3f(wireframeColorHandle, 1.0f, 0.0f, 0.0f);
-        GLES30.glDrawArrays(GLES30.GL_POINTS, 0, meshData.vertexCount);
-
-        GLES30.glUniform3f(wireframeColorHandle, 0.0f, 1.0f, 0.0f);
-        GLES30.glLineWidth(2.0f);
-
-        for (int i = 0; i < meshData.vertexCount; i += 3) {
-            GLES30.glDrawArrays(GLES30.GL_LINE_LOOP, i, 3);
-        }
+        wireframeProgram.setVec3("uColor", 0.0f, 1.0f, 0.0f);
+        GLStateCache.lineWidth(2.0f);
 
-        GLES30.glDisableVertexAttribArray(wireframePositionHandle);
+        // 去重后的边一次绘制完成
+        gpuMesh.drawWireframeEdges();
     }
 }
\ No newline at end of file
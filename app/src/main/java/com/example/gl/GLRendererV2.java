@@ -7,6 +7,14 @@ import android.opengl.Matrix;
 import android.util.Log;
 import android.view.MotionEvent;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -14,53 +22,71 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
     private static final String TAG = "GLRendererV2";
     private Context context;
 
-    // 着色器程序
-    private int standardProgram;
-    private int tessellationProgram;
-    private int wireframeProgram;
-    private int currentProgram;
-
-    // 标准着色器属性
-    private int positionHandle;
-    private int colorHandle;
-    private int normalHandle;
-    private int mvpMatrixHandle;
-    private int modelMatrixHandle;
-    private int lightPositionHandle;
-    private int cameraPositionHandle;
-    private int typeHandle;
-    private int minHeightHandle;
-    private int maxHeightHandle;
-    private int texCoordHandle;
-    private int useTextureHandle;
-
-    // 曲面细分着色器属性
-    private int tessMvpMatrixHandle;
-    private int tessModelMatrixHandle;
-    private int tessTessLevelHandle;
-    private int tessHeightMapHandle;
-    private int tessTerrainSizeHandle;
-    private int tessCameraPositionHandle;
-    private int tessLightPositionHandle;
+    // 着色器程序（uniform和属性位置在创建时反射一次）
+    private ShaderProgram standardProgram;
+    private ShaderProgram tessellationProgram;
+    private ShaderProgram wireframeProgram;
+    private ShaderProgram solidWireframeProgram; // 标准着色器的SOLID_WIREFRAME变体
 
     // 纹理
     private int wallTextureId;
     private int roofTextureId;
     private int heightMapTextureId;
+    private int normalMapTextureId = -1;
+    private int typeMapTextureId = -1; // GL_R8UI类型图，曲面细分路径按网格点查询地面类型
+
+    // 高度图纹理的异步局部更新
+    private static final boolean HEIGHT_MAP_FULL_PRECISION = false;
+    private PboTextureUploader heightMapUploader;
+    private PboTextureUploader normalMapUploader;
+
+    // GLES 3.1设备上由计算着色器从高度图纹理生成法线贴图和最小/最大值金字塔，为null时在CPU上处理
+    private TerrainCompute terrainCompute;
+    // 同样需要GLES 3.1：地形分块和场景物体在GPU上剔除并通过间接绘制提交，为null时用glDrawArrays绘制整个网格
+    private GpuCulling gpuCulling;
 
     // 网格数据
     private TerrainDataV2.MeshData meshData;
+    private final GpuMesh gpuMesh;
+    private final TerrainPatchGrid patchGrid; // 曲面细分路径的地形patch，树木和建筑仍由gpuMesh绘制
+    private int standardVao;
+    private int solidWireframeVao;
+    private int wireframeVao;
+    private final TerrainConfig terrainConfig;
+    private volatile int tessellationLevel; // UI线程修改，GL线程读取
+    private volatile float targetTrianglePixels = 8.0f; // 曲面细分后三角形边长的目标像素数
+
+    // 视锥内的场景物体（每帧复用）
+    private final List<SceneIndex.SceneObject> visibleObjects = new ArrayList<>();
+
+    // 地形雕刻
+    private static final long SCULPT_BUDGET_NS = 4_000_000L; // 每帧雕刻时间预算4ms
+    private TerrainSculptor sculptor;
+    private TerrainSculptor.BrushMode brushMode = null; // null表示触摸用于旋转视角
+    private float brushRadius = 4.0f;
+    private float brushStrength = 0.3f;
+    private final ArrayDeque<float[]> pendingBrushStrokes = new ArrayDeque<>(); // 屏幕坐标 {x, y}
+    private final float[] inverseMvpMatrix = new float[16];
+    private final float[] pickNdc = new float[4];
+    private final float[] pickNear = new float[4];
+    private final float[] pickFar = new float[4];
+    private final float[] pickPoint = new float[3];
+    private int viewportWidth;
+    private int viewportHeight;
 
     // 矩阵
     private float[] modelMatrix = new float[16];
     private float[] viewMatrix = new float[16];
     private float[] projectionMatrix = new float[16];
     private float[] mvpMatrix = new float[16];
+    private final float[] inverseModelMatrix = new float[16];
 
     // 相机和光照
     private float angle = 0;
     private float[] lightPosition = {50.0f, 80.0f, 50.0f};
     private float[] cameraPosition = {0.0f, 40.0f, 80.0f};
+    private final float[] cameraWorld = new float[4];
+    private final float[] cameraModelPosition = new float[4]; // 模型空间中的相机位置（曲面细分的背面剔除）
 
     // 第一人称控制
     private float[] fpvPosition = {0.0f, 5.0f, 0.0f};
@@ -87,25 +113,47 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
     public enum RenderMode {
         SOLID,
         WIREFRAME,
-        TESSELLATION
+        TESSELLATION,
+        SOLID_WIREFRAME // 实体着色并在同一次绘制中叠加线框
     }
 
     private RenderMode currentMode = RenderMode.TESSELLATION;
-    private long lastFrameTime = System.currentTimeMillis();
+
+    // 按需渲染：状态变化时请求重绘，只有动画、雕刻或纹理上传进行中才连续绘制
+    private final RenderScheduler renderScheduler = new RenderScheduler();
 
     // 性能监控
     private int frameCount = 0;
     private long lastFpsTime = 0;
+    private long lastFpsLogTime = 0;
     private float fps = 0;
+    private final FrameProfiler frameProfiler = new FrameProfiler();
+
+    // 帧准备与命令录制：连续绘制时工作线程录制第N+1帧的命令，GL线程同时回放第N帧
+    private final CommandQueue commandQueue = new CommandQueue();
+    private final ExecutorService frameExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FramePrepare");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> pendingFrame; // 只在GL线程访问
+    private int recordedGeneration; // 录制的帧对应的RenderScheduler状态代数（准备帧时写入，等待完成后在GL线程读取）
+    private final long[] preparePhaseNanos = new long[FrameProfiler.PHASE_WAIT]; // 准备阶段各CPU阶段的耗时
 
     public GLRendererV2(Context context) {
         this.context = context;
 
         // 配置高级地形特性
-        configureAdvancedFeatures();
+        terrainConfig = configureAdvancedFeatures();
+        tessellationLevel = terrainConfig.getTessellationLevel();
 
         // 生成地形网格
-        meshData = TerrainDataV2.generateTerrainMesh();
+        meshData = new TerrainGenerator(terrainConfig).generate();
+        Log.i(TAG, "Terrain generated: " + meshData.terrainVertexCount / 3 + " triangles"
+                + (meshData.simplified ? " (simplified)" : ""));
+        sculptor = new TerrainSculptor(meshData);
+        gpuMesh = new GpuMesh(meshData, !meshData.simplified);
+        patchGrid = new TerrainPatchGrid(meshData);
 
         // 初始化位置
         fpvPosition[0] = 0.0f;
@@ -113,21 +161,27 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
         fpvPosition[2] = 0.0f;
 
         lastFpsTime = System.currentTimeMillis();
+        lastFpsLogTime = lastFpsTime;
     }
 
-    private void configureAdvancedFeatures() {
+    private TerrainConfig configureAdvancedFeatures() {
+        TerrainConfig.Builder builder = new TerrainConfig.Builder()
+                .setUseInterpolation(true)
+                .setEnableNormalMapping(true);
+
         // 根据设备能力配置特性
         if (GLSupportChecker.supportsTessellation()) {
-            TerrainDataV2.setEnableTessellation(true);
-            TerrainDataV2.setTessellationLevel(6); // 中等细分级别
-            Log.i(TAG, "Tessellation enabled with level: " + TerrainDataV2.getTessellationLevel());
+            builder.setEnableTessellation(true).setTessellationLevel(6); // 中等细分级别
+            Log.i(TAG, "Tessellation enabled with level: 6");
         } else {
-            TerrainDataV2.setEnableTessellation(false);
+            builder.setEnableTessellation(false);
             Log.i(TAG, "Tessellation not supported, using standard rendering");
         }
+        return builder.build();
+    }
 
-        TerrainDataV2.setUseInterpolation(true);
-        TerrainDataV2.setEnableNormalMapping(true);
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
     }
 
     private float getTerrainHeight(float worldX, float worldZ) {
@@ -138,6 +192,7 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
     public void toggleViewMode() {
         isFirstPersonView = !isFirstPersonView;
         isAutoRotating = !isFirstPersonView;
+        renderScheduler.requestRender();
     }
 
     public String getCurrentViewMode() {
@@ -161,9 +216,13 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
                 currentMode = RenderMode.TESSELLATION;
                 break;
             case TESSELLATION:
+                currentMode = solidWireframeProgram != null ? RenderMode.SOLID_WIREFRAME : RenderMode.WIREFRAME;
+                break;
+            case SOLID_WIREFRAME:
                 currentMode = RenderMode.WIREFRAME;
                 break;
         }
+        renderScheduler.requestRender();
     }
 
     public String getCurrentModeName() {
@@ -174,6 +233,8 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
                 return "骨架线框模式";
             case TESSELLATION:
                 return "曲面细分模式";
+            case SOLID_WIREFRAME:
+                return "实体线框叠加模式";
             default:
                 return "未知模式";
         }
@@ -183,13 +244,35 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
         return currentMode;
     }
 
+    // 设置雕刻笔刷，传入null恢复视角旋转
+    public void setBrushMode(TerrainSculptor.BrushMode mode) {
+        brushMode = mode;
+        if (mode != null) {
+            isAutoRotating = false;
+        }
+        renderScheduler.requestRender();
+    }
+
+    public TerrainSculptor.BrushMode getBrushMode() {
+        return brushMode;
+    }
+
+    public void setBrushSize(float radius, float strength) {
+        brushRadius = radius;
+        brushStrength = strength;
+        renderScheduler.requestRender();
+    }
+
     // 触摸控制
     public void onTouchEvent(MotionEvent event) {
-        if (!isFirstPersonView) {
+        if (brushMode != null && !isFirstPersonView) {
+            handleSculptTouch(event);
+        } else if (!isFirstPersonView) {
             handleGodViewTouch(event);
         } else {
             handleFirstPersonTouch(event);
         }
+        renderScheduler.requestRender();
     }
 
     private void handleGodViewTouch(MotionEvent event) {
@@ -216,6 +299,21 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
         }
     }
 
+    private void handleSculptTouch(MotionEvent event) {
+        switch (event.getAction()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                // 在UI线程只记录屏幕坐标，拾取和修改在GL线程进行
+                synchronized (pendingBrushStrokes) {
+                    for (int h = 0; h < event.getHistorySize(); h++) {
+                        pendingBrushStrokes.add(new float[]{event.getHistoricalX(h), event.getHistoricalY(h)});
+                    }
+                    pendingBrushStrokes.add(new float[]{event.getX(), event.getY()});
+                }
+                break;
+        }
+    }
+
     private void handleFirstPersonTouch(MotionEvent event) {
         switch (event.getAction()) {
             case MotionEvent.ACTION_DOWN:
@@ -252,6 +350,7 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
         this.moveRight = right;
         this.moveUp = up;
         this.moveDown = down;
+        renderScheduler.requestRender();
     }
 
     private void updateFirstPersonPosition(float deltaTime) {
@@ -299,6 +398,10 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         Log.i(TAG, "Surface created with OpenGL ES 3.2 support");
 
+        // 录制的命令引用旧上下文中的GL对象，全部丢弃
+        finishPendingFrame();
+        commandQueue.clear();
+
         GLES32.glClearColor(0.6f, 0.8f, 1.0f, 1.0f);
         GLES32.glEnable(GLES32.GL_DEPTH_TEST);
 
@@ -317,36 +420,136 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
         // 加载纹理
         loadTextures();
 
-        // 生成高度图纹理
-        if (true) {
-//            heightMapTextureId = TerrainDataV2.generateHeightMapTexture();
-            heightMapTextureId = GLTools.loadTexture(context, R.drawable.sz);
-            Log.i(TAG, "Height map texture generated: " + heightMapTextureId);
+        // 上传网格到GPU并为每个着色器程序创建VAO（新的EGL上下文中旧的缓冲已失效）
+        createVertexArrays();
+
+        // GPU计时查询（GL_EXT_disjoint_timer_query）
+        frameProfiler.initGpuTiming();
+
+        // 生成高精度高度图纹理（R16F，直接存储真实高度）
+        heightMapTextureId = TerrainTextures.generateFloatHeightMapTexture(meshData.heightMap, HEIGHT_MAP_FULL_PRECISION);
+        Log.i(TAG, "Height map texture generated: " + heightMapTextureId);
+
+        terrainCompute = TerrainCompute.create(context, meshData.heightMap);
+
+        // 法线贴图使降低密度后的网格保持原有光照细节：计算路径在GPU上生成，否则在CPU上烘焙（RG8）
+        if (terrainConfig.isNormalMappingEnabled()) {
+            normalMapTextureId = terrainCompute != null ? terrainCompute.createNormalMapTexture()
+                    : TerrainTextures.generateNormalMapTexture(meshData.heightMap);
+            Log.i(TAG, "Normal map texture generated: " + normalMapTextureId);
+        }
+
+        // 曲面细分的地形不经过网格顶点，地面类型从类型图纹理读取
+        if (tessellationProgram != null) {
+            typeMapTextureId = TerrainTextures.generateTypeMapTexture(meshData.typeMap);
+        }
+
+        // 新的EGL上下文中旧的PBO已失效，重新创建
+        createHeightMapUploader();
+
+        // 计算路径：生成法线贴图、金字塔和patch包围数据（覆盖TerrainPatchGrid从CPU上传的初始数据）
+        if (terrainCompute != null) {
+            terrainCompute.update(heightMapTextureId, normalMapTextureId, patchGrid.getBoundsTexture());
+        }
+
+        // GPU剔除的输出索引绑定到标准着色器的VAO（glDrawArrays不受影响）
+        gpuCulling = GpuCulling.create(context, meshData, terrainCompute);
+        if (gpuCulling != null) {
+            gpuCulling.attachIndexBuffer(standardVao);
+            gpuCulling.attachIndexBuffer(solidWireframeVao);
+        }
+
+        // 初始化阶段直接修改过GL状态，缓存的状态作废
+        GLStateCache.reset();
+    }
+
+    private void createVertexArrays() {
+        gpuMesh.upload();
+        standardVao = gpuMesh.createVertexArray(standardProgram.getAttribLocation("aPosition"),
+                standardProgram.getAttribLocation("aColor"), standardProgram.getAttribLocation("aNormal"),
+                standardProgram.getAttribLocation("aTexCoord"), standardProgram.getAttribLocation("aType"));
+        solidWireframeVao = solidWireframeProgram != null ? gpuMesh.createVertexArray(
+                solidWireframeProgram.getAttribLocation("aPosition"), solidWireframeProgram.getAttribLocation("aColor"),
+                solidWireframeProgram.getAttribLocation("aNormal"), solidWireframeProgram.getAttribLocation("aTexCoord"),
+                solidWireframeProgram.getAttribLocation("aType")) : 0;
+        wireframeVao = wireframeProgram != null ? gpuMesh.createWireframeVertexArray(
+                wireframeProgram.getAttribLocation("aPosition")) : 0;
+        // 曲面细分只绘制粗粒度的patch网格，只需要位置
+        if (tessellationProgram != null) {
+            patchGrid.upload(tessellationProgram.getAttribLocation("aPosition"));
         }
     }
 
+    private void createHeightMapUploader() {
+        // 旧上下文中的上传器只剩工作线程需要停止
+        if (heightMapUploader != null) {
+            heightMapUploader.abandon();
+            heightMapUploader = null;
+        }
+        if (normalMapUploader != null) {
+            normalMapUploader.abandon();
+            normalMapUploader = null;
+        }
+
+        final float[][] heights = meshData.heightMap;
+        if (heightMapTextureId <= 0 || heights == null) return;
+
+        heightMapUploader = new PboTextureUploader(heightMapTextureId,
+                heights.length, heights[0].length, GLES32.GL_RED,
+                HEIGHT_MAP_FULL_PRECISION ? GLES32.GL_FLOAT : GLES32.GL_HALF_FLOAT,
+                TerrainDataV2.getHeightTexelSize(HEIGHT_MAP_FULL_PRECISION),
+                (x, z, width, depth, out) -> TerrainDataV2.packHeightTexels(
+                        heights, x, z, width, depth, HEIGHT_MAP_FULL_PRECISION, out));
+
+        // 计算路径中法线贴图由高度图纹理重新生成，不需要上传
+        if (normalMapTextureId > 0 && terrainCompute == null) {
+            final float cellSize = TerrainDataV2.TERRAIN_SIZE / heights.length;
+            normalMapUploader = new PboTextureUploader(normalMapTextureId,
+                    heights.length, heights[0].length, GLES32.GL_RG, GLES32.GL_UNSIGNED_BYTE,
+                    NormalMapBaker.BYTES_PER_TEXEL,
+                    (x, z, width, depth, out) -> NormalMapBaker.packNormals(
+                            heights, cellSize, x, z, width, depth, out));
+        }
+    }
+
+    // 标记高度图中被修改的区域（网格坐标，右/下边界不包含），下一帧起异步上传
+    public void updateHeightMapRegion(int x0, int z0, int x1, int z1) {
+        markHeightMapDirty(x0, z0, x1, z1);
+        renderScheduler.requestRender();
+    }
+
+    // 只登记上传，不请求绘制：准备帧中的雕刻由同一帧提交，isAnimating()保证上传完成前继续绘制
+    // （通过requestRender()会改变状态代数，使预先录制的下一帧被丢弃）
+    private void markHeightMapDirty(int x0, int z0, int x1, int z1) {
+        PboTextureUploader uploader = heightMapUploader;
+        if (uploader != null) {
+            uploader.markDirty(x0, z0, x1, z1);
+        }
+        // 法线由相邻高度计算，受影响范围向外扩展一格
+        PboTextureUploader normalUploader = normalMapUploader;
+        if (normalUploader != null) {
+            normalUploader.markDirty(x0 - 1, z0 - 1, x1 + 1, z1 + 1);
+        }
+        // 分块高度范围随雕刻更新，曲面细分的patch剔除需要新的范围
+        patchGrid.markBoundsDirty();
+    }
+
     private void loadStandardShaders() {
         String vertexShader = ShaderUtils.loadShader(context, R.raw.vertex_shader);
         String fragmentShader = ShaderUtils.loadShader(context, R.raw.fragment_shader);
-        standardProgram = ShaderUtils.createProgram(vertexShader, fragmentShader);
+        standardProgram = ShaderProgram.create(vertexShader, fragmentShader);
 
-        if (standardProgram == 0) {
+        if (standardProgram == null) {
             throw new RuntimeException("Failed to create standard shader program");
         }
 
-        // 获取属性位置
-        positionHandle = GLES32.glGetAttribLocation(standardProgram, "aPosition");
-        colorHandle = GLES32.glGetAttribLocation(standardProgram, "aColor");
-        normalHandle = GLES32.glGetAttribLocation(standardProgram, "aNormal");
-        mvpMatrixHandle = GLES32.glGetUniformLocation(standardProgram, "uMVPMatrix");
-        modelMatrixHandle = GLES32.glGetUniformLocation(standardProgram, "uModelMatrix");
-        lightPositionHandle = GLES32.glGetUniformLocation(standardProgram, "uLightPosition");
-        cameraPositionHandle = GLES32.glGetUniformLocation(standardProgram, "uCameraPosition");
-        typeHandle = GLES32.glGetAttribLocation(standardProgram, "aType");
-        minHeightHandle = GLES32.glGetUniformLocation(standardProgram, "minHeight");
-        maxHeightHandle = GLES32.glGetUniformLocation(standardProgram, "maxHeight");
-        texCoordHandle = GLES32.glGetAttribLocation(standardProgram, "aTexCoord");
-        useTextureHandle = GLES32.glGetUniformLocation(standardProgram, "uUseTexture");
+        // 同一份源码编译出带线框叠加的变体（重心坐标由gl_VertexID得到，不需要几何着色器）
+        solidWireframeProgram = ShaderProgram.create(
+                ShaderUtils.addDefines(vertexShader, "SOLID_WIREFRAME"),
+                ShaderUtils.addDefines(fragmentShader, "SOLID_WIREFRAME"));
+        if (solidWireframeProgram == null) {
+            Log.w(TAG, "Failed to create solid wireframe shader program");
+        }
 
         Log.i(TAG, "Standard shaders loaded successfully");
     }
@@ -354,9 +557,9 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
     private void loadWireframeShaders() {
         String wireframeVertexShader = ShaderUtils.loadShader(context, R.raw.wireframe_vertex_shader);
         String wireframeFragmentShader = ShaderUtils.loadShader(context, R.raw.wireframe_fragment_shader);
-        wireframeProgram = ShaderUtils.createProgram(wireframeVertexShader, wireframeFragmentShader);
+        wireframeProgram = ShaderProgram.create(wireframeVertexShader, wireframeFragmentShader);
 
-        if (wireframeProgram == 0) {
+        if (wireframeProgram == null) {
             Log.w(TAG, "Failed to create wireframe shader program");
         }
     }
@@ -368,38 +571,31 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
             String tessEvalShader = ShaderUtils.loadShader(context, R.raw.tess_evaluation_shader);
             String tessFragmentShader = ShaderUtils.loadShader(context, R.raw.tess_fragment_shader);
 
-            tessellationProgram = GLES32.glCreateProgram();
+            int program = GLES32.glCreateProgram();
 
             // 编译并附加着色器 - 使用正确的常量名
-            attachShader(tessellationProgram, GLES32.GL_VERTEX_SHADER, tessVertexShader);
-            attachShader(tessellationProgram, GLES32.GL_TESS_CONTROL_SHADER, tessControlShader);
-            attachShader(tessellationProgram, GLES32.GL_TESS_EVALUATION_SHADER, tessEvalShader);
-            attachShader(tessellationProgram, GLES32.GL_FRAGMENT_SHADER, tessFragmentShader);
+            attachShader(program, GLES32.GL_VERTEX_SHADER, tessVertexShader);
+            attachShader(program, GLES32.GL_TESS_CONTROL_SHADER, tessControlShader);
+            attachShader(program, GLES32.GL_TESS_EVALUATION_SHADER, tessEvalShader);
+            attachShader(program, GLES32.GL_FRAGMENT_SHADER, tessFragmentShader);
 
-            GLES32.glLinkProgram(tessellationProgram);
+            GLES32.glLinkProgram(program);
 
             // 检查链接状态
             int[] linkStatus = new int[1];
-            GLES32.glGetProgramiv(tessellationProgram, GLES32.GL_LINK_STATUS, linkStatus, 0);
+            GLES32.glGetProgramiv(program, GLES32.GL_LINK_STATUS, linkStatus, 0);
             if (linkStatus[0] != GLES32.GL_TRUE) {
-                String error = GLES32.glGetProgramInfoLog(tessellationProgram);
+                String error = GLES32.glGetProgramInfoLog(program);
                 Log.e(TAG, "Tessellation shader link error: " + error);
-                tessellationProgram = 0;
+                GLES32.glDeleteProgram(program);
+                tessellationProgram = null;
             } else {
-                // 获取uniform位置
-                tessMvpMatrixHandle = GLES32.glGetUniformLocation(tessellationProgram, "uMVPMatrix");
-                tessModelMatrixHandle = GLES32.glGetUniformLocation(tessellationProgram, "uModelMatrix");
-                tessTessLevelHandle = GLES32.glGetUniformLocation(tessellationProgram, "uTessLevel");
-                tessHeightMapHandle = GLES32.glGetUniformLocation(tessellationProgram, "uHeightMap");
-                tessTerrainSizeHandle = GLES32.glGetUniformLocation(tessellationProgram, "uTerrainSize");
-                tessCameraPositionHandle = GLES32.glGetUniformLocation(tessellationProgram, "uCameraPosition");
-                tessLightPositionHandle = GLES32.glGetUniformLocation(tessellationProgram, "uLightPosition");
-
+                tessellationProgram = new ShaderProgram(program);
                 Log.i(TAG, "Tessellation shaders loaded successfully");
             }
         } catch (Exception e) {
             Log.e(TAG, "Error loading tessellation shaders", e);
-            tessellationProgram = 0;
+            tessellationProgram = null;
         }
     }
 
@@ -434,7 +630,11 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
 
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
+        // 投影矩阵和视口尺寸由准备帧读取
+        finishPendingFrame();
         GLES32.glViewport(0, 0, width, height);
+        viewportWidth = width;
+        viewportHeight = height;
 
         float ratio = (float) width / height;
         Matrix.perspectiveM(projectionMatrix, 0, 45.0f, ratio, 0.1f, 300.0f);
@@ -495,22 +695,90 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
 
     @Override
     public void onDrawFrame(GL10 gl) {
-        long currentTime = System.currentTimeMillis();
-        float deltaTime = (currentTime - lastFrameTime) * 0.001f;
-        lastFrameTime = currentTime;
+        frameProfiler.beginFrame();
+        InstrumentedGL.beginFrame();
+
+        // 静止一段时间后的第一帧为0
+        float deltaTime = renderScheduler.beginFrame();
 
         // 更新FPS
         updateFPS();
 
+        // 连续绘制时本帧的命令已由工作线程在上一帧回放期间录制好；静止后的第一帧在GL线程上直接准备
+        // 录制开始之后又有输入或设置变化（状态代数改变）时丢弃预先录制的帧，按最新状态重新准备，
+        // 否则动画结束时的最后一帧会停留在过时的画面上
+        Future<?> prepared = pendingFrame;
+        pendingFrame = null;
+        if (prepared != null) {
+            waitFor(prepared);
+            frameProfiler.mark(FrameProfiler.PHASE_WAIT);
+        }
+        if (prepared == null || recordedGeneration != renderScheduler.getGeneration()) {
+            // 被丢弃的帧已推进过本帧的移动，重新准备时不再推进
+            prepareFrame(prepared == null ? deltaTime : 0);
+            frameProfiler.skip();
+        }
+        frameProfiler.addPhaseTime(FrameProfiler.PHASE_INPUT, preparePhaseNanos[FrameProfiler.PHASE_INPUT]);
+        frameProfiler.addPhaseTime(FrameProfiler.PHASE_CAMERA, preparePhaseNanos[FrameProfiler.PHASE_CAMERA]);
+        frameProfiler.addPhaseTime(FrameProfiler.PHASE_RECORD, preparePhaseNanos[FrameProfiler.PHASE_RECORD]);
+
+        // 提交雕刻修改的顶点和高度图的局部更新（读取网格数据，必须在下一次准备开始之前完成）
+        frameProfiler.beginGpuPass(FrameProfiler.PASS_UPLOAD);
+        int[] range = sculptor.takeDirtyVertexRange();
+        if (range != null) {
+            gpuMesh.updateGeometry(range[0], range[1]);
+        }
+        boolean heightsUploaded = heightMapUploader != null && heightMapUploader.commit();
+        if (terrainCompute != null) {
+            // 高度纹理更新后在GPU上重新生成法线贴图和包围数据
+            if (heightsUploaded) {
+                terrainCompute.update(heightMapTextureId, normalMapTextureId, patchGrid.getBoundsTexture());
+            }
+        } else {
+            if (normalMapUploader != null) {
+                normalMapUploader.commit();
+            }
+            patchGrid.commitBounds();
+        }
+        frameProfiler.endGpuPass();
+        frameProfiler.mark(FrameProfiler.PHASE_UPLOAD);
+
+        CommandBuffer commands = commandQueue.acquire();
+
+        // 画面还会变化时，回放本帧的同时在工作线程准备下一帧
+        boolean animating = isAnimating();
+        if (animating) {
+            pendingFrame = frameExecutor.submit(() -> prepareFrame(deltaTime));
+        }
+
+        frameProfiler.beginGpuPass(FrameProfiler.PASS_SCENE);
+        commands.execute();
+        frameProfiler.endGpuPass();
+        frameProfiler.mark(FrameProfiler.PHASE_DRAW);
+
+        // 检查错误
+        ShaderUtils.checkGLError("onDrawFrame");
+
+        InstrumentedGL.endFrame();
+        frameProfiler.endFrame();
+        renderScheduler.endFrame(animating);
+    }
+
+    // 准备一帧：输入、相机、雕刻笔刷、视锥查询，并把绘制命令录制到命令队列
+    // 在工作线程或GL线程执行（两者不会同时进行），不调用GL
+    private void prepareFrame(float deltaTime) {
+        long start = System.nanoTime();
+        // 在读取任何状态之前记录，之后的变化一定会使代数不一致
+        recordedGeneration = renderScheduler.getGeneration();
+
         // 更新第一人称位置
         updateFirstPersonPosition(deltaTime);
+        long inputNanos = System.nanoTime() - start;
 
         // 更新相机
+        long mark = System.nanoTime();
         updateCamera();
 
-        // 清除屏幕
-        GLES32.glClear(GLES32.GL_COLOR_BUFFER_BIT | GLES32.GL_DEPTH_BUFFER_BIT);
-
         // 更新模型矩阵
         Matrix.setIdentityM(modelMatrix, 0);
         Matrix.rotateM(modelMatrix, 0, angle, 0, 1, 0);
@@ -518,26 +786,213 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
         // 计算MVP矩阵
         Matrix.multiplyMM(mvpMatrix, 0, viewMatrix, 0, modelMatrix, 0);
         Matrix.multiplyMM(mvpMatrix, 0, projectionMatrix, 0, mvpMatrix, 0);
+        long cameraNanos = System.nanoTime() - mark;
+
+        // 处理雕刻笔刷（需要当前帧的MVP矩阵做拾取）
+        mark = System.nanoTime();
+        processBrushStrokes();
+        inputNanos += System.nanoTime() - mark;
+
+        // 通过空间索引查询视锥内的物体（索引位于模型空间，直接使用MVP矩阵）
+        mark = System.nanoTime();
+        // GPU剔除时可见性完全在GPU上判断，不再逐个物体在CPU上查询
+        visibleObjects.clear();
+        if (gpuCulling == null) {
+            meshData.sceneIndex.queryFrustum(mvpMatrix, visibleObjects);
+        }
+        cameraNanos += System.nanoTime() - mark;
+
+        mark = System.nanoTime();
+        CommandBuffer commands = commandQueue.beginRecording();
+        recordScene(commands);
+        commandQueue.endRecording();
+
+        preparePhaseNanos[FrameProfiler.PHASE_INPUT] = inputNanos;
+        preparePhaseNanos[FrameProfiler.PHASE_CAMERA] = cameraNanos;
+        preparePhaseNanos[FrameProfiler.PHASE_RECORD] = System.nanoTime() - mark;
+    }
+
+    private void recordScene(CommandBuffer commands) {
+        // 清除屏幕
+        commands.clear(GLES32.GL_COLOR_BUFFER_BIT | GLES32.GL_DEPTH_BUFFER_BIT);
 
         // 根据模式渲染
         switch (currentMode) {
             case SOLID:
-//                renderStandard();
+//                recordStandard(commands);
                 break;
             case WIREFRAME:
-                renderWireframe();
+                recordWireframe(commands);
                 break;
             case TESSELLATION:
-                if (tessellationProgram != 0) {
-                    renderWithTessellation();
+                if (tessellationProgram != null) {
+                    recordTessellation(commands);
                 } else {
-//                    renderStandard(); // 回退到标准渲染
+//                    recordStandard(commands); // 回退到标准渲染
                 }
                 break;
+            case SOLID_WIREFRAME:
+                recordSolidWireframe(commands);
+                break;
         }
+    }
 
-        // 检查错误
-        ShaderUtils.checkGLError("onDrawFrame");
+    // 等待工作线程完成准备；工作线程中的异常在GL线程重新抛出
+    private static void waitFor(Future<?> frame) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                frame.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Frame preparation failed", e.getCause());
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // 丢弃正在准备的帧（等待其结束，之后工作线程不再访问渲染器状态）
+    private void finishPendingFrame() {
+        Future<?> prepared = pendingFrame;
+        pendingFrame = null;
+        if (prepared != null) {
+            waitFor(prepared);
+        }
+    }
+
+    // 下一帧的画面是否会变化：自动旋转、按住移动键、笔刷超出本帧预算或纹理上传尚未完成
+    private boolean isAnimating() {
+        if (isFirstPersonView) {
+            if (moveForward || moveBackward || moveLeft || moveRight || moveUp || moveDown) return true;
+        } else if (isAutoRotating) {
+            return true;
+        }
+        synchronized (pendingBrushStrokes) {
+            if (!pendingBrushStrokes.isEmpty()) return true;
+        }
+        return (heightMapUploader != null && heightMapUploader.hasPendingWork())
+                || (normalMapUploader != null && normalMapUploader.hasPendingWork());
+    }
+
+    // 在时间预算内处理排队的笔刷，超出预算的部分留到下一帧
+    private void processBrushStrokes() {
+        if (sculptor == null || viewportWidth == 0) return;
+
+        long start = System.nanoTime();
+        boolean inverted = false;
+        int dirtyX0 = Integer.MAX_VALUE, dirtyZ0 = Integer.MAX_VALUE;
+        int dirtyX1 = Integer.MIN_VALUE, dirtyZ1 = Integer.MIN_VALUE;
+
+        while (System.nanoTime() - start < SCULPT_BUDGET_NS) {
+            float[] stroke;
+            synchronized (pendingBrushStrokes) {
+                stroke = pendingBrushStrokes.poll();
+            }
+            if (stroke == null) break;
+
+            TerrainSculptor.BrushMode mode = brushMode;
+            if (mode == null) continue;
+
+            if (!inverted) {
+                if (!Matrix.invertM(inverseMvpMatrix, 0, mvpMatrix, 0)) return;
+                inverted = true;
+            }
+            if (!pickTerrain(stroke[0], stroke[1], pickPoint)) continue;
+
+            int[] rect = sculptor.applyBrush(pickPoint[0], pickPoint[2], brushRadius, brushStrength, mode);
+            if (rect == null) continue;
+
+            dirtyX0 = Math.min(dirtyX0, rect[0]);
+            dirtyZ0 = Math.min(dirtyZ0, rect[1]);
+            dirtyX1 = Math.max(dirtyX1, rect[2]);
+            dirtyZ1 = Math.max(dirtyZ1, rect[3]);
+        }
+
+        // 重建过的顶点由GL线程通过takeDirtyVertexRange()提交到VBO
+        if (dirtyX0 < dirtyX1) {
+            markHeightMapDirty(dirtyX0, dirtyZ0, dirtyX1, dirtyZ1);
+        }
+    }
+
+    // 屏幕坐标 -> 模型空间中射线与高度场的交点
+    private boolean pickTerrain(float screenX, float screenY, float[] result) {
+        float ndcX = screenX / viewportWidth * 2.0f - 1.0f;
+        float ndcY = 1.0f - screenY / viewportHeight * 2.0f;
+
+        pickNdc[0] = ndcX;
+        pickNdc[1] = ndcY;
+        pickNdc[2] = -1.0f;
+        pickNdc[3] = 1.0f;
+        Matrix.multiplyMV(pickNear, 0, inverseMvpMatrix, 0, pickNdc, 0);
+        pickNdc[2] = 1.0f;
+        Matrix.multiplyMV(pickFar, 0, inverseMvpMatrix, 0, pickNdc, 0);
+        for (int k = 0; k < 3; k++) {
+            pickNear[k] /= pickNear[3];
+            pickFar[k] /= pickFar[3];
+        }
+
+        float dirX = pickFar[0] - pickNear[0];
+        float dirY = pickFar[1] - pickNear[1];
+        float dirZ = pickFar[2] - pickNear[2];
+        float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        if (length == 0) return false;
+
+        // 以半个格子为步长沿射线前进，找到第一次低于地面的位置后二分细化
+        float step = TerrainDataV2.TERRAIN_SIZE / meshData.gridSize * 0.5f;
+        int steps = (int) (length / step);
+        dirX /= length;
+        dirY /= length;
+        dirZ /= length;
+
+        float prevT = 0;
+        for (int n = 1; n <= steps; n++) {
+            float t = n * step;
+            float x = pickNear[0] + dirX * t;
+            float y = pickNear[1] + dirY * t;
+            float z = pickNear[2] + dirZ * t;
+            if (y <= sampleHeight(x, z)) {
+                float lo = prevT, hi = t;
+                for (int k = 0; k < 8; k++) {
+                    float mid = (lo + hi) * 0.5f;
+                    float mx = pickNear[0] + dirX * mid;
+                    float mz = pickNear[2] + dirZ * mid;
+                    if (pickNear[1] + dirY * mid <= sampleHeight(mx, mz)) {
+                        hi = mid;
+                    } else {
+                        lo = mid;
+                    }
+                }
+                result[0] = pickNear[0] + dirX * hi;
+                result[1] = pickNear[1] + dirY * hi;
+                result[2] = pickNear[2] + dirZ * hi;
+                return true;
+            }
+            prevT = t;
+        }
+        return false;
+    }
+
+    // 在模型空间坐标处双线性采样高度图，超出地形范围时返回极小值
+    private float sampleHeight(float x, float z) {
+        float[][] heights = meshData.heightMap;
+        int gridSize = meshData.gridSize;
+        float gi = (x / TerrainDataV2.TERRAIN_SIZE + 0.5f) * gridSize;
+        float gj = (z / TerrainDataV2.TERRAIN_SIZE + 0.5f) * gridSize;
+        if (gi < 0 || gj < 0 || gi > gridSize - 1 || gj > gridSize - 1) {
+            return -Float.MAX_VALUE;
+        }
+
+        int i0 = Math.min(gridSize - 2, (int) gi);
+        int j0 = Math.min(gridSize - 2, (int) gj);
+        float fi = gi - i0;
+        float fj = gj - j0;
+        float h0 = heights[i0][j0] * (1 - fi) + heights[i0 + 1][j0] * fi;
+        float h1 = heights[i0][j0 + 1] * (1 - fi) + heights[i0 + 1][j0 + 1] * fi;
+        return h0 * (1 - fj) + h1 * fj;
     }
 
     private void updateFPS() {
@@ -549,188 +1004,289 @@ public class GLRendererV2 implements GLSurfaceView.Renderer {
             lastFpsTime = currentTime;
 
             // 每5秒记录一次FPS（避免日志过多）
-            if (currentTime % 5000 < 16) { // 约每5秒
-                Log.i(TAG, String.format("FPS: %.1f, Mode: %s", fps, getCurrentModeName()));
+            if (currentTime - lastFpsLogTime >= 5000) {
+                lastFpsLogTime = currentTime;
+                Log.i(TAG, String.format("FPS: %.1f, Mode: %s, %s", fps, getCurrentModeName(),
+                        frameProfiler.getSummary()));
             }
         }
     }
 
-    private void renderStandard() {
-        GLES32.glUseProgram(standardProgram);
+    private void recordStandard(CommandBuffer commands) {
+        commands.useProgram(standardProgram);
+        recordStandard(commands, standardVao, 0, meshData.vertexCount);
+    }
 
-        // 设置uniforms
-        GLES32.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES32.glUniformMatrix4fv(modelMatrixHandle, 1, false, modelMatrix, 0);
-        GLES32.glUniform3f(lightPositionHandle, lightPosition[0], lightPosition[1], lightPosition[2]);
-        GLES32.glUniform3f(cameraPositionHandle, cameraPosition[0], cameraPosition[1], cameraPosition[2]);
-        GLES32.glUniform1f(minHeightHandle, meshData.minHeight);
-        GLES32.glUniform1f(maxHeightHandle, meshData.maxHeight);
+    private void recordSolidWireframe(CommandBuffer commands) {
+        if (solidWireframeProgram == null) return;
 
-        // 启用纹理
-        if (useTextureHandle != -1) {
-            GLES32.glUniform1i(useTextureHandle, 1);
+        // GPU剔除在切换到绘制程序之前录制
+        if (gpuCulling != null) {
+            gpuCulling.recordCull(commands, mvpMatrix, true);
         }
 
-        // 绑定纹理
-        if (wallTextureId != 0) {
-            GLES32.glActiveTexture(GLES32.GL_TEXTURE0);
-            GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, wallTextureId);
-            int wallTextureHandle = GLES32.glGetUniformLocation(standardProgram, "uWallTexture");
-            if (wallTextureHandle != -1) {
-                GLES32.glUniform1i(wallTextureHandle, 0);
-            }
+        commands.useProgram(solidWireframeProgram);
+        commands.setVec3("uWireframeColor", 0.0f, 0.0f, 0.0f);
+        commands.setFloat("uWireframeWidth", 1.5f);
+        if (gpuCulling == null) {
+            recordStandard(commands, solidWireframeVao, 0, meshData.vertexCount);
+            return;
         }
 
-        if (roofTextureId != 0) {
-            GLES32.glActiveTexture(GLES32.GL_TEXTURE1);
-            GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, roofTextureId);
-            int roofTextureHandle = GLES32.glGetUniformLocation(standardProgram, "uRoofTexture");
-            if (roofTextureHandle != -1) {
-                GLES32.glUniform1i(roofTextureHandle, 1);
-            }
-        }
+        // 地形分块和场景物体各一次间接绘制，绘制数量由剔除结果决定
+        recordStandardUniforms(commands);
+        commands.bindVertexArray(solidWireframeVao);
+        gpuCulling.draw(commands, GpuCulling.COMMAND_TERRAIN);
+        gpuCulling.draw(commands, GpuCulling.COMMAND_OBJECTS);
+    }
 
-        // 传递顶点数据
-        GLES32.glEnableVertexAttribArray(positionHandle);
-        GLES32.glVertexAttribPointer(positionHandle, 3, GLES32.GL_FLOAT, false, 12, meshData.vertices);
+    // 标准着色器及其变体共用的uniform、纹理和绘制顶点 [first, first + count)（程序须已由useProgram()录制）
+    private void recordStandard(CommandBuffer commands, int vao, int first, int count) {
+        recordStandardUniforms(commands);
 
-        GLES32.glEnableVertexAttribArray(colorHandle);
-        GLES32.glVertexAttribPointer(colorHandle, 3, GLES32.GL_FLOAT, false, 12, meshData.colors);
+        // 顶点属性已记录在VAO中
+        commands.bindVertexArray(vao);
+        commands.drawArrays(GLES32.GL_TRIANGLES, first, count);
+    }
 
-        GLES32.glEnableVertexAttribArray(normalHandle);
-        GLES32.glVertexAttribPointer(normalHandle, 3, GLES32.GL_FLOAT, false, 12, meshData.normals);
+    // 标准着色器及其变体共用的uniform和纹理（间接绘制路径单独使用）
+    private void recordStandardUniforms(CommandBuffer commands) {
+        // 设置uniforms（回放时值未变化的uniform不会重复提交）
+        commands.setMat4("uMVPMatrix", mvpMatrix);
+        commands.setMat4("uModelMatrix", modelMatrix);
+        commands.setVec3("uLightPosition", lightPosition);
+        commands.setVec3("uCameraPosition", cameraPosition);
+        commands.setFloat("minHeight", meshData.minHeight);
+        commands.setFloat("maxHeight", meshData.maxHeight);
 
-        if (texCoordHandle != -1 && meshData.texCoords != null) {
-            GLES32.glEnableVertexAttribArray(texCoordHandle);
-            GLES32.glVertexAttribPointer(texCoordHandle, 2, GLES32.GL_FLOAT, false, 8, meshData.texCoords);
-        }
+        // 启用纹理
+        commands.setInt("uUseTexture", 1);
 
-        GLES32.glEnableVertexAttribArray(typeHandle);
-        GLES32.glVertexAttribIPointer(typeHandle, 1, GLES32.GL_INT, 4, meshData.types);
+        // 绑定纹理
+        if (wallTextureId != 0) {
+            commands.bindTexture2D(0, wallTextureId);
+            commands.setInt("uWallTexture", 0);
+        }
 
-        // 绘制
-        GLES32.glDrawArrays(GLES32.GL_TRIANGLES, 0, meshData.vertexCount);
+        if (roofTextureId != 0) {
+            commands.bindTexture2D(1, roofTextureId);
+            commands.setInt("uRoofTexture", 1);
+        }
 
-        // 禁用顶点数组
-        disableVertexArrays();
+        // 绑定法线贴图（地面类型的法线从贴图读取）
+        boolean useNormalMap = normalMapTextureId > 0;
+        commands.setInt("uUseNormalMap", useNormalMap ? 1 : 0);
+        if (useNormalMap) {
+            commands.bindTexture2D(3, normalMapTextureId);
+            commands.setInt("uNormalMap", 3);
+            commands.setFloat("uTerrainSize", TerrainDataV2.TERRAIN_SIZE);
+            commands.setVec2("uNormalMapTexelSize", 1.0f / meshData.gridSize, 1.0f / meshData.gridSize);
+        }
     }
 
-    private void renderWireframe() {
-        if (wireframeProgram == 0) {
-//            renderStandard(); // 回退到标准渲染
+    private void recordWireframe(CommandBuffer commands) {
+        if (wireframeProgram == null) {
+//            recordStandard(commands); // 回退到标准渲染
             return;
         }
 
-        GLES32.glUseProgram(wireframeProgram);
-
-        int wireframeMvpMatrixHandle = GLES32.glGetUniformLocation(wireframeProgram, "uMVPMatrix");
-        int wireframeColorHandle = GLES32.glGetUniformLocation(wireframeProgram, "uColor");
-        int wireframePositionHandle = GLES32.glGetAttribLocation(wireframeProgram, "aPosition");
+        commands.useProgram(wireframeProgram);
+        commands.setMat4("uMVPMatrix", mvpMatrix);
 
-        GLES32.glUniformMatrix4fv(wireframeMvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES32.glUniform3f(wireframeColorHandle, 0.0f, 1.0f, 0.0f);
-
-        GLES32.glEnableVertexAttribArray(wireframePositionHandle);
-        GLES32.glVertexAttribPointer(wireframePositionHandle, 3, GLES32.GL_FLOAT, false, 12, meshData.vertices);
+        commands.bindVertexArray(wireframeVao);
 
         // 绘制点
-        GLES32.glUniform3f(wireframeColorHandle, 1.0f, 0.0f, 0.0f);
-        GLES32.glDrawArrays(GLES32.GL_POINTS, 0, meshData.vertexCount);
+        commands.setVec3("uColor", 1.0f, 0.0f, 0.0f);
+        gpuMesh.drawWireframePoints(commands);
 
         // 绘制线框
-        GLES32.glUniform3f(wireframeColorHandle, 0.0f, 1.0f, 0.0f);
-        GLES32.glLineWidth(2.0f);
-
-        for (int i = 0; i < meshData.vertexCount; i += 3) {
-            GLES32.glDrawArrays(GLES32.GL_LINE_LOOP, i, 3);
-        }
+        commands.setVec3("uColor", 0.0f, 1.0f, 0.0f);
+        commands.lineWidth(2.0f);
 
-        GLES32.glDisableVertexAttribArray(wireframePositionHandle);
+        // 去重后的边一次绘制完成
+        gpuMesh.drawWireframeEdges(commands);
     }
 
-    private void renderWithTessellation() {
-        if (tessellationProgram == 0 || heightMapTextureId == -1) {
-//            renderStandard(); // 回退到标准渲染
+    private void recordTessellation(CommandBuffer commands) {
+        if (tessellationProgram == null || heightMapTextureId == -1) {
+//            recordStandard(commands); // 回退到标准渲染
             return;
         }
 
-        GLES32.glUseProgram(tessellationProgram);
-
-        // 设置uniforms
-        GLES32.glUniformMatrix4fv(tessMvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES32.glUniformMatrix4fv(tessModelMatrixHandle, 1, false, modelMatrix, 0);
-        GLES32.glUniform1f(tessTessLevelHandle, TerrainDataV2.getTessellationLevel());
-        GLES32.glUniform1f(tessTerrainSizeHandle, TerrainDataV2.TERRAIN_SIZE);
-        GLES32.glUniform3f(tessCameraPositionHandle, cameraPosition[0], cameraPosition[1], cameraPosition[2]);
-        GLES32.glUniform3f(tessLightPositionHandle, lightPosition[0], lightPosition[1], lightPosition[2]);
+        commands.useProgram(tessellationProgram);
+
+        // 设置uniforms（回放时值未变化的uniform不会重复提交）
+        commands.setMat4("uMVPMatrix", mvpMatrix);
+        commands.setMat4("uModelMatrix", modelMatrix);
+        commands.setFloat("uTessLevel", tessellationLevel);
+        commands.setFloat("uTerrainSize", TerrainDataV2.TERRAIN_SIZE);
+
+        // 屏幕空间细分级别：视空间深度为1处一个单位对应的像素数
+        commands.setFloat("uPixelsPerUnit", projectionMatrix[5] * viewportHeight * 0.5f);
+        commands.setFloat("uTargetTrianglePixels", targetTrianglePixels);
+
+        // patch背面剔除在模型空间进行
+        cameraWorld[0] = cameraPosition[0];
+        cameraWorld[1] = cameraPosition[1];
+        cameraWorld[2] = cameraPosition[2];
+        cameraWorld[3] = 1.0f;
+        Matrix.invertM(inverseModelMatrix, 0, modelMatrix, 0);
+        Matrix.multiplyMV(cameraModelPosition, 0, inverseModelMatrix, 0, cameraWorld, 0);
+        commands.setVec3("uCameraModelPosition", cameraModelPosition[0], cameraModelPosition[1], cameraModelPosition[2]);
+        commands.setVec3("uCameraPosition", cameraPosition);
+        commands.setVec3("uLightPosition", lightPosition);
+
+        // 高度图范围元数据
+        float[][] heights = meshData.heightMap;
+        commands.setFloat("uHeightMin", meshData.heightMapMinHeight);
+        commands.setFloat("uHeightMax", meshData.heightMapMaxHeight);
+        commands.setVec2("uHeightMapTexelSize", 1.0f / heights.length, 1.0f / heights[0].length);
 
         // 绑定高度图纹理
-        GLES32.glActiveTexture(GLES32.GL_TEXTURE2);
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, heightMapTextureId);
-        GLES32.glUniform1i(tessHeightMapHandle, 2);
-
-        // 设置顶点数据（只需要位置）
-        int tessPositionHandle = GLES32.glGetAttribLocation(tessellationProgram, "aPosition");
-        GLES32.glEnableVertexAttribArray(tessPositionHandle);
-        GLES32.glVertexAttribPointer(tessPositionHandle, 3, GLES32.GL_FLOAT, false, 12, meshData.vertices);
+        commands.bindTexture2D(2, heightMapTextureId);
+        commands.setInt("uHeightMap", 2);
+
+        // 绑定法线贴图（每个顶点一次采样代替四次高度采样）
+        boolean useNormalMap = normalMapTextureId > 0;
+        commands.setInt("uUseNormalMap", useNormalMap ? 1 : 0);
+        if (useNormalMap) {
+            commands.bindTexture2D(3, normalMapTextureId);
+            commands.setInt("uNormalMap", 3);
+        }
 
-        // 使用曲面细分绘制
-        GLES32.glPatchParameteri(GLES32.GL_PATCH_VERTICES, 3);
-        GLES32.glDrawArrays(GLES32.GL_PATCHES, 0, meshData.vertexCount);
+        // 每个patch的高度范围和坡度（视锥和背面剔除）
+        commands.bindTexture2D(4, patchGrid.getBoundsTexture());
+        commands.setInt("uPatchBounds", 4);
 
-        GLES32.glDisableVertexAttribArray(tessPositionHandle);
-    }
+        // 地面类型（道路等固定颜色的区域）
+        boolean useTypeMap = typeMapTextureId > 0;
+        commands.setInt("uUseTypeMap", useTypeMap ? 1 : 0);
+        if (useTypeMap) {
+            commands.bindTexture2D(5, typeMapTextureId);
+            commands.setInt("uTypeMap", 5);
+        }
 
-    private void disableVertexArrays() {
-        GLES32.glDisableVertexAttribArray(positionHandle);
-        GLES32.glDisableVertexAttribArray(colorHandle);
-        GLES32.glDisableVertexAttribArray(normalHandle);
-        GLES32.glDisableVertexAttribArray(typeHandle);
-        if (texCoordHandle != -1) {
-            GLES32.glDisableVertexAttribArray(texCoordHandle);
+        // 使用曲面细分绘制地形patch
+        patchGrid.draw(commands);
+
+        // 树木和建筑不经过曲面细分，用标准着色器绘制网格中地形之后的顶点
+        int objectVertexCount = meshData.vertexCount - meshData.terrainVertexCount;
+        if (objectVertexCount > 0 && gpuCulling != null) {
+            // 只剔除场景物体（地形由patch绘制）
+            gpuCulling.recordCull(commands, mvpMatrix, false);
+            commands.useProgram(standardProgram);
+            recordStandardUniforms(commands);
+            commands.bindVertexArray(standardVao);
+            gpuCulling.draw(commands, GpuCulling.COMMAND_OBJECTS);
+        } else if (objectVertexCount > 0) {
+            commands.useProgram(standardProgram);
+            recordStandard(commands, standardVao, meshData.terrainVertexCount, objectVertexCount);
         }
     }
 
     // 公共方法获取状态信息
     public String getPerformanceInfo() {
-        return String.format("FPS: %.1f\n顶点数: %d\n模式: %s\n视角: %s\n细分: %s",
-                fps, meshData.vertexCount, getCurrentModeName(), getCurrentViewMode(),
-                TerrainDataV2.isTessellationEnabled() ? "启用" : "禁用");
+        return String.format("FPS: %.1f\n顶点数: %d\n可见物体: %s/%d\n模式: %s\n视角: %s\n细分: %s\n预处理: %s\n剔除: %s",
+                fps, meshData.vertexCount, gpuCulling != null ? "-" : String.valueOf(visibleObjects.size()),
+                meshData.sceneIndex.size(),
+                getCurrentModeName(), getCurrentViewMode(),
+                terrainConfig.isTessellationEnabled() ? "启用" : "禁用",
+                terrainCompute != null ? "计算着色器" : "CPU",
+                gpuCulling != null ? "GPU（间接绘制）" : "CPU")
+                + "\n" + frameProfiler.getReport();
     }
 
     public String getDetailedInfo() {
         String capabilities = GLSupportChecker.getCapabilityReport();
-        return capabilities + "\n\n" + getPerformanceInfo();
+        return capabilities + "\n\n" + getPerformanceInfo() + "\n" + InstrumentedGL.getFrameReport();
     }
 
     public void setTessellationLevel(int level) {
         if (GLSupportChecker.supportsTessellation()) {
-            TerrainDataV2.setTessellationLevel(level);
+            tessellationLevel = Math.max(1, Math.min(16, level));
             Log.i(TAG, "Tessellation level set to: " + level);
+            renderScheduler.requestRender();
         }
     }
 
+    // 曲面细分后三角形边长的目标像素数，越小越精细
+    public void setTargetTrianglePixels(float pixels) {
+        targetTrianglePixels = Math.max(1.0f, pixels);
+        renderScheduler.requestRender();
+    }
+
     public void cycleQualityLevel() {
-        int currentLevel = TerrainDataV2.getTessellationLevel();
+        int currentLevel = tessellationLevel;
         int newLevel = (currentLevel % 8) + 2; // 在2-8之间循环
         setTessellationLevel(newLevel);
     }
 
+    // 停止工作线程（任意线程，不调用GL），Activity销毁时调用；GL线程此时已暂停，GL对象随EGL上下文释放
+    // 可以在cleanup()之后再次调用
+    public void shutdown() {
+        frameExecutor.shutdown();
+        if (heightMapUploader != null) {
+            heightMapUploader.abandon();
+            heightMapUploader = null;
+        }
+        if (normalMapUploader != null) {
+            normalMapUploader.abandon();
+            normalMapUploader = null;
+        }
+    }
+
     // 资源清理
     public void cleanup() {
-        if (standardProgram != 0) {
-            GLES32.glDeleteProgram(standardProgram);
+        finishPendingFrame();
+        frameExecutor.shutdown();
+        commandQueue.clear();
+
+        if (standardProgram != null) {
+            standardProgram.delete();
         }
-        if (wireframeProgram != 0) {
-            GLES32.glDeleteProgram(wireframeProgram);
+        if (wireframeProgram != null) {
+            wireframeProgram.delete();
         }
-        if (tessellationProgram != 0) {
-            GLES32.glDeleteProgram(tessellationProgram);
+        if (solidWireframeProgram != null) {
+            solidWireframeProgram.delete();
+        }
+        if (tessellationProgram != null) {
+            tessellationProgram.delete();
+        }
+        gpuMesh.release();
+        patchGrid.release();
+        if (gpuCulling != null) {
+            gpuCulling.release();
+            gpuCulling = null;
+        }
+        if (terrainCompute != null) {
+            terrainCompute.release();
+            terrainCompute = null;
+        }
+        frameProfiler.release();
+        if (heightMapUploader != null) {
+            heightMapUploader.release();
+            heightMapUploader = null;
+        }
+        if (normalMapUploader != null) {
+            normalMapUploader.release();
+            normalMapUploader = null;
+        }
+        if (normalMapTextureId != -1) {
+            int[] textures = {normalMapTextureId};
+            GLES32.glDeleteTextures(1, textures, 0);
         }
         if (heightMapTextureId != -1) {
             int[] textures = {heightMapTextureId};
             GLES32.glDeleteTextures(1, textures, 0);
         }
+        if (typeMapTextureId > 0) {
+            int[] textures = {typeMapTextureId};
+            GLES32.glDeleteTextures(1, textures, 0);
+            typeMapTextureId = -1;
+        }
+
+        GLStateCache.reset();
 
         Log.i(TAG, "GLRendererV2 resources cleaned up");
     }
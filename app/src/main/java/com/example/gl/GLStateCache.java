@@ -0,0 +1,143 @@
+package com.example.gl;
+
+import android.opengl.GLES30;
+import android.opengl.GLES31;
+import android.opengl.GLES32;
+
+// GL状态缓存：记录当前程序、VAO、间接绘制缓冲、每个纹理单元的2D纹理、开关状态（深度/剔除/混合）、
+// 剔除面、混合函数、线宽和patch顶点数，设置的值与当前状态相同时不再调用GL
+// 顶点属性数组的启用状态保存在VAO中，绘制路径上不再有glEnable/DisableVertexAttribArray
+// 只在GL线程调用。绕过本类直接修改这些状态（初始化阶段、删除对象）之后必须调用reset()
+public final class GLStateCache {
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    private static final int MAX_TEXTURE_UNITS = 16;
+    private static final int[] CAPS = {GLES30.GL_DEPTH_TEST, GLES30.GL_CULL_FACE, GLES30.GL_BLEND};
+
+    private static int program = UNKNOWN;
+    private static int vertexArray = UNKNOWN;
+    private static int drawIndirectBuffer = UNKNOWN;
+    private static int activeUnit = UNKNOWN;
+    private static final int[] textures2D = new int[MAX_TEXTURE_UNITS];
+    private static final int[] capStates = new int[CAPS.length];
+    private static int cullFace = UNKNOWN;
+    private static int blendSrc = UNKNOWN;
+    private static int blendDst = UNKNOWN;
+    private static float lineWidth = Float.NaN;
+    private static int patchVertices = UNKNOWN;
+
+    static {
+        reset();
+    }
+
+    private GLStateCache() {
+    }
+
+    // 新的EGL上下文、初始化结束或删除GL对象后调用：所有状态视为未知，下一次设置一定会提交
+    public static void reset() {
+        program = UNKNOWN;
+        vertexArray = UNKNOWN;
+        drawIndirectBuffer = UNKNOWN;
+        activeUnit = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            textures2D[i] = UNKNOWN;
+        }
+        for (int i = 0; i < capStates.length; i++) {
+            capStates[i] = UNKNOWN;
+        }
+        cullFace = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        lineWidth = Float.NaN;
+        patchVertices = UNKNOWN;
+        InstrumentedGL.resetState();
+    }
+
+    public static void useProgram(int id) {
+        if (program == id) return;
+        InstrumentedGL.glUseProgram(id);
+        program = id;
+    }
+
+    public static void bindVertexArray(int id) {
+        if (vertexArray == id) return;
+        InstrumentedGL.glBindVertexArray(id);
+        vertexArray = id;
+    }
+
+    // GL_DRAW_INDIRECT_BUFFER的绑定不属于VAO状态
+    public static void bindDrawIndirectBuffer(int buffer) {
+        if (drawIndirectBuffer == buffer) return;
+        InstrumentedGL.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, buffer);
+        drawIndirectBuffer = buffer;
+    }
+
+    // 把2D纹理绑定到指定纹理单元（0起），已绑定时连glActiveTexture也省去
+    public static void bindTexture2D(int unit, int texture) {
+        if (textures2D[unit] == texture) return;
+        setActiveUnit(unit);
+        InstrumentedGL.glBindTexture(GLES30.GL_TEXTURE_2D, texture);
+        textures2D[unit] = texture;
+    }
+
+    // 绑定到当前活动的纹理单元（上传纹理数据时使用）
+    public static void bindTexture2D(int texture) {
+        if (activeUnit == UNKNOWN) {
+            setActiveUnit(0);
+        }
+        bindTexture2D(activeUnit, texture);
+    }
+
+    private static void setActiveUnit(int unit) {
+        if (activeUnit == unit) return;
+        InstrumentedGL.glActiveTexture(GLES30.GL_TEXTURE0 + unit);
+        activeUnit = unit;
+    }
+
+    public static void enable(int cap) {
+        setCap(cap, true);
+    }
+
+    public static void disable(int cap) {
+        setCap(cap, false);
+    }
+
+    private static void setCap(int cap, boolean enabled) {
+        int state = enabled ? 1 : 0;
+        for (int i = 0; i < CAPS.length; i++) {
+            if (CAPS[i] != cap) continue;
+            if (capStates[i] == state) return;
+            capStates[i] = state;
+            break;
+        }
+        if (enabled) {
+            InstrumentedGL.glEnable(cap);
+        } else {
+            InstrumentedGL.glDisable(cap);
+        }
+    }
+
+    public static void cullFace(int mode) {
+        if (cullFace == mode) return;
+        InstrumentedGL.glCullFace(mode);
+        cullFace = mode;
+    }
+
+    public static void blendFunc(int src, int dst) {
+        if (blendSrc == src && blendDst == dst) return;
+        InstrumentedGL.glBlendFunc(src, dst);
+        blendSrc = src;
+        blendDst = dst;
+    }
+
+    public static void lineWidth(float width) {
+        if (lineWidth == width) return;
+        InstrumentedGL.glLineWidth(width);
+        lineWidth = width;
+    }
+
+    public static void patchVertices(int count) {
+        if (patchVertices == count) return;
+        InstrumentedGL.glPatchParameteri(GLES32.GL_PATCH_VERTICES, count);
+        patchVertices = count;
+    }
+}
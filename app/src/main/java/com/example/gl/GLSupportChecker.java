@@ -38,17 +38,43 @@ public class GLSupportChecker {
         return false;
     }
 
-    // 检查是否支持计算着色器
+    // 检查是否支持计算着色器（GLES 3.1核心功能，没有对应的扩展名）
     public static boolean supportsComputeShader() {
+        try {
+            int[] version = new int[2];
+            GLES30.glGetIntegerv(GLES30.GL_MAJOR_VERSION, version, 0);
+            GLES30.glGetIntegerv(GLES30.GL_MINOR_VERSION, version, 1);
+            boolean supported = version[0] > 3 || (version[0] == 3 && version[1] >= 1);
+            Log.i(TAG, "Compute shader support: " + supported);
+            return supported;
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking compute shader support", e);
+        }
+        return false;
+    }
+
+    // 检查R32F等浮点纹理是否支持线性过滤
+    public static boolean supportsFloatTextureLinear() {
         try {
             String extensions = GLES30.glGetString(GLES30.GL_EXTENSIONS);
             if (extensions != null) {
-                boolean supported = extensions.contains("GL_EXT_compute_shader");
-                Log.i(TAG, "Compute shader support: " + supported);
-                return supported;
+                return extensions.contains("GL_OES_texture_float_linear");
             }
         } catch (Exception e) {
-            Log.e(TAG, "Error checking compute shader support", e);
+            Log.e(TAG, "Error checking float texture linear support", e);
+        }
+        return false;
+    }
+
+    // 检查是否支持GPU计时查询（GL_TIME_ELAPSED_EXT）
+    public static boolean supportsTimerQuery() {
+        try {
+            String extensions = GLES30.glGetString(GLES30.GL_EXTENSIONS);
+            if (extensions != null) {
+                return extensions.contains("GL_EXT_disjoint_timer_query");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error checking timer query support", e);
         }
         return false;
     }
@@ -137,6 +163,8 @@ public class GLSupportChecker {
         report.append("Geometry Shader: ").append(supportsGeometryShader() ? "YES" : "NO").append("\n");
         report.append("Compute Shader: ").append(supportsComputeShader() ? "YES" : "NO").append("\n");
         report.append("ASTC Texture: ").append(supportsASTCTexture() ? "YES" : "NO").append("\n");
+        report.append("Float Linear Filter: ").append(supportsFloatTextureLinear() ? "YES" : "NO").append("\n");
+        report.append("GPU Timer Query: ").append(supportsTimerQuery() ? "YES" : "NO").append("\n");
         report.append("Max Texture Size: ").append(getMaxTextureSize()).append("\n");
         report.append("Max Vertex Attributes: ").append(getMaxVertexAttribs()).append("\n");
 
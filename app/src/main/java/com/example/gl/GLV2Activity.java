@@ -86,12 +86,12 @@ public class GLV2Activity extends AppCompatActivity {
         glSurfaceView.setEGLContextClientVersion(3);
         glRenderer = new GLRendererV2(this);
         glSurfaceView.setRenderer(glRenderer);
-        glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        // 按需渲染（RENDERMODE_WHEN_DIRTY），输入和相机变化时由渲染器请求重绘
+        glRenderer.getRenderScheduler().attach(glSurfaceView);
 
         // 设置触摸监听
         glSurfaceView.setOnTouchListener((v, event) -> {
             glRenderer.onTouchEvent(event);
-            glSurfaceView.requestRender(); // 请求重绘
             return true;
         });
     }
@@ -117,7 +117,20 @@ public class GLV2Activity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         if (glSurfaceView != null) {
+            // 退出时在GL线程释放渲染器资源：在onPause()之前排队的事件会在EGL上下文释放前执行
+            if (isFinishing()) {
+                glSurfaceView.queueEvent(glRenderer::cleanup);
+            }
             glSurfaceView.onPause();
         }
     }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // 配置变化等不经过cleanup()的销毁也要停止渲染器的工作线程
+        if (glRenderer != null) {
+            glRenderer.shutdown();
+        }
+    }
 }
@@ -0,0 +1,247 @@
+package com.example.gl;
+
+import android.content.Context;
+import android.opengl.GLES30;
+import android.opengl.GLES31;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+// GPU驱动的剔除（GLES 3.1计算着色器）：地形分块和场景物体的包围盒在GPU上做视锥剔除，
+// 可见部分的顶点索引写入输出索引缓冲，数量写入间接绘制命令，由glDrawElementsIndirect绘制
+// 每帧固定为两次调度加两次间接绘制（地形、场景物体），与分块和物体的数量无关，CPU不再逐个物体判断可见性
+// - 绘制项：每个地形分块（TILE_SIZE x TILE_SIZE个格子）一个，每个场景物体一个；简化后的地形不再是规则网格，整体作为一个绘制项
+// - 地形分块的高度范围读取TerrainCompute的最小/最大值金字塔，雕刻后不需要更新绘制项
+// - 索引指向gpuMesh中原有的顶点，solid+wireframe着色器由gl_VertexID得到的重心坐标不受影响
+// 只在TerrainCompute可用时创建；EGL上下文丢失后在onSurfaceCreated中重新create()
+public class GpuCulling {
+    private static final String TAG = "GpuCulling";
+
+    // 间接绘制命令
+    public static final int COMMAND_TERRAIN = 0;
+    public static final int COMMAND_OBJECTS = 1;
+    private static final int COMMAND_COUNT = 2;
+    private static final int COMMAND_INTS = 5; // count, instanceCount, firstIndex, baseVertex, reserved
+
+    private static final int ITEM_INTS = 12; // 与着色器中std430布局的DrawItem一致（48字节）
+
+    // SSBO绑定点，与gpu_cull_compute.glsl一致
+    private static final int BINDING_PYRAMID = 0;
+    private static final int BINDING_ITEMS = 1;
+    private static final int BINDING_SOURCE = 2;
+    private static final int BINDING_CULLED = 3;
+    private static final int BINDING_COMMANDS = 4;
+
+    private static final int ITEMS = 0;
+    private static final int SOURCE = 1;
+    private static final int CULLED = 2;
+    private static final int COMMANDS = 3;
+
+    private final ShaderProgram program;
+    private final int pyramidBuffer;
+    private final int[] bufferIds = new int[4];
+    private int itemCount = 0;
+    private int objectItemStart; // 地形绘制项在前，场景物体从这里开始
+    private int indexCount = 0;
+
+    private GpuCulling(ShaderProgram program, TerrainDataV2.MeshData meshData, TerrainCompute terrainCompute) {
+        this.program = program;
+        this.pyramidBuffer = terrainCompute.getPyramidBuffer();
+
+        int terrainIndexCount = meshData.simplified ? meshData.terrainVertexCount
+                : meshData.meshCells * meshData.meshCells * 6;
+        List<SceneIndex.SceneObject> objects = new ArrayList<>();
+        meshData.sceneIndex.getAll(objects);
+        int objectIndexCount = 0;
+        for (SceneIndex.SceneObject object : objects) {
+            objectIndexCount += object.vertexCount;
+        }
+        int maxItems = meshData.tilesPerSide * meshData.tilesPerSide + 1 + objects.size();
+
+        IntBuffer items = ByteBuffer.allocateDirect(maxItems * ITEM_INTS * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        IntBuffer source = ByteBuffer.allocateDirect((terrainIndexCount + objectIndexCount) * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+
+        if (meshData.simplified) {
+            // 整个地形一个绘制项，高度范围取金字塔的根节点
+            int root = terrainCompute.getLevelOffset(terrainCompute.getLevelCount() - 1);
+            float half = TerrainDataV2.TERRAIN_SIZE * 0.5f;
+            for (int v = 0; v < meshData.terrainVertexCount; v++) {
+                source.put(v);
+            }
+            putItem(items, -half, meshData.heightMapMinHeight, -half, half, meshData.heightMapMaxHeight, half,
+                    0, meshData.terrainVertexCount, root, COMMAND_TERRAIN);
+        } else {
+            addTerrainTiles(items, source, meshData, terrainCompute);
+        }
+
+        objectItemStart = itemCount;
+        for (SceneIndex.SceneObject object : objects) {
+            int first = source.position();
+            for (int v = 0; v < object.vertexCount; v++) {
+                source.put(object.firstVertex + v);
+            }
+            putItem(items, object.minX, object.minY, object.minZ, object.maxX, object.maxY, object.maxZ,
+                    first, object.vertexCount, -1, COMMAND_OBJECTS);
+        }
+        items.flip();
+        source.flip();
+        indexCount = source.limit();
+
+        IntBuffer commands = ByteBuffer.allocateDirect(COMMAND_COUNT * COMMAND_INTS * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        commands.put(0).put(1).put(0).put(0).put(0);                 // 地形：输出索引的开头
+        commands.put(0).put(1).put(terrainIndexCount).put(0).put(0); // 场景物体：紧接地形之后
+        commands.flip();
+
+        GLES30.glGenBuffers(bufferIds.length, bufferIds, 0);
+        GLES30.glBindBuffer(GLES31.GL_SHADER_STORAGE_BUFFER, bufferIds[ITEMS]);
+        GLES30.glBufferData(GLES31.GL_SHADER_STORAGE_BUFFER, itemCount * ITEM_INTS * 4, items, GLES30.GL_STATIC_DRAW);
+        GLES30.glBindBuffer(GLES31.GL_SHADER_STORAGE_BUFFER, bufferIds[SOURCE]);
+        GLES30.glBufferData(GLES31.GL_SHADER_STORAGE_BUFFER, indexCount * 4, source, GLES30.GL_STATIC_DRAW);
+        GLES30.glBindBuffer(GLES31.GL_SHADER_STORAGE_BUFFER, bufferIds[CULLED]);
+        GLES30.glBufferData(GLES31.GL_SHADER_STORAGE_BUFFER, indexCount * 4, null, GLES30.GL_DYNAMIC_COPY);
+        GLES30.glBindBuffer(GLES31.GL_SHADER_STORAGE_BUFFER, 0);
+        GLES30.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, bufferIds[COMMANDS]);
+        GLES30.glBufferData(GLES31.GL_DRAW_INDIRECT_BUFFER, COMMAND_COUNT * COMMAND_INTS * 4, commands,
+                GLES30.GL_DYNAMIC_COPY);
+        GLES30.glBindBuffer(GLES31.GL_DRAW_INDIRECT_BUFFER, 0);
+
+        Log.i(TAG, "GPU culling: " + itemCount + " draw items, " + indexCount + " indices");
+    }
+
+    // TerrainCompute为null或着色器编译失败时返回null，由调用方使用glDrawArrays绘制整个网格
+    public static GpuCulling create(Context context, TerrainDataV2.MeshData meshData, TerrainCompute terrainCompute) {
+        if (terrainCompute == null) return null;
+
+        ShaderProgram program = ShaderProgram.createCompute(
+                ShaderUtils.loadShader(context, R.raw.gpu_cull_compute));
+        if (program == null) {
+            Log.w(TAG, "Failed to create culling program, falling back to direct draws");
+            return null;
+        }
+        return new GpuCulling(program, meshData, terrainCompute);
+    }
+
+    // 每个分块的格子按行依次写入源索引（每个格子6个顶点，见TerrainDataV2.getCellVertexIndex）
+    // gridStride为1或2，整除TILE_SIZE，网格格子不会跨越分块
+    private void addTerrainTiles(IntBuffer items, IntBuffer source, TerrainDataV2.MeshData meshData,
+                                 TerrainCompute terrainCompute) {
+        int tiles = meshData.tilesPerSide;
+        int stride = meshData.gridStride;
+        int cells = meshData.meshCells;
+        int cellsPerTile = TerrainDataV2.TILE_SIZE / stride;
+
+        // 与分块一一对应的金字塔层（TerrainCompute同样用它写入patch包围数据），尺寸不一致时使用CPU上的初始范围
+        int level = Integer.numberOfTrailingZeros(TerrainDataV2.TILE_SIZE);
+        boolean usePyramid = level < terrainCompute.getLevelCount()
+                && terrainCompute.getLevelWidth(level) == tiles && terrainCompute.getLevelHeight(level) == tiles;
+        if (!usePyramid) {
+            Log.w(TAG, "Min/max pyramid does not match the tile grid, tile bounds will not follow sculpting");
+        }
+
+        for (int tx = 0; tx < tiles; tx++) {
+            int ci0 = tx * cellsPerTile;
+            int ci1 = Math.min(cells, ci0 + cellsPerTile);
+            for (int tz = 0; tz < tiles; tz++) {
+                int cj0 = tz * cellsPerTile;
+                int cj1 = Math.min(cells, cj0 + cellsPerTile);
+                int first = source.position();
+                for (int ci = ci0; ci < ci1; ci++) {
+                    for (int cj = cj0; cj < cj1; cj++) {
+                        int base = TerrainDataV2.getCellVertexIndex(cells, ci, cj);
+                        for (int k = 0; k < 6; k++) {
+                            source.put(base + k);
+                        }
+                    }
+                }
+                int count = source.position() - first;
+                if (count == 0) continue;
+
+                int tile = tx * tiles + tz;
+                int node = usePyramid ? terrainCompute.getLevelOffset(level) + tz * tiles + tx : -1;
+                putItem(items,
+                        toWorld(meshData.gridSize, TerrainDataV2.getMeshPoint(meshData.gridSize, stride, ci0)),
+                        meshData.tileMinHeight[tile],
+                        toWorld(meshData.gridSize, TerrainDataV2.getMeshPoint(meshData.gridSize, stride, cj0)),
+                        toWorld(meshData.gridSize, TerrainDataV2.getMeshPoint(meshData.gridSize, stride, ci1)),
+                        meshData.tileMaxHeight[tile],
+                        toWorld(meshData.gridSize, TerrainDataV2.getMeshPoint(meshData.gridSize, stride, cj1)),
+                        first, count, node, COMMAND_TERRAIN);
+            }
+        }
+    }
+
+    // 网格点 -> 模型空间坐标，与地形网格顶点的换算相同
+    private static float toWorld(int gridSize, int point) {
+        return (point / (float) gridSize - 0.5f) * TerrainDataV2.TERRAIN_SIZE;
+    }
+
+    private void putItem(IntBuffer items, float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                         int firstIndex, int count, int pyramidNode, int command) {
+        items.put(Float.floatToRawIntBits(minX)).put(Float.floatToRawIntBits(minY))
+                .put(Float.floatToRawIntBits(minZ)).put(0);
+        items.put(Float.floatToRawIntBits(maxX)).put(Float.floatToRawIntBits(maxY))
+                .put(Float.floatToRawIntBits(maxZ)).put(0);
+        items.put(firstIndex).put(count).put(pyramidNode).put(command);
+        itemCount++;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    // 把输出索引缓冲绑定为VAO的GL_ELEMENT_ARRAY_BUFFER（GL线程，VAO创建后调用一次）
+    public void attachIndexBuffer(int vao) {
+        if (vao == 0) return;
+        GLES30.glBindVertexArray(vao);
+        GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, bufferIds[CULLED]);
+        GLES30.glBindVertexArray(0);
+    }
+
+    // 录制剔除（可在工作线程调用）：清零命令中的count，再每个绘制项一个工作组做剔除和索引复制
+    // includeTerrain为false时只处理场景物体，COMMAND_TERRAIN的count为0
+    // 之后的间接绘制读取命令和索引，barrier保证计算写入对它们可见；录制后当前程序为剔除程序
+    public void recordCull(CommandBuffer commands, float[] mvpMatrix, boolean includeTerrain) {
+        commands.useProgram(program);
+        commands.setMat4("uMVPMatrix", mvpMatrix);
+        commands.setInt("uCommandCount", COMMAND_COUNT);
+        commands.bindBufferBase(GLES31.GL_SHADER_STORAGE_BUFFER, BINDING_PYRAMID, pyramidBuffer);
+        commands.bindBufferBase(GLES31.GL_SHADER_STORAGE_BUFFER, BINDING_ITEMS, bufferIds[ITEMS]);
+        commands.bindBufferBase(GLES31.GL_SHADER_STORAGE_BUFFER, BINDING_SOURCE, bufferIds[SOURCE]);
+        commands.bindBufferBase(GLES31.GL_SHADER_STORAGE_BUFFER, BINDING_CULLED, bufferIds[CULLED]);
+        commands.bindBufferBase(GLES31.GL_SHADER_STORAGE_BUFFER, BINDING_COMMANDS, bufferIds[COMMANDS]);
+
+        commands.setInt("uPass", 0);
+        commands.dispatchCompute(1, 1, 1);
+        commands.memoryBarrier(GLES31.GL_SHADER_STORAGE_BARRIER_BIT);
+
+        int firstItem = includeTerrain ? 0 : objectItemStart;
+        commands.setInt("uPass", 1);
+        commands.setInt("uFirstItem", firstItem);
+        if (itemCount > firstItem) {
+            commands.dispatchCompute(itemCount - firstItem, 1, 1);
+        }
+        commands.memoryBarrier(GLES31.GL_COMMAND_BARRIER_BIT | GLES31.GL_ELEMENT_ARRAY_BARRIER_BIT);
+    }
+
+    // 录制一条间接绘制（可在工作线程调用），当前VAO须已通过attachIndexBuffer()绑定输出索引
+    public void draw(CommandBuffer commands, int command) {
+        commands.bindDrawIndirectBuffer(bufferIds[COMMANDS]);
+        commands.drawElementsIndirect(GLES30.GL_TRIANGLES, GLES30.GL_UNSIGNED_INT, command * COMMAND_INTS * 4);
+    }
+
+    public void release() {
+        program.delete();
+        GLES30.glDeleteBuffers(bufferIds.length, bufferIds, 0);
+        for (int i = 0; i < bufferIds.length; i++) {
+            bufferIds[i] = 0;
+        }
+        GLStateCache.reset(); // 缓冲名可能被重新分配
+    }
+}
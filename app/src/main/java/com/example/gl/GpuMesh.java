@@ -0,0 +1,204 @@
+package com.example.gl;
+
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.Buffer;
+import java.nio.FloatBuffer;
+
+// 网格的GPU缓冲：每个顶点属性一个VBO，只在upload()时从客户端缓冲整体上传一次，
+// 每个着色器程序对应一个VAO，绘制时只需glBindVertexArray
+// 线框使用去重后的边索引（WireframeEdges），一次GL_LINES加一次GL_POINTS绘制
+// EGL上下文丢失后缓冲和VAO随之失效，在onSurfaceCreated中再次调用upload()并重新创建VAO
+public class GpuMesh {
+    private static final String TAG = "GpuMesh";
+
+    private static final int POSITIONS = 0;
+    private static final int COLORS = 1;
+    private static final int NORMALS = 2;
+    private static final int TEX_COORDS = 3;
+    private static final int TYPES = 4;
+    private static final int BUFFER_COUNT = 5;
+
+    private final FloatBuffer vertices;
+    private final FloatBuffer colors;
+    private final FloatBuffer normals;
+    private final FloatBuffer texCoords;
+    private final Buffer types;
+    private final int typeGlType;   // GL_INT或GL_UNSIGNED_BYTE
+    private final int typeSize;
+    private final int vertexCount;
+    private final boolean updatable; // 位置和法线会被局部重写（雕刻）
+    private final WireframeEdges wireframeEdges;
+
+    private final int[] bufferIds = new int[BUFFER_COUNT];
+    private final int[] edgeBufferId = new int[1];
+    private int[] vertexArrayIds = new int[0];
+    private int vertexArrayCount = 0;
+
+    public GpuMesh(TerrainData.MeshData meshData) {
+        this(meshData.vertices, meshData.colors, meshData.normals, meshData.texCoords,
+                meshData.types, GLES30.GL_INT, 4, meshData.vertexCount, false);
+    }
+
+    public GpuMesh(TerrainDataV2.MeshData meshData, boolean updatable) {
+        this(meshData.vertices, meshData.colors, meshData.normals, meshData.texCoords,
+                meshData.types, GLES30.GL_UNSIGNED_BYTE, 1, meshData.vertexCount, updatable);
+    }
+
+    private GpuMesh(FloatBuffer vertices, FloatBuffer colors, FloatBuffer normals, FloatBuffer texCoords,
+                    Buffer types, int typeGlType, int typeSize, int vertexCount, boolean updatable) {
+        this.vertices = vertices;
+        this.colors = colors;
+        this.normals = normals;
+        this.texCoords = texCoords;
+        this.types = types;
+        this.typeGlType = typeGlType;
+        this.typeSize = typeSize;
+        this.vertexCount = vertexCount;
+        this.updatable = updatable;
+        // 在构造时（非GL线程）提取一次边，雕刻只改变顶点位置，边的拓扑不变
+        this.wireframeEdges = WireframeEdges.build(vertices, vertexCount);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    // 创建VBO并上传全部顶点数据（GL线程，每个EGL上下文调用一次）
+    // 旧上下文中的对象已随上下文销毁，这里不删除，只丢弃id
+    public void upload() {
+        vertexArrayCount = 0;
+        GLES30.glGenBuffers(BUFFER_COUNT, bufferIds, 0);
+
+        int geometryUsage = updatable ? GLES30.GL_DYNAMIC_DRAW : GLES30.GL_STATIC_DRAW;
+        uploadBuffer(POSITIONS, vertices, vertexCount * 12, geometryUsage);
+        uploadBuffer(COLORS, colors, vertexCount * 12, GLES30.GL_STATIC_DRAW);
+        uploadBuffer(NORMALS, normals, vertexCount * 12, geometryUsage);
+        uploadBuffer(TEX_COORDS, texCoords, vertexCount * 8, GLES30.GL_STATIC_DRAW);
+        uploadBuffer(TYPES, types, vertexCount * typeSize, GLES30.GL_STATIC_DRAW);
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, 0);
+
+        GLES30.glGenBuffers(1, edgeBufferId, 0);
+        GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, edgeBufferId[0]);
+        GLES30.glBufferData(GLES30.GL_ELEMENT_ARRAY_BUFFER,
+                (wireframeEdges.edgeIndexCount + wireframeEdges.pointCount) * 4,
+                wireframeEdges.indices, GLES30.GL_STATIC_DRAW);
+        GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        Log.i(TAG, "Uploaded " + vertexCount + " vertices, "
+                + wireframeEdges.edgeIndexCount / 2 + " unique edges");
+    }
+
+    private void uploadBuffer(int slot, Buffer data, int size, int usage) {
+        if (data == null) {
+            bufferIds[slot] = 0;
+            return;
+        }
+        data.position(0);
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, bufferIds[slot]);
+        GLES30.glBufferData(GLES30.GL_ARRAY_BUFFER, size, data, usage);
+    }
+
+    // 为一个着色器程序创建VAO，不使用的属性传-1
+    // 返回的VAO在upload()之后有效，再次upload()后需要重新创建
+    public int createVertexArray(int positionHandle, int colorHandle, int normalHandle,
+                                 int texCoordHandle, int typeHandle) {
+        int[] ids = new int[1];
+        GLES30.glGenVertexArrays(1, ids, 0);
+        GLES30.glBindVertexArray(ids[0]);
+
+        bindAttribute(POSITIONS, positionHandle, 3);
+        bindAttribute(COLORS, colorHandle, 3);
+        bindAttribute(NORMALS, normalHandle, 3);
+        bindAttribute(TEX_COORDS, texCoordHandle, 2);
+        if (typeHandle != -1 && bufferIds[TYPES] != 0) {
+            GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, bufferIds[TYPES]);
+            GLES30.glEnableVertexAttribArray(typeHandle);
+            GLES30.glVertexAttribIPointer(typeHandle, 1, typeGlType, typeSize, 0);
+        }
+
+        GLES30.glBindVertexArray(0);
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, 0);
+
+        if (vertexArrayCount == vertexArrayIds.length) {
+            int[] grown = new int[vertexArrayIds.length + 4];
+            System.arraycopy(vertexArrayIds, 0, grown, 0, vertexArrayCount);
+            vertexArrayIds = grown;
+        }
+        vertexArrayIds[vertexArrayCount++] = ids[0];
+        return ids[0];
+    }
+
+    // 线框用的VAO：只有位置属性，并绑定边索引缓冲
+    public int createWireframeVertexArray(int positionHandle) {
+        int vao = createVertexArray(positionHandle, -1, -1, -1, -1);
+        GLES30.glBindVertexArray(vao);
+        GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, edgeBufferId[0]);
+        GLES30.glBindVertexArray(0);
+        return vao;
+    }
+
+    // 以下两个绘制方法要求已绑定createWireframeVertexArray()创建的VAO
+    public void drawWireframeEdges() {
+        InstrumentedGL.glDrawElements(GLES30.GL_LINES, wireframeEdges.edgeIndexCount, GLES30.GL_UNSIGNED_INT, 0);
+    }
+
+    // 每个位置只绘制一个点（三角形列表中同一位置的顶点重复多次）
+    public void drawWireframePoints() {
+        InstrumentedGL.glDrawElements(GLES30.GL_POINTS, wireframeEdges.pointCount, GLES30.GL_UNSIGNED_INT,
+                wireframeEdges.edgeIndexCount * 4);
+    }
+
+    // 录制到命令缓冲的版本（可在工作线程调用）
+    public void drawWireframeEdges(CommandBuffer commands) {
+        commands.drawElements(GLES30.GL_LINES, wireframeEdges.edgeIndexCount, GLES30.GL_UNSIGNED_INT, 0);
+    }
+
+    public void drawWireframePoints(CommandBuffer commands) {
+        commands.drawElements(GLES30.GL_POINTS, wireframeEdges.pointCount, GLES30.GL_UNSIGNED_INT,
+                wireframeEdges.edgeIndexCount * 4);
+    }
+
+    private void bindAttribute(int slot, int handle, int size) {
+        if (handle == -1 || bufferIds[slot] == 0) return;
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, bufferIds[slot]);
+        GLES30.glEnableVertexAttribArray(handle);
+        GLES30.glVertexAttribPointer(handle, size, GLES30.GL_FLOAT, false, size * 4, 0);
+    }
+
+    // 把客户端缓冲中顶点 [first, end) 的位置和法线重新提交到VBO（雕刻后的局部更新）
+    public void updateGeometry(int first, int end) {
+        first = Math.max(0, first);
+        end = Math.min(vertexCount, end);
+        if (first >= end) return;
+
+        int offset = first * 12;
+        int size = (end - first) * 12;
+        updateBuffer(POSITIONS, vertices, first * 3, offset, size);
+        updateBuffer(NORMALS, normals, first * 3, offset, size);
+        InstrumentedGL.glBindBuffer(GLES30.GL_ARRAY_BUFFER, 0);
+    }
+
+    private void updateBuffer(int slot, FloatBuffer data, int position, int offset, int size) {
+        if (bufferIds[slot] == 0) return;
+        data.position(position);
+        InstrumentedGL.glBindBuffer(GLES30.GL_ARRAY_BUFFER, bufferIds[slot]);
+        InstrumentedGL.glBufferSubData(GLES30.GL_ARRAY_BUFFER, offset, size, data);
+        data.position(0);
+    }
+
+    public void release() {
+        if (vertexArrayCount > 0) {
+            GLES30.glDeleteVertexArrays(vertexArrayCount, vertexArrayIds, 0);
+            vertexArrayCount = 0;
+        }
+        GLES30.glDeleteBuffers(BUFFER_COUNT, bufferIds, 0);
+        GLES30.glDeleteBuffers(1, edgeBufferId, 0);
+        edgeBufferId[0] = 0;
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            bufferIds[i] = 0;
+        }
+        GLStateCache.reset(); // VAO名可能被重新分配
+    }
+}
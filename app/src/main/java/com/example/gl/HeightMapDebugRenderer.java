@@ -98,7 +98,7 @@ public class HeightMapDebugRenderer implements GLSurfaceView.Renderer {
 //        uHeightMapTextureId = GLTools.loadTexture(context, R.drawable.jz);
 
         TerrainDataV2.generateTerrainMesh();
-        uHeightMapTextureId = TerrainDataV2.generateHeightMapTexture2();
+        uHeightMapTextureId = TerrainTextures.generateHeightMapTexture2();
 
         // 如果纹理加载失败，使用默认颜色
         if (uHeightMapTextureId == 0) {
@@ -0,0 +1,378 @@
+package com.example.gl;
+
+import android.opengl.GLES30;
+import android.opengl.GLES31;
+import android.opengl.GLES32;
+
+import java.nio.Buffer;
+
+// 渲染路径上的GL调用门面：与GLES30/GLES32同名同参数，debug构建中按类别统计每帧的调用次数，
+// 并记录设置的状态，发现与当前状态相同的冗余设置（重复绑定同一程序/VAO/缓冲/纹理等）
+// BuildConfig.DEBUG是编译期常量，release构建中统计分支作为死代码被移除，只剩直接的GLES调用
+// 只在GL线程调用；初始化阶段直接调用GLES的代码会让记录的状态失效，初始化结束后通过GLStateCache.reset()重置
+public final class InstrumentedGL {
+    private static final boolean ENABLED = BuildConfig.DEBUG;
+
+    // 调用类别
+    public static final int DRAW = 0;
+    public static final int PROGRAM = 1;
+    public static final int UNIFORM = 2;
+    public static final int VERTEX_ARRAY = 3;
+    public static final int BUFFER_BIND = 4;
+    public static final int TEXTURE_BIND = 5;
+    public static final int UPLOAD = 6;
+    public static final int STATE = 7;
+    public static final int COMPUTE = 8;
+    public static final int OTHER = 9;
+    private static final String[] CATEGORY_NAMES = {
+            "绘制", "程序切换", "uniform", "VAO绑定", "缓冲绑定", "纹理绑定", "数据上传", "渲染状态", "计算", "其他"};
+    private static final int CATEGORY_COUNT = CATEGORY_NAMES.length;
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    private static final int MAX_TEXTURE_UNITS = 16;
+    private static final int[] TRACKED_CAPS = {
+            GLES30.GL_DEPTH_TEST, GLES30.GL_CULL_FACE, GLES30.GL_BLEND, GLES30.GL_SCISSOR_TEST};
+
+    // 当前帧的计数（GL线程）
+    private static final int[] calls = new int[CATEGORY_COUNT];
+    private static final int[] redundant = new int[CATEGORY_COUNT];
+    // 上一帧的计数，供UI线程读取
+    private static final int[] lastFrameCalls = new int[CATEGORY_COUNT];
+    private static final int[] lastFrameRedundant = new int[CATEGORY_COUNT];
+
+    // 已知的GL状态，UNKNOWN表示未知
+    private static int currentProgram = UNKNOWN;
+    private static int currentVertexArray = UNKNOWN;
+    private static int arrayBuffer = UNKNOWN;
+    private static int pixelUnpackBuffer = UNKNOWN;
+    private static int drawIndirectBuffer = UNKNOWN;
+    private static int activeTexture = UNKNOWN;
+    private static final int[] textures2D = new int[MAX_TEXTURE_UNITS];
+    private static final int[] caps = new int[TRACKED_CAPS.length];
+    private static float lineWidth = Float.NaN;
+    private static int patchVertices = UNKNOWN;
+    private static int unpackAlignment = UNKNOWN;
+
+    static {
+        resetState();
+    }
+
+    private InstrumentedGL() {
+    }
+
+    // 新的EGL上下文或初始化阶段直接修改过GL状态之后调用
+    public static void resetState() {
+        if (!ENABLED) return;
+        currentProgram = UNKNOWN;
+        currentVertexArray = UNKNOWN;
+        arrayBuffer = UNKNOWN;
+        pixelUnpackBuffer = UNKNOWN;
+        drawIndirectBuffer = UNKNOWN;
+        activeTexture = UNKNOWN;
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            textures2D[i] = UNKNOWN;
+        }
+        for (int i = 0; i < caps.length; i++) {
+            caps[i] = UNKNOWN;
+        }
+        lineWidth = Float.NaN;
+        patchVertices = UNKNOWN;
+        unpackAlignment = UNKNOWN;
+    }
+
+    public static void beginFrame() {
+        if (!ENABLED) return;
+        for (int i = 0; i < CATEGORY_COUNT; i++) {
+            calls[i] = 0;
+            redundant[i] = 0;
+        }
+    }
+
+    public static void endFrame() {
+        if (!ENABLED) return;
+        synchronized (lastFrameCalls) {
+            System.arraycopy(calls, 0, lastFrameCalls, 0, CATEGORY_COUNT);
+            System.arraycopy(redundant, 0, lastFrameRedundant, 0, CATEGORY_COUNT);
+        }
+    }
+
+    // 上一帧各类别的调用次数（括号内为冗余次数），可在任意线程调用
+    public static String getFrameReport() {
+        if (!ENABLED) return "GL调用统计: 仅debug构建";
+        StringBuilder report = new StringBuilder("GL调用/帧（冗余）\n");
+        synchronized (lastFrameCalls) {
+            int total = 0;
+            int totalRedundant = 0;
+            for (int i = 0; i < CATEGORY_COUNT; i++) {
+                total += lastFrameCalls[i];
+                totalRedundant += lastFrameRedundant[i];
+                if (lastFrameCalls[i] == 0) continue;
+                report.append(CATEGORY_NAMES[i]).append(": ").append(lastFrameCalls[i]);
+                if (lastFrameRedundant[i] > 0) {
+                    report.append(" (").append(lastFrameRedundant[i]).append(')');
+                }
+                report.append('\n');
+            }
+            report.append("总计: ").append(total).append(" (").append(totalRedundant).append(')');
+        }
+        return report.toString();
+    }
+
+    private static void count(int category) {
+        calls[category]++;
+    }
+
+    // 记录一次设置；与已知状态相同时计为冗余
+    private static void count(int category, int current, int value) {
+        calls[category]++;
+        if (current != UNKNOWN && current == value) {
+            redundant[category]++;
+        }
+    }
+
+    // ---- 程序与uniform ----
+
+    public static void glUseProgram(int program) {
+        if (ENABLED) {
+            count(PROGRAM, currentProgram, program);
+            currentProgram = program;
+        }
+        GLES30.glUseProgram(program);
+    }
+
+    public static void glUniform1i(int location, int x) {
+        if (ENABLED) count(UNIFORM);
+        GLES30.glUniform1i(location, x);
+    }
+
+    public static void glUniform1f(int location, float x) {
+        if (ENABLED) count(UNIFORM);
+        GLES30.glUniform1f(location, x);
+    }
+
+    public static void glUniform2f(int location, float x, float y) {
+        if (ENABLED) count(UNIFORM);
+        GLES30.glUniform2f(location, x, y);
+    }
+
+    public static void glUniform3f(int location, float x, float y, float z) {
+        if (ENABLED) count(UNIFORM);
+        GLES30.glUniform3f(location, x, y, z);
+    }
+
+    public static void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        if (ENABLED) count(UNIFORM);
+        GLES30.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    // ---- 绑定 ----
+
+    public static void glBindVertexArray(int array) {
+        if (ENABLED) {
+            count(VERTEX_ARRAY, currentVertexArray, array);
+            currentVertexArray = array;
+        }
+        GLES30.glBindVertexArray(array);
+    }
+
+    // GL_ELEMENT_ARRAY_BUFFER的绑定属于VAO状态，只计数不判断冗余
+    public static void glBindBuffer(int target, int buffer) {
+        if (ENABLED) {
+            if (target == GLES30.GL_ARRAY_BUFFER) {
+                count(BUFFER_BIND, arrayBuffer, buffer);
+                arrayBuffer = buffer;
+            } else if (target == GLES30.GL_PIXEL_UNPACK_BUFFER) {
+                count(BUFFER_BIND, pixelUnpackBuffer, buffer);
+                pixelUnpackBuffer = buffer;
+            } else if (target == GLES31.GL_DRAW_INDIRECT_BUFFER) {
+                count(BUFFER_BIND, drawIndirectBuffer, buffer);
+                drawIndirectBuffer = buffer;
+            } else {
+                count(BUFFER_BIND);
+            }
+        }
+        GLES30.glBindBuffer(target, buffer);
+    }
+
+    public static void glActiveTexture(int texture) {
+        if (ENABLED) {
+            count(TEXTURE_BIND, activeTexture, texture);
+            activeTexture = texture;
+        }
+        GLES30.glActiveTexture(texture);
+    }
+
+    public static void glBindTexture(int target, int texture) {
+        if (ENABLED) {
+            int unit = activeTexture == UNKNOWN ? -1 : activeTexture - GLES30.GL_TEXTURE0;
+            if (target == GLES30.GL_TEXTURE_2D && unit >= 0 && unit < MAX_TEXTURE_UNITS) {
+                count(TEXTURE_BIND, textures2D[unit], texture);
+                textures2D[unit] = texture;
+            } else {
+                count(TEXTURE_BIND);
+            }
+        }
+        GLES30.glBindTexture(target, texture);
+    }
+
+    // ---- 绘制 ----
+
+    public static void glDrawArrays(int mode, int first, int count) {
+        if (ENABLED) count(DRAW);
+        GLES30.glDrawArrays(mode, first, count);
+    }
+
+    public static void glDrawElements(int mode, int count, int type, int offset) {
+        if (ENABLED) count(DRAW);
+        GLES30.glDrawElements(mode, count, type, offset);
+    }
+
+    // offset为命令在GL_DRAW_INDIRECT_BUFFER中的字节偏移
+    public static void glDrawElementsIndirect(int mode, int type, long offset) {
+        if (ENABLED) count(DRAW);
+        GLES31.glDrawElementsIndirect(mode, type, offset);
+    }
+
+    public static void glClear(int mask) {
+        if (ENABLED) count(DRAW);
+        GLES30.glClear(mask);
+    }
+
+    // 索引绑定点（SSBO等）只计数，不判断冗余
+    public static void glBindBufferBase(int target, int index, int buffer) {
+        if (ENABLED) count(BUFFER_BIND);
+        GLES30.glBindBufferBase(target, index, buffer);
+    }
+
+    public static void glBindImageTexture(int unit, int texture, int level, boolean layered, int layer,
+                                          int access, int format) {
+        if (ENABLED) count(TEXTURE_BIND);
+        GLES31.glBindImageTexture(unit, texture, level, layered, layer, access, format);
+    }
+
+    // ---- 计算 ----
+
+    public static void glDispatchCompute(int numGroupsX, int numGroupsY, int numGroupsZ) {
+        if (ENABLED) count(COMPUTE);
+        GLES31.glDispatchCompute(numGroupsX, numGroupsY, numGroupsZ);
+    }
+
+    public static void glMemoryBarrier(int barriers) {
+        if (ENABLED) count(COMPUTE);
+        GLES31.glMemoryBarrier(barriers);
+    }
+
+    // ---- 数据上传 ----
+
+    public static void glBufferSubData(int target, int offset, int size, Buffer data) {
+        if (ENABLED) count(UPLOAD);
+        GLES30.glBufferSubData(target, offset, size, data);
+    }
+
+    public static void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+                                       int format, int type, int offset) {
+        if (ENABLED) count(UPLOAD);
+        GLES30.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, offset);
+    }
+
+    public static void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+                                       int format, int type, Buffer pixels) {
+        if (ENABLED) count(UPLOAD);
+        GLES30.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+    }
+
+    public static Buffer glMapBufferRange(int target, int offset, int length, int access) {
+        if (ENABLED) count(UPLOAD);
+        return GLES30.glMapBufferRange(target, offset, length, access);
+    }
+
+    public static boolean glUnmapBuffer(int target) {
+        if (ENABLED) count(UPLOAD);
+        return GLES30.glUnmapBuffer(target);
+    }
+
+    // ---- 渲染状态 ----
+
+    public static void glEnable(int cap) {
+        if (ENABLED) countCap(cap, 1);
+        GLES30.glEnable(cap);
+    }
+
+    public static void glDisable(int cap) {
+        if (ENABLED) countCap(cap, 0);
+        GLES30.glDisable(cap);
+    }
+
+    private static void countCap(int cap, int enabled) {
+        for (int i = 0; i < TRACKED_CAPS.length; i++) {
+            if (TRACKED_CAPS[i] == cap) {
+                count(STATE, caps[i], enabled);
+                caps[i] = enabled;
+                return;
+            }
+        }
+        count(STATE);
+    }
+
+    public static void glCullFace(int mode) {
+        if (ENABLED) count(STATE);
+        GLES30.glCullFace(mode);
+    }
+
+    public static void glBlendFunc(int sfactor, int dfactor) {
+        if (ENABLED) count(STATE);
+        GLES30.glBlendFunc(sfactor, dfactor);
+    }
+
+    public static void glLineWidth(float width) {
+        if (ENABLED) {
+            calls[STATE]++;
+            if (lineWidth == width) {
+                redundant[STATE]++;
+            }
+            lineWidth = width;
+        }
+        GLES30.glLineWidth(width);
+    }
+
+    public static void glPatchParameteri(int pname, int value) {
+        if (ENABLED) {
+            if (pname == GLES32.GL_PATCH_VERTICES) {
+                count(STATE, patchVertices, value);
+                patchVertices = value;
+            } else {
+                count(STATE);
+            }
+        }
+        GLES32.glPatchParameteri(pname, value);
+    }
+
+    public static void glPixelStorei(int pname, int param) {
+        if (ENABLED) {
+            if (pname == GLES30.GL_UNPACK_ALIGNMENT) {
+                count(STATE, unpackAlignment, param);
+                unpackAlignment = param;
+            } else {
+                count(STATE);
+            }
+        }
+        GLES30.glPixelStorei(pname, param);
+    }
+
+    // ---- 同步 ----
+
+    public static long glFenceSync(int condition, int flags) {
+        if (ENABLED) count(OTHER);
+        return GLES30.glFenceSync(condition, flags);
+    }
+
+    public static int glClientWaitSync(long sync, int flags, long timeout) {
+        if (ENABLED) count(OTHER);
+        return GLES30.glClientWaitSync(sync, flags, timeout);
+    }
+
+    public static void glDeleteSync(long sync) {
+        if (ENABLED) count(OTHER);
+        GLES30.glDeleteSync(sync);
+    }
+}
@@ -1,8 +0,0 @@
-package com.example.gl;
-
-public class MathUtils {
-
-    public static float lineDistance(int dx, int dy) {
-        return (float) Math.sqrt(dx * dx + dy * dy);
-    }
-}
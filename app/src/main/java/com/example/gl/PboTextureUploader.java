@@ -0,0 +1,280 @@
+package com.example.gl;
+
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// 基于PBO的纹理局部异步更新：
+// 1. 任意线程调用markDirty()登记脏矩形，同一帧内重叠/相邻的矩形会被合并
+// 2. GL线程在commit()中映射一个空闲PBO，交给工作线程打包texel
+// 3. 下一次commit()时工作线程已完成，则解除映射并用glTexSubImage2D从PBO提交，不阻塞CPU
+public class PboTextureUploader {
+    private static final String TAG = "PboTextureUploader";
+    private static final int PBO_COUNT = 3;
+    // 脏矩形过多时直接合并为包围盒
+    private static final int MAX_RECTS = 16;
+
+    // 把纹理中一个矩形区域的texel按行序写入out（在工作线程中调用）
+    public interface TexelSource {
+        void packTexels(int x, int y, int width, int height, ByteBuffer out);
+    }
+
+    private final int textureId;
+    private final int width;
+    private final int height;
+    private final int format;
+    private final int type;
+    private final int bytesPerTexel;
+    private final TexelSource source;
+
+    private final int[] pboIds = new int[PBO_COUNT];
+    private final long[] fences = new long[PBO_COUNT];
+    private int nextPbo = 0;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+    // 等待提交的脏矩形 {x0, y0, x1, y1}，右边界不包含
+    private final List<int[]> pendingRects = new ArrayList<>();
+
+    // 正在工作线程中打包的批次
+    private int stagingPbo = -1;
+    private List<int[]> stagingRects;
+    private int[] stagingOffsets;
+    private Future<?> stagingTask;
+
+    public PboTextureUploader(int textureId, int width, int height, int format, int type,
+                              int bytesPerTexel, TexelSource source) {
+        this.textureId = textureId;
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.type = type;
+        this.bytesPerTexel = bytesPerTexel;
+        this.source = source;
+
+        // 合并后的矩形互不重叠，总大小不会超过整张纹理
+        int pboSize = width * height * bytesPerTexel;
+        GLES30.glGenBuffers(PBO_COUNT, pboIds, 0);
+        for (int pbo : pboIds) {
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pbo);
+            GLES30.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, pboSize, null, GLES30.GL_STREAM_DRAW);
+        }
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+    }
+
+    // 登记脏矩形（任意线程），坐标为texel，右/下边界不包含
+    public void markDirty(int x0, int y0, int x1, int y1) {
+        x0 = Math.max(0, x0);
+        y0 = Math.max(0, y0);
+        x1 = Math.min(width, x1);
+        y1 = Math.min(height, y1);
+        if (x0 >= x1 || y0 >= y1) return;
+
+        synchronized (pendingRects) {
+            pendingRects.add(new int[]{x0, y0, x1, y1});
+            coalesce(pendingRects);
+        }
+    }
+
+    public boolean hasPendingWork() {
+        synchronized (pendingRects) {
+            return !pendingRects.isEmpty() || stagingTask != null;
+        }
+    }
+
+    // 每帧在GL线程调用一次，返回本次调用是否把新数据提交到了纹理
+    public boolean commit() {
+        // 步骤1：提交上一批已打包完成的数据
+        boolean submitted = false;
+        if (stagingTask != null) {
+            if (!stagingTask.isDone()) {
+                return false; // 工作线程尚未完成，下一帧再提交，避免阻塞
+            }
+            submitted = submitStaged();
+        }
+
+        // 步骤2：取出本帧的脏矩形
+        List<int[]> rects;
+        synchronized (pendingRects) {
+            if (pendingRects.isEmpty()) return submitted;
+            rects = new ArrayList<>(pendingRects);
+            pendingRects.clear();
+        }
+
+        // 步骤3：找到GPU已经读取完毕的PBO
+        int pboIndex = nextPbo;
+        if (fences[pboIndex] != 0) {
+            int status = InstrumentedGL.glClientWaitSync(fences[pboIndex], 0, 0);
+            if (status == GLES30.GL_TIMEOUT_EXPIRED) {
+                // GPU仍在使用该PBO，放回队列下一帧再试
+                synchronized (pendingRects) {
+                    pendingRects.addAll(rects);
+                    coalesce(pendingRects);
+                }
+                return submitted;
+            }
+            InstrumentedGL.glDeleteSync(fences[pboIndex]);
+            fences[pboIndex] = 0;
+        }
+        nextPbo = (nextPbo + 1) % PBO_COUNT;
+
+        final int[] offsets = new int[rects.size()];
+        int totalBytes = 0;
+        for (int r = 0; r < rects.size(); r++) {
+            int[] rect = rects.get(r);
+            offsets[r] = totalBytes;
+            totalBytes += (rect[2] - rect[0]) * (rect[3] - rect[1]) * bytesPerTexel;
+        }
+
+        // 步骤4：映射PBO（fence已确认空闲，可使用UNSYNCHRONIZED避免驱动同步）
+        InstrumentedGL.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pboIds[pboIndex]);
+        Buffer mapped = InstrumentedGL.glMapBufferRange(GLES30.GL_PIXEL_UNPACK_BUFFER, 0, totalBytes,
+                GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT | GLES30.GL_MAP_UNSYNCHRONIZED_BIT);
+        InstrumentedGL.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+
+        if (!(mapped instanceof ByteBuffer)) {
+            Log.e(TAG, "Failed to map pixel unpack buffer");
+            synchronized (pendingRects) {
+                pendingRects.addAll(rects);
+                coalesce(pendingRects);
+            }
+            return submitted;
+        }
+
+        // 步骤5：交给工作线程打包texel
+        final ByteBuffer staging = ((ByteBuffer) mapped).order(ByteOrder.nativeOrder());
+        final List<int[]> batch = rects;
+        stagingPbo = pboIndex;
+        stagingRects = batch;
+        stagingOffsets = offsets;
+        stagingTask = worker.submit(() -> {
+            for (int r = 0; r < batch.size(); r++) {
+                int[] rect = batch.get(r);
+                staging.position(offsets[r]);
+                source.packTexels(rect[0], rect[1], rect[2] - rect[0], rect[3] - rect[1], staging);
+            }
+        });
+        return submitted;
+    }
+
+    // 返回是否提交成功（PBO内容丢失时重新登记，返回false）
+    private boolean submitStaged() {
+        InstrumentedGL.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pboIds[stagingPbo]);
+        if (!InstrumentedGL.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER)) {
+            // 映射期间数据损坏（例如显存被回收），重新登记这些区域
+            Log.w(TAG, "PBO contents lost, re-queueing " + stagingRects.size() + " regions");
+            InstrumentedGL.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            synchronized (pendingRects) {
+                pendingRects.addAll(stagingRects);
+                coalesce(pendingRects);
+            }
+            clearStaging();
+            return false;
+        }
+
+        GLStateCache.bindTexture2D(textureId);
+        InstrumentedGL.glPixelStorei(GLES30.GL_UNPACK_ALIGNMENT, 1);
+        for (int r = 0; r < stagingRects.size(); r++) {
+            int[] rect = stagingRects.get(r);
+            InstrumentedGL.glTexSubImage2D(GLES30.GL_TEXTURE_2D, 0, rect[0], rect[1],
+                    rect[2] - rect[0], rect[3] - rect[1], format, type, stagingOffsets[r]);
+        }
+        InstrumentedGL.glPixelStorei(GLES30.GL_UNPACK_ALIGNMENT, 4);
+        InstrumentedGL.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+
+        // GPU读取完该PBO后才能再次映射
+        fences[stagingPbo] = InstrumentedGL.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        clearStaging();
+        return true;
+    }
+
+    private void clearStaging() {
+        stagingPbo = -1;
+        stagingRects = null;
+        stagingOffsets = null;
+        stagingTask = null;
+    }
+
+    // 合并重叠或相邻的矩形，保证提交的区域互不重叠
+    private static void coalesce(List<int[]> rects) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int a = 0; a < rects.size() && !merged; a++) {
+                for (int b = a + 1; b < rects.size(); b++) {
+                    int[] ra = rects.get(a);
+                    int[] rb = rects.get(b);
+                    if (ra[0] <= rb[2] && rb[0] <= ra[2] && ra[1] <= rb[3] && rb[1] <= ra[3]) {
+                        ra[0] = Math.min(ra[0], rb[0]);
+                        ra[1] = Math.min(ra[1], rb[1]);
+                        ra[2] = Math.max(ra[2], rb[2]);
+                        ra[3] = Math.max(ra[3], rb[3]);
+                        rects.remove(b);
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (rects.size() > MAX_RECTS) {
+            int[] bounds = rects.get(0);
+            for (int r = 1; r < rects.size(); r++) {
+                int[] rect = rects.get(r);
+                bounds[0] = Math.min(bounds[0], rect[0]);
+                bounds[1] = Math.min(bounds[1], rect[1]);
+                bounds[2] = Math.max(bounds[2], rect[2]);
+                bounds[3] = Math.max(bounds[3], rect[3]);
+            }
+            rects.clear();
+            rects.add(bounds);
+        }
+    }
+
+    // 放弃本实例（任意线程，不调用GL）：EGL上下文丢失后PBO、映射和fence已随旧上下文失效，
+    // 只需取消打包任务并停止工作线程；调用后不能再使用本实例
+    public void abandon() {
+        Future<?> task = stagingTask;
+        if (task != null) {
+            task.cancel(false);
+        }
+        clearStaging();
+        synchronized (pendingRects) {
+            pendingRects.clear();
+        }
+        worker.shutdown();
+    }
+
+    // 释放资源（GL线程）
+    public void release() {
+        if (stagingTask != null) {
+            // 等待工作线程写完映射内存后再解除映射
+            try {
+                stagingTask.get();
+            } catch (Exception e) {
+                Log.w(TAG, "Staging task failed", e);
+            }
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, pboIds[stagingPbo]);
+            GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER);
+            GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+            clearStaging();
+        }
+        worker.shutdown();
+
+        for (int i = 0; i < PBO_COUNT; i++) {
+            if (fences[i] != 0) {
+                GLES30.glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        GLES30.glDeleteBuffers(PBO_COUNT, pboIds, 0);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.gl;
+
+import android.opengl.GLSurfaceView;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 按需渲染：GLSurfaceView切换为RENDERMODE_WHEN_DIRTY，只有相机、输入、动画或场景数据变化时才绘制
+// 状态变化时（任意线程）调用requestRender()；有持续动画时（自动旋转、按住移动键、未处理完的笔刷或纹理上传）
+// 渲染器在帧末调用endFrame(true)，立即请求下一帧，帧率由eglSwapBuffers按垂直同步限制
+// 画面静止时不再请求绘制，GPU保持空闲
+// 每次requestRender()使状态代数加一，渲染器据此丢弃在状态变化之前预先录制的帧（帧末的续帧请求不改变代数）
+public class RenderScheduler {
+    // 单帧时间步长上限，避免卡顿后移动量跳变
+    private static final float MAX_FRAME_DELTA = 0.1f;
+
+    private volatile GLSurfaceView view;
+    private final AtomicInteger generation = new AtomicInteger();
+
+    // 以下字段只在GL线程访问
+    private boolean animating;
+    private long lastFrameNanos;
+
+    // 必须在setRenderer()之后调用；未调用时视图保持连续渲染，每一帧都按动画帧计时
+    public void attach(GLSurfaceView view) {
+        view.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        this.view = view;
+    }
+
+    // 请求绘制一帧，多次请求在下一帧之前合并为一次（可在任意线程调用）
+    public void requestRender() {
+        generation.incrementAndGet();
+        GLSurfaceView target = view;
+        if (target != null) {
+            target.requestRender();
+        }
+    }
+
+    // 状态代数（任意线程）：准备帧开始时记录，回放前与当前值比较
+    public int getGeneration() {
+        return generation.get();
+    }
+
+    // GL线程，onDrawFrame开头调用：返回距上一帧的秒数
+    // 上一帧之后没有持续动画时（画面可能已静止任意长时间）返回0
+    public float beginFrame() {
+        long now = System.nanoTime();
+        float deltaTime = 0;
+        if (animating && lastFrameNanos != 0) {
+            deltaTime = Math.min((now - lastFrameNanos) * 1e-9f, MAX_FRAME_DELTA);
+        }
+        lastFrameNanos = now;
+        return deltaTime;
+    }
+
+    // GL线程，onDrawFrame末尾调用：animating为true时立即请求下一帧
+    public void endFrame(boolean animating) {
+        GLSurfaceView target = view;
+        this.animating = animating || target == null;
+        if (animating && target != null) {
+            target.requestRender();
+        }
+    }
+}
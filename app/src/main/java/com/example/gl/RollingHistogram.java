@@ -0,0 +1,61 @@
+package com.example.gl;
+
+// 最近windowSize个样本（毫秒）的滚动直方图
+// 固定宽度的桶，新样本加入时淘汰最旧的样本，记录为O(1)且不分配内存；百分位精确到桶宽
+// 记录在GL线程，查询可能在UI线程，所有方法同步
+public class RollingHistogram {
+    private static final float BUCKET_WIDTH_MS = 0.05f;
+    private static final int BUCKET_COUNT = 2000; // 0~100ms，超出的样本计入最后一个桶
+
+    private final float[] samples;
+    private final int[] buckets = new int[BUCKET_COUNT];
+    private int next = 0;
+    private int count = 0;
+
+    public RollingHistogram(int windowSize) {
+        samples = new float[windowSize];
+    }
+
+    public synchronized void record(float millis) {
+        if (count == samples.length) {
+            buckets[bucketOf(samples[next])]--;
+        } else {
+            count++;
+        }
+        samples[next] = millis;
+        buckets[bucketOf(millis)]++;
+        next = (next + 1) % samples.length;
+    }
+
+    private static int bucketOf(float millis) {
+        int bucket = (int) (millis / BUCKET_WIDTH_MS);
+        return Math.max(0, Math.min(BUCKET_COUNT - 1, bucket));
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    // p取0~1，返回所在桶的上边界；没有样本时返回0
+    public synchronized float getPercentile(float p) {
+        if (count == 0) return 0;
+        int rank = Math.max(1, (int) Math.ceil(p * count));
+        int seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return (i + 1) * BUCKET_WIDTH_MS;
+            }
+        }
+        return BUCKET_COUNT * BUCKET_WIDTH_MS;
+    }
+
+    // 窗口内最慢的一个样本（精确值）
+    public synchronized float getMax() {
+        float max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+}
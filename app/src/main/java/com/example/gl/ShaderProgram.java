@@ -0,0 +1,244 @@
+package com.example.gl;
+
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 着色器程序：链接后通过glGetActiveUniform/glGetActiveAttrib一次性反射出所有活动变量的位置，
+// 每帧不再调用glGetUniformLocation/glGetAttribLocation
+// 类型化的setter记录上次提交的值（uniform值属于程序对象，切换程序后仍然有效），值未变化时跳过glUniform*
+// 所有方法都必须在GL线程调用，setter要求本程序是当前程序（先调用use()，已是当前程序时不会重复glUseProgram）
+public class ShaderProgram {
+    private static final String TAG = "ShaderProgram";
+
+    private static class Uniform {
+        final int index;      // 在uniformList中的下标，供命令缓冲引用
+        final int location;
+        final int type;
+        final float[] floats; // 浮点/矩阵类型的上次提交值
+        int intValue;         // 整数/布尔/采样器类型的上次提交值
+        boolean uploaded;
+
+        Uniform(int index, int location, int type, int floatCount) {
+            this.index = index;
+            this.location = location;
+            this.type = type;
+            this.floats = new float[floatCount];
+        }
+    }
+
+    private final int programId;
+    private final Map<String, Uniform> uniforms = new HashMap<>();
+    private final List<Uniform> uniformList = new ArrayList<>();
+    private final Map<String, Integer> attributes = new HashMap<>();
+
+    // 编译并链接顶点/片段着色器，失败时返回null
+    public static ShaderProgram create(String vertexShaderCode, String fragmentShaderCode) {
+        int program = ShaderUtils.createProgram(vertexShaderCode, fragmentShaderCode);
+        return program != 0 ? new ShaderProgram(program) : null;
+    }
+
+    // 编译并链接计算着色器，失败时返回null
+    public static ShaderProgram createCompute(String computeShaderCode) {
+        int program = ShaderUtils.createComputeProgram(computeShaderCode);
+        return program != 0 ? new ShaderProgram(program) : null;
+    }
+
+    // 包装一个已经链接成功的程序（例如带曲面细分阶段的程序）
+    public ShaderProgram(int programId) {
+        this.programId = programId;
+        reflect();
+    }
+
+    private void reflect() {
+        int[] count = new int[1];
+        int[] size = new int[1];
+        int[] type = new int[1];
+
+        GLES30.glGetProgramiv(programId, GLES30.GL_ACTIVE_UNIFORMS, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = GLES30.glGetActiveUniform(programId, i, size, 0, type, 0);
+            if (name == null) continue;
+            // 数组uniform以"name[0]"的形式返回，按数组名登记
+            if (name.endsWith("[0]")) {
+                name = name.substring(0, name.length() - 3);
+            }
+            int location = GLES30.glGetUniformLocation(programId, name);
+            if (location == -1) continue; // uniform块中的成员没有位置
+            Uniform uniform = new Uniform(uniformList.size(), location, type[0], getFloatCount(type[0]));
+            uniforms.put(name, uniform);
+            uniformList.add(uniform);
+        }
+
+        GLES30.glGetProgramiv(programId, GLES30.GL_ACTIVE_ATTRIBUTES, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = GLES30.glGetActiveAttrib(programId, i, size, 0, type, 0);
+            if (name == null) continue;
+            attributes.put(name, GLES30.glGetAttribLocation(programId, name));
+        }
+
+        Log.i(TAG, "Program " + programId + ": " + uniforms.size() + " uniforms, "
+                + attributes.size() + " attributes");
+    }
+
+    private static int getFloatCount(int type) {
+        switch (type) {
+            case GLES30.GL_FLOAT:
+                return 1;
+            case GLES30.GL_FLOAT_VEC2:
+                return 2;
+            case GLES30.GL_FLOAT_VEC3:
+                return 3;
+            case GLES30.GL_FLOAT_VEC4:
+            case GLES30.GL_FLOAT_MAT2:
+                return 4;
+            case GLES30.GL_FLOAT_MAT3:
+                return 9;
+            case GLES30.GL_FLOAT_MAT4:
+                return 16;
+            default:
+                return 0; // 整数、布尔和采样器类型使用intValue
+        }
+    }
+
+    public int getId() {
+        return programId;
+    }
+
+    public void use() {
+        GLStateCache.useProgram(programId);
+    }
+
+    public boolean hasUniform(String name) {
+        return uniforms.containsKey(name);
+    }
+
+    // 活动属性的位置，着色器中不存在或被优化掉时返回-1
+    public int getAttribLocation(String name) {
+        Integer location = attributes.get(name);
+        return location != null ? location : -1;
+    }
+
+    // 活动uniform的位置，不存在时返回-1
+    public int getUniformLocation(String name) {
+        Uniform uniform = uniforms.get(name);
+        return uniform != null ? uniform.location : -1;
+    }
+
+    // uniform的下标，不存在时返回-1
+    // 反射结果在构造后不再改变，可以在其他线程查询（例如录制命令缓冲的工作线程）
+    public int getUniformIndex(String name) {
+        Uniform uniform = uniforms.get(name);
+        return uniform != null ? uniform.index : -1;
+    }
+
+    // 按下标设置整数uniform（命令缓冲回放），同样跳过未变化的值
+    public void setIntAt(int index, int value) {
+        Uniform uniform = uniformList.get(index);
+        if (uniform.uploaded && uniform.intValue == value) return;
+        InstrumentedGL.glUniform1i(uniform.location, value);
+        uniform.intValue = value;
+        uniform.uploaded = true;
+    }
+
+    // 按下标设置浮点uniform（命令缓冲回放），count必须与uniform类型的分量数一致
+    public void setFloatsAt(int index, float[] values, int offset, int count) {
+        Uniform uniform = uniformList.get(index);
+        float[] shadow = uniform.floats;
+        if (shadow.length != count) return;
+        if (uniform.uploaded && sameValues(shadow, 0, values, offset, count)) return;
+        switch (uniform.type) {
+            case GLES30.GL_FLOAT:
+                InstrumentedGL.glUniform1f(uniform.location, values[offset]);
+                break;
+            case GLES30.GL_FLOAT_VEC2:
+                InstrumentedGL.glUniform2f(uniform.location, values[offset], values[offset + 1]);
+                break;
+            case GLES30.GL_FLOAT_VEC3:
+                InstrumentedGL.glUniform3f(uniform.location, values[offset], values[offset + 1], values[offset + 2]);
+                break;
+            case GLES30.GL_FLOAT_MAT4:
+                InstrumentedGL.glUniformMatrix4fv(uniform.location, 1, false, values, offset);
+                break;
+            default:
+                return; // 其余类型没有对应的setter
+        }
+        System.arraycopy(values, offset, shadow, 0, count);
+        uniform.uploaded = true;
+    }
+
+    // 整数、布尔和采样器uniform
+    public void setInt(String name, int value) {
+        Uniform uniform = uniforms.get(name);
+        if (uniform == null || (uniform.uploaded && uniform.intValue == value)) return;
+        InstrumentedGL.glUniform1i(uniform.location, value);
+        uniform.intValue = value;
+        uniform.uploaded = true;
+    }
+
+    public void setFloat(String name, float value) {
+        Uniform uniform = uniforms.get(name);
+        if (uniform == null || uniform.floats.length < 1) return;
+        float[] shadow = uniform.floats;
+        if (uniform.uploaded && shadow[0] == value) return;
+        InstrumentedGL.glUniform1f(uniform.location, value);
+        shadow[0] = value;
+        uniform.uploaded = true;
+    }
+
+    public void setVec2(String name, float x, float y) {
+        Uniform uniform = uniforms.get(name);
+        if (uniform == null || uniform.floats.length < 2) return;
+        float[] shadow = uniform.floats;
+        if (uniform.uploaded && shadow[0] == x && shadow[1] == y) return;
+        InstrumentedGL.glUniform2f(uniform.location, x, y);
+        shadow[0] = x;
+        shadow[1] = y;
+        uniform.uploaded = true;
+    }
+
+    public void setVec3(String name, float x, float y, float z) {
+        Uniform uniform = uniforms.get(name);
+        if (uniform == null || uniform.floats.length < 3) return;
+        float[] shadow = uniform.floats;
+        if (uniform.uploaded && shadow[0] == x && shadow[1] == y && shadow[2] == z) return;
+        InstrumentedGL.glUniform3f(uniform.location, x, y, z);
+        shadow[0] = x;
+        shadow[1] = y;
+        shadow[2] = z;
+        uniform.uploaded = true;
+    }
+
+    public void setVec3(String name, float[] value) {
+        setVec3(name, value[0], value[1], value[2]);
+    }
+
+    public void setMat4(String name, float[] matrix) {
+        Uniform uniform = uniforms.get(name);
+        if (uniform == null || uniform.type != GLES30.GL_FLOAT_MAT4) return;
+        float[] shadow = uniform.floats;
+        if (uniform.uploaded && sameValues(shadow, 0, matrix, 0, 16)) return;
+        InstrumentedGL.glUniformMatrix4fv(uniform.location, 1, false, matrix, 0);
+        System.arraycopy(matrix, 0, shadow, 0, 16);
+        uniform.uploaded = true;
+    }
+
+    private static boolean sameValues(float[] a, int aOffset, float[] b, int bOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) return false;
+        }
+        return true;
+    }
+
+    public void delete() {
+        GLES30.glDeleteProgram(programId);
+        uniforms.clear();
+        uniformList.clear();
+        attributes.clear();
+        GLStateCache.reset(); // 程序名可能被重新分配
+    }
+}
@@ -2,6 +2,7 @@ package com.example.gl;
 
 import android.content.Context;
 import android.opengl.GLES30;
+import android.opengl.GLES31;
 import android.util.Log;
 
 import java.io.BufferedReader;
@@ -29,6 +30,22 @@ public class ShaderUtils {
         return shaderSource.toString();
     }
 
+    // 在#version行之后插入宏定义，用于从同一份着色器源码编译出不同的变体
+    public static String addDefines(String shaderCode, String... defines) {
+        StringBuilder header = new StringBuilder();
+        for (String define : defines) {
+            header.append("#define ").append(define).append("\n");
+        }
+
+        // #version必须是第一行，宏定义放在它后面
+        int insertAt = 0;
+        if (shaderCode.startsWith("#version")) {
+            int lineEnd = shaderCode.indexOf('\n');
+            insertAt = lineEnd == -1 ? shaderCode.length() : lineEnd + 1;
+        }
+        return shaderCode.substring(0, insertAt) + header + shaderCode.substring(insertAt);
+    }
+
     public static int createProgram(String vertexShaderCode, String fragmentShaderCode) {
         int vertexShader = loadShader(GLES30.GL_VERTEX_SHADER, vertexShaderCode);
         int fragmentShader = loadShader(GLES30.GL_FRAGMENT_SHADER, fragmentShaderCode);
@@ -58,6 +75,30 @@ public class ShaderUtils {
         return program;
     }
 
+    // 编译并链接计算着色器程序（GLES 3.1），失败时返回0
+    public static int createComputeProgram(String computeShaderCode) {
+        int computeShader = loadShader(GLES31.GL_COMPUTE_SHADER, computeShaderCode);
+        if (computeShader == 0) {
+            return 0;
+        }
+
+        int program = GLES30.glCreateProgram();
+        GLES30.glAttachShader(program, computeShader);
+        GLES30.glLinkProgram(program);
+
+        IntBuffer linkStatus = IntBuffer.allocate(1);
+        GLES30.glGetProgramiv(program, GLES30.GL_LINK_STATUS, linkStatus);
+        if (linkStatus.get(0) != GLES30.GL_TRUE) {
+            Log.e(TAG, "Could not link compute program: " + GLES30.glGetProgramInfoLog(program));
+            GLES30.glDeleteProgram(program);
+            GLES30.glDeleteShader(computeShader);
+            return 0;
+        }
+
+        GLES30.glDeleteShader(computeShader);
+        return program;
+    }
+
     private static int loadShader(int type, String shaderCode) {
         int shader = GLES30.glCreateShader(type);
         GLES30.glShaderSource(shader, shaderCode);
@@ -0,0 +1,172 @@
+package com.example.gl;
+
+import android.content.Context;
+import android.opengl.GLES30;
+import android.opengl.GLES31;
+import android.util.Log;
+
+// 地形预处理的GLES 3.1计算路径：由GPU上的高度图纹理直接生成法线贴图和最小/最大值金字塔
+// - 法线贴图：RGBA8不可变纹理（rg为法线x/z分量），标准渲染和曲面细分都从中采样
+// - 金字塔：SSBO，每层为上一层2x2节点的合并，第log2(TILE_SIZE)层同时写入TerrainPatchGrid的包围数据纹理
+// 高度图本身仍由CPU生成并上传（网格顶点、拾取和雕刻都需要CPU上的高度），雕刻的高度上传完成后调用update()重新生成
+// 不支持计算着色器或着色器编译失败时create()返回null，由调用方使用CPU路径（NormalMapBaker和分块范围上传）
+// 只在GL线程调用
+public class TerrainCompute {
+    private static final String TAG = "TerrainCompute";
+    private static final int LOCAL_SIZE = 8; // 与着色器的local_size一致
+    private static final int NODE_BYTES = 16; // vec4
+
+    private final ShaderProgram normalProgram;
+    private final ShaderProgram minMaxProgram;
+    private final int width;  // 高度图尺寸（网格点）
+    private final int depth;
+    private final float cellSize;
+    private final int boundsLevel; // 与高度分块对应的金字塔层
+
+    // 金字塔各层的起始节点下标和尺寸，第0层为 (width-1) x (depth-1) 个格子，最后一层为1x1
+    private final int[] levelOffsets;
+    private final int[] levelWidths;
+    private final int[] levelHeights;
+    private final int nodeCount;
+    private final int[] pyramidBuffer = new int[1];
+
+    private TerrainCompute(ShaderProgram normalProgram, ShaderProgram minMaxProgram, int width, int depth) {
+        this.normalProgram = normalProgram;
+        this.minMaxProgram = minMaxProgram;
+        this.width = width;
+        this.depth = depth;
+        this.cellSize = TerrainDataV2.TERRAIN_SIZE / width;
+        this.boundsLevel = Integer.numberOfTrailingZeros(TerrainDataV2.TILE_SIZE);
+
+        int levels = 1;
+        for (int w = width - 1, h = depth - 1; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2) {
+            levels++;
+        }
+        levelOffsets = new int[levels];
+        levelWidths = new int[levels];
+        levelHeights = new int[levels];
+        int offset = 0;
+        for (int level = 0, w = width - 1, h = depth - 1; level < levels; level++, w = (w + 1) / 2, h = (h + 1) / 2) {
+            levelOffsets[level] = offset;
+            levelWidths[level] = w;
+            levelHeights[level] = h;
+            offset += w * h;
+        }
+        nodeCount = offset;
+
+        GLES30.glGenBuffers(1, pyramidBuffer, 0);
+        GLES30.glBindBuffer(GLES31.GL_SHADER_STORAGE_BUFFER, pyramidBuffer[0]);
+        GLES30.glBufferData(GLES31.GL_SHADER_STORAGE_BUFFER, nodeCount * NODE_BYTES, null, GLES30.GL_DYNAMIC_COPY);
+        GLES30.glBindBuffer(GLES31.GL_SHADER_STORAGE_BUFFER, 0);
+
+        Log.i(TAG, "Min/max pyramid: " + levels + " levels, " + nodeCount + " nodes");
+    }
+
+    // 新的EGL上下文中调用，返回null表示使用CPU路径
+    public static TerrainCompute create(Context context, float[][] heightMap) {
+        if (!GLSupportChecker.supportsComputeShader()) return null;
+
+        ShaderProgram normalProgram = ShaderProgram.createCompute(
+                ShaderUtils.loadShader(context, R.raw.terrain_normal_compute));
+        ShaderProgram minMaxProgram = ShaderProgram.createCompute(
+                ShaderUtils.loadShader(context, R.raw.terrain_minmax_compute));
+        if (normalProgram == null || minMaxProgram == null) {
+            Log.w(TAG, "Failed to create compute programs, falling back to CPU preprocessing");
+            if (normalProgram != null) normalProgram.delete();
+            if (minMaxProgram != null) minMaxProgram.delete();
+            return null;
+        }
+        return new TerrainCompute(normalProgram, minMaxProgram, heightMap.length, heightMap[0].length);
+    }
+
+    // 金字塔SSBO，节点下标 = getLevelOffset(level) + z * getLevelWidth(level) + x
+    public int getPyramidBuffer() {
+        return pyramidBuffer[0];
+    }
+
+    public int getLevelCount() {
+        return levelOffsets.length;
+    }
+
+    public int getLevelOffset(int level) {
+        return levelOffsets[level];
+    }
+
+    public int getLevelWidth(int level) {
+        return levelWidths[level];
+    }
+
+    public int getLevelHeight(int level) {
+        return levelHeights[level];
+    }
+
+    // 创建法线贴图纹理（内容由update()生成）
+    public int createNormalMapTexture() {
+        int[] textureId = new int[1];
+        GLES30.glGenTextures(1, textureId, 0);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, textureId[0]);
+        // 图像写入要求不可变存储
+        GLES30.glTexStorage2D(GLES30.GL_TEXTURE_2D, 1, GLES30.GL_RGBA8, width, depth);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_LINEAR);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_S, GLES30.GL_CLAMP_TO_EDGE);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_WRAP_T, GLES30.GL_CLAMP_TO_EDGE);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, 0);
+        Log.i(TAG, "RGBA8 normal map texture created: " + textureId[0] + " (" + width + "x" + depth + ")");
+        return textureId[0];
+    }
+
+    // 由高度图纹理重新生成法线贴图、金字塔和patch包围数据；normalMapTexture/boundsTexture为0时跳过对应输出
+    // 整张地形只有几万个线程，雕刻后整体重新生成比跟踪脏区域更简单
+    public void update(int heightMapTexture, int normalMapTexture, int boundsTexture) {
+        GLStateCache.bindTexture2D(0, heightMapTexture);
+
+        if (normalMapTexture > 0) {
+            normalProgram.use();
+            normalProgram.setInt("uHeightMap", 0);
+            normalProgram.setFloat("uCellSize", cellSize);
+            InstrumentedGL.glBindImageTexture(0, normalMapTexture, 0, false, 0,
+                    GLES31.GL_WRITE_ONLY, GLES30.GL_RGBA8);
+            InstrumentedGL.glDispatchCompute(groups(width), groups(depth), 1);
+        }
+
+        minMaxProgram.use();
+        minMaxProgram.setInt("uHeightMap", 0);
+        minMaxProgram.setFloat("uCellSize", cellSize);
+        InstrumentedGL.glBindBufferBase(GLES31.GL_SHADER_STORAGE_BUFFER, 0, pyramidBuffer[0]);
+        boolean writeBounds = boundsTexture > 0 && boundsLevel < levelOffsets.length;
+        if (writeBounds) {
+            InstrumentedGL.glBindImageTexture(1, boundsTexture, 0, false, 0,
+                    GLES31.GL_WRITE_ONLY, GLES30.GL_RGBA32F);
+        }
+        for (int level = 0; level < levelOffsets.length; level++) {
+            if (level > 0) {
+                // 下一层读取上一层写入的节点
+                InstrumentedGL.glMemoryBarrier(GLES31.GL_SHADER_STORAGE_BARRIER_BIT);
+                minMaxProgram.setInt("uSrcOffset", levelOffsets[level - 1]);
+                minMaxProgram.setInt("uSrcWidth", levelWidths[level - 1]);
+                minMaxProgram.setInt("uSrcHeight", levelHeights[level - 1]);
+            }
+            minMaxProgram.setInt("uLevel", level);
+            minMaxProgram.setInt("uDstOffset", levelOffsets[level]);
+            minMaxProgram.setInt("uDstWidth", levelWidths[level]);
+            minMaxProgram.setInt("uDstHeight", levelHeights[level]);
+            minMaxProgram.setInt("uWriteBounds", writeBounds && level == boundsLevel ? 1 : 0);
+            InstrumentedGL.glDispatchCompute(groups(levelWidths[level]), groups(levelHeights[level]), 1);
+        }
+
+        // 之后的绘制采样法线贴图和包围数据纹理，之后的计算读取金字塔
+        InstrumentedGL.glMemoryBarrier(GLES31.GL_TEXTURE_FETCH_BARRIER_BIT | GLES31.GL_SHADER_STORAGE_BARRIER_BIT);
+    }
+
+    private static int groups(int size) {
+        return (size + LOCAL_SIZE - 1) / LOCAL_SIZE;
+    }
+
+    public void release() {
+        normalProgram.delete();
+        minMaxProgram.delete();
+        GLES30.glDeleteBuffers(1, pyramidBuffer, 0);
+        pyramidBuffer[0] = 0;
+    }
+}
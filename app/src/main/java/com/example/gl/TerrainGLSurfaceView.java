@@ -21,7 +21,8 @@ public class TerrainGLSurfaceView extends GLSurfaceView {
         setEGLContextClientVersion(3);
         renderer = new TerrainRenderer(getContext());
         setRenderer(renderer);
-        setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        // 按需渲染（RENDERMODE_WHEN_DIRTY），由渲染器决定何时绘制下一帧
+        renderer.getRenderScheduler().attach(this);
     }
 
     public TerrainRenderer getRenderer() {
@@ -0,0 +1,163 @@
+package com.example.gl;
+
+import android.opengl.GLES30;
+import android.opengl.GLES32;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+// 曲面细分路径使用的粗粒度四边形patch网格：每个高度分块（TerrainDataV2.TILE_SIZE x TILE_SIZE个格子）一个patch
+// 顶点只有平面位置（y为0），高度在细分评估着色器中从高度图采样，雕刻不需要更新本网格
+// patch按 tx * tilesPerSide + tz 的顺序排列，与分块高度范围的下标（以及着色器中的gl_PrimitiveID）一致
+// 每个patch的包围数据（最小/最大高度、最大坡度）存放在tilesPerSide x tilesPerSide的RGBA32F纹理中，
+// 纹理坐标(tx, tz)，控制着色器据此做视锥和背面剔除；雕刻后由markBoundsDirty()标记，GL线程commitBounds()整体重传
+// （使用TerrainCompute时由计算着色器直接写入，不再从CPU上传）
+// EGL上下文丢失后在onSurfaceCreated中再次调用upload()
+public class TerrainPatchGrid {
+    private static final String TAG = "TerrainPatchGrid";
+
+    public static final int VERTICES_PER_PATCH = 4;
+
+    private final TerrainDataV2.MeshData meshData;
+    private final FloatBuffer positions;
+    private final ShortBuffer indices;
+    private final FloatBuffer bounds;
+    private final int tiles;
+    private final int vertexCount;
+    private final int patchCount;
+
+    private final int[] bufferIds = new int[2];
+    private final int[] vertexArrayId = new int[1];
+    private final int[] boundsTextureId = new int[1];
+    private volatile boolean boundsDirty = false;
+
+    public TerrainPatchGrid(TerrainDataV2.MeshData meshData) {
+        this.meshData = meshData;
+        int gridSize = meshData.gridSize;
+        tiles = meshData.tilesPerSide;
+        int side = tiles + 1;
+        vertexCount = side * side;
+        patchCount = tiles * tiles;
+
+        // 第t条分块线对应网格点min(t * TILE_SIZE, gridSize - 1)，世界坐标与地形网格顶点的换算相同
+        positions = ByteBuffer.allocateDirect(vertexCount * 3 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (int tx = 0; tx < side; tx++) {
+            float x = (Math.min(tx * TerrainDataV2.TILE_SIZE, gridSize - 1) / (float) gridSize - 0.5f)
+                    * TerrainDataV2.TERRAIN_SIZE;
+            for (int tz = 0; tz < side; tz++) {
+                float z = (Math.min(tz * TerrainDataV2.TILE_SIZE, gridSize - 1) / (float) gridSize - 0.5f)
+                        * TerrainDataV2.TERRAIN_SIZE;
+                positions.put(x).put(0.0f).put(z);
+            }
+        }
+        positions.position(0);
+
+        // 每个patch的四个角：(x0,z0) (x1,z0) (x1,z1) (x0,z1)，评估着色器按gl_TessCoord双线性插值
+        indices = ByteBuffer.allocateDirect(patchCount * VERTICES_PER_PATCH * 2)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int tx = 0; tx < tiles; tx++) {
+            for (int tz = 0; tz < tiles; tz++) {
+                int v00 = tx * side + tz;
+                int v10 = (tx + 1) * side + tz;
+                indices.put((short) v00).put((short) v10).put((short) (v10 + 1)).put((short) (v00 + 1));
+            }
+        }
+        indices.position(0);
+
+        bounds = ByteBuffer.allocateDirect(patchCount * 4 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    public int getPatchCount() {
+        return patchCount;
+    }
+
+    public int getIndexCount() {
+        return patchCount * VERTICES_PER_PATCH;
+    }
+
+    public int getBoundsTexture() {
+        return boundsTextureId[0];
+    }
+
+    // 创建缓冲、VAO和包围数据纹理（GL线程，每个EGL上下文调用一次），旧上下文中的对象不删除，只丢弃id
+    public void upload(int positionHandle) {
+        GLES30.glGenBuffers(2, bufferIds, 0);
+        GLES30.glGenVertexArrays(1, vertexArrayId, 0);
+        GLES30.glBindVertexArray(vertexArrayId[0]);
+
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, bufferIds[0]);
+        GLES30.glBufferData(GLES30.GL_ARRAY_BUFFER, vertexCount * 12, positions, GLES30.GL_STATIC_DRAW);
+        GLES30.glEnableVertexAttribArray(positionHandle);
+        GLES30.glVertexAttribPointer(positionHandle, 3, GLES30.GL_FLOAT, false, 12, 0);
+
+        GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, bufferIds[1]);
+        GLES30.glBufferData(GLES30.GL_ELEMENT_ARRAY_BUFFER, getIndexCount() * 2, indices, GLES30.GL_STATIC_DRAW);
+
+        GLES30.glBindVertexArray(0);
+        GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, 0);
+
+        // 32位浮点纹理只用texelFetch读取，不需要可过滤；不可变存储，计算路径（TerrainCompute）可作为图像写入
+        packBounds();
+        GLES30.glGenTextures(1, boundsTextureId, 0);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, boundsTextureId[0]);
+        GLES30.glTexStorage2D(GLES30.GL_TEXTURE_2D, 1, GLES30.GL_RGBA32F, tiles, tiles);
+        GLES30.glTexSubImage2D(GLES30.GL_TEXTURE_2D, 0, 0, 0, tiles, tiles,
+                GLES30.GL_RGBA, GLES30.GL_FLOAT, bounds);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_NEAREST);
+        GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_NEAREST);
+        GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, 0);
+        boundsDirty = false;
+
+        Log.i(TAG, "Uploaded " + patchCount + " terrain patches");
+    }
+
+    // 分块高度范围已更新（可在任意线程调用）
+    public void markBoundsDirty() {
+        boundsDirty = true;
+    }
+
+    // 重新上传包围数据（GL线程，不能与修改分块范围的雕刻同时进行）；数据只有几KB，整体替换
+    public void commitBounds() {
+        if (!boundsDirty || boundsTextureId[0] == 0) return;
+        boundsDirty = false;
+        packBounds();
+        GLStateCache.bindTexture2D(boundsTextureId[0]);
+        InstrumentedGL.glTexSubImage2D(GLES30.GL_TEXTURE_2D, 0, 0, 0, tiles, tiles,
+                GLES30.GL_RGBA, GLES30.GL_FLOAT, bounds);
+    }
+
+    // 纹理坐标s为tx、t为tz：第tz行的第tx个texel
+    private void packBounds() {
+        for (int tz = 0; tz < tiles; tz++) {
+            for (int tx = 0; tx < tiles; tx++) {
+                int tile = tx * tiles + tz;
+                bounds.put(meshData.tileMinHeight[tile])
+                        .put(meshData.tileMaxHeight[tile])
+                        .put(meshData.tileMaxSlope[tile])
+                        .put(0.0f);
+            }
+        }
+        bounds.position(0);
+    }
+
+    // 录制到命令缓冲（可在工作线程调用），当前程序须包含曲面细分着色器
+    public void draw(CommandBuffer commands) {
+        commands.bindVertexArray(vertexArrayId[0]);
+        commands.patchVertices(VERTICES_PER_PATCH);
+        commands.drawElements(GLES32.GL_PATCHES, getIndexCount(), GLES30.GL_UNSIGNED_SHORT, 0);
+    }
+
+    public void release() {
+        GLES30.glDeleteVertexArrays(1, vertexArrayId, 0);
+        GLES30.glDeleteBuffers(2, bufferIds, 0);
+        GLES30.glDeleteTextures(1, boundsTextureId, 0);
+        boundsTextureId[0] = 0;
+        vertexArrayId[0] = 0;
+        bufferIds[0] = 0;
+        bufferIds[1] = 0;
+        GLStateCache.reset(); // VAO名可能被重新分配
+    }
+}
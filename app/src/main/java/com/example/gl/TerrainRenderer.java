@@ -10,20 +10,13 @@ import javax.microedition.khronos.opengles.GL10;
 
 public class TerrainRenderer implements GLSurfaceView.Renderer {
     private Context context;
-    private int program;
-    private int wireframeProgram; // 新增：线框模式着色器程序
-    private int positionHandle;
-    private int colorHandle;
-    private int normalHandle;
-    private int mvpMatrixHandle;
-    private int modelMatrixHandle;
-    private int lightPositionHandle;
-    private int cameraPositionHandle; // 新增相机位置uniform
-    private int typeHandle; // 新增：类型属性位置
-    private int minHeightHandle; // 新增：minHeight
-    private int maxHeightHandle; // 新增：maxHeight
+    private ShaderProgram program;
+    private ShaderProgram wireframeProgram; // 新增：线框模式着色器程序
 
     private TerrainData.MeshData meshData;
+    private GpuMesh gpuMesh;
+    private int solidVao;
+    private int wireframeVao;
 
     private float[] modelMatrix = new float[16];
     private float[] viewMatrix = new float[16];
@@ -46,9 +39,13 @@ public class TerrainRenderer implements GLSurfaceView.Renderer {
 
     private RenderMode currentMode = RenderMode.SOLID;
 
+    // 按需渲染：场景一直在旋转，每帧结束后请求下一帧；视图暂停后不再绘制
+    private final RenderScheduler renderScheduler = new RenderScheduler();
+
     public TerrainRenderer(Context context) {
         this.context = context;
         meshData = TerrainData.generateTerrainMesh();
+        gpuMesh = new GpuMesh(meshData);
         startTime = System.currentTimeMillis();
     }
 
@@ -59,6 +56,7 @@ public class TerrainRenderer implements GLSurfaceView.Renderer {
         } else {
             currentMode = RenderMode.SOLID;
         }
+        renderScheduler.requestRender();
     }
 
     public String getCurrentModeName() {
@@ -69,6 +67,10 @@ public class TerrainRenderer implements GLSurfaceView.Renderer {
         return currentMode;
     }
 
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
+    }
+
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
         GLES30.glClearColor(0.6f, 0.8f, 1.0f, 1.0f); // 更亮的天空蓝
@@ -88,32 +90,26 @@ public class TerrainRenderer implements GLSurfaceView.Renderer {
         // 加载着色器
         String vertexShader = ShaderUtils.loadShader(context, R.raw.vertex_shader);
         String fragmentShader = ShaderUtils.loadShader(context, R.raw.fragment_shader);
-        program = ShaderUtils.createProgram(vertexShader, fragmentShader);
+        program = ShaderProgram.create(vertexShader, fragmentShader);
 
         // 加载线框模式着色器
         String wireframeVertexShader = ShaderUtils.loadShader(context, R.raw.wireframe_vertex_shader);
         String wireframeFragmentShader = ShaderUtils.loadShader(context, R.raw.wireframe_fragment_shader);
-        wireframeProgram = ShaderUtils.createProgram(wireframeVertexShader, wireframeFragmentShader);
+        wireframeProgram = ShaderProgram.create(wireframeVertexShader, wireframeFragmentShader);
 
-        if (program == 0 || wireframeProgram == 0) {
+        if (program == null || wireframeProgram == null) {
             throw new RuntimeException("Failed to create shader program");
         }
 
-        // 获取实体模式着色器的属性位置
-        setupSolidShaderAttributes();
-    }
+        // 上传网格到GPU（新的EGL上下文中需要重新上传），属性位置来自着色器程序的反射结果
+        gpuMesh.upload();
+        solidVao = gpuMesh.createVertexArray(program.getAttribLocation("aPosition"),
+                program.getAttribLocation("aColor"), program.getAttribLocation("aNormal"),
+                -1, program.getAttribLocation("aType"));
+        wireframeVao = gpuMesh.createWireframeVertexArray(wireframeProgram.getAttribLocation("aPosition"));
 
-    private void setupSolidShaderAttributes() {
-        positionHandle = GLES30.glGetAttribLocation(program, "aPosition");
-        colorHandle = GLES30.glGetAttribLocation(program, "aColor");
-        normalHandle = GLES30.glGetAttribLocation(program, "aNormal");
-        mvpMatrixHandle = GLES30.glGetUniformLocation(program, "uMVPMatrix");
-        modelMatrixHandle = GLES30.glGetUniformLocation(program, "uModelMatrix");
-        lightPositionHandle = GLES30.glGetUniformLocation(program, "uLightPosition");
-        cameraPositionHandle = GLES30.glGetUniformLocation(program, "uCameraPosition");
-        typeHandle = GLES30.glGetAttribLocation(program, "aType"); // 新增
-        minHeightHandle = GLES30.glGetUniformLocation(program, "minHeight"); // 新增
-        maxHeightHandle = GLES30.glGetUniformLocation(program, "maxHeight"); // 新增
+        // 初始化阶段直接修改过GL状态，缓存的状态作废
+        GLStateCache.reset();
     }
 
     @Override
@@ -146,7 +142,8 @@ public class TerrainRenderer implements GLSurfaceView.Renderer {
 
     @Override
     public void onDrawFrame(GL10 gl) {
-        GLES30.glClear(GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT);
+        InstrumentedGL.beginFrame();
+        InstrumentedGL.glClear(GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT);
 
         // 更新时间动画
         long currentTime = System.currentTimeMillis();
@@ -176,88 +173,52 @@ public class TerrainRenderer implements GLSurfaceView.Renderer {
         }
 
         ShaderUtils.checkGLError("onDrawFrame");
+        InstrumentedGL.endFrame();
+
+        renderScheduler.endFrame(true);
     }
 
     private void renderSolid() {
         // 使用实体模式着色器
-        GLES30.glUseProgram(program);
+        program.use();
 
-        // 传递矩阵和uniform
-        GLES30.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES30.glUniformMatrix4fv(modelMatrixHandle, 1, false, modelMatrix, 0);
-        GLES30.glUniform3f(lightPositionHandle, lightPosition[0], lightPosition[1], lightPosition[2]);
-        GLES30.glUniform3f(cameraPositionHandle, cameraPosition[0], cameraPosition[1], cameraPosition[2]);
-        GLES30.glUniform1f(minHeightHandle, meshData.minHeight);
-        GLES30.glUniform1f(maxHeightHandle, meshData.maxHeight);
+        // 传递矩阵和uniform（值未变化的uniform不会重复提交）
+        program.setMat4("uMVPMatrix", mvpMatrix);
+        program.setMat4("uModelMatrix", modelMatrix);
+        program.setVec3("uLightPosition", lightPosition);
+        program.setVec3("uCameraPosition", cameraPosition);
+        program.setFloat("minHeight", meshData.minHeight);
+        program.setFloat("maxHeight", meshData.maxHeight);
 
         // 传递时间动画uniform（如果需要）
-        // int timeHandle = GLES30.glGetUniformLocation(program, "uTime");
-        // GLES30.glUniform1f(timeHandle, waterAnimation);
-
-        // 传递顶点数据
-        GLES30.glEnableVertexAttribArray(positionHandle);
-        GLES30.glVertexAttribPointer(positionHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.vertices);
-
-        // 传递颜色数据
-        GLES30.glEnableVertexAttribArray(colorHandle);
-        GLES30.glVertexAttribPointer(colorHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.colors);
+        // program.setFloat("uTime", waterAnimation);
 
-        // 传递法线数据
-        GLES30.glEnableVertexAttribArray(normalHandle);
-        GLES30.glVertexAttribPointer(normalHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.normals);
-
-        // 传递类型数据 - 使用 GL_INT 类型
-        GLES30.glEnableVertexAttribArray(typeHandle);
-        GLES30.glVertexAttribIPointer(typeHandle, 1, GLES30.GL_INT, 4, meshData.types); // 注意使用 glVertexAttribIPointer
+        // 顶点属性已记录在VAO中
+        GLStateCache.bindVertexArray(solidVao);
 
         // 绘制地形
-        GLES30.glDrawArrays(GLES30.GL_TRIANGLES, 0, meshData.vertexCount);
-
-        // 禁用顶点数组
-        GLES30.glDisableVertexAttribArray(positionHandle);
-        GLES30.glDisableVertexAttribArray(colorHandle);
-        GLES30.glDisableVertexAttribArray(normalHandle);
-        GLES30.glDisableVertexAttribArray(typeHandle); // 新增
+        InstrumentedGL.glDrawArrays(GLES30.GL_TRIANGLES, 0, meshData.vertexCount);
     }
 
     private void renderWireframe() {
         // 使用线框模式着色器
-        GLES30.glUseProgram(wireframeProgram);
-
-        // 获取线框着色器的uniform位置
-        int wireframeMvpMatrixHandle = GLES30.glGetUniformLocation(wireframeProgram, "uMVPMatrix");
-        int wireframeColorHandle = GLES30.glGetUniformLocation(wireframeProgram, "uColor");
-
-        // 获取线框着色器的attribute位置
-        int wireframePositionHandle = GLES30.glGetAttribLocation(wireframeProgram, "aPosition");
+        wireframeProgram.use();
 
         // 传递MVP矩阵
-        GLES30.glUniformMatrix4fv(wireframeMvpMatrixHandle, 1, false, mvpMatrix, 0);
-
-        // 设置线框颜色（亮绿色，便于观察）
-        GLES30.glUniform3f(wireframeColorHandle, 0.0f, 1.0f, 0.0f);
+        wireframeProgram.setMat4("uMVPMatrix", mvpMatrix);
 
-        // 传递顶点数据
-        GLES30.glEnableVertexAttribArray(wireframePositionHandle);
-        GLES30.glVertexAttribPointer(wireframePositionHandle, 3, GLES30.GL_FLOAT, false, 12, meshData.vertices);
+        GLStateCache.bindVertexArray(wireframeVao);
 
         // 首先绘制点（红色）
-        GLES30.glUniform3f(wireframeColorHandle, 1.0f, 0.0f, 0.0f);
+        wireframeProgram.setVec3("uColor", 1.0f, 0.0f, 0.0f);
         // 移除：GLES30.glPointSize(6.0f); // 这行不再需要
-        GLES30.glDrawArrays(GLES30.GL_POINTS, 0, meshData.vertexCount);
+        gpuMesh.drawWireframePoints();
 
         // 然后绘制线框（绿色）
-        GLES30.glUniform3f(wireframeColorHandle, 0.0f, 1.0f, 0.0f);
-        GLES30.glLineWidth(2.0f);
-
-        // 注意：GL_LINES 需要特殊的顶点数据，这里我们用三角形来模拟线框
-        // 为了正确显示线框，我们需要修改绘制方式
-        for (int i = 0; i < meshData.vertexCount; i += 3) {
-            // 绘制三角形的三条边
-            GLES30.glDrawArrays(GLES30.GL_LINE_LOOP, i, 3);
-        }
+        wireframeProgram.setVec3("uColor", 0.0f, 1.0f, 0.0f);
+        GLStateCache.lineWidth(2.0f);
 
-        // 禁用顶点数组
-        GLES30.glDisableVertexAttribArray(wireframePositionHandle);
+        // 去重后的边一次绘制完成
+        gpuMesh.drawWireframeEdges();
     }
 }
\ No newline at end of file
@@ -0,0 +1,283 @@
+package com.example.gl;
+
+import android.opengl.GLES32;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// 地形数据的GL纹理上传（高度图、法线贴图、类型图）
+// 数据的生成与打包在terrain-core模块中，这里只负责创建GL纹理
+public class TerrainTextures {
+    // 生成高度图纹理（用于曲面细分）
+    public static int generateHeightMapTexture2() {
+        float[][] heightMapData = TerrainDataV2.heightMapData;
+        if (heightMapData == null) return -1;
+
+        int width = heightMapData.length;
+        int height = heightMapData[0].length;
+
+        // 找到高度范围
+        float minHeight = Float.MAX_VALUE;
+        float maxHeight = Float.MIN_VALUE;
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                minHeight = Math.min(minHeight, heightMapData[i][j]);
+                maxHeight = Math.max(maxHeight, heightMapData[i][j]);
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(width * height * 4);
+        buffer.order(ByteOrder.nativeOrder());
+
+        // 归一化高度到[0,1]范围并转换为RGBA
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                float normalized = (heightMapData[i][j] - minHeight) / (maxHeight - minHeight);
+                byte value = (byte)(normalized * 255);
+                buffer.put(value); // R
+                buffer.put(value); // G
+                buffer.put(value); // B
+                buffer.put((byte)255); // A
+            }
+        }
+        buffer.position(0);
+
+        int[] textureId = new int[1];
+        GLES32.glGenTextures(1, textureId, 0);
+        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId[0]);
+
+        GLES32.glTexImage2D(
+                GLES32.GL_TEXTURE_2D, 0, GLES32.GL_RGBA,
+                width, height, 0, GLES32.GL_RGBA,
+                GLES32.GL_UNSIGNED_BYTE, buffer
+        );
+
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
+                GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
+                GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
+                GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
+                GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
+
+        TerrainDataV2.heightMapTextureId = textureId[0];
+        return textureId[0];
+    }
+
+    // 生成高度图纹理（修复版）
+    public static int generateHeightMapTexture() {
+        float[][] heightMapData = TerrainDataV2.heightMapData;
+        if (heightMapData == null) return -1;
+
+        int width = heightMapData.length;
+        int height = heightMapData[0].length;
+
+        // 找到高度范围（包含负值）
+        float minHeight = Float.MAX_VALUE;
+        float maxHeight = -Float.MAX_VALUE;  // 注意这里用负的MAX_VALUE
+
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                float h = heightMapData[i][j];
+                minHeight = Math.min(minHeight, h);
+                maxHeight = Math.max(maxHeight, h);
+            }
+        }
+
+        Log.d("HeightMap", String.format("Height range: min=%.3f, max=%.3f", minHeight, maxHeight));
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(width * height * 4);
+        buffer.order(ByteOrder.nativeOrder());
+
+        // 归一化高度到[0,1]范围，正确处理负值
+        float heightRange = Math.max(0.001f, maxHeight - minHeight); // 避免除零
+
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < height; j++) {
+                float normalized = (heightMapData[i][j] - minHeight) / heightRange;
+                // 限制在[0,1]范围内
+                normalized = Math.max(0.0f, Math.min(1.0f, normalized));
+
+                byte value = (byte)(normalized * 255);
+                buffer.put(value); // R
+                buffer.put(value); // G  
+                buffer.put(value); // B
+                buffer.put((byte)255); // A
+            }
+        }
+        buffer.position(0);
+
+        int[] textureId = new int[1];
+        GLES32.glGenTextures(1, textureId, 0);
+        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId[0]);
+
+        // 使用单通道格式更合适
+        GLES32.glTexImage2D(
+                GLES32.GL_TEXTURE_2D, 0, GLES32.GL_RGBA,  // 保持RGBA兼容性
+                width, height, 0, GLES32.GL_RGBA,
+                GLES32.GL_UNSIGNED_BYTE, buffer
+        );
+
+        // 设置纹理参数
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
+
+        TerrainDataV2.heightMapTextureId = textureId[0];
+
+        // 检查纹理是否创建成功
+        int error = GLES32.glGetError();
+        if (error != GLES32.GL_NO_ERROR) {
+            Log.e("HeightMap", "OpenGL error: " + error);
+        } else {
+            Log.d("HeightMap", "Height map texture created: " + textureId[0]);
+        }
+
+        return textureId[0];
+    }
+
+    // 生成高精度单通道高度图纹理：R16F（半精度，可线性过滤）或 R32F（全精度）
+    // 纹理中直接存储真实高度，着色器采样后无需再做重映射
+    public static int generateFloatHeightMapTexture(boolean fullPrecision) {
+        if (TerrainDataV2.heightMapData == null) return -1;
+
+        // 记录高度范围元数据
+        float minHeight = Float.MAX_VALUE;
+        float maxHeight = -Float.MAX_VALUE;
+        for (float[] row : TerrainDataV2.heightMapData) {
+            for (float h : row) {
+                minHeight = Math.min(minHeight, h);
+                maxHeight = Math.max(maxHeight, h);
+            }
+        }
+        TerrainDataV2.heightMapMinHeight = minHeight;
+        TerrainDataV2.heightMapMaxHeight = maxHeight;
+
+        TerrainDataV2.heightMapTextureId = generateFloatHeightMapTexture(TerrainDataV2.heightMapData, fullPrecision);
+        return TerrainDataV2.heightMapTextureId;
+    }
+
+    public static int generateFloatHeightMapTexture(float[][] heightMap, boolean fullPrecision) {
+        int width = heightMap.length;     // x方向 -> 纹理s
+        int depth = heightMap[0].length;  // z方向 -> 纹理t
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(width * depth * TerrainDataV2.getHeightTexelSize(fullPrecision));
+        buffer.order(ByteOrder.nativeOrder());
+        TerrainDataV2.packHeightTexels(heightMap, 0, 0, width, depth, fullPrecision, buffer);
+        buffer.position(0);
+
+        int internalFormat = fullPrecision ? GLES32.GL_R32F : GLES32.GL_R16F;
+        int type = fullPrecision ? GLES32.GL_FLOAT : GLES32.GL_HALF_FLOAT;
+        // R32F只有在支持OES_texture_float_linear时才能线性过滤
+        int filter = (!fullPrecision || GLSupportChecker.supportsFloatTextureLinear())
+                ? GLES32.GL_LINEAR : GLES32.GL_NEAREST;
+
+        int[] textureId = new int[1];
+        GLES32.glGenTextures(1, textureId, 0);
+        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId[0]);
+
+        // 半精度每行可能不是4字节对齐
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, fullPrecision ? 4 : 2);
+        GLES32.glTexImage2D(
+                GLES32.GL_TEXTURE_2D, 0, internalFormat,
+                width, depth, 0, GLES32.GL_RED,
+                type, buffer
+        );
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, 4);
+
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER, filter);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAG_FILTER, filter);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
+
+        int error = GLES32.glGetError();
+        if (error != GLES32.GL_NO_ERROR) {
+            Log.e("HeightMap", "OpenGL error: " + error);
+        } else {
+            Log.d("HeightMap", String.format("%s height map texture created: %d (%dx%d)",
+                    fullPrecision ? "R32F" : "R16F", textureId[0], width, depth));
+        }
+
+        return textureId[0];
+    }
+
+    // 烘焙法线贴图并上传为RG8纹理（纹理布局与高度图纹理一致）
+    public static int generateNormalMapTexture() {
+        if (TerrainDataV2.heightMapData == null) return -1;
+        return generateNormalMapTexture(TerrainDataV2.heightMapData);
+    }
+
+    public static int generateNormalMapTexture(float[][] heightMap) {
+        int width = heightMap.length;
+        int depth = heightMap[0].length;
+        ByteBuffer buffer = NormalMapBaker.bake(heightMap, TerrainDataV2.TERRAIN_SIZE / width);
+
+        int[] textureId = new int[1];
+        GLES32.glGenTextures(1, textureId, 0);
+        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId[0]);
+
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, 2);
+        GLES32.glTexImage2D(
+                GLES32.GL_TEXTURE_2D, 0, GLES32.GL_RG8,
+                width, depth, 0, GLES32.GL_RG,
+                GLES32.GL_UNSIGNED_BYTE, buffer
+        );
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, 4);
+
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_LINEAR);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
+
+        int error = GLES32.glGetError();
+        if (error != GLES32.GL_NO_ERROR) {
+            Log.e("NormalMap", "OpenGL error: " + error);
+        } else {
+            Log.d("NormalMap", "RG8 normal map texture created: " + textureId[0] + " (" + width + "x" + depth + ")");
+        }
+
+        return textureId[0];
+    }
+
+    // 类型图纹理（GL_R8UI，每个网格点一个字节，着色器中用usampler2D + texelFetch读取）
+    // 曲面细分评估着色器据此给道路等区域着色
+    public static int generateTypeMapTexture(PackedTypeMap typeMap) {
+        if (typeMap == null) return -1;
+
+        int width = typeMap.getWidth();
+        int depth = typeMap.getDepth();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(width * depth).order(ByteOrder.nativeOrder());
+        typeMap.packTexels(0, 0, width, depth, buffer);
+        buffer.position(0);
+
+        int[] textureId = new int[1];
+        GLES32.glGenTextures(1, textureId, 0);
+        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId[0]);
+
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, 1);
+        GLES32.glTexImage2D(
+                GLES32.GL_TEXTURE_2D, 0, GLES32.GL_R8UI,
+                width, depth, 0, GLES32.GL_RED_INTEGER,
+                GLES32.GL_UNSIGNED_BYTE, buffer
+        );
+        GLES32.glPixelStorei(GLES32.GL_UNPACK_ALIGNMENT, 4);
+
+        // 整数纹理只能使用最近邻过滤
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_NEAREST);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_NEAREST);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
+        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
+
+        int error = GLES32.glGetError();
+        if (error != GLES32.GL_NO_ERROR) {
+            Log.e("TypeMap", "OpenGL error: " + error);
+        } else {
+            Log.d("TypeMap", "R8UI type map texture created: " + textureId[0] + " (" + width + "x" + depth + ")");
+        }
+
+        return textureId[0];
+    }
+}
@@ -19,6 +19,19 @@ uniform float maxHeight;  // 第二个float值
 uniform vec3 uLightPosition;
 uniform vec3 uCameraPosition;
 
+// 烘焙的法线贴图（RG8存储法线x/z分量）
+uniform sampler2D uNormalMap;
+uniform int uUseNormalMap;
+uniform float uTerrainSize;
+uniform vec2 uNormalMapTexelSize;
+
+#ifdef SOLID_WIREFRAME
+// 实体+线框叠加：用重心坐标的屏幕空间导数得到与距离无关的线宽
+in vec3 vBarycentric;
+uniform vec3 uWireframeColor;
+uniform float uWireframeWidth; // 线宽（像素）
+#endif
+
 out vec4 fragColor;
 
 // 地形类型常量
@@ -160,9 +173,21 @@ vec3 smoothHeightToColor(float height, float minHeight, float maxHeight) {
     }
 }
 
+// 地面类型（非树木、建筑物体）
+bool isGround() {
+    return vType == Land || vType == Lawn || vType == Road || vType == WaterPool || vType == Building;
+}
+
+// 从法线贴图读取法线，y分量由单位长度重建
+vec3 sampleNormalMap(vec3 position) {
+    vec2 uv = (position.xz + uTerrainSize * 0.5) / uTerrainSize + uNormalMapTexelSize * 0.5;
+    vec2 nxz = texture(uNormalMap, uv).rg * 2.0 - 1.0;
+    return vec3(nxz.x, sqrt(max(0.0, 1.0 - dot(nxz, nxz))), nxz.y);
+}
+
 void main() {
-    // 归一化向量
-    vec3 normal = normalize(vNormal);
+    // 归一化向量（地面使用法线贴图，网格密度降低后光照细节不变）
+    vec3 normal = (uUseNormalMap == 1 && isGround()) ? normalize(sampleNormalMap(vPosition)) : normalize(vNormal);
     vec3 lightDir = normalize(uLightPosition - vWorldPosition);
     vec3 viewDir = normalize(uCameraPosition - vWorldPosition);
     vec3 reflectDir = reflect(-lightDir, normal);
@@ -235,5 +260,13 @@ void main() {
     // 色调增强（适度）
     vec3 saturatedColor = mix(finalColor, vec3(dot(finalColor, vec3(0.299, 0.587, 0.114))), -0.05);
 
+#ifdef SOLID_WIREFRAME
+    // 到最近一条边的距离（以像素计），在线宽范围内混合线框颜色
+    vec3 pixelDistance = vBarycentric / max(fwidth(vBarycentric), vec3(1e-5));
+    float edgeDistance = min(min(pixelDistance.x, pixelDistance.y), pixelDistance.z);
+    float edge = 1.0 - smoothstep(uWireframeWidth * 0.5 - 0.5, uWireframeWidth * 0.5 + 0.5, edgeDistance);
+    saturatedColor = mix(saturatedColor, uWireframeColor, edge);
+#endif
+
     fragColor = vec4(saturatedColor, 1.0);
 }
\ No newline at end of file
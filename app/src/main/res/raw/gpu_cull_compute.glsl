@@ -0,0 +1,106 @@
+#version 310 es
+
+// GPU剔除：每个工作组处理一个绘制项（地形分块或场景物体），视锥内的绘制项把自己的索引复制到输出索引缓冲，
+// 并通过原子加法累加到对应间接绘制命令的count
+// uPass == 0：只清零所有命令的count（一个工作组）；uPass == 1：剔除（从uFirstItem起每个绘制项一个工作组）
+layout(local_size_x = 64) in;
+
+struct DrawItem {
+    highp vec4 boundsMin;  // 模型空间包围盒
+    highp vec4 boundsMax;
+    uint firstIndex;       // 在源索引中的范围
+    uint indexCount;
+    int pyramidNode;       // 地形分块在最小/最大值金字塔中的节点，-1表示使用boundsMin/Max的y
+    uint command;          // 所属的间接绘制命令（0：地形，1：场景物体）
+};
+
+// 与glDrawElementsIndirect的命令格式一致
+struct DrawCommand {
+    uint count;
+    uint instanceCount;
+    uint firstIndex;
+    int baseVertex;
+    uint reserved;
+};
+
+layout(std430, binding = 0) readonly buffer MinMaxPyramid {
+    highp vec4 nodes[];
+};
+
+layout(std430, binding = 1) readonly buffer DrawItems {
+    DrawItem items[];
+};
+
+layout(std430, binding = 2) readonly buffer SourceIndices {
+    uint sourceIndices[];
+};
+
+layout(std430, binding = 3) writeonly buffer CulledIndices {
+    uint culledIndices[];
+};
+
+layout(std430, binding = 4) buffer DrawCommands {
+    DrawCommand commands[];
+};
+
+uniform highp mat4 uMVPMatrix;
+uniform int uPass;
+uniform int uCommandCount;
+uniform int uFirstItem; // 本次调度的第一个绘制项（只剔除场景物体时跳过地形分块）
+
+// 高度纹理为半精度，与曲面细分控制着色器相同，包围范围向外扩展一点
+const highp float BOUNDS_MARGIN = 0.1;
+
+shared uint visible;
+shared uint outputOffset;
+
+// 包围盒的8个角都在同一个裁剪平面之外
+bool isOutsideFrustum(highp vec3 boxMin, highp vec3 boxMax) {
+    bvec3 allLeft = bvec3(true);   // x/y/z < -w
+    bvec3 allRight = bvec3(true);  // x/y/z > w
+    for (int i = 0; i < 8; i++) {
+        highp vec3 corner = vec3(
+        (i & 1) == 0 ? boxMin.x : boxMax.x,
+        (i & 2) == 0 ? boxMin.y : boxMax.y,
+        (i & 4) == 0 ? boxMin.z : boxMax.z);
+        highp vec4 clip = uMVPMatrix * vec4(corner, 1.0);
+        allLeft = bvec3(allLeft.x && clip.x < -clip.w, allLeft.y && clip.y < -clip.w, allLeft.z && clip.z < -clip.w);
+        allRight = bvec3(allRight.x && clip.x > clip.w, allRight.y && clip.y > clip.w, allRight.z && clip.z > clip.w);
+    }
+    return any(allLeft) || any(allRight);
+}
+
+void main() {
+    uint lane = gl_LocalInvocationIndex;
+
+    // uPass对整个调度一致，提前返回不影响下面的barrier()
+    if (uPass == 0) {
+        if (int(lane) < uCommandCount) {
+            commands[lane].count = 0u;
+        }
+        return;
+    }
+
+    DrawItem item = items[uint(uFirstItem) + gl_WorkGroupID.x];
+    if (lane == 0u) {
+        highp vec3 boxMin = item.boundsMin.xyz;
+        highp vec3 boxMax = item.boundsMax.xyz;
+        // 地形分块的高度范围取自计算着色器维护的金字塔，雕刻后不需要从CPU更新
+        if (item.pyramidNode >= 0) {
+            highp vec4 node = nodes[item.pyramidNode];
+            boxMin.y = node.x - BOUNDS_MARGIN;
+            boxMax.y = node.y + BOUNDS_MARGIN;
+        }
+        visible = isOutsideFrustum(boxMin, boxMax) ? 0u : 1u;
+        if (visible == 1u) {
+            outputOffset = commands[item.command].firstIndex + atomicAdd(commands[item.command].count, item.indexCount);
+        }
+    }
+    memoryBarrierShared();
+    barrier();
+    if (visible == 0u) return;
+
+    for (uint i = lane; i < item.indexCount; i += 64u) {
+        culledIndices[outputOffset + i] = sourceIndices[item.firstIndex + i];
+    }
+}
@@ -0,0 +1,63 @@
+#version 310 es
+
+// 高度图的最小/最大值金字塔，每次调度生成一层
+// 第0层的节点(x, z)对应格子(x, z)，即网格点[x, x+1] x [z, z+1]；第k层的节点覆盖2^k x 2^k个格子
+// 节点为 (最小高度, 最大高度, x方向相邻点最大高度差, z方向相邻点最大高度差)
+// 第log2(TILE_SIZE)层与高度分块一一对应，同时写入曲面细分patch的包围数据纹理
+layout(local_size_x = 8, local_size_y = 8) in;
+
+layout(std430, binding = 0) buffer MinMaxPyramid {
+    highp vec4 nodes[];
+};
+
+layout(rgba32f, binding = 1) writeonly uniform highp image2D uPatchBounds;
+
+uniform highp sampler2D uHeightMap;
+uniform int uLevel;
+uniform int uSrcOffset;  // 上一层在nodes中的起始下标
+uniform int uSrcWidth;
+uniform int uSrcHeight;
+uniform int uDstOffset;
+uniform int uDstWidth;
+uniform int uDstHeight;
+uniform int uWriteBounds;
+uniform highp float uCellSize;
+
+highp float height(ivec2 p) {
+    return texelFetch(uHeightMap, p, 0).r;
+}
+
+void main() {
+    ivec2 p = ivec2(gl_GlobalInvocationID.xy);
+    if (p.x >= uDstWidth || p.y >= uDstHeight) return;
+
+    highp vec4 node;
+    if (uLevel == 0) {
+        highp float h00 = height(p);
+        highp float h10 = height(p + ivec2(1, 0));
+        highp float h01 = height(p + ivec2(0, 1));
+        highp float h11 = height(p + ivec2(1, 1));
+        node.x = min(min(h00, h10), min(h01, h11));
+        node.y = max(max(h00, h10), max(h01, h11));
+        node.z = max(abs(h10 - h00), abs(h11 - h01));
+        node.w = max(abs(h01 - h00), abs(h11 - h10));
+    } else {
+        node = vec4(3.0e38, -3.0e38, 0.0, 0.0);
+        for (int dz = 0; dz < 2; dz++) {
+            for (int dx = 0; dx < 2; dx++) {
+                ivec2 child = p * 2 + ivec2(dx, dz);
+                if (child.x >= uSrcWidth || child.y >= uSrcHeight) continue;
+                highp vec4 source = nodes[uSrcOffset + child.y * uSrcWidth + child.x];
+                node.x = min(node.x, source.x);
+                node.y = max(node.y, source.y);
+                node.zw = max(node.zw, source.zw);
+            }
+        }
+    }
+    nodes[uDstOffset + p.y * uDstWidth + p.x] = node;
+
+    // 与TerrainDataV2.updateTileBounds()相同：(最小高度, 最大高度, 最大坡度)
+    if (uWriteBounds == 1) {
+        imageStore(uPatchBounds, p, vec4(node.x, node.y, length(node.zw) / uCellSize, 0.0));
+    }
+}
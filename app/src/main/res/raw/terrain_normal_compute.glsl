@@ -0,0 +1,35 @@
+#version 310 es
+
+// 由高度图纹理计算法线贴图（与CPU的NormalMapBaker相同的Sobel梯度）
+// 输出RGBA8，rg存储法线的x/z分量（RG8不能作为图像格式），采样方式与RG8法线贴图相同
+layout(local_size_x = 8, local_size_y = 8) in;
+
+uniform highp sampler2D uHeightMap; // texel (x, z)
+uniform highp float uCellSize;
+
+layout(rgba8, binding = 0) writeonly uniform highp image2D uNormalMap;
+
+highp float height(ivec2 p) {
+    return texelFetch(uHeightMap, p, 0).r;
+}
+
+void main() {
+    ivec2 p = ivec2(gl_GlobalInvocationID.xy);
+    ivec2 size = textureSize(uHeightMap, 0);
+    if (p.x >= size.x || p.y >= size.y) return;
+
+    // 边缘一圈的法线朝上
+    highp float dx = 0.0;
+    highp float dz = 0.0;
+    if (p.x > 0 && p.x < size.x - 1 && p.y > 0 && p.y < size.y - 1) {
+        dx = (height(p + ivec2(1, -1)) + 2.0 * height(p + ivec2(1, 0)) + height(p + ivec2(1, 1))
+            - height(p + ivec2(-1, -1)) - 2.0 * height(p + ivec2(-1, 0)) - height(p + ivec2(-1, 1)))
+            / (8.0 * uCellSize);
+        dz = (height(p + ivec2(-1, 1)) + 2.0 * height(p + ivec2(0, 1)) + height(p + ivec2(1, 1))
+            - height(p + ivec2(-1, -1)) - 2.0 * height(p + ivec2(0, -1)) - height(p + ivec2(1, -1)))
+            / (8.0 * uCellSize);
+    }
+
+    highp vec3 normal = normalize(vec3(-dx, 1.0, -dz));
+    imageStore(uNormalMap, p, vec4(normal.x * 0.5 + 0.5, normal.z * 0.5 + 0.5, 0.0, 1.0));
+}
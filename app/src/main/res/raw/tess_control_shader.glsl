@@ -1,38 +1,61 @@
 #version 320 es
 #extension GL_EXT_tessellation_shader : enable
 
-layout(vertices = 3) out;
+// 输入为TerrainPatchGrid的四边形patch（每个高度分块一个），角点顺序：(x0,z0) (x1,z0) (x1,z1) (x0,z1)
+layout(vertices = 4) out;
 
-uniform highp float uTessLevel;
-uniform highp vec3 uCameraPosition;
+uniform highp mat4 uMVPMatrix;
+uniform highp float uTessLevel;            // 质量等级，限制最大细分级别
+uniform highp float uPixelsPerUnit;        // 视空间深度为1处一个单位长度对应的像素数
+uniform highp float uTargetTrianglePixels; // 细分后三角形边长的目标像素数
+uniform highp vec3 uCameraModelPosition;   // 模型空间中的相机位置
 uniform highp float uTerrainSize;
+uniform highp sampler2D uHeightMap;
+uniform highp vec2 uHeightMapTexelSize;
+uniform highp sampler2D uPatchBounds;      // (最小高度, 最大高度, 最大坡度)，texel (tx, tz)
 
 out highp vec3 tcPosition[];
 
-// 计算点到相机的距离
-highp float getDistanceToCamera(highp vec3 worldPos) {
-    return length(worldPos - uCameraPosition);
-}
-
-// 基于距离和曲率的自适应细分
-highp float calculateAdaptiveTessLevel(highp vec3 p0, highp vec3 p1, highp vec3 p2) {
-    // 计算三角形中心
-    highp vec3 center = (p0 + p1 + p2) / 3.0;
+// 高度纹理为半精度，包围范围向外扩展一点，避免量化误差剔除掉可见的patch
+const highp float BOUNDS_MARGIN = 0.1;
 
-    // 基于距离的细分
-    highp float distance = getDistanceToCamera(center);
-    highp float distanceFactor = clamp(50.0 / (distance + 1.0), 0.5, 4.0);
+highp float sampleHeight(highp vec3 position) {
+    highp vec2 uv = (position.xz + uTerrainSize * 0.5) / uTerrainSize + uHeightMapTexelSize * 0.5;
+    uv = clamp(uv, uHeightMapTexelSize * 0.5, 1.0 - uHeightMapTexelSize * 0.5);
+    return textureLod(uHeightMap, uv, 0.0).r;
+}
 
-    // 基于曲率的细分
-    highp vec3 edge1 = p1 - p0;
-    highp vec3 edge2 = p2 - p0;
-    highp float area = length(cross(edge1, edge2));
-    highp float curvatureFactor = clamp(area * 10.0, 0.5, 3.0);
+// 边的细分级别：以边为直径的球在屏幕上的投影像素数 / 目标像素数
+// 只取决于边的两个端点（高度从高度图采样），相邻patch的公共边得到相同的级别，不会产生裂缝
+highp float calculateEdgeTessLevel(highp vec3 a, highp vec3 b, highp float maxLevel) {
+    highp float depth = (uMVPMatrix * vec4((a + b) * 0.5, 1.0)).w;
+    highp float pixels = distance(a, b) * uPixelsPerUnit / max(depth, 0.1);
+    return clamp(pixels / uTargetTrianglePixels, 1.0, maxLevel);
+}
 
-    // 基于高度的细分
-    highp float heightFactor = 1.0 + abs(center.y) * 0.1;
+// 包围盒的8个角都在同一个裁剪平面之外
+bool isOutsideFrustum(highp vec3 boxMin, highp vec3 boxMax) {
+    bvec3 allLeft = bvec3(true);   // x/y/z < -w
+    bvec3 allRight = bvec3(true);  // x/y/z > w
+    for (int i = 0; i < 8; i++) {
+        highp vec3 corner = vec3(
+        (i & 1) == 0 ? boxMin.x : boxMax.x,
+        (i & 2) == 0 ? boxMin.y : boxMax.y,
+        (i & 4) == 0 ? boxMin.z : boxMax.z);
+        highp vec4 clip = uMVPMatrix * vec4(corner, 1.0);
+        allLeft = bvec3(allLeft.x && clip.x < -clip.w, allLeft.y && clip.y < -clip.w, allLeft.z && clip.z < -clip.w);
+        allRight = bvec3(allRight.x && clip.x > clip.w, allRight.y && clip.y > clip.w, allRight.z && clip.z > clip.w);
+    }
+    return any(allLeft) || any(allRight);
+}
 
-    return uTessLevel * distanceFactor * curvatureFactor * heightFactor;
+// 法线锥背面测试：patch内所有面的法线与+y的夹角不超过atan(maxSlope)
+// 相机低于patch最低点，且高度差大于 坡度 * 最远水平距离 时，所有面都背向相机
+bool isBackFacing(highp vec3 boxMin, highp vec3 boxMax, highp float maxSlope) {
+    highp float below = boxMin.y - uCameraModelPosition.y;
+    if (below <= 0.0) return false;
+    highp vec2 far = max(abs(boxMin.xz - uCameraModelPosition.xz), abs(boxMax.xz - uCameraModelPosition.xz));
+    return below > maxSlope * length(far);
 }
 
 void main() {
@@ -45,13 +68,40 @@ void main() {
         highp vec3 p0 = gl_in[0].gl_Position.xyz;
         highp vec3 p1 = gl_in[1].gl_Position.xyz;
         highp vec3 p2 = gl_in[2].gl_Position.xyz;
+        highp vec3 p3 = gl_in[3].gl_Position.xyz;
+
+        // gl_PrimitiveID即patch下标 tx * tilesPerSide + tz
+        int tiles = textureSize(uPatchBounds, 0).x;
+        highp vec3 bounds = texelFetch(uPatchBounds, ivec2(gl_PrimitiveID / tiles, gl_PrimitiveID % tiles), 0).xyz;
+        highp vec3 boxMin = vec3(min(p0.x, p2.x), bounds.x - BOUNDS_MARGIN, min(p0.z, p2.z));
+        highp vec3 boxMax = vec3(max(p0.x, p2.x), bounds.y + BOUNDS_MARGIN, max(p0.z, p2.z));
+
+        if (isOutsideFrustum(boxMin, boxMax) || isBackFacing(boxMin, boxMax, bounds.z)) {
+            // 外部细分级别为0的patch在细分之前被丢弃
+            gl_TessLevelOuter[0] = 0.0;
+            gl_TessLevelOuter[1] = 0.0;
+            gl_TessLevelOuter[2] = 0.0;
+            gl_TessLevelOuter[3] = 0.0;
+            gl_TessLevelInner[0] = 0.0;
+            gl_TessLevelInner[1] = 0.0;
+        } else {
+            p0.y = sampleHeight(p0);
+            p1.y = sampleHeight(p1);
+            p2.y = sampleHeight(p2);
+            p3.y = sampleHeight(p3);
 
-        highp float adaptiveLevel = calculateAdaptiveTessLevel(p0, p1, p2);
+            // 每个分块16个格子，质量等级4时最多细分到高度图的分辨率
+            highp float maxLevel = min(uTessLevel * 4.0, float(gl_MaxTessGenLevel));
 
-        // 设置细分级别
-        gl_TessLevelInner[0] = adaptiveLevel;
-        gl_TessLevelOuter[0] = adaptiveLevel;
-        gl_TessLevelOuter[1] = adaptiveLevel;
-        gl_TessLevelOuter[2] = adaptiveLevel;
+            // quads的外边顺序：u=0、v=0、u=1、v=1
+            gl_TessLevelOuter[0] = calculateEdgeTessLevel(p0, p3, maxLevel);
+            gl_TessLevelOuter[1] = calculateEdgeTessLevel(p0, p1, maxLevel);
+            gl_TessLevelOuter[2] = calculateEdgeTessLevel(p1, p2, maxLevel);
+            gl_TessLevelOuter[3] = calculateEdgeTessLevel(p3, p2, maxLevel);
+
+            // 内部级别取对边的较大值
+            gl_TessLevelInner[0] = max(gl_TessLevelOuter[1], gl_TessLevelOuter[3]);
+            gl_TessLevelInner[1] = max(gl_TessLevelOuter[0], gl_TessLevelOuter[2]);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,21 @@
 #version 320 es
 #extension GL_EXT_tessellation_shader : enable
 
-layout(triangles, equal_spacing, ccw) in;
+layout(quads, equal_spacing, ccw) in;
 
 uniform highp mat4 uMVPMatrix;
 uniform highp mat4 uModelMatrix;
-uniform highp sampler2D uHeightMap;
+uniform highp sampler2D uHeightMap; // R16F/R32F，直接存储真实高度
 uniform highp float uTerrainSize;
+uniform highp float uHeightMin; // 高度范围元数据
+uniform highp float uHeightMax;
+uniform highp vec2 uHeightMapTexelSize;
+uniform mediump sampler2D uNormalMap; // 烘焙的法线贴图（RG8存储法线x/z分量）
+uniform int uUseNormalMap;
 uniform highp vec3 uCameraPosition;
 uniform highp vec3 uLightPosition;
+uniform highp usampler2D uTypeMap; // GL_R8UI，每个网格点一个ElementType
+uniform int uUseTypeMap;
 
 in highp vec3 tcPosition[];
 
@@ -18,33 +25,47 @@ out mediump vec3 vColor;
 out mediump vec2 vTexCoord;
 out highp float vHeight;
 
-// 双线性插值
-highp float sampleHeightMap(mediump vec2 uv) {
-    // 从高度图采样高度
-    highp float height = texture(uHeightMap, uv).r;
-    // 将[0,1]范围映射到实际高度范围
-    return (1.0 - height) * 10.0;
+// 双线性插值（高精度纹理中即为真实高度）
+highp float sampleHeightMap(highp vec2 uv) {
+    return texture(uHeightMap, uv).r;
 }
 
 // 计算法线
-highp vec3 calculateNormal(mediump vec2 uv) {
-    highp float texelSize = 1.0 / 1024.0;
+highp vec3 calculateNormal(highp vec2 uv) {
+    if (uUseNormalMap == 1) {
+        // 单次采样烘焙的法线，y分量由单位长度重建
+        mediump vec2 nxz = texture(uNormalMap, uv).rg * 2.0 - 1.0;
+        return normalize(vec3(nxz.x, sqrt(max(0.0, 1.0 - dot(nxz, nxz))), nxz.y));
+    }
+
+    highp vec2 texelSize = uHeightMapTexelSize;
 
     // 采样周围点的高度
-    highp float hL = sampleHeightMap(uv + vec2(-texelSize, 0.0));
-    highp float hR = sampleHeightMap(uv + vec2(texelSize, 0.0));
-    highp float hB = sampleHeightMap(uv + vec2(0.0, -texelSize));
-    highp float hT = sampleHeightMap(uv + vec2(0.0, texelSize));
+    highp float hL = sampleHeightMap(uv + vec2(-texelSize.x, 0.0));
+    highp float hR = sampleHeightMap(uv + vec2(texelSize.x, 0.0));
+    highp float hB = sampleHeightMap(uv + vec2(0.0, -texelSize.y));
+    highp float hT = sampleHeightMap(uv + vec2(0.0, texelSize.y));
 
-    // 计算梯度
-    highp float dx = (hR - hL) / (2.0 * texelSize);
-    highp float dz = (hT - hB) / (2.0 * texelSize);
+    // 计算世界空间梯度
+    highp float dx = (hR - hL) / (2.0 * texelSize.x * uTerrainSize);
+    highp float dz = (hT - hB) / (2.0 * texelSize.y * uTerrainSize);
 
     return normalize(vec3(-dx, 1.0, -dz));
 }
 
+// 固定颜色的地面类型，与标准着色器中由顶点颜色决定的区域一致
+const uint Road = 1u;
+const mediump vec3 roadColor = vec3(0.32275638); // TerrainDataV2.getColorForType(Road)
+
+// 距离最近的网格点的类型（网格点i对应texel i，整数纹理不插值）
+uint sampleType(highp vec3 position) {
+    ivec2 size = textureSize(uTypeMap, 0);
+    ivec2 point = ivec2(floor((position.xz + uTerrainSize * 0.5) / uTerrainSize * vec2(size) + 0.5));
+    return texelFetch(uTypeMap, clamp(point, ivec2(0), size - 1), 0).r;
+}
+
 // 根据高度计算颜色
-mediump vec3 calculateTerrainColor(highp float height, highp vec3 normal, mediump vec2 uv) {
+mediump vec3 calculateTerrainColor(highp float height, highp vec3 normal, highp vec2 uv) {
 //    // 定义颜色关键点
 //    mediump vec3 deepWater = vec3(0.0, 0.2, 0.6);
 //    mediump vec3 shallowWater = vec3(0.0, 0.4, 0.8);
@@ -62,20 +83,28 @@ mediump vec3 calculateTerrainColor(highp float height, highp vec3 normal, medium
 //    else if (height < 6.0) return mix(grass, forest, (height - 3.0) / 3.0);
 //    else if (height < 8.0) return mix(forest, rock, (height - 6.0) / 2.0);
 //    else return mix(rock, snow, (height - 8.0) / 2.0);
-    vec4 texColor = texture(uHeightMap, uv);
-    return texColor.rgb;
+    mediump vec3 lowland = vec3(0.7, 0.6, 0.4);
+    mediump vec3 grass = vec3(0.2, 0.6, 0.2);
+    mediump vec3 rock = vec3(0.5, 0.5, 0.5);
+    mediump vec3 snow = vec3(0.9, 0.9, 0.9);
+
+    // 使用高度范围元数据归一化
+    highp float t = clamp((height - uHeightMin) / max(uHeightMax - uHeightMin, 0.001), 0.0, 1.0);
+    if (t < 0.4) return mix(lowland, grass, t / 0.4);
+    else if (t < 0.75) return mix(grass, rock, (t - 0.4) / 0.35);
+    else return mix(rock, snow, (t - 0.75) / 0.25);
 }
 
 void main() {
-    // 使用重心坐标插值
-    highp vec3 position =
-    gl_TessCoord.x * tcPosition[0] +
-    gl_TessCoord.y * tcPosition[1] +
-    gl_TessCoord.z * tcPosition[2];
+    // 在四边形patch内双线性插值（u沿x方向，v沿z方向）
+    highp vec3 position = mix(
+    mix(tcPosition[0], tcPosition[1], gl_TessCoord.x),
+    mix(tcPosition[3], tcPosition[2], gl_TessCoord.x),
+    gl_TessCoord.y);
 
-    // 计算纹理坐标
-    mediump vec2 terrainUV = (position.xz + uTerrainSize * 0.5) / uTerrainSize;
-    terrainUV = clamp(terrainUV, 0.01, 0.99);
+    // 计算纹理坐标（网格点i对应texel中心，需偏移半个texel）
+    highp vec2 terrainUV = (position.xz + uTerrainSize * 0.5) / uTerrainSize + uHeightMapTexelSize * 0.5;
+    terrainUV = clamp(terrainUV, uHeightMapTexelSize * 0.5, 1.0 - uHeightMapTexelSize * 0.5);
 
     // 从高度图采样高度
     highp float height = sampleHeightMap(terrainUV);
@@ -89,6 +118,9 @@ void main() {
 
     // 计算颜色
     vColor = calculateTerrainColor(height, vNormal, terrainUV);
+    if (uUseTypeMap == 1 && sampleType(position) == Road) {
+        vColor = roadColor;
+    }
 
     // 传递其他属性
     vTexCoord = terrainUV;
@@ -18,6 +18,11 @@ out float vHeight; // 传递高度信息
 flat out int vType; // 传递类型到片段着色器
 out vec2 vTexCoord; // 传递纹理坐标
 
+#ifdef SOLID_WIREFRAME
+// 重心坐标：三角形列表中第gl_VertexID % 3个顶点分别为(1,0,0)、(0,1,0)、(0,0,1)，不需要额外的顶点属性
+out vec3 vBarycentric;
+#endif
+
 void main() {
     vColor = aColor;
     vNormal = aNormal;
@@ -30,4 +35,9 @@ void main() {
     vHeight = aPosition.y; // 传递原始高度信息
 
     gl_Position = uMVPMatrix * vec4(aPosition, 1.0);
+
+#ifdef SOLID_WIREFRAME
+    int corner = gl_VertexID % 3;
+    vBarycentric = vec3(corner == 0 ? 1.0 : 0.0, corner == 1 ? 1.0 : 0.0, corner == 2 ? 1.0 : 0.0);
+#endif
 }
\ No newline at end of file
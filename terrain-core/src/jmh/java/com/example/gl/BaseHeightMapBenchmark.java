@@ -0,0 +1,22 @@
+package com.example.gl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 基础高度图生成：基础网格大小固定（BASE_GRID_SIZE），不需要参数
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BaseHeightMapBenchmark {
+    @Benchmark
+    public float[][] generateBaseHeightMap() {
+        return TerrainDataV2.generateBaseHeightMap(new Random(42));
+    }
+}
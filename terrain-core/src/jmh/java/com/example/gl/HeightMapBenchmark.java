@@ -0,0 +1,38 @@
+package com.example.gl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 高度图插值（基础高度图生成见BaseHeightMapBenchmark，类型图插值见TypeMapBenchmark）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class HeightMapBenchmark {
+    @Param({"100", "200", "400"})
+    public int gridSize;
+
+    @Param({"BILINEAR", "CATMULL_ROM"})
+    public TerrainResampler.Kernel kernel;
+
+    private float[][] baseHeightMap;
+
+    @Setup
+    public void setUp() {
+        baseHeightMap = TerrainDataV2.generateBaseHeightMap(new Random(42));
+    }
+
+    @Benchmark
+    public float[][] interpolateHeightMap() {
+        return TerrainResampler.resample(baseHeightMap, gridSize, gridSize, kernel,
+                TerrainDataV2.INTERPOLATION_JITTER, 42);
+    }
+}
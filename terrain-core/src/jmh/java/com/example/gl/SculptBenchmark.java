@@ -0,0 +1,37 @@
+package com.example.gl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// 1024x1024地形上最大半径的一次笔刷（GLRendererV2每帧的雕刻预算为4ms）
+// RAISE/LOWER与FLATTEN的开销相同，但反复执行时高度不收敛，这里只测FLATTEN和最慢的SMOOTH
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g") // 完整的1024x1024地形网格
+public class SculptBenchmark {
+    @Param({"FLATTEN", "SMOOTH"})
+    public TerrainSculptor.BrushMode mode;
+
+    private TerrainSculptor sculptor;
+
+    @Setup
+    public void setUp() {
+        TerrainConfig config = new TerrainConfig.Builder().setGridSize(1024).build();
+        sculptor = new TerrainSculptor(new TerrainGenerator(config).generate());
+    }
+
+    @Benchmark
+    public int[] stroke() {
+        return sculptor.applyBrush(3, -7, TerrainSculptor.MAX_BRUSH_RADIUS, 0.3f, mode);
+    }
+}
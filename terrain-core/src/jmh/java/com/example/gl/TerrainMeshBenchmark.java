@@ -0,0 +1,63 @@
+package com.example.gl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 网格构建：平滑法线、缓冲创建和完整的地形生成
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TerrainMeshBenchmark {
+    @Param({"100", "200", "400"})
+    public int gridSize;
+
+    @Param({"1", "2"})
+    public int gridStride;
+
+    private TerrainConfig config;
+    private List<TerrainDataV2.Vertex> vertices;
+
+    @Setup
+    public void setUp() {
+        config = new TerrainConfig.Builder()
+                .setGridSize(gridSize)
+                .setEnableNormalMapping(gridStride == 2)
+                .build();
+
+        float[][] heightMap = TerrainResampler.resample(
+                TerrainDataV2.generateBaseHeightMap(new java.util.Random(42)), gridSize, gridSize,
+                TerrainResampler.Kernel.BILINEAR, TerrainDataV2.INTERPOLATION_JITTER, 42);
+        PackedTypeMap typeMap = new PackedTypeMap(gridSize, gridSize);
+        typeMap.fill(ElementType.Land);
+
+        vertices = new ArrayList<>();
+        TerrainGenerator.addTerrainGrid(vertices, heightMap, typeMap,
+                TerrainGenerator.computeGridNormals(heightMap), gridStride);
+    }
+
+    @Benchmark
+    public List<TerrainDataV2.Vertex> calculateSmoothNormals() {
+        TerrainDataV2.calculateSmoothNormals(vertices);
+        return vertices;
+    }
+
+    @Benchmark
+    public TerrainDataV2.MeshData createMeshData() {
+        return TerrainDataV2.createMeshData(vertices, -2.0f, 10.0f);
+    }
+
+    @Benchmark
+    public TerrainDataV2.MeshData generateTerrainMesh() {
+        return new TerrainGenerator(config).generate();
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.gl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// 类型图最近邻插值：与高度插值核无关，只按gridSize参数化
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TypeMapBenchmark {
+    @Param({"100", "200", "400"})
+    public int gridSize;
+
+    private PackedTypeMap baseTypeMap;
+
+    @Setup
+    public void setUp() {
+        baseTypeMap = new PackedTypeMap(TerrainDataV2.BASE_GRID_SIZE, TerrainDataV2.BASE_GRID_SIZE);
+        baseTypeMap.fill(ElementType.Land);
+    }
+
+    @Benchmark
+    public PackedTypeMap interpolateTypeMap() {
+        return TerrainResampler.resampleNearest(baseTypeMap, gridSize, gridSize);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.gl;
+
+public class MathUtils {
+
+    public static float lineDistance(int dx, int dy) {
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // float -> IEEE 754 半精度（用于GL_HALF_FLOAT纹理上传，就近舍入）
+    public static short floatToHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int abs = bits & 0x7fffffff;
+        int rounded = abs + 0x1000;
+
+        if (rounded >= 0x47800000) {
+            if (abs >= 0x47800000) {
+                if (abs < 0x7f800000) {
+                    return (short) (sign | 0x7c00); // 溢出 -> 无穷大
+                }
+                return (short) (sign | 0x7c00 | ((bits & 0x007fffff) >>> 13)); // Inf/NaN
+            }
+            return (short) (sign | 0x7bff); // 舍入后溢出，取最大有限值
+        }
+        if (rounded >= 0x38800000) {
+            return (short) (sign | ((rounded - 0x38000000) >>> 13)); // 规格化数
+        }
+        if (abs < 0x33000000) {
+            return (short) sign; // 太小 -> 0
+        }
+        // 非规格化数
+        int exponent = abs >>> 23;
+        return (short) (sign | ((((abs & 0x7fffff) | 0x800000)
+                + (0x800000 >>> (exponent - 102))) >>> (126 - exponent)));
+    }
+
+    // IEEE 754 半精度 -> float
+    public static float halfToFloat(short half) {
+        int h = half & 0xffff;
+        int sign = (h & 0x8000) << 16;
+        int exponent = (h >>> 10) & 0x1f;
+        int mantissa = h & 0x3ff;
+
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // 非规格化数
+            while ((mantissa & 0x400) == 0) {
+                mantissa <<= 1;
+                exponent--;
+            }
+            exponent++;
+            mantissa &= 0x3ff;
+        } else if (exponent == 31) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    // 4x4矩阵求逆（列主序，与android.opengl.Matrix一致），矩阵不可逆时返回false
+    public static boolean invertMatrix(float[] inv, float[] m) {
+        float a0 = m[0] * m[5] - m[1] * m[4];
+        float a1 = m[0] * m[6] - m[2] * m[4];
+        float a2 = m[0] * m[7] - m[3] * m[4];
+        float a3 = m[1] * m[6] - m[2] * m[5];
+        float a4 = m[1] * m[7] - m[3] * m[5];
+        float a5 = m[2] * m[7] - m[3] * m[6];
+        float b0 = m[8] * m[13] - m[9] * m[12];
+        float b1 = m[8] * m[14] - m[10] * m[12];
+        float b2 = m[8] * m[15] - m[11] * m[12];
+        float b3 = m[9] * m[14] - m[10] * m[13];
+        float b4 = m[9] * m[15] - m[11] * m[13];
+        float b5 = m[10] * m[15] - m[11] * m[14];
+
+        float det = a0 * b5 - a1 * b4 + a2 * b3 + a3 * b2 - a4 * b1 + a5 * b0;
+        if (det == 0.0f) return false;
+        float invDet = 1.0f / det;
+
+        inv[0] = (m[5] * b5 - m[6] * b4 + m[7] * b3) * invDet;
+        inv[1] = (-m[1] * b5 + m[2] * b4 - m[3] * b3) * invDet;
+        inv[2] = (m[13] * a5 - m[14] * a4 + m[15] * a3) * invDet;
+        inv[3] = (-m[9] * a5 + m[10] * a4 - m[11] * a3) * invDet;
+        inv[4] = (-m[4] * b5 + m[6] * b2 - m[7] * b1) * invDet;
+        inv[5] = (m[0] * b5 - m[2] * b2 + m[3] * b1) * invDet;
+        inv[6] = (-m[12] * a5 + m[14] * a2 - m[15] * a1) * invDet;
+        inv[7] = (m[8] * a5 - m[10] * a2 + m[11] * a1) * invDet;
+        inv[8] = (m[4] * b4 - m[5] * b2 + m[7] * b0) * invDet;
+        inv[9] = (-m[0] * b4 + m[1] * b2 - m[3] * b0) * invDet;
+        inv[10] = (m[12] * a4 - m[13] * a2 + m[15] * a0) * invDet;
+        inv[11] = (-m[8] * a4 + m[9] * a2 - m[11] * a0) * invDet;
+        inv[12] = (-m[4] * b3 + m[5] * b1 - m[6] * b0) * invDet;
+        inv[13] = (m[0] * b3 - m[1] * b1 + m[2] * b0) * invDet;
+        inv[14] = (-m[12] * a3 + m[13] * a1 - m[14] * a0) * invDet;
+        inv[15] = (m[8] * a3 - m[9] * a1 + m[10] * a0) * invDet;
+        return true;
+    }
+
+    // result = m * v（列主序4x4矩阵乘4维向量）
+    public static void multiplyMV(float[] result, float[] m, float[] v) {
+        for (int r = 0; r < 4; r++) {
+            result[r] = m[r] * v[0] + m[4 + r] * v[1] + m[8 + r] * v[2] + m[12 + r] * v[3];
+        }
+    }
+}
@@ -0,0 +1,461 @@
+package com.example.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.PriorityQueue;
+
+// 基于二次误差度量（QEM）的地形网格简化：
+// 道路、水池、建筑地基等平坦区域会被合并成大三角形，起伏地形保留足够的细节
+// - 采用半边折叠（顶点u合并到相邻顶点v），不产生新位置，高度与高度图保持一致
+// - 网格边界顶点和不同ElementType交界处的顶点被锁定，不会被折叠
+// - 折叠前检查三角形翻转和非流形连接
+// 只处理地形部分（前terrainVertexCount个顶点），树木和建筑原样保留
+public class MeshSimplifier {
+    // 折叠后顶点相邻三角形数的上限：平坦区域否则会退化成细长的大扇形，候选评估也会越来越慢
+    private static final int MAX_VERTEX_FACES = 16;
+
+    private static class Candidate implements Comparable<Candidate> {
+        final double cost;
+        final int from, to;
+        final int fromVersion, toVersion;
+
+        Candidate(double cost, int from, int to, int fromVersion, int toVersion) {
+            this.cost = cost;
+            this.from = from;
+            this.to = to;
+            this.fromVersion = fromVersion;
+            this.toVersion = toVersion;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+
+    private final TerrainDataV2.MeshData meshData;
+    private final int side; // 每个方向的网格点数
+
+    private float[] positions;
+    private int[] types;
+    private boolean[] locked;
+    private double[] quadrics;  // 每个顶点10个系数（对称4x4矩阵）
+    private int[] versions;     // 顶点被修改后递增，用于淘汰过期的候选
+
+    private int[] faces;        // 每个三角形3个顶点
+    private boolean[] faceRemoved;
+    private int[][] vertexFaces; // 顶点相邻的三角形
+    private int[] vertexFaceCount;
+
+    private int[] markStamp;
+    private int stamp = 0;
+    private int[] linkStamp; // canCollapse专用，避免与调用方的遍历标记冲突
+    private int linkMark = 0;
+    private int[] neighbors = new int[32];
+    private final double[] normalBefore = new double[3];
+    private final double[] normalAfter = new double[3];
+
+    private MeshSimplifier(TerrainDataV2.MeshData meshData) {
+        this.meshData = meshData;
+        this.side = meshData.meshCells + 1;
+    }
+
+    // 简化地形网格，直到最小折叠误差超过maxError或三角形数不超过targetTriangles
+    // maxError为到原始平面距离的平方和；targetTriangles <= 0 表示不限三角形数量
+    // 返回简化后的地形三角形数
+    public static int simplify(TerrainDataV2.MeshData meshData, float maxError, int targetTriangles) {
+        MeshSimplifier simplifier = new MeshSimplifier(meshData);
+        simplifier.build();
+        int triangles = simplifier.collapse(maxError, targetTriangles);
+        simplifier.writeBack();
+        return triangles;
+    }
+
+    // 从三角形汤中还原带索引的网格（顶点顺序与TerrainDataV2.addQuad一致）
+    private void build() {
+        int vertexCount = side * side;
+        int meshCells = meshData.meshCells;
+        positions = new float[vertexCount * 3];
+        types = new int[vertexCount];
+        locked = new boolean[vertexCount];
+        quadrics = new double[vertexCount * 10];
+        versions = new int[vertexCount];
+        markStamp = new int[vertexCount];
+        linkStamp = new int[vertexCount];
+
+        int faceCount = meshCells * meshCells * 2;
+        faces = new int[faceCount * 3];
+        faceRemoved = new boolean[faceCount];
+
+        FloatBuffer vertices = meshData.vertices;
+        ByteBuffer typeBuffer = meshData.types;
+        int[] corner = new int[6];
+        for (int ci = 0; ci < meshCells; ci++) {
+            for (int cj = 0; cj < meshCells; cj++) {
+                int a = ci * side + cj;
+                int b = (ci + 1) * side + cj;
+                int c = ci * side + cj + 1;
+                int d = (ci + 1) * side + cj + 1;
+                corner[0] = a;
+                corner[1] = b;
+                corner[2] = c;
+                corner[3] = b;
+                corner[4] = d;
+                corner[5] = c;
+
+                int first = TerrainDataV2.getCellVertexIndex(meshCells, ci, cj);
+                for (int k = 0; k < 6; k++) {
+                    int v = corner[k];
+                    positions[v * 3] = vertices.get((first + k) * 3);
+                    positions[v * 3 + 1] = vertices.get((first + k) * 3 + 1);
+                    positions[v * 3 + 2] = vertices.get((first + k) * 3 + 2);
+                    types[v] = typeBuffer.get(first + k);
+                }
+
+                int f = (ci * meshCells + cj) * 2;
+                System.arraycopy(corner, 0, faces, f * 3, 6);
+            }
+        }
+
+        // 顶点-三角形邻接
+        vertexFaceCount = new int[vertexCount];
+        vertexFaces = new int[vertexCount][];
+        for (int v = 0; v < vertexCount; v++) {
+            vertexFaces[v] = new int[6];
+        }
+        for (int f = 0; f < faceCount; f++) {
+            for (int k = 0; k < 3; k++) {
+                addFace(faces[f * 3 + k], f);
+            }
+        }
+
+        // 初始二次误差：每个三角形所在平面累加到它的三个顶点
+        double[] plane = new double[4];
+        for (int f = 0; f < faceCount; f++) {
+            if (!computePlane(faces[f * 3], faces[f * 3 + 1], faces[f * 3 + 2], plane)) continue;
+            for (int k = 0; k < 3; k++) {
+                addPlaneQuadric(faces[f * 3 + k], plane);
+            }
+        }
+
+        // 锁定网格边界和类型交界处的顶点
+        for (int i = 0; i < side; i++) {
+            locked[i] = true;
+            locked[(side - 1) * side + i] = true;
+            locked[i * side] = true;
+            locked[i * side + side - 1] = true;
+        }
+        for (int f = 0; f < faceCount; f++) {
+            int a = faces[f * 3], b = faces[f * 3 + 1], c = faces[f * 3 + 2];
+            if (types[a] != types[b] || types[b] != types[c]) {
+                locked[a] = true;
+                locked[b] = true;
+                locked[c] = true;
+            }
+        }
+    }
+
+    private int collapse(float maxError, int targetTriangles) {
+        int triangles = faceRemoved.length;
+        PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        for (int v = 0; v < positions.length / 3; v++) {
+            pushBestCandidate(queue, v);
+        }
+
+        while (!queue.isEmpty()) {
+            if (targetTriangles > 0 && triangles <= targetTriangles) break;
+
+            Candidate candidate = queue.poll();
+            if (candidate.cost > maxError) break;
+            int u = candidate.from, v = candidate.to;
+            if (versions[u] != candidate.fromVersion) {
+                continue; // u已变化，新的候选已入队
+            }
+            if (versions[v] != candidate.toVersion || !canCollapse(u, v)) {
+                // 目标顶点的邻域已变化，为u重新选择目标
+                // （u本身未变化，不递增其版本号，否则指向u的候选会互相淘汰）
+                pushBestCandidate(queue, u);
+                continue;
+            }
+
+            triangles -= collapseEdge(u, v);
+            versions[u]++;
+
+            // 更新v及其邻居的候选（先收集邻居，pushBestCandidate会复用遍历标记）
+            int neighborCount = 0;
+            int mark = ++stamp;
+            for (int n = 0; n < vertexFaceCount[v]; n++) {
+                int f = vertexFaces[v][n];
+                for (int k = 0; k < 3; k++) {
+                    int w = faces[f * 3 + k];
+                    if (markStamp[w] == mark) continue;
+                    markStamp[w] = mark;
+                    if (neighborCount == neighbors.length) {
+                        int[] grown = new int[neighbors.length * 2];
+                        System.arraycopy(neighbors, 0, grown, 0, neighborCount);
+                        neighbors = grown;
+                    }
+                    neighbors[neighborCount++] = w;
+                }
+            }
+            for (int n = 0; n < neighborCount; n++) {
+                int w = neighbors[n];
+                versions[w]++;
+                pushBestCandidate(queue, w);
+            }
+        }
+        return triangles;
+    }
+
+    // 为顶点u找误差最小的折叠目标
+    private void pushBestCandidate(PriorityQueue<Candidate> queue, int u) {
+        if (locked[u] || vertexFaceCount[u] == 0) return;
+
+        double bestCost = Double.MAX_VALUE;
+        int best = -1;
+        int mark = ++stamp;
+        for (int n = 0; n < vertexFaceCount[u]; n++) {
+            int f = vertexFaces[u][n];
+            for (int k = 0; k < 3; k++) {
+                int v = faces[f * 3 + k];
+                if (v == u || markStamp[v] == mark) continue;
+                markStamp[v] = mark;
+                if (types[v] != types[u]) continue;
+                double cost = evaluate(u, v);
+                if (cost < bestCost && canCollapse(u, v)) {
+                    bestCost = cost;
+                    best = v;
+                }
+            }
+        }
+        if (best >= 0) {
+            queue.add(new Candidate(bestCost, u, best, versions[u], versions[best]));
+        }
+    }
+
+    // (Qu + Qv) 在v位置的误差
+    private double evaluate(int u, int v) {
+        double x = positions[v * 3], y = positions[v * 3 + 1], z = positions[v * 3 + 2];
+        int a = u * 10, b = v * 10;
+        double q0 = quadrics[a] + quadrics[b], q1 = quadrics[a + 1] + quadrics[b + 1];
+        double q2 = quadrics[a + 2] + quadrics[b + 2], q3 = quadrics[a + 3] + quadrics[b + 3];
+        double q4 = quadrics[a + 4] + quadrics[b + 4], q5 = quadrics[a + 5] + quadrics[b + 5];
+        double q6 = quadrics[a + 6] + quadrics[b + 6], q7 = quadrics[a + 7] + quadrics[b + 7];
+        double q8 = quadrics[a + 8] + quadrics[b + 8], q9 = quadrics[a + 9] + quadrics[b + 9];
+        return q0 * x * x + 2 * q1 * x * y + 2 * q2 * x * z + 2 * q3 * x
+                + q4 * y * y + 2 * q5 * y * z + 2 * q6 * y
+                + q7 * z * z + 2 * q8 * z + q9;
+    }
+
+    // 折叠合法性：u与v恰好共享两个邻居（保持流形），且不会翻转任何三角形
+    private boolean canCollapse(int u, int v) {
+        if (vertexFaceCount[u] + vertexFaceCount[v] - 2 > MAX_VERTEX_FACES) return false;
+
+        int markU = ++linkMark;
+        for (int n = 0; n < vertexFaceCount[u]; n++) {
+            int f = vertexFaces[u][n];
+            for (int k = 0; k < 3; k++) {
+                linkStamp[faces[f * 3 + k]] = markU;
+            }
+        }
+        int shared = 0;
+        int markV = ++linkMark;
+        for (int n = 0; n < vertexFaceCount[v]; n++) {
+            int f = vertexFaces[v][n];
+            for (int k = 0; k < 3; k++) {
+                int w = faces[f * 3 + k];
+                if (w == u || w == v) continue;
+                if (linkStamp[w] == markU) {
+                    shared++;
+                    linkStamp[w] = markV; // 避免重复计数
+                }
+            }
+        }
+        if (shared != 2) return false;
+
+        for (int n = 0; n < vertexFaceCount[u]; n++) {
+            int f = vertexFaces[u][n];
+            int a = faces[f * 3], b = faces[f * 3 + 1], c = faces[f * 3 + 2];
+            if (a == v || b == v || c == v) continue; // 将被删除的三角形
+
+            double[] before = faceNormal(a, b, c, normalBefore);
+            double[] after = faceNormal(a == u ? v : a, b == u ? v : b, c == u ? v : c, normalAfter);
+            double lengthAfter = Math.sqrt(after[0] * after[0] + after[1] * after[1] + after[2] * after[2]);
+            if (lengthAfter < 1e-12) return false;
+            double dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            if (dot <= 0) return false;
+            // 高度场在XZ平面上的投影也不能翻转（陡坡上仅靠3D法线夹角判断不够）
+            if (before[1] * after[1] <= 0) return false;
+        }
+        return true;
+    }
+
+    // 把u合并到v，返回删除的三角形数
+    private int collapseEdge(int u, int v) {
+        int removed = 0;
+        for (int n = 0; n < vertexFaceCount[u]; n++) {
+            int f = vertexFaces[u][n];
+            int a = faces[f * 3], b = faces[f * 3 + 1], c = faces[f * 3 + 2];
+            if (a == v || b == v || c == v) {
+                // 退化三角形：从其他顶点的邻接中移除
+                faceRemoved[f] = true;
+                removed++;
+                for (int k = 0; k < 3; k++) {
+                    int w = faces[f * 3 + k];
+                    if (w != u) {
+                        removeFace(w, f);
+                    }
+                }
+            } else {
+                for (int k = 0; k < 3; k++) {
+                    if (faces[f * 3 + k] == u) {
+                        faces[f * 3 + k] = v;
+                    }
+                }
+                addFace(v, f);
+            }
+        }
+        vertexFaceCount[u] = 0;
+
+        for (int k = 0; k < 10; k++) {
+            quadrics[v * 10 + k] += quadrics[u * 10 + k];
+        }
+        return removed;
+    }
+
+    // 重新生成网格缓冲：简化后的地形三角形 + 原样保留的树木和建筑
+    private void writeBack() {
+        int oldTerrainVertices = meshData.terrainVertexCount;
+        int objectVertices = meshData.vertexCount - oldTerrainVertices;
+
+        int terrainVertices = 0;
+        for (boolean removed : faceRemoved) {
+            if (!removed) terrainVertices += 3;
+        }
+        int vertexCount = terrainVertices + objectVertices;
+
+        // 每个网格顶点的属性从原缓冲中取第一次出现的位置
+        int[] source = new int[side * side];
+        int meshCells = meshData.meshCells;
+        for (int ci = 0; ci < meshCells; ci++) {
+            for (int cj = 0; cj < meshCells; cj++) {
+                int first = TerrainDataV2.getCellVertexIndex(meshCells, ci, cj);
+                source[ci * side + cj] = first;
+                source[(ci + 1) * side + cj] = first + 1;
+                source[ci * side + cj + 1] = first + 2;
+                source[(ci + 1) * side + cj + 1] = first + 4;
+            }
+        }
+
+        FloatBuffer vertices = newFloatBuffer(vertexCount * 3);
+        FloatBuffer colors = newFloatBuffer(vertexCount * 3);
+        FloatBuffer normals = newFloatBuffer(vertexCount * 3);
+        FloatBuffer texCoords = newFloatBuffer(vertexCount * 2);
+        ByteBuffer typeBuffer = ByteBuffer.allocateDirect(vertexCount).order(ByteOrder.nativeOrder());
+
+        for (int f = 0; f < faceRemoved.length; f++) {
+            if (faceRemoved[f]) continue;
+            for (int k = 0; k < 3; k++) {
+                copyVertex(source[faces[f * 3 + k]], vertices, colors, normals, texCoords, typeBuffer);
+            }
+        }
+        for (int n = 0; n < objectVertices; n++) {
+            copyVertex(oldTerrainVertices + n, vertices, colors, normals, texCoords, typeBuffer);
+        }
+
+        vertices.position(0);
+        colors.position(0);
+        normals.position(0);
+        texCoords.position(0);
+        typeBuffer.position(0);
+
+        meshData.vertices = vertices;
+        meshData.colors = colors;
+        meshData.normals = normals;
+        meshData.texCoords = texCoords;
+        meshData.types = typeBuffer;
+        meshData.vertexCount = vertexCount;
+        meshData.terrainVertexCount = terrainVertices;
+        meshData.simplified = true;
+
+        // 场景物体的顶点范围整体前移
+        if (meshData.sceneIndex != null) {
+            meshData.sceneIndex.offsetVertexRanges(oldTerrainVertices, terrainVertices - oldTerrainVertices);
+        }
+    }
+
+    private void copyVertex(int index, FloatBuffer vertices, FloatBuffer colors, FloatBuffer normals,
+                            FloatBuffer texCoords, ByteBuffer typeBuffer) {
+        for (int k = 0; k < 3; k++) {
+            vertices.put(meshData.vertices.get(index * 3 + k));
+            colors.put(meshData.colors.get(index * 3 + k));
+            normals.put(meshData.normals.get(index * 3 + k));
+        }
+        texCoords.put(meshData.texCoords.get(index * 2));
+        texCoords.put(meshData.texCoords.get(index * 2 + 1));
+        typeBuffer.put(meshData.types.get(index));
+    }
+
+    private static FloatBuffer newFloatBuffer(int floats) {
+        return ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    private void addFace(int v, int f) {
+        if (vertexFaceCount[v] == vertexFaces[v].length) {
+            int[] grown = new int[vertexFaces[v].length * 2];
+            System.arraycopy(vertexFaces[v], 0, grown, 0, vertexFaceCount[v]);
+            vertexFaces[v] = grown;
+        }
+        vertexFaces[v][vertexFaceCount[v]++] = f;
+    }
+
+    private void removeFace(int v, int f) {
+        int[] list = vertexFaces[v];
+        for (int n = 0; n < vertexFaceCount[v]; n++) {
+            if (list[n] == f) {
+                list[n] = list[--vertexFaceCount[v]];
+                return;
+            }
+        }
+    }
+
+    private double[] faceNormal(int a, int b, int c, double[] out) {
+        double ux = positions[b * 3] - positions[a * 3];
+        double uy = positions[b * 3 + 1] - positions[a * 3 + 1];
+        double uz = positions[b * 3 + 2] - positions[a * 3 + 2];
+        double vx = positions[c * 3] - positions[a * 3];
+        double vy = positions[c * 3 + 1] - positions[a * 3 + 1];
+        double vz = positions[c * 3 + 2] - positions[a * 3 + 2];
+        out[0] = uy * vz - uz * vy;
+        out[1] = uz * vx - ux * vz;
+        out[2] = ux * vy - uy * vx;
+        return out;
+    }
+
+    // 三角形所在平面 ax + by + cz + d = 0（法线归一化），退化三角形返回false
+    private boolean computePlane(int a, int b, int c, double[] plane) {
+        double[] n = faceNormal(a, b, c, normalBefore);
+        double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+        if (length < 1e-12) return false;
+        plane[0] = n[0] / length;
+        plane[1] = n[1] / length;
+        plane[2] = n[2] / length;
+        plane[3] = -(plane[0] * positions[a * 3] + plane[1] * positions[a * 3 + 1] + plane[2] * positions[a * 3 + 2]);
+        return true;
+    }
+
+    private void addPlaneQuadric(int v, double[] p) {
+        int q = v * 10;
+        quadrics[q] += p[0] * p[0];
+        quadrics[q + 1] += p[0] * p[1];
+        quadrics[q + 2] += p[0] * p[2];
+        quadrics[q + 3] += p[0] * p[3];
+        quadrics[q + 4] += p[1] * p[1];
+        quadrics[q + 5] += p[1] * p[2];
+        quadrics[q + 6] += p[1] * p[3];
+        quadrics[q + 7] += p[2] * p[2];
+        quadrics[q + 8] += p[2] * p[3];
+        quadrics[q + 9] += p[3] * p[3];
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// 法线贴图烘焙（CPU）：由高度图的Sobel梯度计算每个网格点的法线，
+// 以RG8格式存储法线的x/z分量，y分量在着色器中由 sqrt(1 - x² - z²) 重建（地形法线总是朝上）
+// 纹理布局与高度图纹理一致：行 = z，列 = x
+public class NormalMapBaker {
+    public static final int BYTES_PER_TEXEL = 2;
+    private static final int TILE_SIZE = 64;
+
+    // 烘焙整张法线贴图，按块并行
+    public static ByteBuffer bake(final float[][] heightMap, final float cellSize) {
+        final int width = heightMap.length;
+        final int depth = heightMap[0].length;
+        final ByteBuffer out = ByteBuffer.allocateDirect(width * depth * BYTES_PER_TEXEL)
+                .order(ByteOrder.nativeOrder());
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int tx = 0; tx < width; tx += TILE_SIZE) {
+            for (int tz = 0; tz < depth; tz += TILE_SIZE) {
+                final int x0 = tx, z0 = tz;
+                final int x1 = Math.min(width, tx + TILE_SIZE);
+                final int z1 = Math.min(depth, tz + TILE_SIZE);
+                tasks.add(() -> {
+                    // 每块写入输出中互不重叠的位置（绝对下标写入，不修改position）
+                    float[] normal = new float[3];
+                    for (int j = z0; j < z1; j++) {
+                        for (int i = x0; i < x1; i++) {
+                            TerrainDataV2.calculateDetailedNormal(heightMap, i, j, width, cellSize, normal, 0);
+                            int index = (j * width + i) * BYTES_PER_TEXEL;
+                            out.put(index, encode(normal[0]));
+                            out.put(index + 1, encode(normal[2]));
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+
+        try {
+            for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Normal map bake interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Normal map bake failed", e.getCause());
+        }
+
+        out.position(0);
+        return out;
+    }
+
+    // 把矩形区域 [x, x + width) x [z, z + depth) 的法线按行序写入out（用于局部更新）
+    public static void packNormals(float[][] heightMap, float cellSize, int x, int z, int width, int depth,
+                                   ByteBuffer out) {
+        int gridSize = heightMap.length;
+        float[] normal = new float[3];
+        for (int j = z; j < z + depth; j++) {
+            for (int i = x; i < x + width; i++) {
+                TerrainDataV2.calculateDetailedNormal(heightMap, i, j, gridSize, cellSize, normal, 0);
+                out.put(encode(normal[0]));
+                out.put(encode(normal[2]));
+            }
+        }
+    }
+
+    // [-1, 1] -> [0, 255]
+    private static byte encode(float value) {
+        int encoded = Math.round((value * 0.5f + 0.5f) * 255.0f);
+        return (byte) Math.max(0, Math.min(255, encoded));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.gl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// 紧凑类型图：ElementType只有0~8九种取值，每个网格点用4位存储，两个点共用一个字节
+// 下标与高度图一致：get(x, z) 对应 heightMap[x][z]，同一x的相邻z点位于同一字节
+// 注意：相邻网格点共用字节，多线程写入时各线程的区域之间必须至少隔开一个网格点；
+// depth为奇数时一行的最后一点与下一行的第一点也可能共用字节
+public class PackedTypeMap {
+    public static final int BITS_PER_TYPE = 4;
+    private static final int TYPE_MASK = 0x0F;
+
+    private final int width;
+    private final int depth;
+    private final byte[] data;
+
+    public PackedTypeMap(int width, int depth) {
+        this.width = width;
+        this.depth = depth;
+        this.data = new byte[(width * depth + 1) / 2];
+    }
+
+    private PackedTypeMap(PackedTypeMap other) {
+        this.width = other.width;
+        this.depth = other.depth;
+        this.data = other.data.clone();
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int get(int x, int z) {
+        int index = x * depth + z;
+        int packed = data[index >> 1];
+        return (index & 1) == 0 ? packed & TYPE_MASK : (packed >> BITS_PER_TYPE) & TYPE_MASK;
+    }
+
+    public void set(int x, int z, int type) {
+        int index = x * depth + z;
+        int b = index >> 1;
+        if ((index & 1) == 0) {
+            data[b] = (byte) ((data[b] & 0xF0) | (type & TYPE_MASK));
+        } else {
+            data[b] = (byte) ((data[b] & TYPE_MASK) | ((type & TYPE_MASK) << BITS_PER_TYPE));
+        }
+    }
+
+    public void fill(int type) {
+        int nibble = type & TYPE_MASK;
+        Arrays.fill(data, (byte) (nibble | (nibble << BITS_PER_TYPE)));
+    }
+
+    // 填充矩形区域 [x0, x1) x [z0, z1)
+    public void fill(int x0, int z0, int x1, int z1, int type) {
+        for (int x = x0; x < x1; x++) {
+            for (int z = z0; z < z1; z++) {
+                set(x, z, type);
+            }
+        }
+    }
+
+    // 从尺寸相同的类型图复制矩形区域 [x0, x1) x [z0, z1)
+    public void copyRegion(PackedTypeMap source, int x0, int z0, int x1, int z1) {
+        for (int x = x0; x < x1; x++) {
+            for (int z = z0; z < z1; z++) {
+                set(x, z, source.get(x, z));
+            }
+        }
+    }
+
+    public PackedTypeMap copy() {
+        return new PackedTypeMap(this);
+    }
+
+    // 占用的字节数（int[][] 为 width * depth * 4）
+    public int getByteSize() {
+        return data.length;
+    }
+
+    // 把矩形区域按纹理行序（z为行、x为列）写入out，每个网格点一个字节，用于GL_R8UI纹理
+    public void packTexels(int x0, int z0, int w, int d, ByteBuffer out) {
+        for (int z = z0; z < z0 + d; z++) {
+            for (int x = x0; x < x0 + w; x++) {
+                out.put((byte) get(x, z));
+            }
+        }
+    }
+}
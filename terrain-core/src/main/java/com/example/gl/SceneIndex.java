@@ -0,0 +1,480 @@
+package com.example.gl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 场景物体（树木、建筑）的空间索引：XZ平面上的均匀哈希网格
+// 每个物体按AABB登记到它覆盖的所有格子中，查询只访问相关格子
+// 格子表以long为键开放寻址，查询范围先裁剪到已登记格子的范围，查询过程不分配内存（结果列表扩容除外）
+// 非线程安全，应在同一线程中修改和查询
+public class SceneIndex {
+    public static class SceneObject {
+        public final int id;
+        public final int type; // ElementType
+        public float minX, minY, minZ;
+        public float maxX, maxY, maxZ;
+        // 物体在网格顶点缓冲中的范围
+        public int firstVertex;
+        public int vertexCount;
+
+        private int queryStamp; // 查询去重（物体可能登记在多个格子中）
+
+        SceneObject(int id, int type) {
+            this.id = id;
+            this.type = type;
+        }
+    }
+
+    private final float cellSize;
+    private final CellTable cells = new CellTable();
+    // 曾经登记过物体的格子范围（只扩大不缩小），查询范围裁剪到其中
+    private int minCellX = Integer.MAX_VALUE, minCellZ = Integer.MAX_VALUE;
+    private int maxCellX = Integer.MIN_VALUE, maxCellZ = Integer.MIN_VALUE;
+    private final Map<Integer, SceneObject> objects = new HashMap<>();
+    private int nextId = 0;
+    private int queryStamp = 0;
+
+    // 视锥查询使用的临时数据
+    private final float[] planes = new float[24];
+    private final float[] inverseMatrix = new float[16];
+    private final float[] corner = new float[4];
+    private final float[] cornerResult = new float[4];
+
+    public SceneIndex(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public SceneObject insert(int type, float minX, float minY, float minZ,
+                              float maxX, float maxY, float maxZ, int firstVertex, int vertexCount) {
+        SceneObject object = new SceneObject(nextId++, type);
+        object.minX = minX;
+        object.minY = minY;
+        object.minZ = minZ;
+        object.maxX = maxX;
+        object.maxY = maxY;
+        object.maxZ = maxZ;
+        object.firstVertex = firstVertex;
+        object.vertexCount = vertexCount;
+        objects.put(object.id, object);
+        link(object);
+        return object;
+    }
+
+    public boolean remove(SceneObject object) {
+        if (objects.remove(object.id) == null) return false;
+        unlink(object);
+        return true;
+    }
+
+    // 物体移动或改变大小后更新所在格子
+    public void update(SceneObject object, float minX, float minY, float minZ,
+                       float maxX, float maxY, float maxZ) {
+        unlink(object);
+        object.minX = minX;
+        object.minY = minY;
+        object.minZ = minZ;
+        object.maxX = maxX;
+        object.maxY = maxY;
+        object.maxZ = maxZ;
+        link(object);
+    }
+
+    // 网格缓冲重建后，顶点起点不小于fromVertex的物体整体平移delta
+    public void offsetVertexRanges(int fromVertex, int delta) {
+        for (SceneObject object : objects.values()) {
+            if (object.firstVertex >= fromVertex) {
+                object.firstVertex += delta;
+            }
+        }
+    }
+
+    public SceneObject get(int id) {
+        return objects.get(id);
+    }
+
+    public int size() {
+        return objects.size();
+    }
+
+    // 所有物体，按id（插入顺序）排列
+    public void getAll(List<SceneObject> out) {
+        for (int id = 0; id < nextId; id++) {
+            SceneObject object = objects.get(id);
+            if (object != null) {
+                out.add(object);
+            }
+        }
+    }
+
+    // XZ平面上与矩形相交的物体（type < 0 表示任意类型）
+    public void queryBox(float minX, float minZ, float maxX, float maxZ, int type, List<SceneObject> out) {
+        int stamp = ++queryStamp;
+        int cx0 = Math.max(cellCoord(minX), minCellX), cz0 = Math.max(cellCoord(minZ), minCellZ);
+        int cx1 = Math.min(cellCoord(maxX), maxCellX), cz1 = Math.min(cellCoord(maxZ), maxCellZ);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cz = cz0; cz <= cz1; cz++) {
+                List<SceneObject> cell = cells.get(key(cx, cz));
+                if (cell == null) continue;
+                for (int n = 0; n < cell.size(); n++) {
+                    SceneObject object = cell.get(n);
+                    if (object.queryStamp == stamp) continue;
+                    object.queryStamp = stamp;
+                    if ((type < 0 || object.type == type)
+                            && object.minX < maxX && object.maxX > minX
+                            && object.minZ < maxZ && object.maxZ > minZ) {
+                        out.add(object);
+                    }
+                }
+            }
+        }
+    }
+
+    // 矩形内是否已有物体（放置时的重叠检查）
+    public boolean overlapsAny(float minX, float minZ, float maxX, float maxZ, int type) {
+        int stamp = ++queryStamp;
+        int cx0 = Math.max(cellCoord(minX), minCellX), cz0 = Math.max(cellCoord(minZ), minCellZ);
+        int cx1 = Math.min(cellCoord(maxX), maxCellX), cz1 = Math.min(cellCoord(maxZ), maxCellZ);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cz = cz0; cz <= cz1; cz++) {
+                List<SceneObject> cell = cells.get(key(cx, cz));
+                if (cell == null) continue;
+                for (int n = 0; n < cell.size(); n++) {
+                    SceneObject object = cell.get(n);
+                    if (object.queryStamp == stamp) continue;
+                    object.queryStamp = stamp;
+                    if ((type < 0 || object.type == type)
+                            && object.minX < maxX && object.maxX > minX
+                            && object.minZ < maxZ && object.maxZ > minZ) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // AABB与球相交的物体
+    public void queryRadius(float x, float y, float z, float radius, List<SceneObject> out) {
+        int start = out.size();
+        queryBox(x - radius, z - radius, x + radius, z + radius, -1, out);
+        float radiusSq = radius * radius;
+        for (int n = out.size() - 1; n >= start; n--) {
+            if (distanceSq(out.get(n), x, y, z) > radiusSq) {
+                out.remove(n);
+            }
+        }
+    }
+
+    // XZ平面上距离(x, z)最近的物体，maxRadius内没有则返回null
+    public SceneObject nearest(float x, float z, float maxRadius, int type) {
+        int stamp = ++queryStamp;
+        int cx = cellCoord(x), cz = cellCoord(z);
+        int maxRing = (int) Math.ceil(maxRadius / cellSize);
+        SceneObject best = null;
+        float bestSq = maxRadius * maxRadius;
+
+        // 按环扩展搜索，当前环之外的格子距离都大于ring*cellSize时停止
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (best != null) {
+                float ringDistance = (ring - 1) * cellSize;
+                if (ringDistance > 0 && ringDistance * ringDistance > bestSq) break;
+            }
+            for (int dx = -ring; dx <= ring; dx++) {
+                for (int dz = -ring; dz <= ring; dz++) {
+                    if (Math.abs(dx) != ring && Math.abs(dz) != ring) continue;
+                    List<SceneObject> cell = getCell(cx + dx, cz + dz);
+                    if (cell == null) continue;
+                    for (int n = 0; n < cell.size(); n++) {
+                        SceneObject object = cell.get(n);
+                        if (object.queryStamp == stamp) continue;
+                        object.queryStamp = stamp;
+                        if (type >= 0 && object.type != type) continue;
+                        float ex = Math.max(0, Math.max(object.minX - x, x - object.maxX));
+                        float ez = Math.max(0, Math.max(object.minZ - z, z - object.maxZ));
+                        float dSq = ex * ex + ez * ez;
+                        if (dSq <= bestSq) {
+                            bestSq = dSq;
+                            best = object;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    // 与视锥相交的物体；vpMatrix为列主序的投影*视图（*模型）矩阵
+    public void queryFrustum(float[] vpMatrix, List<SceneObject> out) {
+        extractPlanes(vpMatrix);
+
+        // 先用视锥8个角点的XZ包围盒筛选格子
+        float minX = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        if (!MathUtils.invertMatrix(inverseMatrix, vpMatrix)) return;
+        for (int c = 0; c < 8; c++) {
+            corner[0] = (c & 1) == 0 ? -1 : 1;
+            corner[1] = (c & 2) == 0 ? -1 : 1;
+            corner[2] = (c & 4) == 0 ? -1 : 1;
+            corner[3] = 1;
+            MathUtils.multiplyMV(cornerResult, inverseMatrix, corner);
+            float px = cornerResult[0] / cornerResult[3];
+            float pz = cornerResult[2] / cornerResult[3];
+            minX = Math.min(minX, px);
+            maxX = Math.max(maxX, px);
+            minZ = Math.min(minZ, pz);
+            maxZ = Math.max(maxZ, pz);
+        }
+
+        int start = out.size();
+        queryBox(minX, minZ, maxX, maxZ, -1, out);
+        for (int n = out.size() - 1; n >= start; n--) {
+            if (!intersectsFrustum(out.get(n))) {
+                out.remove(n);
+            }
+        }
+    }
+
+    // 射线拾取，返回最近的相交物体；dir无需归一化，maxT以dir长度为单位且必须是有限值
+    public SceneObject raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        int stamp = ++queryStamp;
+        SceneObject best = null;
+        float bestT = maxT;
+
+        // XZ平面上的网格DDA遍历
+        int cx = cellCoord(ox), cz = cellCoord(oz);
+        int stepX = dx > 0 ? 1 : -1;
+        int stepZ = dz > 0 ? 1 : -1;
+        float tDeltaX = dx != 0 ? Math.abs(cellSize / dx) : Float.MAX_VALUE;
+        float tDeltaZ = dz != 0 ? Math.abs(cellSize / dz) : Float.MAX_VALUE;
+        float nextBoundaryX = (cx + (dx > 0 ? 1 : 0)) * cellSize;
+        float nextBoundaryZ = (cz + (dz > 0 ? 1 : 0)) * cellSize;
+        float tMaxX = dx != 0 ? (nextBoundaryX - ox) / dx : Float.MAX_VALUE;
+        float tMaxZ = dz != 0 ? (nextBoundaryZ - oz) / dz : Float.MAX_VALUE;
+
+        float tCell = 0;
+        while (tCell <= bestT) {
+            List<SceneObject> cell = getCell(cx, cz);
+            if (cell != null) {
+                for (int n = 0; n < cell.size(); n++) {
+                    SceneObject object = cell.get(n);
+                    if (object.queryStamp == stamp) continue;
+                    object.queryStamp = stamp;
+                    float t = intersectRay(object, ox, oy, oz, dx, dy, dz);
+                    if (t >= 0 && t < bestT) {
+                        bestT = t;
+                        best = object;
+                    }
+                }
+            }
+
+            if (tMaxX < tMaxZ) {
+                tCell = tMaxX;
+                tMaxX += tDeltaX;
+                cx += stepX;
+            } else {
+                tCell = tMaxZ;
+                tMaxZ += tDeltaZ;
+                cz += stepZ;
+            }
+            if (tCell == Float.MAX_VALUE) break;
+        }
+        return best;
+    }
+
+    private void link(SceneObject object) {
+        int cx0 = cellCoord(object.minX), cz0 = cellCoord(object.minZ);
+        int cx1 = cellCoord(object.maxX), cz1 = cellCoord(object.maxZ);
+        minCellX = Math.min(minCellX, cx0);
+        minCellZ = Math.min(minCellZ, cz0);
+        maxCellX = Math.max(maxCellX, cx1);
+        maxCellZ = Math.max(maxCellZ, cz1);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cz = cz0; cz <= cz1; cz++) {
+                long key = key(cx, cz);
+                List<SceneObject> cell = cells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<>(4);
+                    cells.put(key, cell);
+                }
+                cell.add(object);
+            }
+        }
+    }
+
+    private void unlink(SceneObject object) {
+        int cx0 = cellCoord(object.minX), cz0 = cellCoord(object.minZ);
+        int cx1 = cellCoord(object.maxX), cz1 = cellCoord(object.maxZ);
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cz = cz0; cz <= cz1; cz++) {
+                long key = key(cx, cz);
+                List<SceneObject> cell = cells.get(key);
+                if (cell == null) continue;
+                cell.remove(object);
+                if (cell.isEmpty()) {
+                    cells.remove(key);
+                }
+            }
+        }
+    }
+
+    // 范围之外的格子不查表
+    private List<SceneObject> getCell(int cx, int cz) {
+        if (cx < minCellX || cx > maxCellX || cz < minCellZ || cz > maxCellZ) return null;
+        return cells.get(key(cx, cz));
+    }
+
+    private int cellCoord(float value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xffffffffL);
+    }
+
+    private static float distanceSq(SceneObject object, float x, float y, float z) {
+        float ex = Math.max(0, Math.max(object.minX - x, x - object.maxX));
+        float ey = Math.max(0, Math.max(object.minY - y, y - object.maxY));
+        float ez = Math.max(0, Math.max(object.minZ - z, z - object.maxZ));
+        return ex * ex + ey * ey + ez * ez;
+    }
+
+    // 射线与AABB的slab相交测试，不相交返回-1
+    private static float intersectRay(SceneObject object, float ox, float oy, float oz,
+                                      float dx, float dy, float dz) {
+        float tMin = 0, tMax = Float.MAX_VALUE;
+
+        if (Math.abs(dx) < 1e-8f) {
+            if (ox < object.minX || ox > object.maxX) return -1;
+        } else {
+            float t1 = (object.minX - ox) / dx;
+            float t2 = (object.maxX - ox) / dx;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+
+        if (Math.abs(dy) < 1e-8f) {
+            if (oy < object.minY || oy > object.maxY) return -1;
+        } else {
+            float t1 = (object.minY - oy) / dy;
+            float t2 = (object.maxY - oy) / dy;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+
+        if (Math.abs(dz) < 1e-8f) {
+            if (oz < object.minZ || oz > object.maxZ) return -1;
+        } else {
+            float t1 = (object.minZ - oz) / dz;
+            float t2 = (object.maxZ - oz) / dz;
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+
+        return tMin <= tMax ? tMin : -1;
+    }
+
+    // 从矩阵提取6个裁剪平面（Gribb-Hartmann），平面法线指向视锥内部
+    private void extractPlanes(float[] m) {
+        for (int p = 0; p < 6; p++) {
+            int row = p / 2;
+            float sign = (p % 2 == 0) ? 1 : -1;
+            // 列主序：第r行第c列为m[c * 4 + r]
+            planes[p * 4] = m[3] + sign * m[row];
+            planes[p * 4 + 1] = m[7] + sign * m[4 + row];
+            planes[p * 4 + 2] = m[11] + sign * m[8 + row];
+            planes[p * 4 + 3] = m[15] + sign * m[12 + row];
+        }
+    }
+
+    private boolean intersectsFrustum(SceneObject object) {
+        for (int p = 0; p < 6; p++) {
+            float a = planes[p * 4], b = planes[p * 4 + 1], c = planes[p * 4 + 2], d = planes[p * 4 + 3];
+            // 取AABB在平面法线方向上最远的顶点
+            float x = a >= 0 ? object.maxX : object.minX;
+            float y = b >= 0 ? object.maxY : object.minY;
+            float z = c >= 0 ? object.maxZ : object.minZ;
+            if (a * x + b * y + c * z + d < 0) return false;
+        }
+        return true;
+    }
+
+    // long键的开放寻址哈希表（线性探测，删除时后移），避免HashMap<Long, ...>查询时装箱
+    private static final class CellTable {
+        private long[] keys = new long[64];
+        private Object[] values = new Object[64]; // null表示空槽
+        private int size = 0;
+
+        @SuppressWarnings("unchecked")
+        List<SceneObject> get(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) return (List<SceneObject>) values[i];
+            }
+            return null;
+        }
+
+        void put(long key, List<SceneObject> value) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            size++;
+        }
+
+        void remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (values[i] != null && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (values[i] == null) return;
+            values[i] = null;
+            size--;
+
+            // 把探测链上后面的元素前移，保证查找不会在空槽处提前结束
+            for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                // home不在循环区间(i, j]内时，j处的元素可以移到i
+                boolean between = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+                if (!between) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Object[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    @SuppressWarnings("unchecked")
+                    List<SceneObject> value = (List<SceneObject>) oldValues[i];
+                    put(oldKeys[i], value);
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+}
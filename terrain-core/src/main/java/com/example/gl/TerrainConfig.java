@@ -0,0 +1,153 @@
+package com.example.gl;
+
+// 地形生成配置（不可变，可以在多个线程之间共享）
+// 通过Builder创建：new TerrainConfig.Builder().setEnableNormalMapping(true).build()
+public final class TerrainConfig {
+    public static final TerrainConfig DEFAULT = new Builder().build();
+
+    private final boolean useInterpolation;
+    private final int gridSize;
+    private final TerrainResampler.Kernel interpolationKernel;
+    private final boolean enableTessellation;
+    private final int tessellationLevel;
+    private final boolean enableNormalMapping;
+    private final boolean enableSimplification;
+    private final float simplificationMaxError;
+    private final int simplificationTriangleBudget;
+    private final long seed;
+
+    private TerrainConfig(Builder builder) {
+        this.useInterpolation = builder.useInterpolation;
+        this.gridSize = builder.gridSize;
+        this.interpolationKernel = builder.interpolationKernel;
+        this.enableTessellation = builder.enableTessellation;
+        this.tessellationLevel = builder.tessellationLevel;
+        this.enableNormalMapping = builder.enableNormalMapping;
+        this.enableSimplification = builder.enableSimplification;
+        this.simplificationMaxError = builder.simplificationMaxError;
+        this.simplificationTriangleBudget = builder.simplificationTriangleBudget;
+        this.seed = builder.seed;
+    }
+
+    public boolean isUseInterpolation() {
+        return useInterpolation;
+    }
+
+    // 插值后每个方向的网格点数（不插值时使用基础网格）
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public TerrainResampler.Kernel getInterpolationKernel() {
+        return interpolationKernel;
+    }
+
+    public boolean isTessellationEnabled() {
+        return enableTessellation;
+    }
+
+    public int getTessellationLevel() {
+        return tessellationLevel;
+    }
+
+    public boolean isNormalMappingEnabled() {
+        return enableNormalMapping;
+    }
+
+    public boolean isSimplificationEnabled() {
+        return enableSimplification;
+    }
+
+    public float getSimplificationMaxError() {
+        return simplificationMaxError;
+    }
+
+    public int getSimplificationTriangleBudget() {
+        return simplificationTriangleBudget;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    public static class Builder {
+        private boolean useInterpolation = true;
+        private int gridSize = TerrainDataV2.FINAL_GRID_SIZE;
+        private TerrainResampler.Kernel interpolationKernel = TerrainResampler.Kernel.BILINEAR;
+        private boolean enableTessellation = false;
+        private int tessellationLevel = 4;
+        private boolean enableNormalMapping = false;
+        private boolean enableSimplification = false;
+        private float simplificationMaxError = 0.01f;
+        private int simplificationTriangleBudget = 0;
+        private long seed = 42;
+
+        public Builder() {
+        }
+
+        private Builder(TerrainConfig config) {
+            useInterpolation = config.useInterpolation;
+            gridSize = config.gridSize;
+            interpolationKernel = config.interpolationKernel;
+            enableTessellation = config.enableTessellation;
+            tessellationLevel = config.tessellationLevel;
+            enableNormalMapping = config.enableNormalMapping;
+            enableSimplification = config.enableSimplification;
+            simplificationMaxError = config.simplificationMaxError;
+            simplificationTriangleBudget = config.simplificationTriangleBudget;
+            seed = config.seed;
+        }
+
+        public Builder setUseInterpolation(boolean use) {
+            useInterpolation = use;
+            return this;
+        }
+
+        public Builder setGridSize(int gridSize) {
+            this.gridSize = Math.max(2, gridSize);
+            return this;
+        }
+
+        public Builder setInterpolationKernel(TerrainResampler.Kernel kernel) {
+            interpolationKernel = kernel;
+            return this;
+        }
+
+        public Builder setEnableTessellation(boolean enable) {
+            enableTessellation = enable;
+            return this;
+        }
+
+        public Builder setTessellationLevel(int level) {
+            tessellationLevel = Math.max(1, Math.min(16, level));
+            return this;
+        }
+
+        public Builder setEnableNormalMapping(boolean enable) {
+            enableNormalMapping = enable;
+            return this;
+        }
+
+        // maxError：允许的二次误差（到原始平面距离的平方和）；triangleBudget <= 0 表示不限三角形数量
+        public Builder setSimplification(boolean enable, float maxError, int triangleBudget) {
+            enableSimplification = enable;
+            simplificationMaxError = maxError;
+            simplificationTriangleBudget = triangleBudget;
+            return this;
+        }
+
+        // 随机种子（基础高度噪声、插值扰动）
+        public Builder setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public TerrainConfig build() {
+            return new TerrainConfig(this);
+        }
+    }
+}
@@ -1,12 +1,8 @@
 package com.example.gl;
 
-import android.opengl.GLES32;
-import android.util.Log;
-
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -15,21 +11,23 @@ import java.util.Random;
 
 public class TerrainDataV2 {
     // 基础网格配置
-    private static final int BASE_GRID_SIZE = 50;
-    private static final int FINAL_GRID_SIZE = 200; // 提高基础网格密度
+    static final int BASE_GRID_SIZE = 50;
+    static final int FINAL_GRID_SIZE = 200; // 提高基础网格密度
     public static final float TERRAIN_SIZE = 100.0f;
     private static final float MAX_HEIGHT = 10.0f;
+    static final float INTERPOLATION_JITTER = 0.05f;
 
-    // 高级特性配置
-    private static boolean useInterpolation = true;
-    private static boolean enableTessellation = false;
-    private static boolean enableNormalMapping = false;
-    private static int tessellationLevel = 4;
+    // 全局配置（仅供静态兼容接口使用），整体替换，读取时得到一致的快照
+    private static volatile TerrainConfig config = TerrainConfig.DEFAULT;
 
-    // 高度图数据（用于曲面细分）
+    // 最近一次generateTerrainMesh()的高度图数据（兼容旧接口；TerrainGenerator的结果保存在MeshData中）
     public static float[][] heightMapData;
     public static int heightMapTextureId = -1;
 
+    // 高精度高度图的范围元数据（作为uniform传给着色器）
+    public static float heightMapMinHeight = 0.0f;
+    public static float heightMapMaxHeight = 0.0f;
+
     public static class Vertex {
         public float x, y, z;
         public float r, g, b;
@@ -62,40 +60,86 @@ public class TerrainDataV2 {
         public FloatBuffer colors;
         public FloatBuffer normals;
         public FloatBuffer texCoords;
-        public IntBuffer types;
+        public ByteBuffer types; // 每个顶点一个字节（ElementType）
         public int vertexCount;
         public float minHeight;
         public float maxHeight;
         public float[][] heightMap; // 新增：存储高度图数据
+        public float heightMapMinHeight; // 高度图的实际范围（高精度高度纹理的元数据）
+        public float heightMapMaxHeight;
+        public TerrainConfig config;     // 生成该地形使用的配置
+
+        // 地形网格信息（用于局部重建）
+        public int gridSize;
+        public PackedTypeMap typeMap;
+        public TerrainLayerPipeline layerPipeline;
+        public float baseToGrid; // 基础网格坐标 -> 最终网格坐标的缩放比例
+        public int terrainVertexCount; // 前terrainVertexCount个顶点为地形网格，之后为树木和建筑
+        public int gridStride; // 网格顶点间隔的高度图点数（启用法线贴图时为2）
+        public int meshCells;  // 每个方向的网格格子数
+        public boolean simplified; // 地形部分已被MeshSimplifier简化，不再是规则网格
+
+        // 树木、建筑等场景物体的空间索引
+        public SceneIndex sceneIndex;
+
+        // 分块高度包围范围（每块TILE_SIZE x TILE_SIZE个格子）
+        public int tilesPerSide;
+        public float[] tileMinHeight;
+        public float[] tileMaxHeight;
+        public float[] tileMaxSlope; // 块内双线性高度面的最大坡度（高度变化/水平距离），用于法线锥剔除
+    }
+
+    public static final int TILE_SIZE = 16;
+    static final float SCENE_CELL_SIZE = 8.0f; // 场景索引格子大小（世界单位）
+
+    // 配置方法（修改全局配置，只影响之后的generateTerrainMesh()调用）
+    public static synchronized void setUseInterpolation(boolean use) {
+        config = config.toBuilder().setUseInterpolation(use).build();
     }
 
-    // 配置方法
-    public static void setUseInterpolation(boolean use) {
-        useInterpolation = use;
+    public static synchronized void setInterpolationKernel(TerrainResampler.Kernel kernel) {
+        config = config.toBuilder().setInterpolationKernel(kernel).build();
     }
 
-    public static void setEnableTessellation(boolean enable) {
-        enableTessellation = enable;
+    public static synchronized void setEnableTessellation(boolean enable) {
+        config = config.toBuilder().setEnableTessellation(enable).build();
     }
 
-    public static void setEnableNormalMapping(boolean enable) {
-        enableNormalMapping = enable;
+    public static synchronized void setEnableNormalMapping(boolean enable) {
+        config = config.toBuilder().setEnableNormalMapping(enable).build();
     }
 
-    public static void setTessellationLevel(int level) {
-        tessellationLevel = Math.max(1, Math.min(16, level));
+    // maxError：允许的二次误差（到原始平面距离的平方和）；triangleBudget <= 0 表示不限三角形数量
+    public static synchronized void setSimplification(boolean enable, float maxError, int triangleBudget) {
+        config = config.toBuilder().setSimplification(enable, maxError, triangleBudget).build();
+    }
+
+    public static synchronized void setTessellationLevel(int level) {
+        config = config.toBuilder().setTessellationLevel(level).build();
+    }
+
+    public static TerrainConfig getConfig() {
+        return config;
+    }
+
+    public static boolean isSimplificationEnabled() {
+        return config.isSimplificationEnabled();
+    }
+
+    public static boolean isNormalMappingEnabled() {
+        return config.isNormalMappingEnabled();
     }
 
     public static boolean isTessellationEnabled() {
-        return enableTessellation;
+        return config.isTessellationEnabled();
     }
 
     public static int getTessellationLevel() {
-        return tessellationLevel;
+        return config.getTessellationLevel();
     }
 
     // 生成基础高度图（传统方法）
-    private static float[][] generateBaseHeightMap(Random random) {
+    static float[][] generateBaseHeightMap(Random random) {
         float[][] baseHeightMap = new float[BASE_GRID_SIZE][BASE_GRID_SIZE];
 
         for (int i = 0; i < BASE_GRID_SIZE; i++) {
@@ -122,80 +166,18 @@ public class TerrainDataV2 {
         return baseHeightMap;
     }
 
-    // 双线性插值生成平滑高度图
-    private static float[][] interpolateHeightMap(float[][] baseHeightMap, Random random) {
-        float[][] finalHeightMap = new float[FINAL_GRID_SIZE][FINAL_GRID_SIZE];
-
-        for (int i = 0; i < FINAL_GRID_SIZE; i++) {
-            for (int j = 0; j < FINAL_GRID_SIZE; j++) {
-                float baseX = i / (float)FINAL_GRID_SIZE * (BASE_GRID_SIZE - 1);
-                float baseZ = j / (float)FINAL_GRID_SIZE * (BASE_GRID_SIZE - 1);
-
-                finalHeightMap[i][j] = bilinearInterpolate(baseHeightMap, baseX, baseZ);
-
-                // 添加细微的高频噪声
-                finalHeightMap[i][j] += (random.nextFloat() * 0.1f - 0.05f);
-            }
-        }
-
-        return finalHeightMap;
-    }
-
-    // 双线性插值
-    private static float bilinearInterpolate(float[][] values, float x, float z) {
-        int x1 = (int) Math.floor(x);
-        int x2 = x1 + 1;
-        int z1 = (int) Math.floor(z);
-        int z2 = z1 + 1;
-
-        x1 = Math.max(0, Math.min(values.length - 1, x1));
-        x2 = Math.max(0, Math.min(values.length - 1, x2));
-        z1 = Math.max(0, Math.min(values[0].length - 1, z1));
-        z2 = Math.max(0, Math.min(values[0].length - 1, z2));
-
-        float q11 = values[x1][z1];
-        float q12 = values[x1][z2];
-        float q21 = values[x2][z1];
-        float q22 = values[x2][z2];
-
-        float dx = x - x1;
-        float dz = z - z1;
-
-        float top = q11 * (1 - dx) + q21 * dx;
-        float bottom = q12 * (1 - dx) + q22 * dx;
-        return top * (1 - dz) + bottom * dz;
-    }
-
-    // 类型图插值（最近邻）
-    private static int[][] interpolateTypeMap(int[][] baseTypeMap) {
-        int[][] finalTypeMap = new int[FINAL_GRID_SIZE][FINAL_GRID_SIZE];
-
-        for (int i = 0; i < FINAL_GRID_SIZE; i++) {
-            for (int j = 0; j < FINAL_GRID_SIZE; j++) {
-                int baseX = Math.round(i / (float)FINAL_GRID_SIZE * (BASE_GRID_SIZE - 1));
-                int baseZ = Math.round(j / (float)FINAL_GRID_SIZE * (BASE_GRID_SIZE - 1));
-
-                baseX = Math.max(0, Math.min(BASE_GRID_SIZE - 1, baseX));
-                baseZ = Math.max(0, Math.min(BASE_GRID_SIZE - 1, baseZ));
-
-                finalTypeMap[i][j] = baseTypeMap[baseX][baseZ];
-            }
-        }
-
-        return finalTypeMap;
-    }
-
-    // 使用Sobel算子计算精确法线
-    private static float[] calculateDetailedNormal(float[][] heightMap, int x, int y, int gridSize) {
+    // 使用Sobel算子计算精确法线（cellSize为网格间距，结果写入out[offset..offset+2]）
+    public static void calculateDetailedNormal(float[][] heightMap, int x, int y, int gridSize,
+                                               float cellSize, float[] out, int offset) {
         float dx = 0, dz = 0;
 
         if (x > 0 && x < gridSize - 1 && y > 0 && y < gridSize - 1) {
             // Sobel算子计算梯度
             dx = (heightMap[x+1][y-1] + 2 * heightMap[x+1][y] + heightMap[x+1][y+1] -
-                    heightMap[x-1][y-1] - 2 * heightMap[x-1][y] - heightMap[x-1][y+1]) / 8.0f;
+                    heightMap[x-1][y-1] - 2 * heightMap[x-1][y] - heightMap[x-1][y+1]) / (8.0f * cellSize);
 
             dz = (heightMap[x-1][y+1] + 2 * heightMap[x][y+1] + heightMap[x+1][y+1] -
-                    heightMap[x-1][y-1] - 2 * heightMap[x][y-1] - heightMap[x+1][y-1]) / 8.0f;
+                    heightMap[x-1][y-1] - 2 * heightMap[x][y-1] - heightMap[x+1][y-1]) / (8.0f * cellSize);
         }
 
         float nx = -dx;
@@ -209,11 +191,13 @@ public class TerrainDataV2 {
             nz /= length;
         }
 
-        return new float[]{nx, ny, nz};
+        out[offset] = nx;
+        out[offset + 1] = ny;
+        out[offset + 2] = nz;
     }
 
     // 平滑法线计算
-    private static void calculateSmoothNormals(List<Vertex> vertices) {
+    static void calculateSmoothNormals(List<Vertex> vertices) {
         Map<String, List<Integer>> positionMap = new HashMap<>();
 
         for (int i = 0; i < vertices.size(); i++) {
@@ -328,214 +312,92 @@ public class TerrainDataV2 {
         return new float[]{nx, ny, nz};
     }
 
-    // 主地形生成方法
+    // 按当前的全局配置生成地形（兼容旧接口）；新代码应直接使用TerrainGenerator
     public static MeshData generateTerrainMesh() {
-        List<Vertex> vertexList = new ArrayList<>();
-        float[][] heightMap;
-        int[][] typeMap;
-
-        Random random = new Random(42);
-        float minHeight = 0;
-        float maxHeight = 0;
-
-        // 步骤1：生成基础高度图
-        float[][] baseHeightMap = generateBaseHeightMap(random);
-        int[][] baseTypeMap = new int[BASE_GRID_SIZE][BASE_GRID_SIZE];
-
-        // 初始化基础类型图
-        for (int i = 0; i < BASE_GRID_SIZE; i++) {
-            for (int j = 0; j < BASE_GRID_SIZE; j++) {
-                baseTypeMap[i][j] = ElementType.Land;
-                float height = baseHeightMap[i][j];
-                minHeight = Math.min(minHeight, height);
-                maxHeight = Math.max(maxHeight, height);
-            }
-        }
-
-        // 在基础网格上添加特征
-        addRoad(baseHeightMap, baseTypeMap, BASE_GRID_SIZE / 2, 0, BASE_GRID_SIZE, 8, minHeight, maxHeight);
-        addWaterPool(baseHeightMap, baseTypeMap, BASE_GRID_SIZE / 4, BASE_GRID_SIZE / 4, 6, minHeight, maxHeight);
-        addLawn(baseHeightMap, baseTypeMap, BASE_GRID_SIZE * 3 / 4, BASE_GRID_SIZE * 3 / 4, 10, minHeight, maxHeight);
-        addBuilding(baseHeightMap, baseTypeMap, BASE_GRID_SIZE / 4, BASE_GRID_SIZE * 3 / 4, 6, 6, 10.0f, minHeight, maxHeight);
-
-        // 步骤2：选择是否进行插值
-        final int finalGridSize;
-        if (useInterpolation) {
-            heightMap = interpolateHeightMap(baseHeightMap, random);
-            typeMap = interpolateTypeMap(baseTypeMap);
-            finalGridSize = FINAL_GRID_SIZE;
-        } else {
-            heightMap = baseHeightMap;
-            typeMap = baseTypeMap;
-            finalGridSize = BASE_GRID_SIZE;
-        }
-
-        // 保存高度图数据用于曲面细分
-        heightMapData = heightMap;
-
-        // 步骤3：更新高度范围
-        minHeight = 0;
-        maxHeight = 0;
-        for (int i = 0; i < finalGridSize; i++) {
-            for (int j = 0; j < finalGridSize; j++) {
-                float height = heightMap[i][j];
-                minHeight = Math.min(minHeight, height);
-                maxHeight = Math.max(maxHeight, height);
-            }
-        }
-
-        // 步骤4：生成网格顶点
-        for (int i = 0; i < finalGridSize - 1; i++) {
-            for (int j = 0; j < finalGridSize - 1; j++) {
-                addQuad(vertexList, heightMap, typeMap, i, j, i + 1, j, i, j + 1, finalGridSize);
-                addQuad(vertexList, heightMap, typeMap, i + 1, j, i + 1, j + 1, i, j + 1, finalGridSize);
-            }
-        }
-
-        // 步骤5：添加树木和建筑物
-        addTrees(vertexList, heightMap, typeMap, finalGridSize);
-        addDetailedBuildings(vertexList, heightMap, typeMap, finalGridSize);
-
-        // 步骤6：计算平滑法线
-//        calculateSmoothNormals(vertexList);
-
-        // 步骤7：创建网格数据
-        MeshData meshData = createMeshData(vertexList, minHeight, maxHeight);
-        meshData.heightMap = heightMap; // 保存高度图数据
-
+        MeshData meshData = new TerrainGenerator(config).generate();
+        heightMapData = meshData.heightMap;
+        heightMapMinHeight = meshData.heightMapMinHeight;
+        heightMapMaxHeight = meshData.heightMapMaxHeight;
         return meshData;
     }
 
-    // 生成高度图纹理（用于曲面细分）
-    public static int generateHeightMapTexture2() {
-        if (heightMapData == null) return -1;
-
-        int width = heightMapData.length;
-        int height = heightMapData[0].length;
-
-        // 找到高度范围
-        float minHeight = Float.MAX_VALUE;
-        float maxHeight = Float.MIN_VALUE;
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                minHeight = Math.min(minHeight, heightMapData[i][j]);
-                maxHeight = Math.max(maxHeight, heightMapData[i][j]);
-            }
-        }
-
-        ByteBuffer buffer = ByteBuffer.allocateDirect(width * height * 4);
-        buffer.order(ByteOrder.nativeOrder());
-
-        // 归一化高度到[0,1]范围并转换为RGBA
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                float normalized = (heightMapData[i][j] - minHeight) / (maxHeight - minHeight);
-                byte value = (byte)(normalized * 255);
-                buffer.put(value); // R
-                buffer.put(value); // G
-                buffer.put(value); // B
-                buffer.put((byte)255); // A
-            }
-        }
-        buffer.position(0);
-
-        int[] textureId = new int[1];
-        GLES32.glGenTextures(1, textureId, 0);
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId[0]);
-
-        GLES32.glTexImage2D(
-                GLES32.GL_TEXTURE_2D, 0, GLES32.GL_RGBA,
-                width, height, 0, GLES32.GL_RGBA,
-                GLES32.GL_UNSIGNED_BYTE, buffer
-        );
-
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
-                GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_LINEAR);
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
-                GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_LINEAR);
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
-                GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D,
-                GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
-
-        heightMapTextureId = textureId[0];
-        return textureId[0];
-    }
-
-    // 生成高度图纹理（修复版）
-    public static int generateHeightMapTexture() {
-        if (heightMapData == null) return -1;
-
-        int width = heightMapData.length;
-        int height = heightMapData[0].length;
-
-        // 找到高度范围（包含负值）
-        float minHeight = Float.MAX_VALUE;
-        float maxHeight = -Float.MAX_VALUE;  // 注意这里用负的MAX_VALUE
-
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                float h = heightMapData[i][j];
-                minHeight = Math.min(minHeight, h);
-                maxHeight = Math.max(maxHeight, h);
+    // 重新计算与网格点矩形 [x0, x1) x [z0, z1) 相交的分块高度范围和最大坡度
+    public static void updateTileBounds(MeshData meshData, int x0, int z0, int x1, int z1) {
+        int gridSize = meshData.gridSize;
+        int tiles = meshData.tilesPerSide;
+        float cellSize = TERRAIN_SIZE / gridSize;
+        // 块t覆盖格子[t*TILE_SIZE, (t+1)*TILE_SIZE)，即网格点[t*TILE_SIZE, (t+1)*TILE_SIZE]
+        int tx0 = Math.max(0, (x0 - 1) / TILE_SIZE);
+        int tz0 = Math.max(0, (z0 - 1) / TILE_SIZE);
+        int tx1 = Math.min(tiles - 1, (x1 - 1) / TILE_SIZE);
+        int tz1 = Math.min(tiles - 1, (z1 - 1) / TILE_SIZE);
+
+        for (int tx = tx0; tx <= tx1; tx++) {
+            for (int tz = tz0; tz <= tz1; tz++) {
+                float min = Float.MAX_VALUE;
+                float max = -Float.MAX_VALUE;
+                // 双线性面上任意方向的坡度不超过相邻网格点在x、z方向上的最大高度差构成的梯度
+                float maxDx = 0;
+                float maxDz = 0;
+                int iEnd = Math.min(gridSize - 1, (tx + 1) * TILE_SIZE);
+                int jEnd = Math.min(gridSize - 1, (tz + 1) * TILE_SIZE);
+                for (int i = tx * TILE_SIZE; i <= iEnd; i++) {
+                    float[] column = meshData.heightMap[i];
+                    float[] next = i < iEnd ? meshData.heightMap[i + 1] : null;
+                    for (int j = tz * TILE_SIZE; j <= jEnd; j++) {
+                        min = Math.min(min, column[j]);
+                        max = Math.max(max, column[j]);
+                        if (next != null) {
+                            maxDx = Math.max(maxDx, Math.abs(next[j] - column[j]));
+                        }
+                        if (j < jEnd) {
+                            maxDz = Math.max(maxDz, Math.abs(column[j + 1] - column[j]));
+                        }
+                    }
+                }
+                meshData.tileMinHeight[tx * tiles + tz] = min;
+                meshData.tileMaxHeight[tx * tiles + tz] = max;
+                meshData.tileMaxSlope[tx * tiles + tz] = (float) Math.sqrt(maxDx * maxDx + maxDz * maxDz) / cellSize;
             }
         }
+    }
 
-        Log.d("HeightMap", String.format("Height range: min=%.3f, max=%.3f", minHeight, maxHeight));
+    // 网格格子(ci, cj)的第一个顶点在顶点缓冲中的索引（每个格子两个三角形共6个顶点）
+    public static int getCellVertexIndex(int meshCells, int ci, int cj) {
+        return (ci * meshCells + cj) * 6;
+    }
 
-        ByteBuffer buffer = ByteBuffer.allocateDirect(width * height * 4);
-        buffer.order(ByteOrder.nativeOrder());
+    // 每个方向的网格格子数
+    public static int getMeshCellCount(int gridSize, int stride) {
+        return (gridSize - 1 + stride - 1) / stride;
+    }
 
-        // 归一化高度到[0,1]范围，正确处理负值
-        float heightRange = Math.max(0.001f, maxHeight - minHeight); // 避免除零
+    // 第cell条网格线对应的高度图点（最后一条线对齐到高度图边缘）
+    public static int getMeshPoint(int gridSize, int stride, int cell) {
+        return Math.min(cell * stride, gridSize - 1);
+    }
 
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                float normalized = (heightMapData[i][j] - minHeight) / heightRange;
-                // 限制在[0,1]范围内
-                normalized = Math.max(0.0f, Math.min(1.0f, normalized));
+    // 高精度高度纹理每个texel的字节数
+    public static int getHeightTexelSize(boolean fullPrecision) {
+        return fullPrecision ? 4 : 2;
+    }
 
-                byte value = (byte)(normalized * 255);
-                buffer.put(value); // R
-                buffer.put(value); // G  
-                buffer.put(value); // B
-                buffer.put((byte)255); // A
+    // 把高度图的一个矩形区域按纹理行序（z为行、x为列）写入buffer
+    public static void packHeightTexels(float[][] heightMap, int x0, int z0, int width, int depth,
+                                        boolean fullPrecision, ByteBuffer out) {
+        for (int j = z0; j < z0 + depth; j++) {
+            for (int i = x0; i < x0 + width; i++) {
+                if (fullPrecision) {
+                    out.putFloat(heightMap[i][j]);
+                } else {
+                    out.putShort(MathUtils.floatToHalf(heightMap[i][j]));
+                }
             }
         }
-        buffer.position(0);
-
-        int[] textureId = new int[1];
-        GLES32.glGenTextures(1, textureId, 0);
-        GLES32.glBindTexture(GLES32.GL_TEXTURE_2D, textureId[0]);
-
-        // 使用单通道格式更合适
-        GLES32.glTexImage2D(
-                GLES32.GL_TEXTURE_2D, 0, GLES32.GL_RGBA,  // 保持RGBA兼容性
-                width, height, 0, GLES32.GL_RGBA,
-                GLES32.GL_UNSIGNED_BYTE, buffer
-        );
-
-        // 设置纹理参数
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MIN_FILTER, GLES32.GL_LINEAR);
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_MAG_FILTER, GLES32.GL_LINEAR);
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_S, GLES32.GL_CLAMP_TO_EDGE);
-        GLES32.glTexParameteri(GLES32.GL_TEXTURE_2D, GLES32.GL_TEXTURE_WRAP_T, GLES32.GL_CLAMP_TO_EDGE);
-
-        heightMapTextureId = textureId[0];
-
-        // 检查纹理是否创建成功
-        int error = GLES32.glGetError();
-        if (error != GLES32.GL_NO_ERROR) {
-            Log.e("HeightMap", "OpenGL error: " + error);
-        } else {
-            Log.d("HeightMap", "Height map texture created: " + textureId[0]);
-        }
-
-        return textureId[0];
     }
 
     // 以下为辅助方法（与TerrainData相同）
-    private static void addQuad(List<Vertex> vertices, float[][] heightMap, int[][] typeMap,
+    static void addQuad(List<Vertex> vertices, float[][] heightMap, PackedTypeMap typeMap, float[] gridNormals,
                                 int i1, int j1, int i2, int j2, int i3, int j3, int gridSize) {
         float x1 = (i1 / (float) gridSize - 0.5f) * TERRAIN_SIZE;
         float z1 = (j1 / (float) gridSize - 0.5f) * TERRAIN_SIZE;
@@ -549,19 +411,17 @@ public class TerrainDataV2 {
         float z3 = (j3 / (float) gridSize - 0.5f) * TERRAIN_SIZE;
         float y3 = heightMap[i3][j3];
 
-        float[] defaultNormal = {0.0f, 1.0f, 0.0f};
-
-        addVertex(vertices, x1, y1, z1, typeMap[i1][j1], defaultNormal);
-        addVertex(vertices, x2, y2, z2, typeMap[i2][j2], defaultNormal);
-        addVertex(vertices, x3, y3, z3, typeMap[i3][j3], defaultNormal);
+        addVertex(vertices, x1, y1, z1, typeMap.get(i1, j1), gridNormals, (i1 * gridSize + j1) * 3);
+        addVertex(vertices, x2, y2, z2, typeMap.get(i2, j2), gridNormals, (i2 * gridSize + j2) * 3);
+        addVertex(vertices, x3, y3, z3, typeMap.get(i3, j3), gridNormals, (i3 * gridSize + j3) * 3);
     }
 
-    private static void addVertex(List<Vertex> vertices, float x, float y, float z, int type, float[] normal) {
+    private static void addVertex(List<Vertex> vertices, float x, float y, float z, int type, float[] normals, int offset) {
         float[] color = getColorForType(type);
         Vertex vertex = new Vertex(x, y, z, color[0], color[1], color[2], type);
-        vertex.nx = normal[0];
-        vertex.ny = normal[1];
-        vertex.nz = normal[2];
+        vertex.nx = normals[offset];
+        vertex.ny = normals[offset + 1];
+        vertex.nz = normals[offset + 2];
         vertices.add(vertex);
     }
 
@@ -611,59 +471,8 @@ public class TerrainDataV2 {
         }
     }
 
-    private static void addRoad(float[][] heightMap, int[][] typeMap, int centerX, int centerZ, int length, int width, float minHeight, float maxHeight) {
-        int halfWidth = width / 2;
-        for (int i = centerX - length / 2; i < centerX + length / 2; i++) {
-            for (int j = centerZ - halfWidth; j < centerZ + halfWidth; j++) {
-                if (i >= 0 && i < heightMap.length && j >= 0 && j < heightMap[0].length) {
-                    heightMap[i][j] = (maxHeight - minHeight) / 2;
-                    typeMap[i][j] = ElementType.Road;
-                }
-            }
-        }
-    }
-
-    private static void addWaterPool(float[][] heightMap, int[][] typeMap, int centerX, int centerZ, int radius, float minHeight, float maxHeight) {
-        float maxRange = lineDistance(radius, radius);
-        for (int i = centerX - radius; i <= centerX + radius; i++) {
-            for (int j = centerZ - radius; j <= centerZ + radius; j++) {
-                if (i >= 0 && i < heightMap.length && j >= 0 && j < heightMap[0].length) {
-                    float dist = (float) Math.sqrt(Math.pow(i - centerX, 2) + Math.pow(j - centerZ, 2));
-                    if (dist <= radius) {
-                        float currRange = lineDistance(Math.abs(centerX - i), Math.abs(centerZ - j));
-                        float rate = currRange / Math.max(currRange, maxRange);
-                        heightMap[i][j] = minHeight - (1 - rate) * 1.5f;
-                        typeMap[i][j] = ElementType.WaterPool;
-                    }
-                }
-            }
-        }
-    }
-
-    private static void addLawn(float[][] heightMap, int[][] typeMap, int centerX, int centerZ, int radius, float minHeight, float maxHeight) {
-        for (int i = centerX - radius; i <= centerX + radius; i++) {
-            for (int j = centerZ - radius; j <= centerZ + radius; j++) {
-                if (i >= 0 && i < heightMap.length && j >= 0 && j < heightMap[0].length) {
-                    float dist = (float) Math.sqrt(Math.pow(i - centerX, 2) + Math.pow(j - centerZ, 2));
-                    if (dist <= radius && typeMap[i][j] == ElementType.Land) {
-                        typeMap[i][j] = ElementType.Lawn;
-                    }
-                }
-            }
-        }
-    }
-
-    private static void addBuilding(float[][] heightMap, int[][] typeMap, int startX, int startZ, int width, int depth, float height, float minHeight, float maxHeight) {
-        for (int i = startX; i < startX + width && i < heightMap.length; i++) {
-            for (int j = startZ; j < startZ + depth && j < heightMap[0].length; j++) {
-                boolean isTop = i > startX + width / 4 && i <= startX + width / 4 * 3 && j > startZ + depth / 4 && j <= startZ + depth / 4 * 3;
-                heightMap[i][j] = isTop ? height + 2 : height;
-                typeMap[i][j] = ElementType.Building;
-            }
-        }
-    }
-
-    private static void addTrees(List<Vertex> vertices, float[][] heightMap, int[][] typeMap, int gridSize) {
+    static void addTrees(List<Vertex> vertices, float[][] heightMap, PackedTypeMap typeMap, int gridSize,
+                                 SceneIndex sceneIndex) {
         Random random = new Random(42);
         int treeCount = gridSize;
 
@@ -671,30 +480,39 @@ public class TerrainDataV2 {
             int i = random.nextInt(gridSize - 4) + 2;
             int j = random.nextInt(gridSize - 4) + 2;
 
-            if ((typeMap[i][j] == ElementType.Land || typeMap[i][j] == ElementType.Lawn) &&
+            int type = typeMap.get(i, j);
+            if ((type == ElementType.Land || type == ElementType.Lawn) &&
                     heightMap[i][j] > -1.0f && heightMap[i][j] < 5.0f) {
 
                 float x = (i / (float) gridSize - 0.5f) * TERRAIN_SIZE;
                 float z = (j / (float) gridSize - 0.5f) * TERRAIN_SIZE;
                 float y = heightMap[i][j];
 
+                int firstVertex = vertices.size();
                 addTree(vertices, x, y, z);
+                sceneIndex.insert(ElementType.Canopy, x - TREE_CROWN_RADIUS, y, z - TREE_CROWN_RADIUS,
+                        x + TREE_CROWN_RADIUS, y + TREE_TRUNK_HEIGHT + TREE_CROWN_RADIUS * 1.5f, z + TREE_CROWN_RADIUS,
+                        firstVertex, vertices.size() - firstVertex);
             }
         }
     }
 
+    private static final float TREE_TRUNK_HEIGHT = 2.0f;
+    private static final float TREE_CROWN_RADIUS = 1.2f;
+
     private static void addTree(List<Vertex> vertices, float x, float baseY, float z) {
-        float trunkHeight = 2.0f;
+        float trunkHeight = TREE_TRUNK_HEIGHT;
         float trunkWidth = 0.3f;
         addCube(vertices, x, baseY + trunkHeight / 2, z, trunkWidth, trunkHeight, ElementType.Trunk, trunkWidth,
                 new float[]{0.4f, 0.2f, 0.1f});
 
-        float crownRadius = 1.2f;
+        float crownRadius = TREE_CROWN_RADIUS;
         addSphere(vertices, x, baseY + trunkHeight + crownRadius / 2, z, crownRadius,
                 new float[]{0.1f, 0.5f, 0.1f});
     }
 
-    private static void addDetailedBuildings(List<Vertex> vertices, float[][] heightMap, int[][] typeMap, int gridSize) {
+    static void addDetailedBuildings(List<Vertex> vertices, float[][] heightMap, PackedTypeMap typeMap, int gridSize,
+                                             SceneIndex sceneIndex) {
         Random random = new Random(42);
         int buildingCount = gridSize / 20;
 
@@ -708,7 +526,8 @@ public class TerrainDataV2 {
             boolean validLocation = true;
             for (int i = startX; i < startX + width && i < gridSize; i++) {
                 for (int j = startZ; j < startZ + depth && j < gridSize; j++) {
-                    if (typeMap[i][j] == ElementType.Road || typeMap[i][j] == ElementType.WaterPool) {
+                    int type = typeMap.get(i, j);
+                    if (type == ElementType.Road || type == ElementType.WaterPool) {
                         validLocation = false;
                         break;
                     }
@@ -716,8 +535,23 @@ public class TerrainDataV2 {
                 if (!validLocation) break;
             }
 
+            // 屋顶范围（比墙体每边多出0.25格）
+            float cellSize = TERRAIN_SIZE / gridSize;
+            float minX = (startX - 0.25f) * cellSize - TERRAIN_SIZE / 2;
+            float minZ = (startZ - 0.25f) * cellSize - TERRAIN_SIZE / 2;
+            float maxX = (startX + width + 0.25f) * cellSize - TERRAIN_SIZE / 2;
+            float maxZ = (startZ + depth + 0.25f) * cellSize - TERRAIN_SIZE / 2;
+
+            // 不与已放置的建筑重叠
+            if (validLocation && sceneIndex.overlapsAny(minX, minZ, maxX, maxZ, ElementType.Building)) {
+                validLocation = false;
+            }
+
             if (validLocation) {
+                int firstVertex = vertices.size();
                 addBuildingWithCube(vertices, startX, startZ, width, depth, height, gridSize);
+                sceneIndex.insert(ElementType.Building, minX, 0, minZ, maxX, height + 1.0f, maxZ,
+                        firstVertex, vertices.size() - firstVertex);
             }
         }
     }
@@ -849,7 +683,7 @@ public class TerrainDataV2 {
         return new float[]{x, y, z};
     }
 
-    private static MeshData createMeshData(List<Vertex> vertices, float minHeight, float maxHeight) {
+    static MeshData createMeshData(List<Vertex> vertices, float minHeight, float maxHeight) {
         MeshData meshData = new MeshData();
         meshData.vertexCount = vertices.size();
 
@@ -857,7 +691,7 @@ public class TerrainDataV2 {
         float[] colorArray = new float[vertices.size() * 3];
         float[] normalArray = new float[vertices.size() * 3];
         float[] texCoordArray = new float[vertices.size() * 2];
-        int[] typeArray = new int[vertices.size()];
+        byte[] typeArray = new byte[vertices.size()];
 
         for (int i = 0; i < vertices.size(); i++) {
             Vertex v = vertices.get(i);
@@ -876,7 +710,7 @@ public class TerrainDataV2 {
             texCoordArray[i * 2] = v.u;
             texCoordArray[i * 2 + 1] = v.v;
 
-            typeArray[i] = v.type;
+            typeArray[i] = (byte) v.type;
         }
 
         meshData.vertices = createFloatBuffer(vertexArray);
@@ -885,15 +719,11 @@ public class TerrainDataV2 {
         meshData.texCoords = createFloatBuffer(texCoordArray);
         meshData.minHeight = minHeight;
         meshData.maxHeight = maxHeight;
-        meshData.types = createIntBuffer(typeArray);
+        meshData.types = createByteBuffer(typeArray);
 
         return meshData;
     }
 
-    private static float lineDistance(float dx, float dy) {
-        return (float) Math.sqrt(dx * dx + dy * dy);
-    }
-
     private static FloatBuffer createFloatBuffer(float[] array) {
         java.nio.ByteBuffer bb = java.nio.ByteBuffer.allocateDirect(array.length * 4);
         bb.order(java.nio.ByteOrder.nativeOrder());
@@ -903,10 +733,8 @@ public class TerrainDataV2 {
         return buffer;
     }
 
-    private static IntBuffer createIntBuffer(int[] array) {
-        java.nio.ByteBuffer bb = java.nio.ByteBuffer.allocateDirect(array.length * 4);
-        bb.order(java.nio.ByteOrder.nativeOrder());
-        IntBuffer buffer = bb.asIntBuffer();
+    private static ByteBuffer createByteBuffer(byte[] array) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(array.length).order(ByteOrder.nativeOrder());
         buffer.put(array);
         buffer.position(0);
         return buffer;
@@ -0,0 +1,158 @@
+package com.example.gl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// 地形生成器：按不可变的TerrainConfig生成自包含的MeshData（高度图、类型图、图层流水线、场景索引）
+// 生成过程只使用局部状态，多个生成器可以在不同线程上同时运行
+public class TerrainGenerator {
+    private static final int BASE_GRID_SIZE = TerrainDataV2.BASE_GRID_SIZE;
+
+    private final TerrainConfig config;
+
+    public TerrainGenerator(TerrainConfig config) {
+        this.config = config;
+    }
+
+    public TerrainConfig getConfig() {
+        return config;
+    }
+
+    // 生成一个完整的地形，结果不引用任何静态状态
+    public TerrainDataV2.MeshData generate() {
+        List<TerrainDataV2.Vertex> vertexList = new ArrayList<>();
+        float[][] heightMap;
+        PackedTypeMap typeMap;
+
+        Random random = new Random(config.getSeed());
+        float minHeight = 0;
+        float maxHeight = 0;
+
+        // 步骤1：生成基础高度图
+        float[][] baseHeightMap = TerrainDataV2.generateBaseHeightMap(random);
+        PackedTypeMap baseTypeMap = new PackedTypeMap(BASE_GRID_SIZE, BASE_GRID_SIZE);
+        baseTypeMap.fill(ElementType.Land);
+
+        for (int i = 0; i < BASE_GRID_SIZE; i++) {
+            for (int j = 0; j < BASE_GRID_SIZE; j++) {
+                float height = baseHeightMap[i][j];
+                minHeight = Math.min(minHeight, height);
+                maxHeight = Math.max(maxHeight, height);
+            }
+        }
+
+        // 步骤2：选择是否进行插值
+        final int finalGridSize;
+        final float baseToGrid;
+        if (config.isUseInterpolation()) {
+            // 插值并叠加细微的高频噪声（按网格点哈希，结果与并行调度无关）
+            finalGridSize = config.getGridSize();
+            heightMap = TerrainResampler.resample(baseHeightMap, finalGridSize, finalGridSize,
+                    config.getInterpolationKernel(), TerrainDataV2.INTERPOLATION_JITTER, config.getSeed());
+            typeMap = TerrainResampler.resampleNearest(baseTypeMap, finalGridSize, finalGridSize);
+            baseToGrid = finalGridSize / (float) (BASE_GRID_SIZE - 1);
+        } else {
+            heightMap = baseHeightMap;
+            typeMap = baseTypeMap;
+            finalGridSize = BASE_GRID_SIZE;
+            baseToGrid = 1.0f;
+        }
+
+        // 特征图层（以基础网格坐标描述）在最终网格上求值，
+        // 流水线保留图层应用前的高度，供雕刻和图层修改时局部重建
+        TerrainLayerPipeline layerPipeline = new TerrainLayerPipeline(heightMap, typeMap, baseToGrid);
+        layerPipeline.addLayer(new TerrainLayer.Road(BASE_GRID_SIZE / 2, 0, BASE_GRID_SIZE, 8, minHeight, maxHeight));
+        layerPipeline.addLayer(new TerrainLayer.WaterPool(BASE_GRID_SIZE / 4, BASE_GRID_SIZE / 4, 6, minHeight, maxHeight));
+        layerPipeline.addLayer(new TerrainLayer.Lawn(BASE_GRID_SIZE * 3 / 4, BASE_GRID_SIZE * 3 / 4, 10));
+        layerPipeline.addLayer(new TerrainLayer.Building(BASE_GRID_SIZE / 4, BASE_GRID_SIZE * 3 / 4, 6, 6, 10.0f));
+        layerPipeline.applyAll();
+
+        // 步骤3：更新高度范围（heightMapMin/Max为高度图的实际范围，minHeight/maxHeight包含0）
+        float heightMapMin = Float.MAX_VALUE;
+        float heightMapMax = -Float.MAX_VALUE;
+        for (int i = 0; i < finalGridSize; i++) {
+            for (int j = 0; j < finalGridSize; j++) {
+                float height = heightMap[i][j];
+                heightMapMin = Math.min(heightMapMin, height);
+                heightMapMax = Math.max(heightMapMax, height);
+            }
+        }
+        minHeight = Math.min(0, heightMapMin);
+        maxHeight = Math.max(0, heightMapMax);
+
+        // 步骤4：生成网格顶点（法线由高度图的Sobel梯度得到，与局部重建时一致）
+        // 启用法线贴图时每个方向隔一个点取顶点（三角形数量减少为1/4），光照细节由法线贴图提供
+        int gridStride = config.isNormalMappingEnabled() ? 2 : 1;
+        int meshCells = TerrainDataV2.getMeshCellCount(finalGridSize, gridStride);
+        addTerrainGrid(vertexList, heightMap, typeMap, computeGridNormals(heightMap), gridStride);
+        int terrainVertexCount = vertexList.size();
+
+        // 步骤5：添加树木和建筑物，同时登记到空间索引
+        SceneIndex sceneIndex = new SceneIndex(TerrainDataV2.SCENE_CELL_SIZE);
+        TerrainDataV2.addTrees(vertexList, heightMap, typeMap, finalGridSize, sceneIndex);
+        TerrainDataV2.addDetailedBuildings(vertexList, heightMap, typeMap, finalGridSize, sceneIndex);
+
+        // 步骤6：计算平滑法线
+//        calculateSmoothNormals(vertexList);
+
+        // 步骤7：创建网格数据
+        TerrainDataV2.MeshData meshData = TerrainDataV2.createMeshData(vertexList, minHeight, maxHeight);
+        meshData.config = config;
+        meshData.heightMap = heightMap; // 保存高度图数据
+        meshData.heightMapMinHeight = heightMapMin;
+        meshData.heightMapMaxHeight = heightMapMax;
+        meshData.gridSize = finalGridSize;
+        meshData.typeMap = typeMap;
+        meshData.layerPipeline = layerPipeline;
+        meshData.sceneIndex = sceneIndex;
+        meshData.baseToGrid = baseToGrid;
+        meshData.terrainVertexCount = terrainVertexCount;
+        meshData.gridStride = gridStride;
+        meshData.meshCells = meshCells;
+
+        meshData.tilesPerSide = (finalGridSize - 1 + TerrainDataV2.TILE_SIZE - 1) / TerrainDataV2.TILE_SIZE;
+        meshData.tileMinHeight = new float[meshData.tilesPerSide * meshData.tilesPerSide];
+        meshData.tileMaxHeight = new float[meshData.tilesPerSide * meshData.tilesPerSide];
+        meshData.tileMaxSlope = new float[meshData.tilesPerSide * meshData.tilesPerSide];
+        TerrainDataV2.updateTileBounds(meshData, 0, 0, finalGridSize, finalGridSize);
+
+        // 步骤8（可选）：简化平坦区域
+        if (config.isSimplificationEnabled()) {
+            MeshSimplifier.simplify(meshData, config.getSimplificationMaxError(),
+                    config.getSimplificationTriangleBudget());
+        }
+
+        return meshData;
+    }
+
+    // 每个网格点的Sobel法线，按 (i * gridSize + j) * 3 存储
+    static float[] computeGridNormals(float[][] heightMap) {
+        int gridSize = heightMap.length;
+        float[] gridNormals = new float[gridSize * gridSize * 3];
+        float cellSize = TerrainDataV2.TERRAIN_SIZE / gridSize;
+        for (int i = 0; i < gridSize; i++) {
+            for (int j = 0; j < gridSize; j++) {
+                TerrainDataV2.calculateDetailedNormal(heightMap, i, j, gridSize, cellSize, gridNormals, (i * gridSize + j) * 3);
+            }
+        }
+        return gridNormals;
+    }
+
+    // 按stride取网格点生成地形三角形（顶点顺序见TerrainDataV2.getCellVertexIndex）
+    static void addTerrainGrid(List<TerrainDataV2.Vertex> vertexList, float[][] heightMap, PackedTypeMap typeMap,
+                               float[] gridNormals, int stride) {
+        int gridSize = heightMap.length;
+        int meshCells = TerrainDataV2.getMeshCellCount(gridSize, stride);
+        for (int ci = 0; ci < meshCells; ci++) {
+            int i = TerrainDataV2.getMeshPoint(gridSize, stride, ci);
+            int ni = TerrainDataV2.getMeshPoint(gridSize, stride, ci + 1);
+            for (int cj = 0; cj < meshCells; cj++) {
+                int j = TerrainDataV2.getMeshPoint(gridSize, stride, cj);
+                int nj = TerrainDataV2.getMeshPoint(gridSize, stride, cj + 1);
+                TerrainDataV2.addQuad(vertexList, heightMap, typeMap, gridNormals, i, j, ni, j, i, nj, gridSize);
+                TerrainDataV2.addQuad(vertexList, heightMap, typeMap, gridNormals, ni, j, ni, nj, i, nj, gridSize);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.gl;
+
+// 地形特征图层（道路、水池、草坪、建筑地基）
+// 图层参数以基础网格坐标描述，可以按任意缩放比例和裁剪矩形重新应用到目标网格上，
+// 由TerrainLayerPipeline按优先级组合，只在图层覆盖范围内求值
+public abstract class TerrainLayer {
+    // 图层高度与已有高度的混合方式
+    public enum Blend {
+        REPLACE, // 直接替换
+        MIN,     // 取较低者（挖掘）
+        MAX,     // 取较高者（堆积）
+        ADD,     // 叠加
+        KEEP     // 不改变高度，只改变类型
+    }
+
+    // 影响范围（基础网格坐标，右/下边界不包含）
+    protected float minX, minZ, maxX, maxZ;
+
+    private int priority;
+    private Blend blend;
+    private int version = 0;
+
+    protected TerrainLayer(int priority, Blend blend) {
+        this.priority = priority;
+        this.blend = blend;
+    }
+
+    // 该网格点是否被图层覆盖；gx/gz为该点在基础网格中的坐标
+    protected abstract boolean covers(float gx, float gz, int currentType);
+
+    // 图层在该点的高度（按blend与已有高度混合）
+    protected abstract float heightAt(float gx, float gz);
+
+    // 被覆盖网格点的类型
+    protected abstract int getType();
+
+    // 把图层应用到目标网格的裁剪矩形内 [x0, x1) x [z0, z1)
+    // baseToGrid：基础网格坐标到目标网格坐标的缩放比例
+    public void apply(float[][] heightMap, PackedTypeMap typeMap, float baseToGrid,
+                      int x0, int z0, int x1, int z1) {
+        int[] range = new int[4];
+        getGridRange(baseToGrid, heightMap.length, heightMap[0].length, range);
+        int startI = Math.max(x0, range[0]);
+        int startJ = Math.max(z0, range[1]);
+        int endI = Math.min(x1, range[2]);
+        int endJ = Math.min(z1, range[3]);
+        int type = getType();
+
+        for (int i = startI; i < endI; i++) {
+            float gx = i / baseToGrid;
+            if (gx < minX || gx >= maxX) continue;
+            for (int j = startJ; j < endJ; j++) {
+                float gz = j / baseToGrid;
+                if (gz < minZ || gz >= maxZ) continue;
+                if (!covers(gx, gz, typeMap.get(i, j))) continue;
+
+                switch (blend) {
+                    case REPLACE:
+                        heightMap[i][j] = heightAt(gx, gz);
+                        break;
+                    case MIN:
+                        heightMap[i][j] = Math.min(heightMap[i][j], heightAt(gx, gz));
+                        break;
+                    case MAX:
+                        heightMap[i][j] = Math.max(heightMap[i][j], heightAt(gx, gz));
+                        break;
+                    case ADD:
+                        heightMap[i][j] += heightAt(gx, gz);
+                        break;
+                    case KEEP:
+                        break;
+                }
+                typeMap.set(i, j, type);
+            }
+        }
+    }
+
+    public void apply(float[][] heightMap, PackedTypeMap typeMap, float baseToGrid) {
+        apply(heightMap, typeMap, baseToGrid, 0, 0, heightMap.length, heightMap[0].length);
+    }
+
+    // 图层在目标网格中的影响范围是否与矩形 [x0, x1) x [z0, z1) 相交
+    public boolean overlaps(float baseToGrid, int x0, int z0, int x1, int z1) {
+        return minX * baseToGrid < x1 && maxX * baseToGrid > x0
+                && minZ * baseToGrid < z1 && maxZ * baseToGrid > z0;
+    }
+
+    // 图层在 width x depth 的目标网格中可能写入的格子范围 {startI, startJ, endI, endJ}（右/下边界不包含），
+    // 即apply的遍历范围（不含裁剪矩形）
+    public void getGridRange(float baseToGrid, int width, int depth, int[] out) {
+        out[0] = Math.max(0, (int) Math.floor(minX * baseToGrid));
+        out[1] = Math.max(0, (int) Math.floor(minZ * baseToGrid));
+        out[2] = Math.min(width, (int) Math.ceil(maxX * baseToGrid) + 1);
+        out[3] = Math.min(depth, (int) Math.ceil(maxZ * baseToGrid) + 1);
+    }
+
+    // 影响范围（基础网格坐标）{minX, minZ, maxX, maxZ}
+    public void getBounds(float[] out) {
+        out[0] = minX;
+        out[1] = minZ;
+        out[2] = maxX;
+        out[3] = maxZ;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+        markChanged();
+    }
+
+    public Blend getBlend() {
+        return blend;
+    }
+
+    public void setBlend(Blend blend) {
+        this.blend = blend;
+        markChanged();
+    }
+
+    // 每次修改参数后递增，流水线据此跳过未变化的图层
+    public int getVersion() {
+        return version;
+    }
+
+    protected void markChanged() {
+        version++;
+    }
+
+    // 道路：整段压平到固定高度
+    public static class Road extends TerrainLayer {
+        private final float height;
+
+        public Road(int centerX, int centerZ, int length, int width, float minHeight, float maxHeight) {
+            super(0, Blend.REPLACE);
+            int halfWidth = width / 2;
+            minX = centerX - length / 2;
+            maxX = centerX + length / 2;
+            minZ = centerZ - halfWidth;
+            maxZ = centerZ + halfWidth;
+            height = (maxHeight - minHeight) / 2;
+        }
+
+        @Override
+        protected boolean covers(float gx, float gz, int currentType) {
+            return true;
+        }
+
+        @Override
+        protected float heightAt(float gx, float gz) {
+            return height;
+        }
+
+        @Override
+        protected int getType() {
+            return ElementType.Road;
+        }
+    }
+
+    // 水池：圆形凹陷，中心最深
+    public static class WaterPool extends TerrainLayer {
+        private final int centerX, centerZ, radius;
+        private final float minHeight;
+        private final float maxRange;
+
+        public WaterPool(int centerX, int centerZ, int radius, float minHeight, float maxHeight) {
+            super(1, Blend.REPLACE);
+            this.centerX = centerX;
+            this.centerZ = centerZ;
+            this.radius = radius;
+            this.minHeight = minHeight;
+            this.maxRange = lineDistance(radius, radius);
+            minX = centerX - radius;
+            maxX = centerX + radius + 1;
+            minZ = centerZ - radius;
+            maxZ = centerZ + radius + 1;
+        }
+
+        @Override
+        protected boolean covers(float gx, float gz, int currentType) {
+            return lineDistance(gx - centerX, gz - centerZ) <= radius;
+        }
+
+        @Override
+        protected float heightAt(float gx, float gz) {
+            float currRange = lineDistance(Math.abs(centerX - gx), Math.abs(centerZ - gz));
+            float rate = currRange / Math.max(currRange, maxRange);
+            return minHeight - (1 - rate) * 1.5f;
+        }
+
+        @Override
+        protected int getType() {
+            return ElementType.WaterPool;
+        }
+    }
+
+    // 草坪：只改变圆形范围内土地的类型，不改变高度
+    public static class Lawn extends TerrainLayer {
+        private final int centerX, centerZ, radius;
+
+        public Lawn(int centerX, int centerZ, int radius) {
+            super(2, Blend.KEEP);
+            this.centerX = centerX;
+            this.centerZ = centerZ;
+            this.radius = radius;
+            minX = centerX - radius;
+            maxX = centerX + radius + 1;
+            minZ = centerZ - radius;
+            maxZ = centerZ + radius + 1;
+        }
+
+        @Override
+        protected boolean covers(float gx, float gz, int currentType) {
+            return currentType == ElementType.Land && lineDistance(gx - centerX, gz - centerZ) <= radius;
+        }
+
+        @Override
+        protected float heightAt(float gx, float gz) {
+            return 0;
+        }
+
+        @Override
+        protected int getType() {
+            return ElementType.Lawn;
+        }
+    }
+
+    // 建筑地基：矩形平台，中间部分抬高作为屋顶
+    public static class Building extends TerrainLayer {
+        private final int startX, startZ, width, depth;
+        private final float height;
+
+        public Building(int startX, int startZ, int width, int depth, float height) {
+            super(3, Blend.REPLACE);
+            this.startX = startX;
+            this.startZ = startZ;
+            this.width = width;
+            this.depth = depth;
+            this.height = height;
+            minX = startX;
+            maxX = startX + width;
+            minZ = startZ;
+            maxZ = startZ + depth;
+        }
+
+        @Override
+        protected boolean covers(float gx, float gz, int currentType) {
+            return true;
+        }
+
+        @Override
+        protected float heightAt(float gx, float gz) {
+            boolean isTop = gx > startX + width / 4 && gx <= startX + width / 4 * 3
+                    && gz > startZ + depth / 4 && gz <= startZ + depth / 4 * 3;
+            return isTop ? height + 2 : height;
+        }
+
+        @Override
+        protected int getType() {
+            return ElementType.Building;
+        }
+    }
+
+    private static float lineDistance(float dx, float dy) {
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
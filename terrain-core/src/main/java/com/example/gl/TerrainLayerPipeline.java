@@ -0,0 +1,264 @@
+package com.example.gl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// 特征图层流水线：
+// 1. 保存图层应用前的基础高度/类型（base），任何区域都可以从base重新求值
+// 2. 图层按优先级排序，只在与脏区域相交的图层覆盖范围内求值
+// 3. 重新生成时跳过版本号未变化的图层，只重建变化图层新旧覆盖范围的并集
+// 4. 优先级相邻且写入的网格点（按类型图字节扩展后）互不相交的图层分为一批，批内并行求值
+public class TerrainLayerPipeline {
+    // 一批图层覆盖的格子数超过该值才并行，避免小区域的线程调度开销
+    private static final int PARALLEL_MIN_CELLS = 4096;
+
+    private static class Entry {
+        final TerrainLayer layer;
+        int appliedVersion = -1;
+        final float[] appliedBounds = new float[4]; // 上次求值时的覆盖范围
+        boolean removed = false;
+
+        Entry(TerrainLayer layer) {
+            this.layer = layer;
+        }
+    }
+
+    private final float[][] heightMap;
+    private final PackedTypeMap typeMap;
+    private final float[][] baseHeights;
+    private final PackedTypeMap baseTypes;
+    private final float baseToGrid;
+    private final int width;
+    private final int depth;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private boolean orderDirty = false;
+    private final float[] bounds = new float[4];
+
+    // heightMap/typeMap为图层应用前的数据，构造时保存为base
+    public TerrainLayerPipeline(float[][] heightMap, PackedTypeMap typeMap, float baseToGrid) {
+        this.heightMap = heightMap;
+        this.typeMap = typeMap;
+        this.baseToGrid = baseToGrid;
+        this.width = heightMap.length;
+        this.depth = heightMap[0].length;
+
+        baseHeights = new float[width][];
+        for (int i = 0; i < width; i++) {
+            baseHeights[i] = heightMap[i].clone();
+        }
+        baseTypes = typeMap.copy();
+    }
+
+    public void addLayer(TerrainLayer layer) {
+        entries.add(new Entry(layer));
+        orderDirty = true;
+    }
+
+    // 移除的图层在下次regenerate()时恢复其覆盖范围
+    public void removeLayer(TerrainLayer layer) {
+        for (Entry entry : entries) {
+            if (entry.layer == layer) {
+                entry.removed = true;
+            }
+        }
+    }
+
+    public List<TerrainLayer> getLayers() {
+        List<TerrainLayer> layers = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.removed) {
+                layers.add(entry.layer);
+            }
+        }
+        return layers;
+    }
+
+    // 图层应用前的高度（雕刻修改的是这一层，图层在其上重新求值）
+    public float[][] getBaseHeights() {
+        return baseHeights;
+    }
+
+    public float getBaseToGrid() {
+        return baseToGrid;
+    }
+
+    // 从base重新求值整个网格
+    public void applyAll() {
+        applyRegion(0, 0, width, depth);
+        for (Entry entry : entries) {
+            markApplied(entry);
+        }
+    }
+
+    // 只重建发生变化的图层（新增、移除、参数修改）
+    // 返回受影响的网格区域 {x0, z0, x1, z1}，没有变化时返回null
+    public int[] regenerate() {
+        int x0 = Integer.MAX_VALUE, z0 = Integer.MAX_VALUE;
+        int x1 = Integer.MIN_VALUE, z1 = Integer.MIN_VALUE;
+        boolean changed = false;
+
+        for (Entry entry : entries) {
+            if (!entry.removed && entry.appliedVersion == entry.layer.getVersion()) continue;
+            changed = true;
+
+            // 旧的覆盖范围需要恢复
+            if (entry.appliedVersion >= 0) {
+                x0 = Math.min(x0, (int) Math.floor(entry.appliedBounds[0] * baseToGrid));
+                z0 = Math.min(z0, (int) Math.floor(entry.appliedBounds[1] * baseToGrid));
+                x1 = Math.max(x1, (int) Math.ceil(entry.appliedBounds[2] * baseToGrid) + 1);
+                z1 = Math.max(z1, (int) Math.ceil(entry.appliedBounds[3] * baseToGrid) + 1);
+            }
+            // 新的覆盖范围需要求值
+            if (!entry.removed) {
+                entry.layer.getBounds(bounds);
+                x0 = Math.min(x0, (int) Math.floor(bounds[0] * baseToGrid));
+                z0 = Math.min(z0, (int) Math.floor(bounds[1] * baseToGrid));
+                x1 = Math.max(x1, (int) Math.ceil(bounds[2] * baseToGrid) + 1);
+                z1 = Math.max(z1, (int) Math.ceil(bounds[3] * baseToGrid) + 1);
+            }
+        }
+        if (!changed) return null;
+
+        for (int k = entries.size() - 1; k >= 0; k--) {
+            if (entries.get(k).removed) {
+                entries.remove(k);
+            }
+        }
+        orderDirty = true; // 优先级可能已被修改
+
+        x0 = Math.max(0, x0);
+        z0 = Math.max(0, z0);
+        x1 = Math.min(width, x1);
+        z1 = Math.min(depth, z1);
+        if (x0 < x1 && z0 < z1) {
+            applyRegion(x0, z0, x1, z1);
+        }
+        for (Entry entry : entries) {
+            markApplied(entry);
+        }
+        return x0 < x1 && z0 < z1 ? new int[]{x0, z0, x1, z1} : null;
+    }
+
+    // 把区域 [x0, x1) x [z0, z1) 恢复为base，再按优先级应用与之相交的图层
+    public void applyRegion(int x0, int z0, int x1, int z1) {
+        x0 = Math.max(0, x0);
+        z0 = Math.max(0, z0);
+        x1 = Math.min(width, x1);
+        z1 = Math.min(depth, z1);
+        if (x0 >= x1 || z0 >= z1) return;
+
+        for (int i = x0; i < x1; i++) {
+            System.arraycopy(baseHeights[i], z0, heightMap[i], z0, z1 - z0);
+        }
+        typeMap.copyRegion(baseTypes, x0, z0, x1, z1);
+
+        sortEntries();
+
+        // 按优先级顺序分批：一个图层写入的字节范围与当前批次中任何图层相交时开始新的批次
+        List<TerrainLayer> batch = new ArrayList<>();
+        List<int[]> batchRanges = new ArrayList<>();
+        for (Entry entry : entries) {
+            TerrainLayer layer = entry.layer;
+            if (entry.removed || !layer.overlaps(baseToGrid, x0, z0, x1, z1)) continue;
+
+            int[] range = new int[4];
+            layer.getGridRange(baseToGrid, width, depth, range);
+            expandToTypeBytes(range);
+            for (int[] other : batchRanges) {
+                if (intersects(range, other)) {
+                    runBatch(batch, x0, z0, x1, z1);
+                    batch.clear();
+                    batchRanges.clear();
+                    break;
+                }
+            }
+            batch.add(layer);
+            batchRanges.add(range);
+        }
+        runBatch(batch, x0, z0, x1, z1);
+    }
+
+    private void runBatch(List<TerrainLayer> batch, final int x0, final int z0, final int x1, final int z1) {
+        if (batch.isEmpty()) return;
+
+        if (batch.size() == 1 || countCells(batch, x0, z0, x1, z1) < PARALLEL_MIN_CELLS) {
+            for (TerrainLayer layer : batch) {
+                layer.apply(heightMap, typeMap, baseToGrid, x0, z0, x1, z1);
+            }
+            return;
+        }
+
+        // 批内图层扩展后的网格范围互不相交，写入的高度格子和类型图字节都不会冲突
+        List<Callable<Void>> tasks = new ArrayList<>(batch.size());
+        for (final TerrainLayer layer : batch) {
+            tasks.add(() -> {
+                layer.apply(heightMap, typeMap, baseToGrid, x0, z0, x1, z1);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Layer evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Layer evaluation failed", e.getCause());
+        }
+    }
+
+    private int countCells(List<TerrainLayer> batch, int x0, int z0, int x1, int z1) {
+        int cells = 0;
+        for (TerrainLayer layer : batch) {
+            layer.getBounds(bounds);
+            int w = Math.min(x1, (int) Math.ceil(bounds[2] * baseToGrid)) - Math.max(x0, (int) Math.floor(bounds[0] * baseToGrid));
+            int d = Math.min(z1, (int) Math.ceil(bounds[3] * baseToGrid)) - Math.max(z0, (int) Math.floor(bounds[1] * baseToGrid));
+            if (w > 0 && d > 0) {
+                cells += w * d;
+            }
+        }
+        return cells;
+    }
+
+    // 把图层写入的格子范围扩展为包含与其共用类型图字节的所有网格点
+    // PackedTypeMap中下标n = x * depth + z与n ^ 1共用一个字节：同一行内是z相邻的点；
+    // depth为奇数时，一行的最后一点(x, depth - 1)还可能与下一行的第一点(x + 1, 0)共用字节
+    private void expandToTypeBytes(int[] range) {
+        int startI = range[0], startJ = range[1], endI = range[2], endJ = range[3];
+        range[1] = startJ - 1;
+        range[3] = endJ + 1;
+        if (depth % 2 != 0) {
+            if (endJ >= depth) {
+                range[1] = Math.min(range[1], 0);
+                range[2] = endI + 1;
+            }
+            if (startJ <= 0) {
+                range[0] = startI - 1;
+                range[3] = Math.max(range[3], depth);
+            }
+        }
+    }
+
+    private static boolean intersects(int[] a, int[] b) {
+        return a[0] < b[2] && b[0] < a[2] && a[1] < b[3] && b[1] < a[3];
+    }
+
+    // 按优先级稳定排序（相同优先级保持添加顺序）
+    private void sortEntries() {
+        if (!orderDirty) return;
+        Collections.sort(entries, (a, b) -> Integer.compare(a.layer.getPriority(), b.layer.getPriority()));
+        orderDirty = false;
+    }
+
+    private void markApplied(Entry entry) {
+        entry.appliedVersion = entry.layer.getVersion();
+        entry.layer.getBounds(entry.appliedBounds);
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.gl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// 高度图/类型图重采样：支持任意缩放比例
+// - 高度图按先z后x两遍可分离卷积，中间结果为一维数组；每个目标坐标的采样位置和权重只计算一次
+// - 两遍都按行并行
+// - 随机扰动由(x, z, seed)哈希得到，与线程调度和求值顺序无关
+// 坐标映射与原插值一致：目标点 i 对应源坐标 i / dstSize * (srcSize - 1)
+public class TerrainResampler {
+    public enum Kernel {
+        BILINEAR,    // 2x2
+        BICUBIC,     // 4x4，Keys三次卷积 a = -0.75（更锐利）
+        CATMULL_ROM  // 4x4，Keys三次卷积 a = -0.5（即Catmull-Rom样条，更平滑）
+    }
+
+    private static final int TAPS = 4;
+    private static final int ROWS_PER_TASK = 16;
+    // 输出点数少于该值时不并行
+    private static final int PARALLEL_MIN_SAMPLES = 64 * 1024;
+
+    // 重采样高度图，jitter为每个目标点叠加的扰动幅度（[-jitter, jitter)）
+    public static float[][] resample(float[][] source, int dstWidth, int dstDepth,
+                                     Kernel kernel, float jitter, long seed) {
+        final int srcWidth = source.length;
+        final int srcDepth = source[0].length;
+
+        // 源数据展开为一维数组（行 = x）
+        final float[] flat = new float[srcWidth * srcDepth];
+        for (int i = 0; i < srcWidth; i++) {
+            System.arraycopy(source[i], 0, flat, i * srcDepth, srcDepth);
+        }
+
+        final int[] zIndex = new int[dstDepth * TAPS];
+        final float[] zWeight = new float[dstDepth * TAPS];
+        computeTaps(srcDepth, dstDepth, kernel, zIndex, zWeight);
+        final int[] xIndex = new int[dstWidth * TAPS];
+        final float[] xWeight = new float[dstWidth * TAPS];
+        computeTaps(srcWidth, dstWidth, kernel, xIndex, xWeight);
+
+        // 第一遍：每个源行沿z方向重采样
+        final float[] rows = new float[srcWidth * dstDepth];
+        boolean parallel = (long) dstWidth * dstDepth >= PARALLEL_MIN_SAMPLES;
+        forEachRowBlock(srcWidth, parallel, (i0, i1) -> {
+            for (int i = i0; i < i1; i++) {
+                int src = i * srcDepth;
+                int dst = i * dstDepth;
+                for (int j = 0; j < dstDepth; j++) {
+                    int t = j * TAPS;
+                    rows[dst + j] = flat[src + zIndex[t]] * zWeight[t]
+                            + flat[src + zIndex[t + 1]] * zWeight[t + 1]
+                            + flat[src + zIndex[t + 2]] * zWeight[t + 2]
+                            + flat[src + zIndex[t + 3]] * zWeight[t + 3];
+                }
+            }
+        });
+
+        // 第二遍：沿x方向组合中间行
+        final float[][] result = new float[dstWidth][dstDepth];
+        forEachRowBlock(dstWidth, parallel, (i0, i1) -> {
+            for (int i = i0; i < i1; i++) {
+                int t = i * TAPS;
+                int r0 = xIndex[t] * dstDepth, r1 = xIndex[t + 1] * dstDepth;
+                int r2 = xIndex[t + 2] * dstDepth, r3 = xIndex[t + 3] * dstDepth;
+                float w0 = xWeight[t], w1 = xWeight[t + 1], w2 = xWeight[t + 2], w3 = xWeight[t + 3];
+                float[] out = result[i];
+                for (int j = 0; j < dstDepth; j++) {
+                    out[j] = rows[r0 + j] * w0 + rows[r1 + j] * w1 + rows[r2 + j] * w2 + rows[r3 + j] * w3;
+                }
+                if (jitter != 0) {
+                    for (int j = 0; j < dstDepth; j++) {
+                        out[j] += (hash01(i, j, seed) * 2.0f - 1.0f) * jitter;
+                    }
+                }
+            }
+        });
+        return result;
+    }
+
+    // 类型图使用最近邻（类型不能插值）
+    public static PackedTypeMap resampleNearest(PackedTypeMap source, int dstWidth, int dstDepth) {
+        int srcWidth = source.getWidth();
+        int srcDepth = source.getDepth();
+        int[] nearestZ = new int[dstDepth];
+        for (int j = 0; j < dstDepth; j++) {
+            nearestZ[j] = Math.max(0, Math.min(srcDepth - 1, Math.round(j / (float) dstDepth * (srcDepth - 1))));
+        }
+
+        PackedTypeMap result = new PackedTypeMap(dstWidth, dstDepth);
+        for (int i = 0; i < dstWidth; i++) {
+            int x = Math.max(0, Math.min(srcWidth - 1, Math.round(i / (float) dstWidth * (srcWidth - 1))));
+            for (int j = 0; j < dstDepth; j++) {
+                result.set(i, j, source.get(x, nearestZ[j]));
+            }
+        }
+        return result;
+    }
+
+    // 每个目标坐标的4个源下标（越界时钳制到边缘）和权重
+    private static void computeTaps(int srcSize, int dstSize, Kernel kernel, int[] index, float[] weight) {
+        float a = kernel == Kernel.BICUBIC ? -0.75f : -0.5f;
+        for (int d = 0; d < dstSize; d++) {
+            float s = d / (float) dstSize * (srcSize - 1);
+            int base = (int) Math.floor(s);
+            float f = s - base;
+            int t = d * TAPS;
+
+            for (int k = 0; k < TAPS; k++) {
+                index[t + k] = Math.max(0, Math.min(srcSize - 1, base - 1 + k));
+            }
+            if (kernel == Kernel.BILINEAR) {
+                weight[t] = 0;
+                weight[t + 1] = 1 - f;
+                weight[t + 2] = f;
+                weight[t + 3] = 0;
+            } else {
+                weight[t] = cubic(1 + f, a);
+                weight[t + 1] = cubic(f, a);
+                weight[t + 2] = cubic(1 - f, a);
+                weight[t + 3] = cubic(2 - f, a);
+            }
+        }
+    }
+
+    // Keys三次卷积核
+    private static float cubic(float x, float a) {
+        x = Math.abs(x);
+        if (x <= 1) {
+            return ((a + 2) * x - (a + 3)) * x * x + 1;
+        }
+        if (x < 2) {
+            return ((a * x - 5 * a) * x + 8 * a) * x - 4 * a;
+        }
+        return 0;
+    }
+
+    // (x, z, seed) -> [0, 1)
+    private static float hash01(int x, int z, long seed) {
+        long h = seed * 0x9E3779B97F4A7C15L + x * 0xC2B2AE3D27D4EB4FL + z * 0x165667B19E3779F9L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return (h >>> 40) / (float) (1 << 24);
+    }
+
+    private interface RowBlock {
+        void run(int i0, int i1);
+    }
+
+    private static void forEachRowBlock(int rows, boolean parallel, final RowBlock block) {
+        if (!parallel) {
+            block.run(0, rows);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int start = 0; start < rows; start += ROWS_PER_TASK) {
+            final int i0 = start;
+            final int i1 = Math.min(rows, start + ROWS_PER_TASK);
+            tasks.add(() -> {
+                block.run(i0, i1);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> future : ForkJoinPool.commonPool().invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Resampling interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Resampling failed", e.getCause());
+        }
+    }
+}
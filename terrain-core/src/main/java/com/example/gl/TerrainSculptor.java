@@ -0,0 +1,229 @@
+package com.example.gl;
+
+import java.nio.FloatBuffer;
+
+// 地形雕刻：笔刷修改高度图后，只重建脏区域内的顶点、法线和分块包围范围
+// 不涉及GL调用，高度图纹理的更新由调用方根据返回的脏矩形提交
+public class TerrainSculptor {
+    public enum BrushMode {
+        RAISE,
+        LOWER,
+        FLATTEN,
+        SMOOTH
+    }
+
+    // 笔刷半径上限（世界单位）：1024x1024地形上一次笔刷约重建200x200个网格点，
+    // 需要留在GLRendererV2每帧4ms的雕刻预算之内（见TerrainBudgetTest.sculptStroke_withinBudget）
+    public static final float MAX_BRUSH_RADIUS = 10.0f;
+
+    private final TerrainDataV2.MeshData meshData;
+    private final int gridSize;
+    private final float cellSize;
+
+    // 平滑笔刷使用的临时缓冲，按需扩容，避免每次笔刷分配内存
+    private float[] scratch = new float[0];
+    private float[] normalCache = new float[0];
+
+    // 最近一次笔刷的脏矩形（网格点坐标，右/下边界不包含）
+    private final int[] dirtyRect = new int[4];
+
+    // 自上次takeDirtyVertexRange()以来被重写的顶点范围 [start, end)
+    private final int[] dirtyVertexRange = new int[2];
+    private int dirtyVertexStart = Integer.MAX_VALUE;
+    private int dirtyVertexEnd = Integer.MIN_VALUE;
+
+    public TerrainSculptor(TerrainDataV2.MeshData meshData) {
+        this.meshData = meshData;
+        this.gridSize = meshData.gridSize;
+        this.cellSize = TerrainDataV2.TERRAIN_SIZE / gridSize;
+    }
+
+    // 在世界坐标(worldX, worldZ)处应用一次笔刷，radius超过MAX_BRUSH_RADIUS时按上限处理
+    // 返回被修改的高度图区域 {x0, z0, x1, z1}，未修改任何点时返回null
+    // 注意：返回的数组会被下一次调用复用
+    public int[] applyBrush(float worldX, float worldZ, float radius, float strength, BrushMode mode) {
+        // 简化后的网格不再是规则网格，无法局部重建
+        if (meshData.simplified) return null;
+        radius = Math.min(radius, MAX_BRUSH_RADIUS);
+
+        // 笔刷修改图层应用前的基础高度，图层随后在其上重新求值
+        float[][] heightMap = meshData.layerPipeline.getBaseHeights();
+
+        // 世界坐标 -> 网格坐标
+        float centerI = (worldX / TerrainDataV2.TERRAIN_SIZE + 0.5f) * gridSize;
+        float centerJ = (worldZ / TerrainDataV2.TERRAIN_SIZE + 0.5f) * gridSize;
+        float gridRadius = radius / cellSize;
+
+        int x0 = Math.max(0, (int) Math.floor(centerI - gridRadius));
+        int z0 = Math.max(0, (int) Math.floor(centerJ - gridRadius));
+        int x1 = Math.min(gridSize, (int) Math.ceil(centerI + gridRadius) + 1);
+        int z1 = Math.min(gridSize, (int) Math.ceil(centerJ + gridRadius) + 1);
+        if (x0 >= x1 || z0 >= z1) return null;
+
+        // 平整笔刷以中心点高度为目标
+        float flattenTarget = 0;
+        if (mode == BrushMode.FLATTEN) {
+            int ci = Math.max(0, Math.min(gridSize - 1, Math.round(centerI)));
+            int cj = Math.max(0, Math.min(gridSize - 1, Math.round(centerJ)));
+            flattenTarget = heightMap[ci][cj];
+        }
+
+        // 平滑笔刷需要读取修改前的邻域高度
+        int scratchWidth = z1 - z0 + 2;
+        if (mode == BrushMode.SMOOTH) {
+            int needed = (x1 - x0 + 2) * scratchWidth;
+            if (scratch.length < needed) {
+                scratch = new float[needed];
+            }
+            for (int i = x0 - 1; i <= x1; i++) {
+                int ci = Math.max(0, Math.min(gridSize - 1, i));
+                for (int j = z0 - 1; j <= z1; j++) {
+                    int cj = Math.max(0, Math.min(gridSize - 1, j));
+                    scratch[(i - x0 + 1) * scratchWidth + (j - z0 + 1)] = heightMap[ci][cj];
+                }
+            }
+        }
+
+        float radiusSq = gridRadius * gridRadius;
+        for (int i = x0; i < x1; i++) {
+            float di = i - centerI;
+            for (int j = z0; j < z1; j++) {
+                float dj = j - centerJ;
+                float distSq = di * di + dj * dj;
+                if (distSq > radiusSq) continue;
+
+                // 平滑衰减：中心为1，边缘为0
+                float t = 1.0f - distSq / radiusSq;
+                float weight = t * t * strength;
+
+                switch (mode) {
+                    case RAISE:
+                        heightMap[i][j] += weight;
+                        break;
+                    case LOWER:
+                        heightMap[i][j] -= weight;
+                        break;
+                    case FLATTEN:
+                        heightMap[i][j] += (flattenTarget - heightMap[i][j]) * Math.min(1.0f, weight);
+                        break;
+                    case SMOOTH: {
+                        int row = (i - x0 + 1) * scratchWidth + (j - z0 + 1);
+                        float average = (scratch[row - scratchWidth - 1] + scratch[row - scratchWidth] + scratch[row - scratchWidth + 1]
+                                + scratch[row - 1] + scratch[row] + scratch[row + 1]
+                                + scratch[row + scratchWidth - 1] + scratch[row + scratchWidth] + scratch[row + scratchWidth + 1]) / 9.0f;
+                        heightMap[i][j] += (average - heightMap[i][j]) * Math.min(1.0f, weight);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // 只在脏矩形内重新求值与之相交的特征图层（道路、水池等保持原样）
+        meshData.layerPipeline.applyRegion(x0, z0, x1, z1);
+
+        rebuildRegion(x0, z0, x1, z1);
+
+        dirtyRect[0] = x0;
+        dirtyRect[1] = z0;
+        dirtyRect[2] = x1;
+        dirtyRect[3] = z1;
+        return dirtyRect;
+    }
+
+    // 重建网格点矩形 [x0, x1) x [z0, z1) 受影响的顶点位置、法线和分块范围
+    public void rebuildRegion(int x0, int z0, int x1, int z1) {
+        float[][] heightMap = meshData.heightMap;
+        FloatBuffer vertices = meshData.vertices;
+        FloatBuffer normals = meshData.normals;
+
+        // 高度变化会影响相邻点的法线，法线区域向外扩展一格；
+        // 再找出包含这些网格点的网格格子（网格可能按gridStride隔点取顶点）
+        int stride = meshData.gridStride;
+        int meshCells = meshData.meshCells;
+        int cellX0 = Math.max(0, (x0 - 1) / stride - 1);
+        int cellZ0 = Math.max(0, (z0 - 1) / stride - 1);
+        int cellX1 = Math.min(meshCells, x1 / stride + 1);
+        int cellZ1 = Math.min(meshCells, z1 / stride + 1);
+
+        // 先计算每条网格线交点的法线（每个点被最多6个顶点共享，只算一次）
+        int normalWidth = cellZ1 - cellZ0 + 1;
+        int needed = (cellX1 - cellX0 + 1) * normalWidth * 3;
+        if (normalCache.length < needed) {
+            normalCache = new float[needed];
+        }
+        for (int ci = cellX0; ci <= cellX1; ci++) {
+            int i = TerrainDataV2.getMeshPoint(gridSize, stride, ci);
+            for (int cj = cellZ0; cj <= cellZ1; cj++) {
+                int j = TerrainDataV2.getMeshPoint(gridSize, stride, cj);
+                TerrainDataV2.calculateDetailedNormal(heightMap, i, j, gridSize, cellSize,
+                        normalCache, ((ci - cellX0) * normalWidth + (cj - cellZ0)) * 3);
+            }
+        }
+
+        for (int ci = cellX0; ci < cellX1; ci++) {
+            int i = TerrainDataV2.getMeshPoint(gridSize, stride, ci);
+            int ni = TerrainDataV2.getMeshPoint(gridSize, stride, ci + 1);
+            for (int cj = cellZ0; cj < cellZ1; cj++) {
+                int j = TerrainDataV2.getMeshPoint(gridSize, stride, cj);
+                int nj = TerrainDataV2.getMeshPoint(gridSize, stride, cj + 1);
+                int vertex = TerrainDataV2.getCellVertexIndex(meshCells, ci, cj);
+                int local = (ci - cellX0) * normalWidth + (cj - cellZ0);
+                // 与TerrainDataV2.addQuad的顶点顺序一致
+                writeVertex(heightMap, vertices, normals, vertex, i, j, local);
+                writeVertex(heightMap, vertices, normals, vertex + 1, ni, j, local + normalWidth);
+                writeVertex(heightMap, vertices, normals, vertex + 2, i, nj, local + 1);
+                writeVertex(heightMap, vertices, normals, vertex + 3, ni, j, local + normalWidth);
+                writeVertex(heightMap, vertices, normals, vertex + 4, ni, nj, local + normalWidth + 1);
+                writeVertex(heightMap, vertices, normals, vertex + 5, i, nj, local + 1);
+            }
+        }
+
+        // 格子按行(ci)连续存放，脏格子覆盖的顶点落在首行起点与末行终点之间
+        if (cellX0 < cellX1 && cellZ0 < cellZ1) {
+            dirtyVertexStart = Math.min(dirtyVertexStart, TerrainDataV2.getCellVertexIndex(meshCells, cellX0, cellZ0));
+            dirtyVertexEnd = Math.max(dirtyVertexEnd, TerrainDataV2.getCellVertexIndex(meshCells, cellX1 - 1, cellZ1));
+        }
+
+        TerrainDataV2.updateTileBounds(meshData, x0, z0, x1, z1);
+
+        // 整体高度范围由分块范围汇总，无需扫描整个高度图
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        for (int t = 0; t < meshData.tileMinHeight.length; t++) {
+            min = Math.min(min, meshData.tileMinHeight[t]);
+            max = Math.max(max, meshData.tileMaxHeight[t]);
+        }
+        meshData.heightMapMinHeight = min;
+        meshData.heightMapMaxHeight = max;
+        meshData.minHeight = Math.min(0, min);
+        meshData.maxHeight = Math.max(0, max);
+    }
+
+    // 取出并清空累计的脏顶点范围 {start, end}，用于局部更新顶点缓冲；没有修改时返回null
+    // 注意：返回的数组会被下一次调用复用
+    public int[] takeDirtyVertexRange() {
+        if (dirtyVertexStart >= dirtyVertexEnd) return null;
+        dirtyVertexRange[0] = dirtyVertexStart;
+        dirtyVertexRange[1] = dirtyVertexEnd;
+        dirtyVertexStart = Integer.MAX_VALUE;
+        dirtyVertexEnd = Integer.MIN_VALUE;
+        return dirtyVertexRange;
+    }
+
+    // 高度图的实际高度范围（用于高度图纹理的uniform）
+    public float getHeightMin() {
+        return meshData.heightMapMinHeight;
+    }
+
+    public float getHeightMax() {
+        return meshData.heightMapMaxHeight;
+    }
+
+    private void writeVertex(float[][] heightMap, FloatBuffer vertices, FloatBuffer normals,
+                             int vertex, int i, int j, int local) {
+        vertices.put(vertex * 3 + 1, heightMap[i][j]);
+        normals.put(vertex * 3, normalCache[local * 3]);
+        normals.put(vertex * 3 + 1, normalCache[local * 3 + 1]);
+        normals.put(vertex * 3 + 2, normalCache[local * 3 + 2]);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.gl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+// 线框索引：从三角形列表（每3个顶点一个三角形，相邻三角形的顶点是重复的）中提取去重后的边
+// 位置完全相同的顶点合并为一个，共享边只保留一条，
+// 线框只需要一次GL_LINES绘制加一次GL_POINTS绘制
+// indices的前edgeIndexCount个元素为边（两两一组），其后pointCount个元素为去重后的顶点
+public class WireframeEdges {
+    public final IntBuffer indices;
+    public final int edgeIndexCount;
+    public final int pointCount;
+
+    private WireframeEdges(IntBuffer indices, int edgeIndexCount, int pointCount) {
+        this.indices = indices;
+        this.edgeIndexCount = edgeIndexCount;
+        this.pointCount = pointCount;
+    }
+
+    public static WireframeEdges build(FloatBuffer vertices, int vertexCount) {
+        int triangleCount = vertexCount / 3;
+
+        // 1. 按位置合并顶点：canonical[v]为与v位置相同的第一个顶点
+        int[] canonical = new int[vertexCount];
+        int[] pointIndices = new int[vertexCount];
+        int pointCount = 0;
+        int tableSize = tableSizeFor(vertexCount);
+        int[] positionTable = new int[tableSize];
+        Arrays.fill(positionTable, -1);
+        for (int v = 0; v < vertexCount; v++) {
+            float x = vertices.get(v * 3);
+            float y = vertices.get(v * 3 + 1);
+            float z = vertices.get(v * 3 + 2);
+            int slot = mix(bits(x) * 31 * 31 + bits(y) * 31 + bits(z)) & (tableSize - 1);
+            while (true) {
+                int other = positionTable[slot];
+                if (other == -1) {
+                    positionTable[slot] = v;
+                    canonical[v] = v;
+                    pointIndices[pointCount++] = v;
+                    break;
+                }
+                if (vertices.get(other * 3) == x && vertices.get(other * 3 + 1) == y
+                        && vertices.get(other * 3 + 2) == z) {
+                    canonical[v] = other;
+                    break;
+                }
+                slot = (slot + 1) & (tableSize - 1);
+            }
+        }
+
+        // 2. 每个三角形的三条边按 (较小下标, 较大下标) 去重
+        int maxEdges = triangleCount * 3;
+        int edgeTableSize = tableSizeFor(maxEdges);
+        long[] edgeTable = new long[edgeTableSize];
+        Arrays.fill(edgeTable, -1L);
+        int[] edgeIndices = new int[maxEdges * 2];
+        int edgeIndexCount = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            int a = canonical[t * 3];
+            int b = canonical[t * 3 + 1];
+            int c = canonical[t * 3 + 2];
+            edgeIndexCount = addEdge(edgeTable, edgeIndices, edgeIndexCount, a, b);
+            edgeIndexCount = addEdge(edgeTable, edgeIndices, edgeIndexCount, b, c);
+            edgeIndexCount = addEdge(edgeTable, edgeIndices, edgeIndexCount, c, a);
+        }
+
+        IntBuffer indices = ByteBuffer.allocateDirect((edgeIndexCount + pointCount) * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        indices.put(edgeIndices, 0, edgeIndexCount);
+        indices.put(pointIndices, 0, pointCount);
+        indices.position(0);
+        return new WireframeEdges(indices, edgeIndexCount, pointCount);
+    }
+
+    private static int addEdge(long[] table, int[] out, int count, int a, int b) {
+        if (a == b) return count; // 退化三角形
+        int lo = Math.min(a, b);
+        int hi = Math.max(a, b);
+        long key = ((long) lo << 32) | hi;
+        int mask = table.length - 1;
+        int slot = mix(lo * 31 + hi) & mask;
+        while (table[slot] != -1L) {
+            if (table[slot] == key) return count;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = key;
+        out[count] = lo;
+        out[count + 1] = hi;
+        return count + 2;
+    }
+
+    // 0.0f和-0.0f比较相等，哈希也必须相同
+    private static int bits(float value) {
+        return value == 0 ? 0 : Float.floatToIntBits(value);
+    }
+
+    // 装载因子不超过0.5的2的幂
+    private static int tableSizeFor(int count) {
+        int size = 16;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.gl;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 4位紧凑类型图：奇偶下标的读写、跨行共用字节和纹理导出的顺序。
+ */
+public class PackedTypeMapTest {
+
+    @Test
+    public void setGet_roundTripsAllTypes() {
+        PackedTypeMap map = new PackedTypeMap(7, 9);
+        for (int x = 0; x < 7; x++) {
+            for (int z = 0; z < 9; z++) {
+                map.set(x, z, (x * 9 + z) % 9);
+            }
+        }
+        for (int x = 0; x < 7; x++) {
+            for (int z = 0; z < 9; z++) {
+                assertEquals("(" + x + ", " + z + ")", (x * 9 + z) % 9, map.get(x, z));
+            }
+        }
+    }
+
+    @Test
+    public void set_evenAndOddNibblesIndependent() {
+        PackedTypeMap map = new PackedTypeMap(1, 4);
+        map.set(0, 0, ElementType.Roof);      // 偶数下标：低4位
+        map.set(0, 1, ElementType.WaterPool); // 奇数下标：同一字节的高4位
+        assertEquals(ElementType.Roof, map.get(0, 0));
+        assertEquals(ElementType.WaterPool, map.get(0, 1));
+
+        map.set(0, 0, ElementType.Land);
+        assertEquals(ElementType.Land, map.get(0, 0));
+        assertEquals(ElementType.WaterPool, map.get(0, 1));
+
+        map.set(0, 1, ElementType.Roof);
+        assertEquals(ElementType.Land, map.get(0, 0));
+        assertEquals(ElementType.Roof, map.get(0, 1));
+    }
+
+    @Test
+    public void set_rowBoundaryShareByte() {
+        // depth为奇数时，第0行最后一个点（下标2）和第1行第一个点（下标3）位于同一字节
+        PackedTypeMap map = new PackedTypeMap(3, 3);
+        map.set(0, 2, ElementType.Trunk);
+        map.set(1, 0, ElementType.Canopy);
+        assertEquals(ElementType.Trunk, map.get(0, 2));
+        assertEquals(ElementType.Canopy, map.get(1, 0));
+        assertEquals(ElementType.Land, map.get(0, 1));
+        assertEquals(ElementType.Land, map.get(1, 1));
+
+        // 9个点占5个字节，最后一个点单独使用低4位
+        assertEquals(5, map.getByteSize());
+        map.set(2, 2, ElementType.Roof);
+        assertEquals(ElementType.Roof, map.get(2, 2));
+        assertEquals(ElementType.Land, map.get(2, 1));
+    }
+
+    @Test
+    public void fill_regionLeavesNeighboursUntouched() {
+        PackedTypeMap map = new PackedTypeMap(5, 5);
+        map.fill(ElementType.Lawn);
+        map.fill(1, 1, 3, 4, ElementType.Road);
+        for (int x = 0; x < 5; x++) {
+            for (int z = 0; z < 5; z++) {
+                boolean inside = x >= 1 && x < 3 && z >= 1 && z < 4;
+                assertEquals(inside ? ElementType.Road : ElementType.Lawn, map.get(x, z));
+            }
+        }
+    }
+
+    @Test
+    public void packTexels_rowPerZ() {
+        PackedTypeMap map = new PackedTypeMap(3, 2);
+        for (int x = 0; x < 3; x++) {
+            for (int z = 0; z < 2; z++) {
+                map.set(x, z, x + 3 * z);
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(6);
+        map.packTexels(0, 0, 3, 2, out);
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5}, out.array());
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.gl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 场景空间索引：插入/移动/删除交替进行，各查询的结果与遍历所有物体的暴力结果一致。
+ * 物体包括跨多个格子的大物体、边界正好落在格线上的物体和负坐标的物体，
+ * 大量格子的增删同时覆盖了格子表的扩容和删除时的后移。
+ */
+public class SceneIndexTest {
+    private static final float CELL_SIZE = 4;
+    private static final int TYPES = 3;
+
+    private final Random random = new Random(1234);
+    private final SceneIndex index = new SceneIndex(CELL_SIZE);
+    private final List<SceneIndex.SceneObject> live = new ArrayList<>();
+    private final List<SceneIndex.SceneObject> out = new ArrayList<>();
+
+    @Test
+    public void churn_matchesBruteForce() {
+        for (int round = 0; round < 20; round++) {
+            for (int n = 0; n < 150; n++) {
+                float[] box = randomBox();
+                live.add(index.insert(random.nextInt(TYPES), box[0], box[1], box[2], box[3], box[4], box[5], 0, 0));
+            }
+            for (int n = 0; n < 60 && !live.isEmpty(); n++) {
+                SceneIndex.SceneObject object = live.get(random.nextInt(live.size()));
+                float[] box = randomBox();
+                index.update(object, box[0], box[1], box[2], box[3], box[4], box[5]);
+            }
+            for (int n = 0; n < 100 && !live.isEmpty(); n++) {
+                SceneIndex.SceneObject object = live.remove(random.nextInt(live.size()));
+                assertTrue(index.remove(object));
+                assertFalse(index.remove(object));
+            }
+            assertEquals(live.size(), index.size());
+            checkQueries();
+        }
+
+        // 全部删除后格子表为空，所有查询都没有结果
+        for (SceneIndex.SceneObject object : live) {
+            assertTrue(index.remove(object));
+        }
+        live.clear();
+        assertEquals(0, index.size());
+        checkQueries();
+    }
+
+    @Test
+    public void boundaryObjects_foundFromBothSides() {
+        // 物体的边界正好在格线 x = 0 和 x = -4 上
+        SceneIndex.SceneObject object = index.insert(0, -4, 0, -4, 0, 1, 0, 0, 0);
+
+        out.clear();
+        index.queryBox(-0.5f, -0.5f, 0.5f, 0.5f, -1, out);
+        assertEquals(1, out.size());
+        assertTrue(index.overlapsAny(-4.5f, -4.5f, -3.5f, -3.5f, 0));
+        assertFalse(index.overlapsAny(0, 0, 1, 1, -1)); // 只接触边界不算重叠
+        assertFalse(index.overlapsAny(-4.5f, -4.5f, -3.5f, -3.5f, 1));
+
+        assertSame(object, index.nearest(3, 0.5f, 3.5f, -1));
+        assertNull(index.nearest(3, 0.5f, 2.5f, -1));
+
+        // 沿格线 x = 0 向 -z 方向的射线
+        assertSame(object, index.raycast(0, 0.5f, 10, 0, 0, -1, 100));
+        // 从负方向射入
+        assertSame(object, index.raycast(-20, 0.5f, -20, 1, 0, 1, 100));
+        assertNull(index.raycast(-20, 0.5f, -20, 1, 0, 1, 10));
+    }
+
+    @Test
+    public void update_movesBetweenCells() {
+        SceneIndex.SceneObject object = index.insert(1, 0, 0, 0, 1, 1, 1, 0, 0);
+        index.update(object, -41, 0, -41, -39, 1, -39);
+
+        assertFalse(index.overlapsAny(0, 0, 1, 1, -1));
+        assertTrue(index.overlapsAny(-40.5f, -40.5f, -40, -40, 1));
+        assertSame(object, index.nearest(-30, -30, 20, 1));
+        assertNull(index.nearest(0, 0, 20, 1));
+    }
+
+    private void checkQueries() {
+        for (int q = 0; q < 50; q++) {
+            float x = randomCoordinate(), z = randomCoordinate();
+            float w = random.nextFloat() * 30, d = random.nextFloat() * 30;
+            int type = random.nextInt(TYPES + 1) - 1;
+
+            out.clear();
+            index.queryBox(x, z, x + w, z + d, type, out);
+            assertSameObjects("queryBox", bruteBox(x, z, x + w, z + d, type), out);
+            assertEquals("overlapsAny", !bruteBox(x, z, x + w, z + d, type).isEmpty(),
+                    index.overlapsAny(x, z, x + w, z + d, type));
+
+            float y = random.nextFloat() * 10 - 2;
+            float radius = random.nextFloat() * 20;
+            out.clear();
+            index.queryRadius(x, y, z, radius, out);
+            assertSameObjects("queryRadius", bruteRadius(x, y, z, radius), out);
+
+            float maxRadius = random.nextFloat() * 40;
+            SceneIndex.SceneObject nearest = index.nearest(x, z, maxRadius, type);
+            float expected = bruteNearestSq(x, z, maxRadius, type);
+            if (expected < 0) {
+                assertNull("nearest", nearest);
+            } else {
+                assertNotNull("nearest", nearest);
+                assertEquals("nearest distance", expected, distanceSqXZ(nearest, x, z), 1e-3f);
+            }
+
+            float dx = random.nextFloat() * 2 - 1, dy = random.nextFloat() * 0.4f - 0.2f, dz = random.nextFloat() * 2 - 1;
+            if (q % 10 == 0) {
+                dx = 0; // 与格线平行的射线
+            }
+            float maxT = random.nextFloat() * 150;
+            SceneIndex.SceneObject hit = index.raycast(x, y, z, dx, dy, dz, maxT);
+            float expectedT = bruteRaycast(x, y, z, dx, dy, dz, maxT);
+            if (expectedT < 0) {
+                assertNull("raycast", hit);
+            } else {
+                assertNotNull("raycast", hit);
+                assertEquals("raycast t", expectedT, intersectRay(hit, x, y, z, dx, dy, dz), 1e-3f);
+            }
+        }
+
+        for (int q = 0; q < 10; q++) {
+            float[] vp = viewProjection(randomCoordinate(), 5 + random.nextFloat() * 20, randomCoordinate(),
+                    random.nextFloat() * (float) (2 * Math.PI));
+            out.clear();
+            index.queryFrustum(vp, out);
+            // 平面测试对包围盒是保守的（视锥角落外的物体也可能通过），索引还会用角点包围盒筛选，
+            // 因此只检查上下界：结果都通过平面测试，有采样点在视锥内的物体都在结果中
+            Set<SceneIndex.SceneObject> unique = new HashSet<>(out);
+            assertEquals("queryFrustum returned duplicates", out.size(), unique.size());
+            assertTrue("queryFrustum returned an object outside the frustum", bruteFrustum(vp).containsAll(unique));
+            assertTrue("queryFrustum missed a visible object", unique.containsAll(bruteVisible(vp)));
+        }
+    }
+
+    private List<SceneIndex.SceneObject> bruteBox(float minX, float minZ, float maxX, float maxZ, int type) {
+        List<SceneIndex.SceneObject> result = new ArrayList<>();
+        for (SceneIndex.SceneObject object : live) {
+            if ((type < 0 || object.type == type)
+                    && object.minX < maxX && object.maxX > minX && object.minZ < maxZ && object.maxZ > minZ) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
+    private List<SceneIndex.SceneObject> bruteRadius(float x, float y, float z, float radius) {
+        List<SceneIndex.SceneObject> result = new ArrayList<>();
+        for (SceneIndex.SceneObject object : live) {
+            float ex = Math.max(0, Math.max(object.minX - x, x - object.maxX));
+            float ey = Math.max(0, Math.max(object.minY - y, y - object.maxY));
+            float ez = Math.max(0, Math.max(object.minZ - z, z - object.maxZ));
+            if (ex * ex + ey * ey + ez * ez <= radius * radius) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
+    // maxRadius内最近物体的距离平方，没有则返回-1
+    private float bruteNearestSq(float x, float z, float maxRadius, int type) {
+        float best = -1;
+        for (SceneIndex.SceneObject object : live) {
+            if (type >= 0 && object.type != type) continue;
+            float dSq = distanceSqXZ(object, x, z);
+            if (dSq <= maxRadius * maxRadius && (best < 0 || dSq < best)) {
+                best = dSq;
+            }
+        }
+        return best;
+    }
+
+    private float bruteRaycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        float best = -1;
+        for (SceneIndex.SceneObject object : live) {
+            float t = intersectRay(object, ox, oy, oz, dx, dy, dz);
+            if (t >= 0 && t < maxT && (best < 0 || t < best)) {
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    // 6个裁剪平面的保守测试（与包围盒最远顶点比较）
+    private List<SceneIndex.SceneObject> bruteFrustum(float[] m) {
+        List<SceneIndex.SceneObject> result = new ArrayList<>();
+        for (SceneIndex.SceneObject object : live) {
+            boolean inside = true;
+            for (int p = 0; p < 6 && inside; p++) {
+                int row = p / 2;
+                float sign = (p % 2 == 0) ? 1 : -1;
+                float a = m[3] + sign * m[row];
+                float b = m[7] + sign * m[4 + row];
+                float c = m[11] + sign * m[8 + row];
+                float d = m[15] + sign * m[12 + row];
+                float x = a >= 0 ? object.maxX : object.minX;
+                float y = b >= 0 ? object.maxY : object.minY;
+                float z = c >= 0 ? object.maxZ : object.minZ;
+                inside = a * x + b * y + c * z + d >= 0;
+            }
+            if (inside) {
+                result.add(object);
+            }
+        }
+        return result;
+    }
+
+    // 包围盒内有采样点落在视锥内的物体（一定与视锥相交）
+    private List<SceneIndex.SceneObject> bruteVisible(float[] vp) {
+        float[] point = new float[4];
+        float[] clip = new float[4];
+        List<SceneIndex.SceneObject> result = new ArrayList<>();
+        for (SceneIndex.SceneObject object : live) {
+            for (int n = 0; n < 16; n++) {
+                // 第一个采样点为中心
+                float u = n == 0 ? 0.5f : random.nextFloat();
+                float v = n == 0 ? 0.5f : random.nextFloat();
+                float w = n == 0 ? 0.5f : random.nextFloat();
+                point[0] = object.minX + (object.maxX - object.minX) * u;
+                point[1] = object.minY + (object.maxY - object.minY) * v;
+                point[2] = object.minZ + (object.maxZ - object.minZ) * w;
+                point[3] = 1;
+                MathUtils.multiplyMV(clip, vp, point);
+                if (Math.abs(clip[0]) <= clip[3] && Math.abs(clip[1]) <= clip[3] && Math.abs(clip[2]) <= clip[3]) {
+                    result.add(object);
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void assertSameObjects(String query, List<SceneIndex.SceneObject> expected,
+                                          List<SceneIndex.SceneObject> actual) {
+        Set<SceneIndex.SceneObject> unique = new HashSet<>(actual);
+        assertEquals(query + " returned duplicates", actual.size(), unique.size());
+        assertEquals(query + " result size", expected.size(), actual.size());
+        assertTrue(query + " result mismatch", unique.containsAll(expected));
+    }
+
+    // 坐标约一半落在格线上，范围包括负数
+    private float randomCoordinate() {
+        if (random.nextBoolean()) {
+            return (random.nextInt(40) - 20) * CELL_SIZE;
+        }
+        return random.nextFloat() * 160 - 80;
+    }
+
+    // {minX, minY, minZ, maxX, maxY, maxZ}，约十分之一是跨多个格子的大物体
+    private float[] randomBox() {
+        float x = randomCoordinate(), z = randomCoordinate();
+        float size = random.nextInt(10) == 0 ? 10 + random.nextFloat() * 20 : random.nextFloat() * 3;
+        if (random.nextBoolean()) {
+            size = Math.max(CELL_SIZE, Math.round(size / CELL_SIZE) * CELL_SIZE); // 两侧都在格线上
+        }
+        float y = random.nextFloat() * 4;
+        return new float[]{x, y, z, x + size, y + 1 + random.nextFloat() * 6, z + size * (0.5f + random.nextFloat())};
+    }
+
+    private static float distanceSqXZ(SceneIndex.SceneObject object, float x, float z) {
+        float ex = Math.max(0, Math.max(object.minX - x, x - object.maxX));
+        float ez = Math.max(0, Math.max(object.minZ - z, z - object.maxZ));
+        return ex * ex + ez * ez;
+    }
+
+    // 射线与AABB的slab相交，不相交返回-1
+    private static float intersectRay(SceneIndex.SceneObject object, float ox, float oy, float oz,
+                                      float dx, float dy, float dz) {
+        float[] origin = {ox, oy, oz};
+        float[] dir = {dx, dy, dz};
+        float[] min = {object.minX, object.minY, object.minZ};
+        float[] max = {object.maxX, object.maxY, object.maxZ};
+        float tMin = 0, tMax = Float.MAX_VALUE;
+        for (int axis = 0; axis < 3; axis++) {
+            if (Math.abs(dir[axis]) < 1e-8f) {
+                if (origin[axis] < min[axis] || origin[axis] > max[axis]) return -1;
+                continue;
+            }
+            float t1 = (min[axis] - origin[axis]) / dir[axis];
+            float t2 = (max[axis] - origin[axis]) / dir[axis];
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMin <= tMax ? tMin : -1;
+    }
+
+    // 位于(x, y, z)、朝向yaw并略向下看的透视投影*视图矩阵（列主序）
+    private static float[] viewProjection(float x, float y, float z, float yaw) {
+        float near = 0.5f, far = 60, f = 1 / (float) Math.tan(Math.toRadians(30));
+        float[] projection = new float[16];
+        projection[0] = f / 1.5f;
+        projection[5] = f;
+        projection[10] = (far + near) / (near - far);
+        projection[11] = -1;
+        projection[14] = 2 * far * near / (near - far);
+
+        // 视线方向forward，相机基向量right/up，视图矩阵的行为(right, up, -forward)
+        float[] forward = normalize(new float[]{(float) Math.sin(yaw), -0.4f, -(float) Math.cos(yaw)});
+        float[] right = normalize(cross(forward, new float[]{0, 1, 0}));
+        float[] up = cross(right, forward);
+        float[] eye = {x, y, z};
+        float[] view = new float[16];
+        for (int c = 0; c < 3; c++) {
+            view[c * 4] = right[c];
+            view[c * 4 + 1] = up[c];
+            view[c * 4 + 2] = -forward[c];
+        }
+        view[12] = -dot(right, eye);
+        view[13] = -dot(up, eye);
+        view[14] = dot(forward, eye);
+        view[15] = 1;
+
+        float[] result = new float[16];
+        for (int c = 0; c < 4; c++) {
+            for (int r = 0; r < 4; r++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) {
+                    sum += projection[k * 4 + r] * view[c * 4 + k];
+                }
+                result[c * 4 + r] = sum;
+            }
+        }
+        return result;
+    }
+
+    private static float[] cross(float[] a, float[] b) {
+        return new float[]{a[1] * b[2] - a[2] * b[1], a[2] * b[0] - a[0] * b[2], a[0] * b[1] - a[1] * b[0]};
+    }
+
+    private static float dot(float[] a, float[] b) {
+        return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+    }
+
+    private static float[] normalize(float[] v) {
+        float length = (float) Math.sqrt(dot(v, v));
+        return new float[]{v[0] / length, v[1] / length, v[2] / length};
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.gl;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 地形生成各阶段的分配量与耗时预算（预算见 terrain-budgets.properties）。
+ *
+ * 分配量按线程统计（com.sun.management.ThreadMXBean），并行阶段把ForkJoin工作线程的分配也计算在内；
+ * 堆外的direct buffer不计入。分配量与机器负载无关，始终作为断言检查。
+ *
+ * 耗时取多次运行中的最小值并输出到标准输出；共享的CI机器上耗时波动很大，只有设置了系统属性
+ * terrain.budget.checkTime=true 时才按预算断言（./gradlew :terrain-core:test -Dterrain.budget.checkTime=true）。
+ */
+public class TerrainBudgetTest {
+    private static final int RUNS = 3;
+    private static final boolean CHECK_TIME = Boolean.getBoolean("terrain.budget.checkTime");
+
+    private static Properties budgets;
+    private static com.sun.management.ThreadMXBean threadBean;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        budgets = new Properties();
+        try (InputStream in = TerrainBudgetTest.class.getResourceAsStream("terrain-budgets.properties")) {
+            assertNotNull("terrain-budgets.properties not found", in);
+            budgets.load(in);
+        }
+
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue("Thread allocation measurement not supported", threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        // 预热：类加载和JIT的分配不应计入第一个被测阶段
+        new TerrainGenerator(TerrainConfig.DEFAULT).generate();
+    }
+
+    @Test
+    public void generateTerrainMesh_withinBudget() {
+        final TerrainDataV2.MeshData[] result = new TerrainDataV2.MeshData[1];
+        Measurement m = measure(() -> result[0] = TerrainDataV2.generateTerrainMesh());
+        assertWithinBudget("generate", m, result[0].vertexCount, "vertex");
+    }
+
+    @Test
+    public void generateNormalMappedTerrain_withinBudget() {
+        final TerrainConfig config = new TerrainConfig.Builder().setEnableNormalMapping(true).build();
+        final TerrainDataV2.MeshData[] result = new TerrainDataV2.MeshData[1];
+        Measurement m = measure(() -> result[0] = new TerrainGenerator(config).generate());
+        assertWithinBudget("generateNormalMapped", m, result[0].vertexCount, "vertex");
+    }
+
+    @Test
+    public void interpolation_withinBudget() {
+        final float[][] base = TerrainDataV2.generateBaseHeightMap(new Random(42));
+        final int gridSize = TerrainConfig.DEFAULT.getGridSize();
+        Measurement m = measure(() -> TerrainResampler.resample(base, gridSize, gridSize,
+                TerrainResampler.Kernel.CATMULL_ROM, TerrainDataV2.INTERPOLATION_JITTER, 42));
+        assertWithinBudget("interpolation", m, gridSize * gridSize, "sample");
+    }
+
+    @Test
+    public void typeInterpolation_withinBudget() {
+        final PackedTypeMap base = new PackedTypeMap(TerrainDataV2.BASE_GRID_SIZE, TerrainDataV2.BASE_GRID_SIZE);
+        base.fill(ElementType.Land);
+        final int gridSize = TerrainConfig.DEFAULT.getGridSize();
+        Measurement m = measure(() -> TerrainResampler.resampleNearest(base, gridSize, gridSize));
+        assertWithinBudget("typeInterpolation", m, gridSize * gridSize, "sample");
+    }
+
+    @Test
+    public void gridNormals_withinBudget() {
+        final float[][] heightMap = defaultHeightMap();
+        Measurement m = measure(() -> TerrainGenerator.computeGridNormals(heightMap));
+        assertWithinBudget("gridNormals", m, heightMap.length * heightMap[0].length, "point");
+    }
+
+    @Test
+    public void normalMapBake_withinBudget() {
+        final float[][] heightMap = defaultHeightMap();
+        final float cellSize = TerrainDataV2.TERRAIN_SIZE / heightMap.length;
+        Measurement m = measure(() -> NormalMapBaker.bake(heightMap, cellSize));
+        assertWithinBudget("normalMapBake", m, heightMap.length * heightMap[0].length, "texel");
+    }
+
+    @Test
+    public void sculptStroke_withinBudget() {
+        // 1024x1024地形上最大半径的一次平滑笔刷（最慢的笔刷模式），时间预算即GLRendererV2每帧的雕刻预算
+        TerrainConfig config = new TerrainConfig.Builder().setGridSize(1024).build();
+        TerrainSculptor sculptor = new TerrainSculptor(new TerrainGenerator(config).generate());
+        final int[] rect = new int[4];
+        Runnable stroke = () -> System.arraycopy(sculptor.applyBrush(3, -7, TerrainSculptor.MAX_BRUSH_RADIUS, 0.3f,
+                TerrainSculptor.BrushMode.SMOOTH), 0, rect, 0, 4);
+        // 预热：临时缓冲的扩容和JIT编译不计入
+        for (int n = 0; n < 50; n++) {
+            stroke.run();
+        }
+        Measurement m = measure(stroke);
+        assertWithinBudget("sculptStroke", m, (rect[2] - rect[0]) * (rect[3] - rect[1]), "point");
+    }
+
+    private static float[][] defaultHeightMap() {
+        int gridSize = TerrainConfig.DEFAULT.getGridSize();
+        return TerrainResampler.resample(TerrainDataV2.generateBaseHeightMap(new Random(42)), gridSize, gridSize,
+                TerrainResampler.Kernel.BILINEAR, TerrainDataV2.INTERPOLATION_JITTER, 42);
+    }
+
+    private static void assertWithinBudget(String stage, Measurement m, int outputCount, String unit) {
+        assertTrue(stage + " produced no output", outputCount > 0);
+
+        double bytesPerOutput = m.bytes / (double) outputCount;
+        double maxBytes = budget(stage + ".maxBytesPer" + Character.toUpperCase(unit.charAt(0)) + unit.substring(1));
+        assertTrue(String.format("%s allocated %.1f bytes per %s (%d bytes total), budget is %.1f",
+                stage, bytesPerOutput, unit, m.bytes, maxBytes), bytesPerOutput <= maxBytes);
+
+        double maxMillis = budget(stage + ".maxMillis");
+        String timing = String.format("%s took %.1f ms, budget is %.1f ms", stage, m.millis, maxMillis);
+        System.out.println(timing);
+        if (CHECK_TIME) {
+            assertTrue(timing, m.millis <= maxMillis);
+        }
+    }
+
+    private static double budget(String key) {
+        String value = budgets.getProperty(key);
+        assertNotNull("Missing budget " + key, value);
+        return Double.parseDouble(value.trim());
+    }
+
+    // 运行RUNS次，取分配量和耗时的最小值
+    private static Measurement measure(Runnable stage) {
+        long minBytes = Long.MAX_VALUE;
+        long minNanos = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long bytesBefore = allocatedBytes();
+            long start = System.nanoTime();
+            stage.run();
+            long nanos = System.nanoTime() - start;
+            long bytes = allocatedBytes() - bytesBefore;
+            minBytes = Math.min(minBytes, bytes);
+            minNanos = Math.min(minNanos, nanos);
+        }
+        return new Measurement(minBytes, minNanos / 1e6);
+    }
+
+    // 所有存活线程的累计分配量（包括ForkJoin公共池中执行并行阶段的线程）
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : threadBean.getThreadAllocatedBytes(threadBean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private static class Measurement {
+        final long bytes;
+        final double millis;
+
+        Measurement(long bytes, double millis) {
+            this.bytes = bytes;
+            this.millis = millis;
+        }
+    }
+}
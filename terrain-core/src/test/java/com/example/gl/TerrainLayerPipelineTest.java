@@ -0,0 +1,164 @@
+package com.example.gl;
+
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * 图层流水线的分批并行：基础网格坐标中互不接触、但在目标网格上相邻的图层，
+ * 写入的类型图字节可能相同，不能放在同一批内并行求值，结果必须与逐个串行应用一致。
+ * 字节冲突很少真正丢失数据，因此测试图层记录同时执行apply的数量，直接检查是否被并行求值。
+ */
+public class TerrainLayerPipelineTest {
+    private static final float BASE_TO_GRID = 10;
+    private static final int REPEATS = 20;
+
+    @Test
+    public void adjacentRows_sameAsSerial() {
+        // A写入 j <= 100，B写入 j >= 101；depth为偶数，(x, 100)与(x, 101)位于同一字节
+        TerrainLayer a = new RectLayer(0, 0, 19.95f, 10.05f, 1, ElementType.Road);
+        TerrainLayer b = new RectLayer(0, 10.08f, 19.95f, 19.95f, 2, ElementType.Building);
+        assertSameAsSerial(200, 200, a, b);
+        assertEquals(1, maxConcurrentApplies(200, 200, a, b));
+    }
+
+    @Test
+    public void oddDepthRowBoundary_sameAsSerial() {
+        // A写入 i <= 50，B写入 i >= 51；depth为奇数，(50, 200)与(51, 0)位于同一字节
+        TerrainLayer a = new RectLayer(0, 0, 5.05f, 20.1f, 1, ElementType.Road);
+        TerrainLayer b = new RectLayer(5.08f, 0, 19.95f, 20.1f, 2, ElementType.Building);
+        assertSameAsSerial(200, 201, a, b);
+        assertEquals(1, maxConcurrentApplies(200, 201, a, b));
+    }
+
+    @Test
+    public void separatedLayers_stillParallel() {
+        // A写入 j <= 99，B写入 j >= 106，字节不相邻，仍在同一批内并行求值（只有一个工作线程时可能观察不到并行）
+        TerrainLayer a = new RectLayer(0, 0, 19.95f, 9.95f, 1, ElementType.Road);
+        TerrainLayer b = new RectLayer(0, 10.6f, 19.95f, 19.95f, 2, ElementType.Building);
+        assertSameAsSerial(200, 200, a, b);
+        if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+            assertEquals(2, maxConcurrentApplies(200, 200, a, b));
+        }
+    }
+
+    @Test
+    public void regenerate_restoresRemovedLayer() {
+        float[][] heights = new float[100][100];
+        PackedTypeMap types = new PackedTypeMap(100, 100);
+        types.fill(ElementType.Land);
+        TerrainLayerPipeline pipeline = new TerrainLayerPipeline(heights, types, BASE_TO_GRID);
+        TerrainLayer road = new RectLayer(2, 2, 5, 5, 3, ElementType.Road);
+        pipeline.addLayer(road);
+        pipeline.applyAll();
+        assertEquals(ElementType.Road, types.get(30, 30));
+
+        pipeline.removeLayer(road);
+        assertNotNull(pipeline.regenerate());
+        assertEquals(ElementType.Land, types.get(30, 30));
+        assertEquals(0, heights[30][30], 0);
+        assertNull(pipeline.regenerate());
+    }
+
+    // 由流水线求值时同时执行apply的最大图层数
+    private static int maxConcurrentApplies(int width, int depth, TerrainLayer... layers) {
+        float[][] heights = new float[width][depth];
+        PackedTypeMap types = new PackedTypeMap(width, depth);
+        TerrainLayerPipeline pipeline = new TerrainLayerPipeline(heights, types, BASE_TO_GRID);
+        for (TerrainLayer layer : layers) {
+            pipeline.addLayer(layer);
+        }
+        RectLayer.running.set(0);
+        RectLayer.maxRunning.set(0);
+        RectLayer.holdMillis = 50;
+        try {
+            pipeline.applyAll();
+        } finally {
+            RectLayer.holdMillis = 0;
+        }
+        return RectLayer.maxRunning.get();
+    }
+
+    private static void assertSameAsSerial(int width, int depth, TerrainLayer... layers) {
+        float[][] expectedHeights = new float[width][depth];
+        PackedTypeMap expectedTypes = new PackedTypeMap(width, depth);
+        expectedTypes.fill(ElementType.Land);
+        for (TerrainLayer layer : layers) {
+            layer.apply(expectedHeights, expectedTypes, BASE_TO_GRID);
+        }
+
+        for (int repeat = 0; repeat < REPEATS; repeat++) {
+            float[][] heights = new float[width][depth];
+            PackedTypeMap types = new PackedTypeMap(width, depth);
+            types.fill(ElementType.Land);
+            TerrainLayerPipeline pipeline = new TerrainLayerPipeline(heights, types, BASE_TO_GRID);
+            for (TerrainLayer layer : layers) {
+                pipeline.addLayer(layer);
+            }
+            pipeline.applyAll();
+
+            for (int i = 0; i < width; i++) {
+                assertArrayEquals(expectedHeights[i], heights[i], 0);
+                for (int j = 0; j < depth; j++) {
+                    assertEquals("type at (" + i + ", " + j + ")", expectedTypes.get(i, j), types.get(i, j));
+                }
+            }
+        }
+    }
+
+    // 矩形图层，范围可以是任意小数（内置图层的范围都是整数）
+    // holdMillis > 0 时每次apply后停留一段时间，使同一批内的图层在时间上重叠
+    private static class RectLayer extends TerrainLayer {
+        static final AtomicInteger running = new AtomicInteger();
+        static final AtomicInteger maxRunning = new AtomicInteger();
+        static volatile long holdMillis = 0;
+
+        private final float height;
+        private final int type;
+
+        RectLayer(float minX, float minZ, float maxX, float maxZ, float height, int type) {
+            super(0, Blend.REPLACE);
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+            this.height = height;
+            this.type = type;
+        }
+
+        @Override
+        public void apply(float[][] heightMap, PackedTypeMap typeMap, float baseToGrid,
+                          int x0, int z0, int x1, int z1) {
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            try {
+                super.apply(heightMap, typeMap, baseToGrid, x0, z0, x1, z1);
+                if (holdMillis > 0) {
+                    Thread.sleep(holdMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected boolean covers(float gx, float gz, int currentType) {
+            return true;
+        }
+
+        @Override
+        protected float heightAt(float gx, float gz) {
+            return height;
+        }
+
+        @Override
+        protected int getType() {
+            return type;
+        }
+    }
+}
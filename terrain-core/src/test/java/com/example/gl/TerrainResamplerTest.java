@@ -0,0 +1,95 @@
+package com.example.gl;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * 高度图重采样：双线性核与直接实现一致、采样点与源网格重合时保持原值、扰动与并行无关。
+ * 坐标映射为 目标点d -> 源坐标 d / dstSize * (srcSize - 1)，dstSize = srcSize - 1 时正好落在源网格点上。
+ */
+public class TerrainResamplerTest {
+    private static final float EPSILON = 1e-4f;
+
+    @Test
+    public void bilinear_matchesReference() {
+        float[][] source = randomHeights(23, 17, 1);
+        float[][] result = TerrainResampler.resample(source, 50, 41, TerrainResampler.Kernel.BILINEAR, 0, 0);
+        for (int i = 0; i < 50; i++) {
+            for (int j = 0; j < 41; j++) {
+                assertEquals("(" + i + ", " + j + ")", referenceBilinear(source, i, j, 50, 41), result[i][j], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void gridAligned_identityForAllKernels() {
+        float[][] source = randomHeights(21, 21, 2);
+        for (TerrainResampler.Kernel kernel : TerrainResampler.Kernel.values()) {
+            float[][] result = TerrainResampler.resample(source, 20, 20, kernel, 0, 0);
+            for (int i = 0; i < 20; i++) {
+                assertArrayEquals(java.util.Arrays.copyOf(source[i], 20), result[i], EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void jitter_deterministicAcrossRuns() {
+        float[][] source = randomHeights(101, 101, 3);
+        float[][] a = TerrainResampler.resample(source, 300, 300, TerrainResampler.Kernel.CATMULL_ROM, 0.5f, 42);
+        float[][] b = TerrainResampler.resample(source, 300, 300, TerrainResampler.Kernel.CATMULL_ROM, 0.5f, 42);
+        for (int i = 0; i < 300; i++) {
+            assertArrayEquals(a[i], b[i], 0);
+        }
+    }
+
+    @Test
+    public void jitter_sameInParallelAndSerialRuns() {
+        // 300x300超过并行阈值，200x200在单线程中完成；扰动只取决于(x, z, seed)，两者的重叠部分必须一致
+        float[][] source = randomHeights(101, 101, 4);
+        float[][] parallel = jitterOnly(source, 300);
+        float[][] serial = jitterOnly(source, 200);
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 200; j++) {
+                assertEquals("(" + i + ", " + j + ")", serial[i][j], parallel[i][j], EPSILON);
+            }
+        }
+    }
+
+    // 有扰动与无扰动结果之差
+    private static float[][] jitterOnly(float[][] source, int size) {
+        float[][] jittered = TerrainResampler.resample(source, size, size, TerrainResampler.Kernel.BICUBIC, 0.5f, 7);
+        float[][] plain = TerrainResampler.resample(source, size, size, TerrainResampler.Kernel.BICUBIC, 0, 7);
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                jittered[i][j] -= plain[i][j];
+                assertTrue(Math.abs(jittered[i][j]) <= 0.5f + EPSILON);
+            }
+        }
+        return jittered;
+    }
+
+    private static float referenceBilinear(float[][] source, int i, int j, int dstWidth, int dstDepth) {
+        float sx = i / (float) dstWidth * (source.length - 1);
+        float sz = j / (float) dstDepth * (source[0].length - 1);
+        int x0 = (int) Math.floor(sx), z0 = (int) Math.floor(sz);
+        int x1 = Math.min(x0 + 1, source.length - 1), z1 = Math.min(z0 + 1, source[0].length - 1);
+        float fx = sx - x0, fz = sz - z0;
+        float top = source[x0][z0] * (1 - fz) + source[x0][z1] * fz;
+        float bottom = source[x1][z0] * (1 - fz) + source[x1][z1] * fz;
+        return top * (1 - fx) + bottom * fx;
+    }
+
+    private static float[][] randomHeights(int width, int depth, long seed) {
+        Random random = new Random(seed);
+        float[][] heights = new float[width][depth];
+        for (int i = 0; i < width; i++) {
+            for (int j = 0; j < depth; j++) {
+                heights[i][j] = random.nextFloat() * 20 - 5;
+            }
+        }
+        return heights;
+    }
+}
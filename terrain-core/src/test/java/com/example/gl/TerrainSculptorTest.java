@@ -0,0 +1,194 @@
+package com.example.gl;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * 地形雕刻的局部重建：笔刷半径之外的网格点不变，返回的脏矩形和脏顶点范围覆盖所有修改，
+ * 局部重建后的顶点高度、法线和分块高度范围与高度图完全一致（与整体重新计算的结果相同）。
+ */
+public class TerrainSculptorTest {
+    private static final int GRID_SIZE = 129;
+
+    @Test
+    public void stroke_onlyChangesPointsInsideRadius() {
+        TerrainDataV2.MeshData meshData = generate(false);
+        TerrainSculptor sculptor = new TerrainSculptor(meshData);
+        float[][] base = meshData.layerPipeline.getBaseHeights();
+        float[][] baseBefore = copy(base);
+        float[][] heightsBefore = copy(meshData.heightMap);
+
+        float worldX = 7.3f, worldZ = -12.1f, radius = 6;
+        int[] rect = sculptor.applyBrush(worldX, worldZ, radius, 0.5f, TerrainSculptor.BrushMode.RAISE).clone();
+
+        float cellSize = TerrainDataV2.TERRAIN_SIZE / GRID_SIZE;
+        float centerI = (worldX / TerrainDataV2.TERRAIN_SIZE + 0.5f) * GRID_SIZE;
+        float centerJ = (worldZ / TerrainDataV2.TERRAIN_SIZE + 0.5f) * GRID_SIZE;
+        float gridRadius = radius / cellSize;
+        assertTrue(rect[0] >= 0 && rect[1] >= 0 && rect[2] <= GRID_SIZE && rect[3] <= GRID_SIZE);
+
+        int raised = 0;
+        for (int i = 0; i < GRID_SIZE; i++) {
+            for (int j = 0; j < GRID_SIZE; j++) {
+                float di = i - centerI, dj = j - centerJ;
+                boolean inRadius = di * di + dj * dj < gridRadius * gridRadius;
+                boolean inRect = i >= rect[0] && i < rect[2] && j >= rect[1] && j < rect[3];
+                if (inRadius) {
+                    assertTrue("brush point outside dirty rect", inRect);
+                    assertTrue(base[i][j] >= baseBefore[i][j]);
+                    if (base[i][j] > baseBefore[i][j]) raised++;
+                } else {
+                    assertEquals("base (" + i + ", " + j + ")", baseBefore[i][j], base[i][j], 0);
+                    assertEquals("height (" + i + ", " + j + ")", heightsBefore[i][j], meshData.heightMap[i][j], 0);
+                }
+            }
+        }
+        assertTrue(raised > 0);
+    }
+
+    @Test
+    public void strokes_meshMatchesHeightMap() {
+        assertMeshMatchesAfterStrokes(generate(false));
+    }
+
+    @Test
+    public void strokes_normalMappedMeshMatchesHeightMap() {
+        // 启用法线贴图时网格隔点取顶点（gridStride = 2）
+        assertMeshMatchesAfterStrokes(generate(true));
+    }
+
+    @Test
+    public void dirtyVertexRange_coversChangedVertices() {
+        TerrainDataV2.MeshData meshData = generate(false);
+        TerrainSculptor sculptor = new TerrainSculptor(meshData);
+        float[] verticesBefore = toArray(meshData.vertices);
+        float[] normalsBefore = toArray(meshData.normals);
+
+        sculptor.applyBrush(-20, 15, 5, 0.8f, TerrainSculptor.BrushMode.LOWER);
+        sculptor.applyBrush(-16, 18, 5, 0.8f, TerrainSculptor.BrushMode.SMOOTH);
+        int[] range = sculptor.takeDirtyVertexRange();
+        assertNotNull(range);
+        assertNull(sculptor.takeDirtyVertexRange());
+
+        int changed = 0;
+        for (int n = 0; n < verticesBefore.length; n++) {
+            if (verticesBefore[n] != meshData.vertices.get(n) || normalsBefore[n] != meshData.normals.get(n)) {
+                int vertex = n / 3;
+                assertTrue("vertex " + vertex + " outside dirty range", vertex >= range[0] && vertex < range[1]);
+                changed++;
+            }
+        }
+        assertTrue(changed > 0);
+    }
+
+    @Test
+    public void radius_clampedToMax() {
+        TerrainDataV2.MeshData meshData = generate(false);
+        TerrainSculptor sculptor = new TerrainSculptor(meshData);
+        int[] rect = sculptor.applyBrush(0, 0, 1000, 0.1f, TerrainSculptor.BrushMode.RAISE);
+
+        float gridRadius = TerrainSculptor.MAX_BRUSH_RADIUS / (TerrainDataV2.TERRAIN_SIZE / GRID_SIZE);
+        assertTrue(rect[2] - rect[0] <= 2 * gridRadius + 3);
+        assertTrue(rect[3] - rect[1] <= 2 * gridRadius + 3);
+    }
+
+    @Test
+    public void strokeOutsideTerrain_noChange() {
+        TerrainSculptor sculptor = new TerrainSculptor(generate(false));
+        assertNull(sculptor.applyBrush(200, 200, 3, 0.5f, TerrainSculptor.BrushMode.RAISE));
+        assertNull(sculptor.takeDirtyVertexRange());
+    }
+
+    private static void assertMeshMatchesAfterStrokes(TerrainDataV2.MeshData meshData) {
+        TerrainSculptor sculptor = new TerrainSculptor(meshData);
+        TerrainSculptor.BrushMode[] modes = TerrainSculptor.BrushMode.values();
+        for (int n = 0; n < 12; n++) {
+            // 包括靠近地形边缘、被裁剪的笔刷
+            float x = -52 + n * 9.5f, z = 48 - n * 8.7f;
+            sculptor.applyBrush(x, z, 3 + n % 4, 0.6f, modes[n % modes.length]);
+        }
+
+        int gridSize = meshData.gridSize;
+        int stride = meshData.gridStride;
+        int meshCells = meshData.meshCells;
+        float cellSize = TerrainDataV2.TERRAIN_SIZE / gridSize;
+        float[] normal = new float[3];
+        int[] pointI = new int[6];
+        int[] pointJ = new int[6];
+        for (int ci = 0; ci < meshCells; ci++) {
+            int i = TerrainDataV2.getMeshPoint(gridSize, stride, ci);
+            int ni = TerrainDataV2.getMeshPoint(gridSize, stride, ci + 1);
+            for (int cj = 0; cj < meshCells; cj++) {
+                int j = TerrainDataV2.getMeshPoint(gridSize, stride, cj);
+                int nj = TerrainDataV2.getMeshPoint(gridSize, stride, cj + 1);
+                // 与TerrainDataV2.addQuad的顶点顺序一致
+                setPoints(pointI, i, ni, i, ni, ni, i);
+                setPoints(pointJ, j, j, nj, j, nj, nj);
+                int first = TerrainDataV2.getCellVertexIndex(meshCells, ci, cj);
+                for (int k = 0; k < 6; k++) {
+                    int vertex = first + k;
+                    String at = "vertex " + vertex + " at (" + pointI[k] + ", " + pointJ[k] + ")";
+                    assertEquals(at, meshData.heightMap[pointI[k]][pointJ[k]], meshData.vertices.get(vertex * 3 + 1), 0);
+                    TerrainDataV2.calculateDetailedNormal(meshData.heightMap, pointI[k], pointJ[k], gridSize, cellSize, normal, 0);
+                    for (int c = 0; c < 3; c++) {
+                        assertEquals(at, normal[c], meshData.normals.get(vertex * 3 + c), 1e-6f);
+                    }
+                }
+            }
+        }
+
+        int tiles = meshData.tilesPerSide;
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int tx = 0; tx < tiles; tx++) {
+            for (int tz = 0; tz < tiles; tz++) {
+                float tileMin = Float.MAX_VALUE, tileMax = -Float.MAX_VALUE;
+                for (int i = tx * TerrainDataV2.TILE_SIZE; i <= Math.min(gridSize - 1, (tx + 1) * TerrainDataV2.TILE_SIZE); i++) {
+                    for (int j = tz * TerrainDataV2.TILE_SIZE; j <= Math.min(gridSize - 1, (tz + 1) * TerrainDataV2.TILE_SIZE); j++) {
+                        tileMin = Math.min(tileMin, meshData.heightMap[i][j]);
+                        tileMax = Math.max(tileMax, meshData.heightMap[i][j]);
+                    }
+                }
+                assertEquals("tile min", tileMin, meshData.tileMinHeight[tx * tiles + tz], 0);
+                assertEquals("tile max", tileMax, meshData.tileMaxHeight[tx * tiles + tz], 0);
+                min = Math.min(min, tileMin);
+                max = Math.max(max, tileMax);
+            }
+        }
+        assertEquals(min, meshData.heightMapMinHeight, 0);
+        assertEquals(max, meshData.heightMapMaxHeight, 0);
+    }
+
+    private static TerrainDataV2.MeshData generate(boolean normalMapping) {
+        TerrainConfig config = new TerrainConfig.Builder()
+                .setGridSize(GRID_SIZE)
+                .setEnableNormalMapping(normalMapping)
+                .setSeed(7)
+                .build();
+        TerrainDataV2.MeshData meshData = new TerrainGenerator(config).generate();
+        assertFalse(meshData.simplified);
+        return meshData;
+    }
+
+    private static void setPoints(int[] out, int... points) {
+        System.arraycopy(points, 0, out, 0, points.length);
+    }
+
+    private static float[][] copy(float[][] heights) {
+        float[][] result = new float[heights.length][];
+        for (int i = 0; i < heights.length; i++) {
+            result[i] = heights[i].clone();
+        }
+        return result;
+    }
+
+    private static float[] toArray(FloatBuffer buffer) {
+        float[] result = new float[buffer.capacity()];
+        for (int n = 0; n < result.length; n++) {
+            result[n] = buffer.get(n);
+        }
+        return result;
+    }
+}
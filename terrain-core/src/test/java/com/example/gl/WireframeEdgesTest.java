@@ -0,0 +1,80 @@
+package com.example.gl;
+
+import org.junit.Test;
+
+import java.nio.FloatBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * 线框边提取：按位置合并顶点、共享边只保留一条。
+ */
+public class WireframeEdgesTest {
+
+    @Test
+    public void sharedEdge_keptOnce() {
+        // 两个三角形共享 (1,0,0)-(0,0,1)
+        WireframeEdges edges = build(
+                0, 0, 0, 1, 0, 0, 0, 0, 1,
+                1, 0, 0, 1, 0, 1, 0, 0, 1);
+
+        assertEquals(4, edges.pointCount);
+        assertEquals(10, edges.edgeIndexCount);
+        assertEquals(5, uniqueEdges(edges).size());
+    }
+
+    @Test
+    public void edges_referencePoints() {
+        WireframeEdges edges = build(
+                0, 0, 0, 1, 0, 0, 0, 0, 1,
+                1, 0, 0, 1, 0, 1, 0, 0, 1);
+
+        Set<Integer> points = new HashSet<>();
+        for (int n = 0; n < edges.pointCount; n++) {
+            points.add(edges.indices.get(edges.edgeIndexCount + n));
+        }
+        assertEquals(edges.pointCount, points.size());
+        for (int n = 0; n < edges.edgeIndexCount; n++) {
+            assertTrue("edge uses a merged-away vertex", points.contains(edges.indices.get(n)));
+        }
+    }
+
+    @Test
+    public void negativeZero_welded() {
+        // 第二个三角形的原点写成(-0, 0, -0)，必须与(0, 0, 0)合并并共享边
+        WireframeEdges edges = build(
+                0, 0, 0, 1, 0, 0, 0, 0, 1,
+                -0.0f, 0, -0.0f, 0, 0, 1, -1, 0, 0);
+
+        assertEquals(4, edges.pointCount);
+        assertEquals(5, uniqueEdges(edges).size());
+    }
+
+    @Test
+    public void degenerateTriangle_noEdges() {
+        WireframeEdges edges = build(
+                2, 0, 2, 2, 0, 2, 2, 0, 2);
+
+        assertEquals(1, edges.pointCount);
+        assertEquals(0, edges.edgeIndexCount);
+    }
+
+    private static WireframeEdges build(float... positions) {
+        return WireframeEdges.build(FloatBuffer.wrap(positions), positions.length / 3);
+    }
+
+    // 边按 (较小下标, 较大下标) 记录，集合大小与edgeIndexCount / 2一致说明没有重复
+    private static Set<Long> uniqueEdges(WireframeEdges edges) {
+        Set<Long> set = new HashSet<>();
+        for (int n = 0; n < edges.edgeIndexCount; n += 2) {
+            int a = edges.indices.get(n);
+            int b = edges.indices.get(n + 1);
+            assertTrue("edge not ordered", a < b);
+            set.add(((long) a << 32) | b);
+        }
+        assertEquals(edges.edgeIndexCount / 2, set.size());
+        return set;
+    }
+}